@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_JPEG;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_HEIGHT;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_WIDTH;
+import static org.alfresco.transformer.util.RequestParamMap.THUMBNAIL;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares creating a thumbnail of a small web image in process with {@link ImageIOResizer} and by ImageMagick.
+ * The imageMagick benchmark needs ImageMagick to be installed. If it is not in the default location, its exe, root
+ * and dyn parameters may be set with JMH's {@code -p} option.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageIOResizerBenchmark
+{
+    private static final Map<String, String> OPTIONS = Map.of(RESIZE_WIDTH, "100", RESIZE_HEIGHT, "100",
+        THUMBNAIL, "true");
+
+    private final ImageIOResizer resizer = new ImageIOResizer();
+    private File tempDir;
+    private File source;
+    private File target;
+
+    @State(Scope.Benchmark)
+    public static class ImageMagick
+    {
+        @Param("/usr/bin/convert")
+        public String exe;
+
+        @Param("/usr/lib64/ImageMagick-7.0.10")
+        public String root;
+
+        @Param("/usr/lib64/ImageMagick-7.0.10/lib")
+        public String dyn;
+
+        private ImageMagickCommandExecutor executor;
+
+        @Setup
+        public void setup()
+        {
+            if (!new File(exe).canExecute())
+            {
+                throw new IllegalStateException("ImageMagick is not installed at " + exe);
+            }
+            executor = new ImageMagickCommandExecutor(exe, dyn, root, null, null);
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException
+    {
+        tempDir = Files.createTempDirectory("ImageIOResizerBenchmark").toFile();
+        source = new File(tempDir, "source.jpg");
+        target = new File(tempDir, "target.png");
+        BufferedImage image = new BufferedImage(1024, 768, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, 1024, 768, Color.ORANGE));
+        graphics.fillRect(0, 0, 1024, 768);
+        graphics.dispose();
+        ImageIO.write(image, "jpeg", source);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        source.delete();
+        target.delete();
+        tempDir.delete();
+    }
+
+    @Benchmark
+    public boolean imageIO()
+    {
+        return resizer.transform(MIMETYPE_IMAGE_JPEG, MIMETYPE_IMAGE_PNG, OPTIONS, source, target);
+    }
+
+    @Benchmark
+    public void imageMagick(ImageMagick imageMagick) throws Exception
+    {
+        imageMagick.executor.transform("imagemagick", MIMETYPE_IMAGE_JPEG, MIMETYPE_IMAGE_PNG, OPTIONS, source, target);
+    }
+}
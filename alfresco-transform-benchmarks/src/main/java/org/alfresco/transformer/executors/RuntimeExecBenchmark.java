@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.Collections.emptyMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building a typical ImageMagick command with {@link RuntimeExec}'s compiled template and with the string
+ * replacement it used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuntimeExecBenchmark
+{
+    private static final String[] COMMAND = {"/usr/bin/convert", "SPLIT:${decodeOptions}", "${source}",
+        "SPLIT:${options}", "-strip", "-quiet", "${target}"};
+
+    private RuntimeExec runtimeExec;
+    private Map<String, String> defaultProperties;
+    private Map<String, String> properties;
+
+    @Setup
+    public void setup()
+    {
+        runtimeExec = new RuntimeExec();
+        runtimeExec.setCommand(COMMAND);
+        runtimeExec.setProcessProperties(emptyMap());
+        defaultProperties = new HashMap<>();
+        defaultProperties.put("decodeOptions", null);
+        defaultProperties.put("options", null);
+        runtimeExec.setDefaultProperties(defaultProperties);
+        properties = new HashMap<>();
+        properties.put("options", "-auto-orient -gravity Center -crop 100x100+0+0 +repage -thumbnail 100x100>");
+        properties.put("source", "/tmp/Alfresco/source_1234567890.jpg[0]");
+        properties.put("target", "/tmp/Alfresco/target_1234567890.png");
+    }
+
+    @Benchmark
+    public String[] compiledTemplate()
+    {
+        return runtimeExec.getCommand(properties);
+    }
+
+    @Benchmark
+    public String[] stringReplacement()
+    {
+        return replaceVariables(COMMAND, defaultProperties, properties);
+    }
+
+    /**
+     * The string replacement that RuntimeExec used before commands were compiled.
+     */
+    private static String[] replaceVariables(String[] command, Map<String, String> defaultProperties,
+                                             Map<String, String> properties)
+    {
+        Map<String, String> execProperties = new HashMap<>(defaultProperties);
+        execProperties.putAll(properties);
+        List<String> adjustedCommandElements = new ArrayList<>(20);
+        for (String s : command)
+        {
+            StringBuilder sb = new StringBuilder(s);
+            for (Map.Entry<String, String> entry : execProperties.entrySet())
+            {
+                String value = entry.getValue() == null ? "" : entry.getValue();
+                String key = "${" + entry.getKey() + "}";
+                int index = sb.indexOf(key);
+                while (index > -1)
+                {
+                    sb.replace(index, index + key.length(), value);
+                    index = sb.indexOf(key, index + 1);
+                }
+            }
+            String adjustedValue = sb.toString();
+            if (adjustedValue.startsWith("SPLIT:"))
+            {
+                adjustedCommandElements.addAll(
+                    new ExecParameterTokenizer(adjustedValue.substring("SPLIT:".length())).getAllTokens());
+            }
+            else
+            {
+                adjustedCommandElements.add(adjustedValue);
+            }
+        }
+        return adjustedCommandElements.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.alfresco.transformer.executors.Tika.XML;
+import static org.alfresco.transformer.executors.TransformerHandlerFactory.newTransformerHandler;
+
+import java.io.StringWriter;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Compares writing a small document with a handler from the shared {@link TransformerHandlerFactory} and with one
+ * from a new factory, looked up for each request as was done before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformerHandlerFactoryBenchmark
+{
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog";
+
+    @Benchmark
+    public String sharedFactory() throws Exception
+    {
+        StringWriter output = new StringWriter();
+        write(newTransformerHandler(XML, output));
+        return output.toString();
+    }
+
+    @Benchmark
+    public String newFactory() throws Exception
+    {
+        StringWriter output = new StringWriter();
+        SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+        TransformerHandler transformerHandler = factory.newTransformerHandler();
+        transformerHandler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
+        transformerHandler.getTransformer().setOutputProperty(OutputKeys.METHOD, XML);
+        transformerHandler.setResult(new StreamResult(output));
+        write(transformerHandler);
+        return output.toString();
+    }
+
+    private static void write(ContentHandler contentHandler) throws Exception
+    {
+        AttributesImpl attributes = new AttributesImpl();
+        contentHandler.startDocument();
+        contentHandler.startElement("", "html", "html", attributes);
+        contentHandler.startElement("", "body", "body", attributes);
+        contentHandler.startElement("", "p", "p", attributes);
+        contentHandler.characters(TEXT.toCharArray(), 0, TEXT.length());
+        contentHandler.endElement("", "p", "p");
+        contentHandler.endElement("", "body", "body");
+        contentHandler.endElement("", "html", "html");
+        contentHandler.endDocument();
+    }
+}
@@ -28,11 +28,14 @@ package org.alfresco.transformer;
 
 import org.alfresco.transform.client.model.config.TransformConfig;
 import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.executors.TikaJavaExecutor;
 import org.alfresco.transformer.executors.Transformer;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.probes.ProbeTestTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 
@@ -55,6 +58,9 @@ public class AIOController extends AbstractTransformerController
     @Autowired
     private  AIOTransformRegistry transformRegistry;
 
+    @Value("${transform.core.tika.streamTargets:false}")
+    private boolean tikaStreamTargets;
+
     @Override
     public String getTransformerName()
     {
@@ -67,7 +73,8 @@ public class AIOController extends AbstractTransformerController
         return getTransformerName() + " available";
     }
 
-    // TODO ATS-713 Currently uses the Misc probeTest. The implementation will need to be changed such that the test can be selected based on the required transform
+    // Uses the Misc probeTest. The other T-Engines are checked in the background by the AIOEngineHealthChecker,
+    // which removes an unhealthy T-Engine's transforms rather than failing the whole pod.
     @Override
     public ProbeTestTransform getProbeTestTransform() 
     {
@@ -95,17 +102,34 @@ public class AIOController extends AbstractTransformerController
         return new ResponseEntity<>(transformConfig, OK);
     }
 
+    // Other transformers write to the target file even if their target could be streamed, and expect it to exist
+    @Override
+    protected boolean isStreamable(String transformName, String sourceMimetype, String targetMimetype,
+                                   Map<String, String> transformOptions)
+    {
+        return tikaStreamTargets && TikaJavaExecutor.isStreamable(targetMimetype) &&
+               transformRegistry.getByTransformName(transformName) instanceof TikaJavaExecutor;
+    }
+
     @Override
     public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
                                  Map<String, String> transformOptions, File sourceFile, File targetFile)
+    {
+        transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+            TransformTarget.of(targetFile));
+    }
+
+    @Override
+    public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
+                                 Map<String, String> transformOptions, File sourceFile, TransformTarget target)
     {
         logger.debug("Processing transform with: transformName; '{}', sourceFile '{}', targetFile '{}', transformOptions" +
-                " {}", transformName, sourceFile, targetFile, transformOptions);
+                " {}", transformName, sourceFile, target.getFile(), transformOptions);
 
         Transformer transformer = transformRegistry.getByTransformName(transformName);
         if (transformer == null)
         {
-            new TransformException(INTERNAL_SERVER_ERROR.value(), "No transformer mapping for - transform:"
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(), "No transformer mapping for - transform:"
                     + transformName + " sourceMimetype:" + sourceMimetype + " targetMimetype:" + targetMimetype);
         }
 
@@ -115,6 +139,6 @@ public class AIOController extends AbstractTransformerController
         }
 
         transformOptions.put(TRANSFORM_NAME_PARAMETER, transformName);
-        transformer.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+        transformer.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, target);
     }
 }
@@ -27,22 +27,41 @@
 package org.alfresco.transformer;
 
 import org.alfresco.transform.client.registry.TransformServiceRegistry;
+import org.alfresco.transformer.AIOEngineHealthChecker.EngineProbe;
 import org.alfresco.transformer.executors.ImageMagickCommandExecutor;
 import org.alfresco.transformer.executors.LibreOfficeJavaExecutor;
+import org.alfresco.transformer.executors.LibreOfficePoolSettings;
 import org.alfresco.transformer.executors.PdfRendererCommandExecutor;
+import org.alfresco.transformer.executors.TikaForkedWorkerPool;
 import org.alfresco.transformer.executors.TikaJavaExecutor;
 import org.alfresco.transformer.executors.Transformer;
+import org.alfresco.transformer.tika.parsers.ExifToolParser;
+import org.alfresco.transformer.tika.parsers.ExifToolWorkerPool;
 import org.alfresco.transformer.transformers.SelectingTransformer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_HTML;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_IMAGE_JPEG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_PDF;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_TEXT_PLAIN;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_WORD;
+import static org.alfresco.transformer.util.RequestParamMap.SOURCE_ENCODING;
+
 @Configuration
 public class AIOCustomConfig
 {
@@ -64,9 +83,63 @@ public class AIOCustomConfig
     @Value("${transform.core.libreoffice.isEnabled}")
     private String libreofficeIsEnabled;
 
+    @Value("${transform.core.libreoffice.maxInstances:0}")
+    private int libreofficeMaxInstances;
+
+    @Value("${transform.core.libreoffice.instanceIdleSeconds:300}")
+    private long libreofficeInstanceIdleSeconds;
+
+    @Value("${transform.core.libreoffice.instanceMemoryMb:512}")
+    private long libreofficeInstanceMemoryMb;
+
+    @Value("${transform.core.libreoffice.memoryBudgetMb:0}")
+    private long libreofficeMemoryBudgetMb;
+
+    @Value("${transform.core.libreoffice.maxInstanceRssMb:0}")
+    private long libreofficeMaxInstanceRssMb;
+
+    @Value("${transform.core.libreoffice.maxConsecutiveTimeouts:2}")
+    private int libreofficeMaxConsecutiveTimeouts;
+
+    @Value("${transform.core.libreoffice.degradedLatencyFactor:3}")
+    private double libreofficeDegradedLatencyFactor;
+
+    @Value("${transform.core.libreoffice.profileWorkDir:}")
+    private String libreofficeProfileWorkDir;
+
+    @Value("${transform.core.libreoffice.timeoutQuantile:0.999}")
+    private double libreofficeTimeoutQuantile;
+
+    @Value("${transform.core.libreoffice.timeoutSafetyFactor:3}")
+    private double libreofficeTimeoutSafetyFactor;
+
+    @Value("${transform.core.libreoffice.minTimeoutMs:30000}")
+    private long libreofficeMinTimeoutMs;
+
+    @Value("${transform.core.libreoffice.maxInMemoryTargetKb:4096}")
+    private int libreofficeMaxInMemoryTargetKb;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     @Value("${transform.core.pdfrenderer.exe}")
     private String pdfRendererPath;
 
+    @Value("${transform.core.pdfrenderer.maxConcurrentProcesses:0}")
+    private int pdfRendererMaxConcurrentProcesses;
+
+    @Value("${transform.core.pdfrenderer.maxQueueWaitSeconds:300}")
+    private long pdfRendererMaxQueueWaitSeconds;
+
+    @Value("${transform.core.pdfrenderer.inProcess:false}")
+    private boolean pdfRendererInProcess;
+
+    @Value("${transform.core.pdfrenderer.scratchMemoryMb:16}")
+    private long pdfRendererScratchMemoryMb;
+
+    @Value("${transform.core.pdfrenderer.documentCacheSize:4}")
+    private int pdfRendererDocumentCacheSize;
+
     @Value("${transform.core.imagemagick.exe}")
     private String imageMagickExePath;
 
@@ -82,9 +155,68 @@ public class AIOCustomConfig
     @Value("${transform.core.imagemagick.config}")
     private String imageMagickConfigPath;
 
+    @Value("${transform.core.imagemagick.maxConcurrentProcesses:0}")
+    private int imageMagickMaxConcurrentProcesses;
+
+    @Value("${transform.core.imagemagick.maxQueueWaitSeconds:300}")
+    private long imageMagickMaxQueueWaitSeconds;
+
+    @Value("${transform.core.imagemagick.maxInMemoryTargetKb:0}")
+    private int imageMagickMaxInMemoryTargetKb;
+
+    @Value("${transform.core.imagemagick.imageIOFastPath:true}")
+    private boolean imageMagickImageIOFastPath;
+
+    @Value("${transform.core.imagemagick.memoryBudgetMb:0}")
+    private long imageMagickMemoryBudgetMb;
+
+    @Value("${transform.core.imagemagick.minPagesPerProcess:10}")
+    private int imageMagickMinPagesPerProcess;
+
     @Value("${transform.core.tika.pdfBox.notExtractBookmarksTextDefault:false}")
     private boolean notExtractBookmarksTextDefault;
 
+    @Value("${transform.core.tika.exifTool.workers:4}")
+    private int exifToolWorkers;
+
+    @Value("${transform.core.tika.exifTool.maxFilesPerWorker:1000}")
+    private int exifToolMaxFilesPerWorker;
+
+    @Value("${transform.core.tika.exifTool.timeoutSeconds:60}")
+    private long exifToolTimeoutSeconds;
+
+    @Value("${transform.core.tika.forked.workers:0}")
+    private int tikaForkedWorkers;
+
+    @Value("${transform.core.tika.forked.maxHeap:512m}")
+    private String tikaForkedMaxHeap;
+
+    @Value("${transform.core.tika.forked.maxFilesPerWorker:100}")
+    private int tikaForkedMaxFilesPerWorker;
+
+    @Value("${transform.core.tika.forked.timeoutSeconds:300}")
+    private long tikaForkedTimeoutSeconds;
+
+    @Value("${transform.core.tika.forked.inProcessMaxSizeKb:1024}")
+    private long tikaInProcessMaxSizeKb;
+
+    @Value("${transform.core.tika.forked.inProcessMimetypes:text/plain,text/csv,text/html,text/xml,application/xhtml+xml}")
+    private String[] tikaInProcessMimetypes;
+
+    @Value("${transform.core.aio.engineProbes.enabled:false}")
+    private boolean engineProbesEnabled;
+
+    @Value("${transform.core.aio.engineProbes.periodSeconds:60}")
+    private long engineProbesPeriodSeconds;
+
+    @Value("${transform.core.aio.engineProbes.timeoutSeconds:120}")
+    private long engineProbesTimeoutSeconds;
+
+    @Value("${transform.core.aio.engineProbes.failureThreshold:2}")
+    private int engineProbesFailureThreshold;
+
+    private final List<TikaJavaExecutor> tikaJavaExecutors = new ArrayList<>();
+
     /**
      *
      * @return Override the TransformRegistryImpl used in {@link AbstractTransformerController}
@@ -106,14 +238,99 @@ public class AIOCustomConfig
         return aioTransformRegistry;
     }
 
+    /**
+     *
+     * @return Background test transforms for each T-Engine, which remove the transforms of an unhealthy T-Engine
+     *         from the {@link AIOTransformRegistry} until it recovers. Only started if enabled.
+     */
+    @Bean(destroyMethod = "stop")
+    public AIOEngineHealthChecker aioEngineHealthChecker() throws Exception
+    {
+        // See the Javadoc on ProbeTestTransform and Probes.md for the choice of these values. They are the same
+        // as those used by the individual T-Engines.
+        AIOEngineHealthChecker healthChecker = new AIOEngineHealthChecker(
+                (AIOTransformRegistry) aioTransformRegistry(), engineProbesPeriodSeconds,
+                engineProbesTimeoutSeconds, engineProbesFailureThreshold)
+            .addProbe(new EngineProbe("imagemagick", "imagemagick",
+                "quick.jpg", MIMETYPE_IMAGE_JPEG, "quick.png", MIMETYPE_IMAGE_PNG, 35593, 1024))
+            .addProbe(new EngineProbe("libreoffice", "libreoffice",
+                "quick.doc", MIMETYPE_WORD, "quick.pdf", MIMETYPE_PDF, 11817, 1024))
+            .addProbe(new EngineProbe("misc", "html",
+                "quick.html", MIMETYPE_HTML, "quick.txt", MIMETYPE_TEXT_PLAIN, 119, 30)
+                .withTransformOption(SOURCE_ENCODING, "UTF-8"))
+            .addProbe(new EngineProbe("pdfrenderer", "pdfrenderer",
+                "quick.pdf", MIMETYPE_PDF, "quick.png", MIMETYPE_IMAGE_PNG, 7455, 1024))
+            .addProbe(new EngineProbe("tika", "PdfBox",
+                "quick.pdf", MIMETYPE_PDF, "quick.txt", MIMETYPE_TEXT_PLAIN, 60, 16));
+        if (engineProbesEnabled)
+        {
+            healthChecker.start();
+        }
+        return healthChecker;
+    }
+
     List<Transformer> getTEnginesSortedByName()
     {
+        ImageMagickCommandExecutor imageMagickCommandExecutor = new ImageMagickCommandExecutor(imageMagickExePath,
+                imageMagickDynPath, imageMagickRootPath, imageMagickCodersPath, imageMagickConfigPath);
+        imageMagickCommandExecutor.setConcurrencyLimits(imageMagickMaxConcurrentProcesses,
+                imageMagickMaxQueueWaitSeconds * 1000);
+        imageMagickCommandExecutor.setMaxInMemoryTargetBytes(imageMagickMaxInMemoryTargetKb * 1024);
+        imageMagickCommandExecutor.setImageIOFastPath(imageMagickImageIOFastPath);
+        imageMagickCommandExecutor.setMemoryBudget(imageMagickMemoryBudgetMb * 1024 * 1024);
+        imageMagickCommandExecutor.setMinPagesPerProcess(imageMagickMinPagesPerProcess);
+        PdfRendererCommandExecutor pdfRendererCommandExecutor = new PdfRendererCommandExecutor(pdfRendererPath);
+        pdfRendererCommandExecutor.setConcurrencyLimits(pdfRendererMaxConcurrentProcesses,
+                pdfRendererMaxQueueWaitSeconds * 1000);
+        pdfRendererCommandExecutor.setInProcess(pdfRendererInProcess, pdfRendererScratchMemoryMb * 1024 * 1024,
+                pdfRendererDocumentCacheSize);
+        LibreOfficeJavaExecutor libreOfficeJavaExecutor = new LibreOfficeJavaExecutor(libreofficePath,
+                libreofficeMaxTasksPerProcess, libreofficeTimeout, libreofficePortNumbers,
+                libreofficeTemplateProfileDir, libreofficeIsEnabled, new LibreOfficePoolSettings()
+                    .withMaxInstances(libreofficeMaxInstances)
+                    .withInstanceIdleSeconds(libreofficeInstanceIdleSeconds)
+                    .withInstanceMemoryMb(libreofficeInstanceMemoryMb)
+                    .withMemoryBudgetMb(libreofficeMemoryBudgetMb)
+                    .withMaxInstanceRssMb(libreofficeMaxInstanceRssMb)
+                    .withMaxConsecutiveTimeouts(libreofficeMaxConsecutiveTimeouts)
+                    .withDegradedLatencyFactor(libreofficeDegradedLatencyFactor)
+                    .withProfileWorkDir(libreofficeProfileWorkDir)
+                    .withTimeoutQuantile(libreofficeTimeoutQuantile)
+                    .withTimeoutSafetyFactor(libreofficeTimeoutSafetyFactor)
+                    .withMinTimeoutMs(libreofficeMinTimeoutMs));
+        libreOfficeJavaExecutor.setMaxInMemoryTargetBytes(libreofficeMaxInMemoryTargetKb * 1024);
+        if (meterRegistry != null)
+        {
+            libreOfficeJavaExecutor.bindTo(meterRegistry);
+        }
+        ExifToolWorkerPool exifToolWorkerPool = exifToolWorkers > 0
+            ? new ExifToolWorkerPool(new ExifToolParser().getExecutable(), exifToolWorkers,
+                exifToolMaxFilesPerWorker, SECONDS.toMillis(exifToolTimeoutSeconds))
+            : null;
+        TikaJavaExecutor tikaJavaExecutor = new TikaJavaExecutor(notExtractBookmarksTextDefault, exifToolWorkerPool);
+        tikaJavaExecutors.add(tikaJavaExecutor);
+        if (tikaForkedWorkers > 0)
+        {
+            tikaJavaExecutor.setForkedWorkerPool(new TikaForkedWorkerPool(tikaForkedWorkers, tikaForkedMaxHeap,
+                tikaForkedMaxFilesPerWorker, SECONDS.toMillis(tikaForkedTimeoutSeconds)),
+                tikaInProcessMaxSizeKb * 1024, Arrays.asList(tikaInProcessMimetypes));
+        }
+
         return Stream.of(new SelectingTransformer(),
-                new TikaJavaExecutor(notExtractBookmarksTextDefault),
-                new ImageMagickCommandExecutor(imageMagickExePath, imageMagickDynPath, imageMagickRootPath, imageMagickCodersPath, imageMagickConfigPath),
-                new LibreOfficeJavaExecutor(libreofficePath, libreofficeMaxTasksPerProcess, libreofficeTimeout, libreofficePortNumbers, libreofficeTemplateProfileDir, libreofficeIsEnabled),
-                new PdfRendererCommandExecutor(pdfRendererPath))
+                tikaJavaExecutor,
+                imageMagickCommandExecutor,
+                libreOfficeJavaExecutor,
+                pdfRendererCommandExecutor)
                 .sorted(Comparator.comparing(Transformer::getTransformerId))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Stops the worker processes of the T-Engines when the application shuts down.
+     */
+    @PreDestroy
+    public void destroy()
+    {
+        tikaJavaExecutors.forEach(TikaJavaExecutor::close);
+    }
 }
@@ -31,6 +31,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 
+import java.io.File;
 import java.util.StringJoiner;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -42,6 +43,9 @@ class AIOCustomConfigTest
     @Autowired
     AIOCustomConfig aioCustomConfig;
 
+    @Autowired
+    AIOEngineHealthChecker aioEngineHealthChecker;
+
     @Test
     void testGetTEnginesSortedByName()
     {
@@ -50,4 +54,20 @@ class AIOCustomConfigTest
         aioCustomConfig.getTEnginesSortedByName().stream().forEach(tEngine -> sortedTEngines.add(tEngine.getTransformerId()));
         assertEquals("imagemagick,libreoffice,misc,pdfrenderer,tika", sortedTEngines.toString());
     }
+
+    @Test
+    void testEngineProbeSourcesPackaged() throws Exception
+    {
+        // The test jars of the individual T-Engines are on the test classpath, so check the test files are in the
+        // all-in-one T-Engine's own resources, as they would be in its jar.
+        File resources = new File(AIOCustomConfig.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        StringJoiner probedTEngines = new StringJoiner(",");
+        for (AIOEngineHealthChecker.EngineProbe probe : aioEngineHealthChecker.getProbes())
+        {
+            probedTEngines.add(probe.getTransformerId());
+            assertTrue(new File(resources, probe.getSourceFilename()).isFile(),
+                    probe.getSourceFilename() + " is missing for " + probe.getTransformerId());
+        }
+        assertEquals("imagemagick,libreoffice,misc,pdfrenderer,tika", probedTEngines.toString());
+    }
 }
@@ -0,0 +1,327 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.alfresco.transformer.fs.FileManager.TempFileProvider.createTempFile;
+import static org.alfresco.transformer.util.RequestParamMap.TRANSFORM_NAME_PARAMETER;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.transformer.executors.Transformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically runs a small test transform against each T-Engine in the all-in-one transformer, in the background
+ * and concurrently. An engine whose test transform fails, produces an unexpected result or does not finish within
+ * the timeout a number of consecutive times is marked as unhealthy in the {@link AIOTransformRegistry}, which removes
+ * its transforms from routing and from the transform config. It is marked healthy again once a test transform
+ * succeeds, so the other engines keep serving requests while one recovers.
+ *
+ * <p>This complements rather than replaces the pod level live and ready probes (see Probes.md), which only use the
+ * misc engine's test transform.</p>
+ */
+public class AIOEngineHealthChecker
+{
+    private static final Logger logger = LoggerFactory.getLogger(AIOEngineHealthChecker.class);
+
+    private final AIOTransformRegistry transformRegistry;
+    private final long periodSeconds;
+    private final long timeoutSeconds;
+    private final int failureThreshold;
+
+    private final List<EngineProbe> probes = new ArrayList<>();
+    // Cancelling the Future of a test transform that has timed out does not stop a thread that ignores interrupts,
+    // so the engines whose test transform is still running are tracked separately.
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicInteger> consecutiveFailures = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService probeExecutor;
+
+    /**
+     * @param transformRegistry the registry holding the engines to be checked
+     * @param periodSeconds     the gap between the end of one round of test transforms and the start of the next
+     * @param timeoutSeconds    the maximum time a test transform may take before it is considered to have failed
+     * @param failureThreshold  the number of consecutive failures before an engine is marked as unhealthy
+     */
+    public AIOEngineHealthChecker(AIOTransformRegistry transformRegistry, long periodSeconds,
+                                  long timeoutSeconds, int failureThreshold)
+    {
+        this.transformRegistry = transformRegistry;
+        this.periodSeconds = periodSeconds;
+        this.timeoutSeconds = timeoutSeconds;
+        this.failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    public AIOEngineHealthChecker addProbe(EngineProbe probe)
+    {
+        probes.add(probe);
+        consecutiveFailures.put(probe.transformerId, new AtomicInteger());
+        return this;
+    }
+
+    public synchronized void start()
+    {
+        if (scheduler != null || probes.isEmpty())
+        {
+            return;
+        }
+        // Not a fixed size pool, as a wedged engine may hold on to a thread that ignores being interrupted.
+        probeExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "aio-engine-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aio-engine-health-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkEngines, periodSeconds, periodSeconds, SECONDS);
+        logger.info("Started T-Engine health checks every {}s for: {}", periodSeconds, getTransformerIds());
+    }
+
+    public synchronized void stop()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            probeExecutor.shutdownNow();
+            scheduler = null;
+            probeExecutor = null;
+        }
+    }
+
+    /**
+     * Runs one round of test transforms, one per engine, concurrently and waits for them to finish or time out.
+     */
+    void checkEngines()
+    {
+        try
+        {
+            Map<EngineProbe, Future<?>> started = new HashMap<>();
+            for (EngineProbe probe : probes)
+            {
+                if (running.contains(probe.transformerId))
+                {
+                    // The test transform from an earlier round is still stuck.
+                    recordFailure(probe, "the previous test transform has not finished");
+                    continue;
+                }
+                running.add(probe.transformerId);
+                Future<?> future = probeExecutor.submit(() -> {
+                    try
+                    {
+                        probe.execute(transformRegistry);
+                        return null;
+                    }
+                    finally
+                    {
+                        running.remove(probe.transformerId);
+                    }
+                });
+                started.put(probe, future);
+            }
+
+            long deadline = System.currentTimeMillis() + SECONDS.toMillis(timeoutSeconds);
+            for (Map.Entry<EngineProbe, Future<?>> entry : started.entrySet())
+            {
+                EngineProbe probe = entry.getKey();
+                Future<?> future = entry.getValue();
+                try
+                {
+                    future.get(Math.max(0, deadline - System.currentTimeMillis()), MILLISECONDS);
+                    recordSuccess(probe);
+                }
+                catch (TimeoutException e)
+                {
+                    future.cancel(true);
+                    recordFailure(probe, "the test transform took longer than " + timeoutSeconds + "s");
+                }
+                catch (ExecutionException e)
+                {
+                    recordFailure(probe, e.getCause().getMessage());
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Exception e)
+        {
+            // Must not escape, or the scheduled task would stop running.
+            logger.error("T-Engine health check failed", e);
+        }
+    }
+
+    private void recordSuccess(EngineProbe probe)
+    {
+        consecutiveFailures.get(probe.transformerId).set(0);
+        transformRegistry.setEngineHealthy(probe.transformerId, true);
+    }
+
+    private void recordFailure(EngineProbe probe, String reason)
+    {
+        int failures = consecutiveFailures.get(probe.transformerId).incrementAndGet();
+        logger.warn("T-Engine '{}' test transform failed ({} of {}): {}", probe.transformerId, failures,
+                failureThreshold, reason);
+        if (failures >= failureThreshold)
+        {
+            transformRegistry.setEngineHealthy(probe.transformerId, false);
+        }
+    }
+
+    List<EngineProbe> getProbes()
+    {
+        return probes;
+    }
+
+    private List<String> getTransformerIds()
+    {
+        List<String> transformerIds = new ArrayList<>();
+        probes.forEach(probe -> transformerIds.add(probe.transformerId));
+        return transformerIds;
+    }
+
+    /**
+     * The test transform used to check a single T-Engine. The values are normally the same as those used by the
+     * individual T-Engine's ProbeTestTransform.
+     */
+    public static class EngineProbe
+    {
+        private final String transformerId;
+        private final String transformName;
+        private final String sourceFilename;
+        private final String sourceMimetype;
+        private final String targetFilename;
+        private final String targetMimetype;
+        private final long minExpectedLength;
+        private final long maxExpectedLength;
+        private final Map<String, String> transformOptions = new HashMap<>();
+
+        /**
+         * @param transformerId  the {@link Transformer#getTransformerId()} of the engine to be checked
+         * @param transformName  the transform to be used, as it appears in the engine's config
+         * @param expectedLength was the length of the target file during testing
+         * @param plusOrMinus    allows for some variation in the transformed size
+         */
+        public EngineProbe(String transformerId, String transformName,
+                           String sourceFilename, String sourceMimetype,
+                           String targetFilename, String targetMimetype,
+                           long expectedLength, long plusOrMinus)
+        {
+            this.transformerId = transformerId;
+            this.transformName = transformName;
+            this.sourceFilename = sourceFilename;
+            this.sourceMimetype = sourceMimetype;
+            this.targetFilename = targetFilename;
+            this.targetMimetype = targetMimetype;
+            this.minExpectedLength = Math.max(0, expectedLength - plusOrMinus);
+            this.maxExpectedLength = expectedLength + plusOrMinus;
+        }
+
+        public EngineProbe withTransformOption(String name, String value)
+        {
+            transformOptions.put(name, value);
+            return this;
+        }
+
+        public String getTransformerId()
+        {
+            return transformerId;
+        }
+
+        public String getSourceFilename()
+        {
+            return sourceFilename;
+        }
+
+        void execute(AIOTransformRegistry transformRegistry) throws IOException
+        {
+            // The engine is looked up directly, as an unhealthy engine is no longer mapped by transform name.
+            Transformer transformer = transformRegistry.getEngine(transformerId);
+            if (transformer == null)
+            {
+                throw new IllegalStateException("No T-Engine registered with id " + transformerId);
+            }
+
+            File sourceFile = createTempFile("probe_source_", "_" + sourceFilename);
+            File targetFile = createTempFile("probe_target_", "_" + targetFilename);
+            try
+            {
+                try (InputStream inputStream = getClass().getResourceAsStream('/' + sourceFilename))
+                {
+                    if (inputStream == null)
+                    {
+                        throw new IOException("Test file " + sourceFilename + " is not on the classpath");
+                    }
+                    Files.copy(inputStream, sourceFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                long start = System.currentTimeMillis();
+                Map<String, String> options = new HashMap<>(transformOptions);
+                options.put(TRANSFORM_NAME_PARAMETER, transformName);
+                transformer.transform(sourceMimetype, targetMimetype, options, sourceFile, targetFile);
+
+                long length = targetFile.length();
+                if (length < minExpectedLength || length > maxExpectedLength)
+                {
+                    throw new IllegalStateException("Target file was the wrong size (" + length +
+                            "). Needed to be between " + minExpectedLength + " and " + maxExpectedLength);
+                }
+                logger.trace("T-Engine '{}' test transform {}ms", transformerId,
+                        System.currentTimeMillis() - start);
+            }
+            finally
+            {
+                sourceFile.delete();
+                targetFile.delete();
+            }
+        }
+    }
+}
@@ -39,13 +39,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * AIOTransformRegistry manages all of the sub transformers registered to it and provides aggregated TransformConfig.
+ * <p>
+ * Individual T-Engines may be marked as unhealthy (see {@link #setEngineHealthy(String, boolean)}). The transforms
+ * of an unhealthy T-Engine are removed from routing and from the aggregated TransformConfig until it is marked as
+ * healthy again, so that the other T-Engines continue to handle requests.
  */
 public class AIOTransformRegistry extends AbstractTransformRegistry
 {
@@ -53,16 +61,23 @@ public class AIOTransformRegistry extends AbstractTransformRegistry
 
     private static final String ENGINE_CONFIG_LOCATION_POSTFIX = "_engine_config.json";
 
-    private CombinedTransformConfig combinedTransformConfig = new CombinedTransformConfig();
+    private volatile CombinedTransformConfig combinedTransformConfig = new CombinedTransformConfig();
 
     // Holds the structures used by AbstractTransformRegistry to look up what is supported.
-    // Unlike other sub classes this class does not extend Data or replace it at run time.
-    private TransformCache data = new TransformCache();
+    // Unlike other sub classes this class does not extend Data. It is only replaced at run time when the health
+    // of one of the T-Engines changes.
+    private volatile TransformCache data = new TransformCache();
 
     private ObjectMapper jsonObjectMapper = new ObjectMapper();
 
     // Represents the mapping between a transform and a transformer, multiple mappings can point to the same transformer.
-    private Map<String, Transformer> transformerEngineMapping = new HashMap();
+    private volatile Map<String, Transformer> transformerEngineMapping = new HashMap();
+
+    // The registered T-Engines and their config, in registration order, so the routing data may be rebuilt.
+    private final Map<String, Transformer> engines = new LinkedHashMap<>();
+    private final Map<String, TransformConfig> engineTransformConfigs = new HashMap<>();
+
+    private final Set<String> unhealthyEngines = ConcurrentHashMap.newKeySet();
 
     /**
      * Adds a transformer's (T-Engine) config to the configuration and creates a map of transforms to the T-Engine.
@@ -77,6 +92,17 @@ public class AIOTransformRegistry extends AbstractTransformRegistry
         // Load config for the transformer
         String location = getTransformConfigLocation(transformer);
         TransformConfig transformConfig = loadTransformConfig(location);
+        String transformerId = transformer.getTransformerId();
+        synchronized (engines)
+        {
+            engines.put(transformerId, transformer);
+            engineTransformConfigs.put(transformerId, transformConfig);
+        }
+        addTransformConfig(transformer, transformConfig, location);
+    }
+
+    private void addTransformConfig(Transformer transformer, TransformConfig transformConfig, String location)
+    {
         String transformerId = transformer.getTransformerId();
         combinedTransformConfig.addTransformConfig(transformConfig, location, transformerId, this);
 
@@ -101,6 +127,79 @@ public class AIOTransformRegistry extends AbstractTransformRegistry
         combinedTransformConfig.registerCombinedTransformers(this);
     }
 
+    /**
+     * Marks a T-Engine as healthy or unhealthy. When the state changes the routing data and aggregated config are
+     * rebuilt from the remaining healthy T-Engines.
+     *
+     * @param transformerId The {@link Transformer#getTransformerId()} of the T-Engine.
+     * @param healthy {@code false} to remove the T-Engine's transforms, {@code true} to restore them.
+     */
+    public void setEngineHealthy(final String transformerId, final boolean healthy)
+    {
+        boolean changed = healthy
+                ? unhealthyEngines.remove(transformerId)
+                : unhealthyEngines.add(transformerId);
+        if (changed)
+        {
+            if (healthy)
+            {
+                log.info("T-Engine '{}' is healthy again. Its transforms have been restored.", transformerId);
+            }
+            else
+            {
+                log.warn("T-Engine '{}' is unhealthy. Its transforms have been removed until it recovers.", transformerId);
+            }
+            rebuild();
+        }
+    }
+
+    public boolean isEngineHealthy(final String transformerId)
+    {
+        return !unhealthyEngines.contains(transformerId);
+    }
+
+    public Set<String> getUnhealthyEngines()
+    {
+        return Collections.unmodifiableSet(unhealthyEngines);
+    }
+
+    /**
+     * @param transformerId The {@link Transformer#getTransformerId()} of the T-Engine.
+     * @return The registered T-Engine, even if it is currently unhealthy.
+     */
+    public Transformer getEngine(final String transformerId)
+    {
+        synchronized (engines)
+        {
+            return engines.get(transformerId);
+        }
+    }
+
+    // The new structures are built in a separate registry and then swapped in, so that requests being routed in the
+    // meantime see either the old or the new data, but never a partially built version.
+    private void rebuild()
+    {
+        synchronized (engines)
+        {
+            AIOTransformRegistry staging = new AIOTransformRegistry();
+            for (Map.Entry<String, Transformer> entry : engines.entrySet())
+            {
+                String transformerId = entry.getKey();
+                if (isEngineHealthy(transformerId))
+                {
+                    Transformer transformer = entry.getValue();
+                    staging.addTransformConfig(transformer, engineTransformConfigs.get(transformerId),
+                            getTransformConfigLocation(transformer));
+                }
+            }
+            staging.registerCombinedTransformers();
+
+            data = staging.data;
+            combinedTransformConfig = staging.combinedTransformConfig;
+            transformerEngineMapping = staging.transformerEngineMapping;
+        }
+    }
+
     /**
      *
      * @param transformName The transform name as it appears in TransformConfig.
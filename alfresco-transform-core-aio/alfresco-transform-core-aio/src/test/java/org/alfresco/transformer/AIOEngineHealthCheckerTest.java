@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_HTML;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_PLAIN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.transformer.AIOEngineHealthChecker.EngineProbe;
+import org.alfresco.transformer.executors.Transformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the health checks against fake T-Engines, registered with the ids of the engines whose config is in the test
+ * resources. The source of each test transform may be any file on the classpath, as the fake engines ignore it.
+ */
+public class AIOEngineHealthCheckerTest
+{
+    private static final String SOURCE_FILENAME = "misc_engine_config.json";
+    private static final String TARGET_CONTENT = "The quick brown fox";
+
+    private final AIOTransformRegistry transformRegistry = new AIOTransformRegistry();
+    private final FakeEngine misc = new FakeEngine("misc");
+    private final FakeEngine tika = new FakeEngine("tika");
+    private AIOEngineHealthChecker healthChecker;
+
+    @BeforeEach
+    public void before() throws Exception
+    {
+        transformRegistry.registerTransformer(misc);
+        transformRegistry.registerTransformer(tika);
+        transformRegistry.registerCombinedTransformers();
+    }
+
+    @AfterEach
+    public void after()
+    {
+        misc.release.countDown();
+        tika.release.countDown();
+        healthChecker.stop();
+    }
+
+    @Test
+    public void testEachEngineProbed()
+    {
+        start(2, 60);
+
+        healthChecker.checkEngines();
+
+        assertEquals(1, misc.calls.get());
+        assertEquals(1, tika.calls.get());
+        assertTrue(transformRegistry.getUnhealthyEngines().isEmpty());
+    }
+
+    @Test
+    public void testUnhealthyAfterThresholdAndRecovery()
+    {
+        start(2, 60);
+        tika.failures.set(2);
+
+        healthChecker.checkEngines();
+        assertTrue(transformRegistry.isEngineHealthy("tika"), "Unhealthy before the threshold");
+
+        healthChecker.checkEngines();
+        assertFalse(transformRegistry.isEngineHealthy("tika"));
+        assertNull(transformRegistry.getByTransformName("PdfBox"));
+        assertTrue(transformRegistry.isEngineHealthy("misc"));
+
+        // Still probed while unhealthy, and restored by the first test transform that succeeds
+        healthChecker.checkEngines();
+        assertEquals(3, tika.calls.get());
+        assertTrue(transformRegistry.isEngineHealthy("tika"));
+        assertEquals("tika", transformRegistry.getByTransformName("PdfBox").getTransformerId());
+    }
+
+    @Test
+    public void testFailureCountResetBySuccess()
+    {
+        start(2, 60);
+
+        tika.failures.set(1);
+        healthChecker.checkEngines();
+        healthChecker.checkEngines();
+        tika.failures.set(1);
+        healthChecker.checkEngines();
+
+        assertTrue(transformRegistry.isEngineHealthy("tika"), "Failures were not consecutive");
+    }
+
+    @Test
+    public void testWrongTargetSize()
+    {
+        start(1, 60);
+        tika.targetContent = TARGET_CONTENT + TARGET_CONTENT;
+
+        healthChecker.checkEngines();
+
+        assertFalse(transformRegistry.isEngineHealthy("tika"));
+        assertTrue(transformRegistry.isEngineHealthy("misc"));
+    }
+
+    @Test
+    public void testTimeoutAndStuckTransform()
+    {
+        start(2, 1);
+        tika.release = new CountDownLatch(1);
+        tika.ignoreInterrupt = true;
+
+        healthChecker.checkEngines();
+        assertTrue(transformRegistry.isEngineHealthy("tika"), "Unhealthy before the threshold");
+
+        // The first test transform is still stuck, so no new one is started
+        healthChecker.checkEngines();
+        assertEquals(1, tika.calls.get());
+        assertFalse(transformRegistry.isEngineHealthy("tika"));
+        assertTrue(transformRegistry.isEngineHealthy("misc"));
+    }
+
+    private void start(int failureThreshold, long timeoutSeconds)
+    {
+        // The period is long enough for only the rounds run by the test to take place
+        healthChecker = new AIOEngineHealthChecker(transformRegistry, 3600, timeoutSeconds, failureThreshold)
+            .addProbe(probe("misc", "html"))
+            .addProbe(probe("tika", "PdfBox"));
+        healthChecker.start();
+    }
+
+    private static EngineProbe probe(String transformerId, String transformName)
+    {
+        return new EngineProbe(transformerId, transformName, SOURCE_FILENAME, MIMETYPE_HTML,
+            "quick.txt", MIMETYPE_TEXT_PLAIN, TARGET_CONTENT.length(), 2);
+    }
+
+    private static class FakeEngine implements Transformer
+    {
+        private final String transformerId;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile String targetContent = TARGET_CONTENT;
+        private volatile CountDownLatch release = new CountDownLatch(0);
+        private volatile boolean ignoreInterrupt;
+
+        private FakeEngine(String transformerId)
+        {
+            this.transformerId = transformerId;
+        }
+
+        @Override
+        public String getTransformerId()
+        {
+            return transformerId;
+        }
+
+        @Override
+        public void transform(String transformName, String sourceMimetype, String targetMimetype,
+                              Map<String, String> transformOptions, File sourceFile, File targetFile)
+            throws Exception
+        {
+            calls.incrementAndGet();
+            assertTrue(sourceFile.length() > 0, "Source not copied from the classpath");
+            while (release.getCount() > 0)
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    if (!ignoreInterrupt)
+                    {
+                        throw e;
+                    }
+                }
+            }
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0)
+            {
+                throw new IllegalStateException("Failed test transform");
+            }
+            Files.write(targetFile.toPath(), targetContent.getBytes(UTF_8));
+        }
+    }
+}
@@ -53,6 +53,9 @@ import java.util.stream.Stream;
 import static org.alfresco.transformer.util.RequestParamMap.PAGE_LIMIT;
 import static org.alfresco.transformer.util.RequestParamMap.TRANSFORM_NAME_PARAMETER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -155,6 +158,32 @@ public class AIOTransformRegistryTest
         }
     }
 
+    @Test
+    public void testUnhealthyEngine() throws Exception
+    {
+        TransformConfig miscConfig = loadConfig("misc_engine_config.json");
+        TransformConfig tikaConfig = loadConfig("tika_engine_config.json");
+        int allTransformerCount = miscConfig.getTransformers().size() + tikaConfig.getTransformers().size();
+
+        aioTransformerRegistry.setEngineHealthy("tika", false);
+
+        assertFalse(aioTransformerRegistry.isEngineHealthy("tika"));
+        assertNull(aioTransformerRegistry.getByTransformName("PdfBox"), "Unhealthy transform still mapped");
+        assertEquals("misc", aioTransformerRegistry.getByTransformName("html").getTransformerId());
+        assertEquals(miscConfig.getTransformers().size(),
+                aioTransformerRegistry.getTransformConfig().getTransformers().size(),
+                "Number of expected transformers");
+        assertNotNull(aioTransformerRegistry.getEngine("tika"), "Unhealthy engine must still be available to probe");
+
+        aioTransformerRegistry.setEngineHealthy("tika", true);
+
+        assertTrue(aioTransformerRegistry.isEngineHealthy("tika"));
+        assertEquals("tika", aioTransformerRegistry.getByTransformName("PdfBox").getTransformerId());
+        assertEquals(allTransformerCount,
+                aioTransformerRegistry.getTransformConfig().getTransformers().size(),
+                "Number of expected transformers");
+    }
+
     // Test copied from Misc (HtmlParserContentTransformerTest) See ATS-712 aioTransformerRegistry - html
     @Test
     public void testMiscHtml() throws Exception
@@ -27,6 +27,7 @@
 package org.alfresco.transformer;
 
 import org.alfresco.transformer.executors.ImageMagickCommandExecutor;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.probes.ProbeTestTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,12 +81,35 @@ public class  ImageMagickController extends AbstractTransformerController
     @Value("${transform.core.imagemagick.config}")
     private String CONFIG;
 
+    @Value("${transform.core.imagemagick.maxConcurrentProcesses:0}")
+    private int maxConcurrentProcesses;
+
+    @Value("${transform.core.imagemagick.maxQueueWaitSeconds:300}")
+    private long maxQueueWaitSeconds;
+
+    @Value("${transform.core.imagemagick.maxInMemoryTargetKb:0}")
+    private int maxInMemoryTargetKb;
+
+    @Value("${transform.core.imagemagick.imageIOFastPath:true}")
+    private boolean imageIOFastPath;
+
+    @Value("${transform.core.imagemagick.memoryBudgetMb:0}")
+    private long memoryBudgetMb;
+
+    @Value("${transform.core.imagemagick.minPagesPerProcess:10}")
+    private int minPagesPerProcess;
+
     ImageMagickCommandExecutor commandExecutor;
 
     @PostConstruct
     private void init()
     {
         commandExecutor = new ImageMagickCommandExecutor(EXE, DYN, ROOT, CODERS, CONFIG);
+        commandExecutor.setConcurrencyLimits(maxConcurrentProcesses, maxQueueWaitSeconds * 1000);
+        commandExecutor.setMaxInMemoryTargetBytes(maxInMemoryTargetKb * 1024);
+        commandExecutor.setImageIOFastPath(imageIOFastPath);
+        commandExecutor.setMemoryBudget(memoryBudgetMb * 1024 * 1024);
+        commandExecutor.setMinPagesPerProcess(minPagesPerProcess);
     }
 
     @Override
@@ -126,6 +150,14 @@ public class  ImageMagickController extends AbstractTransformerController
     public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
                                  Map<String, String> transformOptions, File sourceFile, File targetFile)
     {
-        commandExecutor.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+        transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+            TransformTarget.of(targetFile));
+    }
+
+    @Override
+    public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
+                                 Map<String, String> transformOptions, File sourceFile, TransformTarget target)
+    {
+        commandExecutor.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, target);
     }
 }
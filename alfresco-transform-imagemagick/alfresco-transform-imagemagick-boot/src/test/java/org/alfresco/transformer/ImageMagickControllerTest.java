@@ -33,6 +33,9 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
@@ -49,6 +52,7 @@ import static org.springframework.util.StringUtils.getFilenameExtension;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -118,6 +122,8 @@ public class ImageMagickControllerTest extends AbstractTransformerControllerTest
 
     ImageMagickCommandExecutor commandExecutor;
 
+    protected String expectedDecodeOptions;
+
     @PostConstruct
     private void init()
     {
@@ -154,16 +160,24 @@ public class ImageMagickControllerTest extends AbstractTransformerControllerTest
         this.targetMimetype = PREFIX_IMAGE + targetExtension;
 
         expectedOptions = null;
+        expectedDecodeOptions = null;
         expectedSourceSuffix = null;
         expectedSourceFileBytes = readTestFile(sourceExtension);
         expectedTargetFileBytes = readTargetFileBytes ? readTestFile(targetExtension) : null;
         sourceFile = new MockMultipartFile("file", "quick." + sourceExtension, sourceMimetype,
             expectedSourceFileBytes);
 
-        when(mockTransformCommand.execute(any(), anyLong())).thenAnswer(
+        // doAnswer rather than when, as tests that call this method again must not invoke the previous answer
+        doAnswer(
             (Answer<RuntimeExec.ExecutionResult>) invocation -> {
                 Map<String, String> actualProperties = invocation.getArgument(0);
-                assertEquals(3, actualProperties.size(), "There should be 3 properties");
+                String actualDecodeOptions = actualProperties.get("decodeOptions");
+                assertEquals(actualDecodeOptions == null ? 3 : 4, actualProperties.size(),
+                    "There should be 3 properties, plus any decodeOptions");
+                assertEquals(expectedDecodeOptions, actualDecodeOptions, "expectedDecodeOptions");
+
+                Map<String, String> actualProcessProperties = invocation.getArgument(1);
+                assertNotNull(actualProcessProperties.get("MAGICK_THREAD_LIMIT"), "MAGICK_THREAD_LIMIT");
 
                 String actualOptions = actualProperties.get("options");
                 String actualSource = actualProperties.get("source");
@@ -184,7 +198,7 @@ public class ImageMagickControllerTest extends AbstractTransformerControllerTest
                     assertEquals(expectedOptions, actualOptions,"expectedOptions");
                 }
 
-                Long actualTimeout = invocation.getArgument(1);
+                Long actualTimeout = invocation.getArgument(2);
                 assertNotNull(actualTimeout);
                 if (expectedTimeout != null)
                 {
@@ -208,7 +222,7 @@ public class ImageMagickControllerTest extends AbstractTransformerControllerTest
                         "Source file is not the same");
 
                 return mockExecutionResult;
-            });
+            }).when(mockTransformCommand).execute(any(), any(), anyLong());
 
         when(mockExecutionResult.getExitValue()).thenReturn(0);
         when(mockExecutionResult.getStdErr()).thenReturn("STDERROR");
@@ -352,6 +366,136 @@ public class ImageMagickControllerTest extends AbstractTransformerControllerTest
                 "attachment; filename*= UTF-8''quick." + targetExtension));
     }
 
+    @Test
+    public void jpegDecodeSizeTest() throws Exception
+    {
+        mockTransformCommand("jpg", "png", "image/jpeg", true);
+        expectedDecodeOptions = "-define jpeg:size=200x200";
+        expectedOptions = "-auto-orient -thumbnail 100";
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param("targetExtension", targetExtension)
+                .param("targetMimetype", targetMimetype)
+                .param("sourceMimetype", sourceMimetype)
+                .param("thumbnail", "true")
+                .param("resizeWidth", "100"))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes));
+    }
+
+    @Test
+    public void noDecodeSizeWithCropTest() throws Exception
+    {
+        mockTransformCommand("jpg", "png", "image/jpeg", true);
+        expectedOptions = "-auto-orient -crop 50x50 +repage -resize 100x100";
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param("targetExtension", targetExtension)
+                .param("targetMimetype", targetMimetype)
+                .param("sourceMimetype", sourceMimetype)
+                .param("cropWidth", "50")
+                .param("cropHeight", "50")
+                .param("resizeWidth", "100")
+                .param("resizeHeight", "100"))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes));
+    }
+
+    @Test
+    public void tiffSampleTest() throws Exception
+    {
+        mockTransformCommand("tiff", "png", "image/tiff", true);
+        expectedOptions = "-auto-orient -sample 400x300> -resize 100x75";
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param("targetExtension", targetExtension)
+                .param("targetMimetype", targetMimetype)
+                .param("sourceMimetype", sourceMimetype)
+                .param("resizeWidth", "100")
+                .param("resizeHeight", "75"))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes));
+    }
+
+    @Test
+    public void targetCapturedFromStdOutTest() throws Exception
+    {
+        commandExecutor.setMaxInMemoryTargetBytes(1024 * 1024);
+        mockStdOutTransformCommand();
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param("targetExtension", targetExtension)
+                .param("targetMimetype", targetMimetype)
+                .param("sourceMimetype", sourceMimetype)
+                .param("resizeWidth", "100"))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes))
+            .andExpect(header().string("Content-Disposition",
+                "attachment; filename*= UTF-8''quick." + targetExtension));
+
+        verify(mockTransformCommand, never()).execute(any(), any(), anyLong());
+    }
+
+    @Test
+    public void singlePageCapturedFromStdOutTest() throws Exception
+    {
+        mockTransformCommand("gif", "png", "image/gif", true);
+        commandExecutor.setMaxInMemoryTargetBytes(1024 * 1024);
+        mockStdOutTransformCommand();
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param("targetExtension", targetExtension)
+                .param("targetMimetype", targetMimetype)
+                .param("sourceMimetype", sourceMimetype)
+                .param("startPage", "0")
+                .param("endPage", "0"))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes));
+
+        verify(mockTransformCommand, never()).execute(any(), any(), anyLong());
+    }
+
+    @Test
+    public void multiFrameSourceNotCapturedTest() throws Exception
+    {
+        // Each frame of the gif would be written to the standard output, one after the other
+        mockTransformCommand("gif", "png", "image/gif", true);
+        commandExecutor.setMaxInMemoryTargetBytes(1024 * 1024);
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param("targetExtension", targetExtension)
+                .param("targetMimetype", targetMimetype)
+                .param("sourceMimetype", sourceMimetype))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes));
+
+        verify(mockTransformCommand, never()).execute(any(), any(), anyLong(), any());
+    }
+
+    private void mockStdOutTransformCommand()
+    {
+        doAnswer(
+            (Answer<RuntimeExec.ExecutionResult>) invocation -> {
+                Map<String, String> actualProperties = invocation.getArgument(0);
+                assertEquals(targetExtension + ":-", actualProperties.get("target"));
+                OutputStream stdOut = invocation.getArgument(3);
+                stdOut.write(expectedTargetFileBytes);
+                return mockExecutionResult;
+            }).when(mockTransformCommand).execute(any(), any(), anyLong(), any());
+    }
+
     @Override
     protected void updateTransformRequestWithSpecificOptions(TransformRequest transformRequest)
     {
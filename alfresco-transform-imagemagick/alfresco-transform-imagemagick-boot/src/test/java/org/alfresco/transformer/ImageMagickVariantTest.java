@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the parsing of the {@code variants} transform option.
+ */
+public class ImageMagickVariantTest
+{
+    @Test
+    public void testParse()
+    {
+        List<ImageMagickVariant> variants = ImageMagickVariant.parse(
+            "doclib:resizeWidth=100,resizeHeight=100,thumbnail=true;" +
+            " imgpreview:resizeWidth=960,resizeHeight=960,targetExtension=JPG;" +
+            "square:cropGravity=Center,cropWidth=50,cropHeight=50;");
+
+        assertEquals(3, variants.size());
+        assertEquals("doclib.png", variants.get(0).getFilename());
+        assertEquals("-thumbnail 100x100>", variants.get(0).getOptions());
+        assertEquals("imgpreview.jpg", variants.get(1).getFilename());
+        assertEquals("-resize 960x960>", variants.get(1).getOptions());
+        assertEquals("square", variants.get(2).getName());
+        assertEquals("-gravity Center -crop 50x50 +repage", variants.get(2).getOptions());
+    }
+
+    @Test
+    public void testParseWithoutOptions()
+    {
+        List<ImageMagickVariant> variants = ImageMagickVariant.parse("original");
+
+        assertEquals(1, variants.size());
+        assertEquals("original.png", variants.get(0).getFilename());
+        assertEquals("", variants.get(0).getOptions());
+    }
+
+    @Test
+    public void testInvalidVariants()
+    {
+        assertThrows(TransformException.class, () -> ImageMagickVariant.parse(" ; "));
+        assertThrows(TransformException.class, () -> ImageMagickVariant.parse("a:resizeWidth=1;a:resizeWidth=2"));
+        assertThrows(TransformException.class, () -> ImageMagickVariant.parse("../a:resizeWidth=1"));
+        assertThrows(TransformException.class, () -> ImageMagickVariant.parse("a:commandOptions=-write"));
+        assertThrows(TransformException.class, () -> ImageMagickVariant.parse("a:resizeWidth"));
+        assertThrows(TransformException.class, () -> ImageMagickVariant.parse("a:targetExtension=p/ng"));
+        assertThrows(TransformException.class,
+            () -> ImageMagickVariant.parse("a:cropGravity=Middle").get(0).getOptions());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_GIF;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_JPEG;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_TIFF;
+import static org.alfresco.transformer.util.RequestParamMap.ALLOW_ENLARGEMENT;
+import static org.alfresco.transformer.util.RequestParamMap.AUTO_ORIENT;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_WIDTH;
+import static org.alfresco.transformer.util.RequestParamMap.MAINTAIN_ASPECT_RATIO;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_HEIGHT;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_WIDTH;
+import static org.alfresco.transformer.util.RequestParamMap.THUMBNAIL;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.alfresco.transformer.executors.ImageIOResizer.Geometry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the in process ImageIO resizing used instead of ImageMagick for simple resizes.
+ */
+public class ImageIOResizerTest
+{
+    private final ImageIOResizer resizer = new ImageIOResizer();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testGeometry()
+    {
+        // Same as -resize 100x100>
+        Geometry geometry = new Geometry(100, 100, false, true);
+        assertArrayEquals(new int[]{100, 75}, geometry.getSize(400, 300));
+        assertArrayEquals(new int[]{50, 40}, geometry.getSize(50, 40));
+
+        // -resize 100x100 and -resize 100x100!
+        assertArrayEquals(new int[]{100, 80}, new Geometry(100, 100, true, true).getSize(50, 40));
+        assertArrayEquals(new int[]{100, 100}, new Geometry(100, 100, false, false).getSize(400, 300));
+
+        // -resize 100> and -resize x100>
+        assertArrayEquals(new int[]{100, 75}, new Geometry(100, null, false, true).getSize(400, 300));
+        assertArrayEquals(new int[]{133, 100}, new Geometry(null, 100, false, true).getSize(400, 300));
+    }
+
+    @Test
+    public void testSupportedOptions()
+    {
+        assertTrue(resizer.isSupported(MIMETYPE_IMAGE_JPEG, MIMETYPE_IMAGE_PNG,
+            options(RESIZE_WIDTH, "100", THUMBNAIL, "true", AUTO_ORIENT, "true")));
+        assertTrue(resizer.isSupported(MIMETYPE_IMAGE_GIF, MIMETYPE_IMAGE_JPEG,
+            options(RESIZE_HEIGHT, "100", MAINTAIN_ASPECT_RATIO, "false", ALLOW_ENLARGEMENT, "true")));
+
+        assertFalse(resizer.isSupported(MIMETYPE_IMAGE_TIFF, MIMETYPE_IMAGE_PNG, options(RESIZE_WIDTH, "100")));
+        assertFalse(resizer.isSupported(MIMETYPE_IMAGE_PNG, MIMETYPE_IMAGE_GIF, options(RESIZE_WIDTH, "100")));
+        assertFalse(resizer.isSupported(MIMETYPE_IMAGE_PNG, MIMETYPE_IMAGE_PNG, options()));
+        assertFalse(resizer.isSupported(MIMETYPE_IMAGE_PNG, MIMETYPE_IMAGE_PNG,
+            options(RESIZE_WIDTH, "100", CROP_WIDTH, "50")));
+        assertNull(Geometry.of(options(RESIZE_WIDTH, "0")));
+        assertNull(Geometry.of(options(RESIZE_WIDTH, "abc")));
+    }
+
+    @Test
+    public void testResize() throws IOException
+    {
+        File source = writeImage(createImage(400, 300, BufferedImage.TYPE_INT_RGB), "jpeg", "source.jpg");
+        File target = tempDir.resolve("target.png").toFile();
+
+        assertTrue(resizer.transform(MIMETYPE_IMAGE_JPEG, MIMETYPE_IMAGE_PNG,
+            options(RESIZE_WIDTH, "100", RESIZE_HEIGHT, "100"), source, target));
+
+        BufferedImage result = ImageIO.read(target);
+        assertEquals(100, result.getWidth());
+        assertEquals(75, result.getHeight());
+    }
+
+    @Test
+    public void testTransparentSourceToJpeg() throws IOException
+    {
+        File source = writeImage(createImage(400, 300, BufferedImage.TYPE_INT_ARGB), "png", "source.png");
+        File target = tempDir.resolve("target.jpg").toFile();
+
+        assertFalse(resizer.transform(MIMETYPE_IMAGE_PNG, MIMETYPE_IMAGE_JPEG,
+            options(RESIZE_WIDTH, "100"), source, target));
+        assertTrue(resizer.transform(MIMETYPE_IMAGE_PNG, MIMETYPE_IMAGE_PNG,
+            options(RESIZE_WIDTH, "100"), source, target));
+    }
+
+    @Test
+    public void testExifOrientation() throws IOException
+    {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(createImage(40, 30, BufferedImage.TYPE_INT_RGB), "jpeg", jpeg);
+        byte[] bytes = jpeg.toByteArray();
+        File plain = tempDir.resolve("plain.jpg").toFile();
+        Files.write(plain.toPath(), bytes);
+        assertTrue(ImageIOResizer.isPlainJpeg(plain, true));
+
+        // Insert an APP1 Exif segment with a big endian IFD0 holding orientation 6 (rotate 90 degrees)
+        byte[] exif = {
+            (byte) 0xFF, (byte) 0xE1, 0, 34,
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8,
+            0, 1,
+            0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0,
+            0, 0, 0, 0};
+        ByteArrayOutputStream rotated = new ByteArrayOutputStream();
+        rotated.write(bytes, 0, 2);
+        rotated.write(exif);
+        rotated.write(bytes, 2, bytes.length - 2);
+        File rotatedFile = tempDir.resolve("rotated.jpg").toFile();
+        Files.write(rotatedFile.toPath(), rotated.toByteArray());
+
+        assertFalse(ImageIOResizer.isPlainJpeg(rotatedFile, true));
+        assertTrue(ImageIOResizer.isPlainJpeg(rotatedFile, false));
+        assertFalse(resizer.transform(MIMETYPE_IMAGE_JPEG, MIMETYPE_IMAGE_PNG, options(RESIZE_WIDTH, "10"),
+            rotatedFile, tempDir.resolve("target.png").toFile()));
+    }
+
+    private File writeImage(BufferedImage image, String format, String filename) throws IOException
+    {
+        File file = tempDir.resolve(filename).toFile();
+        assertTrue(ImageIO.write(image, format, file));
+        return file;
+    }
+
+    private static BufferedImage createImage(int width, int height, int type)
+    {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, new Color(255, 128, 0, 128)));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    private static Map<String, String> options(String... namesAndValues)
+    {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+        {
+            options.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return options;
+    }
+}
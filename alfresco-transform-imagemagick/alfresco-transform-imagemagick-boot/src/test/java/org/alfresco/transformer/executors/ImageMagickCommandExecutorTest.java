@@ -0,0 +1,347 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.alfresco.transformer.util.RequestParamMap.END_PAGE;
+import static org.alfresco.transformer.util.RequestParamMap.START_PAGE;
+import static org.alfresco.transformer.util.RequestParamMap.TIMEOUT;
+import static org.alfresco.transformer.util.RequestParamMap.VARIANTS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipFile;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.executors.RuntimeExec.ExecutionResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the splitting of page ranges between concurrent ImageMagick processes, with a mock command that writes
+ * the source it was given (or the content of the joined chunks) to its target.
+ */
+public class ImageMagickCommandExecutorTest
+{
+    private final ImageMagickCommandExecutor executor = new ImageMagickCommandExecutor("/usr/bin/convert",
+        "/usr/lib64/ImageMagick/lib", "/usr/lib64/ImageMagick", null, null);
+    private final RuntimeExec mockTransformCommand = mock(RuntimeExec.class);
+    private final List<String> sources = new CopyOnWriteArrayList<>();
+    private final List<Long> timeouts = new CopyOnWriteArrayList<>();
+    private volatile int lastPage = Integer.MAX_VALUE;
+    private volatile String failingSource;
+    private volatile String failureStdErr = "convert: no images defined";
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void before()
+    {
+        executor.transformCommand = mockTransformCommand;
+        executor.setConcurrencyLimits(4, 0);
+        ExecutionResult result = mock(ExecutionResult.class);
+        ExecutionResult failure = mock(ExecutionResult.class);
+        when(failure.getExitValue()).thenReturn(1);
+        when(failure.getStdErr()).thenAnswer(invocation -> failureStdErr);
+        when(mockTransformCommand.execute(any(), any(), anyLong())).thenAnswer(invocation -> {
+            Map<String, String> properties = invocation.getArgument(0);
+            String source = properties.get("source");
+            sources.add(source);
+            timeouts.add(invocation.getArgument(2));
+            File target = new File(properties.get("target"));
+            if (source.equals(failingSource) || !source.contains("_joined.miff") &&
+                Integer.parseInt(source.substring(source.lastIndexOf('[') + 1, source.lastIndexOf('-'))) > lastPage)
+            {
+                return failure;
+            }
+            if (source.contains("_joined.miff"))
+            {
+                Files.copy(new File(source.substring(0, source.lastIndexOf('['))).toPath(), target.toPath());
+            }
+            else
+            {
+                Files.writeString(target.toPath(), source.substring(source.lastIndexOf('[')) + "\n");
+            }
+            return result;
+        });
+    }
+
+    @Test
+    public void testPagesInParallel() throws IOException
+    {
+        executor.setMinPagesPerProcess(10);
+        File source = Files.writeString(tempDir.resolve("source.tiff"), "source").toFile();
+        File target = tempDir.resolve("target.tiff").toFile();
+
+        Map<String, String> options = new HashMap<>(Map.of(START_PAGE, "2", END_PAGE, "43"));
+
+        executor.transform("image/tiff", "image/tiff", options, source, target);
+
+        // 42 pages in 4 chunks, joined in order
+        assertEquals("[2-12]\n[13-23]\n[24-33]\n[34-43]\n", Files.readString(target.toPath()));
+        assertEquals(source.getAbsolutePath() + "[2-12]", sources.stream()
+            .filter(s -> s.endsWith("[2-12]")).findFirst().orElse(null));
+        assertEquals(5, sources.size());
+
+        // The chunks are deleted
+        String chunk = sources.get(sources.size() - 1);
+        assertFalse(new File(chunk.substring(0, chunk.lastIndexOf('['))).exists());
+    }
+
+    @Test
+    public void testTooFewPages() throws IOException
+    {
+        executor.setMinPagesPerProcess(10);
+        File source = Files.writeString(tempDir.resolve("source.tiff"), "source").toFile();
+        File target = tempDir.resolve("target.tiff").toFile();
+
+        Map<String, String> options = new HashMap<>(Map.of(START_PAGE, "0", END_PAGE, "18"));
+
+        executor.transform("image/tiff", "image/tiff", options, source, target);
+
+        verify(mockTransformCommand, times(1)).execute(any(), any(), anyLong());
+        assertEquals("[0-18]\n", Files.readString(target.toPath()));
+    }
+
+    @Test
+    public void testVariantCommandArguments() throws IOException
+    {
+        File source = Files.writeString(tempDir.resolve("source.jpg"), "source").toFile();
+        File target = tempDir.resolve("target.zip").toFile();
+        RuntimeExec transformCommand = executor.createTransformCommand();
+        List<String> arguments = new ArrayList<>();
+        doAnswer(invocation -> {
+            Map<String, String> properties = invocation.getArgument(0);
+            arguments.addAll(List.of(transformCommand.getCommand(properties)));
+            Files.writeString(Path.of(arguments.get(12)), "doclib");
+            Files.writeString(Path.of(arguments.get(arguments.size() - 1)), "imgpreview");
+            return mock(ExecutionResult.class);
+        }).when(mockTransformCommand).execute(any(), any(), anyLong());
+
+        Map<String, String> options = new HashMap<>(Map.of(VARIANTS,
+            "doclib:resizeWidth=100,resizeHeight=100,thumbnail=true;imgpreview:resizeWidth=960,resizeHeight=960"));
+
+        executor.transform("image/jpeg", "application/zip", options, source, target);
+
+        // The quoted -write file is a single argument and the last variant's options are intact
+        String doclibFile = arguments.get(12);
+        String imgpreviewFile = arguments.get(arguments.size() - 1);
+        assertEquals(List.of("/usr/bin/convert", source.getAbsolutePath() + "[0]", "-auto-orient",
+            "-strip", "-write", "mpr:source", "+delete",
+            "(", "mpr:source", "-thumbnail", "100x100>", "-write", doclibFile, "+delete", ")",
+            "mpr:source", "-resize", "960x960>",
+            "-strip", "-quiet", imgpreviewFile), arguments);
+        assertTrue(doclibFile.endsWith("_doclib.png"), doclibFile);
+        assertTrue(imgpreviewFile.endsWith("_imgpreview.png"), imgpreviewFile);
+
+        try (ZipFile zip = new ZipFile(target))
+        {
+            assertEquals("doclib", new String(zip.getInputStream(zip.getEntry("doclib.png")).readAllBytes()));
+            assertEquals("imgpreview", new String(zip.getInputStream(zip.getEntry("imgpreview.png")).readAllBytes()));
+        }
+    }
+
+    @Test
+    public void testVariantsOfMultiFrameGif() throws IOException
+    {
+        File source = Files.writeString(tempDir.resolve("animated.gif"), "source").toFile();
+        File target = tempDir.resolve("target.zip").toFile();
+        doAnswer(invocation -> {
+            Map<String, String> properties = invocation.getArgument(0);
+            sources.add(properties.get("source"));
+            String options = properties.get("options");
+            String doclibFile = options.substring(options.indexOf("-write \"", options.indexOf('(')) + 8,
+                options.indexOf("\" +delete )"));
+            Files.writeString(Path.of(doclibFile), "doclib");
+            Files.writeString(Path.of(properties.get("target")), "imgpreview");
+            return mock(ExecutionResult.class);
+        }).when(mockTransformCommand).execute(any(), any(), anyLong());
+
+        Map<String, String> options = new HashMap<>(Map.of(VARIANTS,
+            "doclib:resizeWidth=100,resizeHeight=100;imgpreview:resizeWidth=960,resizeHeight=960"));
+        executor.transform("image/gif", "application/zip", options, source, target);
+
+        // Only the first frame is read, so each variant is a single image rather than an animation
+        assertEquals(List.of(source.getAbsolutePath() + "[0]"), sources);
+
+        options.put(START_PAGE, "2");
+        executor.transform("image/gif", "application/zip", options, source, target);
+
+        assertEquals(source.getAbsolutePath() + "[2]", sources.get(1));
+    }
+
+    @Test
+    public void testMemoryBudgetSharedBetweenConcurrentProcesses()
+    {
+        // The budget may be set before the concurrency limits
+        ImageMagickCommandExecutor executor = new ImageMagickCommandExecutor("/usr/bin/convert",
+            "/usr/lib64/ImageMagick/lib", "/usr/lib64/ImageMagick", null, null);
+        executor.setMemoryBudget(400 * 1024 * 1024);
+        executor.setConcurrencyLimits(4, 0);
+
+        Map<String, String> processProperties = executor.getProcessProperties(
+            Map.of("source", tempDir.resolve("unknown.raw").toString()), 1);
+        assertEquals(Long.toString(100 * 1024 * 1024), processProperties.get(ImageMagickResourceLimits.MEMORY_LIMIT));
+        executor.processFinished(processProperties);
+    }
+
+    @Test
+    public void testEndPageBeyondLastPage() throws IOException
+    {
+        executor.setMinPagesPerProcess(10);
+        lastPage = 30;
+        File source = Files.writeString(tempDir.resolve("source.tiff"), "source").toFile();
+        File target = tempDir.resolve("target.tiff").toFile();
+
+        Map<String, String> options = new HashMap<>(Map.of(START_PAGE, "2", END_PAGE, "43"));
+
+        executor.transform("image/tiff", "image/tiff", options, source, target);
+
+        // The last chunk has no pages, so is left out. ImageMagick would have stopped at page 30 of the third.
+        assertEquals("[2-12]\n[13-23]\n[24-33]\n", Files.readString(target.toPath()));
+    }
+
+    @Test
+    public void testChunkBeforeLastPageFails() throws IOException
+    {
+        executor.setMinPagesPerProcess(10);
+        File source = Files.writeString(tempDir.resolve("source.tiff"), "source").toFile();
+        File target = tempDir.resolve("target.tiff").toFile();
+        failingSource = source.getAbsolutePath() + "[13-23]";
+
+        Map<String, String> options = new HashMap<>(Map.of(START_PAGE, "2", END_PAGE, "43"));
+
+        TransformException e = assertThrows(TransformException.class,
+            () -> executor.transform("image/tiff", "image/tiff", options, source, target));
+        assertTrue(e.getMessage().contains("no images defined"), e.getMessage());
+    }
+
+    @Test
+    public void testLastChunkFailsForAnotherReason() throws IOException
+    {
+        executor.setMinPagesPerProcess(10);
+        File source = Files.writeString(tempDir.resolve("source.tiff"), "source").toFile();
+        File target = tempDir.resolve("target.tiff").toFile();
+        failingSource = source.getAbsolutePath() + "[34-43]";
+        failureStdErr = "convert: memory allocation failed";
+
+        Map<String, String> options = new HashMap<>(Map.of(START_PAGE, "2", END_PAGE, "43"));
+
+        // Rather than returning the pages of the other chunks as if the source ended at page 33
+        TransformException e = assertThrows(TransformException.class,
+            () -> executor.transform("image/tiff", "image/tiff", options, source, target));
+        assertTrue(e.getMessage().contains("memory allocation failed"), e.getMessage());
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void testTimeoutSharedBetweenProcesses() throws IOException
+    {
+        executor.setMinPagesPerProcess(10);
+        File source = Files.writeString(tempDir.resolve("source.tiff"), "source").toFile();
+        File target = tempDir.resolve("target.tiff").toFile();
+
+        Map<String, String> options = new HashMap<>(Map.of(START_PAGE, "2", END_PAGE, "43", TIMEOUT, "10000"));
+
+        executor.transform("image/tiff", "image/tiff", options, source, target);
+
+        assertEquals(5, timeouts.size());
+        timeouts.forEach(timeout -> assertTrue(timeout > 0 && timeout <= 10000, "Timeout " + timeout));
+    }
+
+    @Test
+    public void testInterruptWaitsForChunkProcesses() throws Exception
+    {
+        executor.setMinPagesPerProcess(10);
+        File source = Files.writeString(tempDir.resolve("source.tiff"), "source").toFile();
+        File target = tempDir.resolve("target.tiff").toFile();
+        CountDownLatch started = new CountDownLatch(4);
+        AtomicInteger killed = new AtomicInteger();
+        List<File> chunkFiles = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            Map<String, String> properties = invocation.getArgument(0);
+            chunkFiles.add(new File(properties.get("target")));
+            started.countDown();
+            try
+            {
+                Thread.sleep(60000);
+            }
+            catch (InterruptedException e)
+            {
+                // As RuntimeExec does, kill the process and wait for it to exit
+                Thread.sleep(200);
+                killed.incrementAndGet();
+            }
+            return mock(ExecutionResult.class);
+        }).when(mockTransformCommand).execute(any(), any(), anyLong());
+
+        Map<String, String> options = new HashMap<>(Map.of(START_PAGE, "2", END_PAGE, "43"));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread request = new Thread(() -> {
+            try
+            {
+                executor.transform("image/tiff", "image/tiff", options, source, target);
+            }
+            catch (Exception e)
+            {
+                failure.set(e);
+            }
+        });
+        request.start();
+        assertTrue(started.await(10, SECONDS));
+        request.interrupt();
+        request.join(10000);
+
+        assertFalse(request.isAlive());
+        assertTrue(failure.get().getMessage().contains("Interrupted"), failure.get().getMessage());
+        assertEquals(4, killed.get());
+        chunkFiles.forEach(chunkFile -> assertFalse(chunkFile.exists(), chunkFile.getName()));
+    }
+}
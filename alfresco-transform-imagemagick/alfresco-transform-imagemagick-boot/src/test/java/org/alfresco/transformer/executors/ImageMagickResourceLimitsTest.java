@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.executors.ImageMagickResourceLimits.BYTES_PER_PIXEL;
+import static org.alfresco.transformer.executors.ImageMagickResourceLimits.COPIES;
+import static org.alfresco.transformer.executors.ImageMagickResourceLimits.MAP_LIMIT;
+import static org.alfresco.transformer.executors.ImageMagickResourceLimits.MEMORY_LIMIT;
+import static org.alfresco.transformer.executors.ImageMagickResourceLimits.MIN_MEMORY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the sharing of memory between ImageMagick processes.
+ */
+public class ImageMagickResourceLimitsTest
+{
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testGetPixels() throws IOException
+    {
+        File file = tempDir.resolve("image.png").toFile();
+        ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), "png", file);
+
+        assertEquals(60000, ImageMagickResourceLimits.getPixels(file.getAbsolutePath()));
+        assertEquals(60000, ImageMagickResourceLimits.getPixels(file.getAbsolutePath() + "[2-3]"));
+        assertEquals(0, ImageMagickResourceLimits.getPixels(tempDir.resolve("missing.png").toString()));
+        assertEquals(0, ImageMagickResourceLimits.getPixels(null));
+    }
+
+    @Test
+    public void testReserve() throws IOException
+    {
+        // 4000 x 4000 pixels needs about 366MB, which is more than the 250MB fair share
+        File large = tempDir.resolve("large.png").toFile();
+        ImageIO.write(new BufferedImage(4000, 4000, BufferedImage.TYPE_BYTE_BINARY), "png", large);
+        long largeNeeds = 4000L * 4000 * BYTES_PER_PIXEL * COPIES;
+        File small = tempDir.resolve("small.png").toFile();
+        ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "png", small);
+        ImageMagickResourceLimits limits = new ImageMagickResourceLimits(1000 * MB, 4);
+
+        // A fair share is left for each of the other processes, so a large image only gets more than its own
+        // fair share if a small image has not needed all of its
+        Map<String, String> first = limits.reserve(large.getAbsolutePath());
+        assertEquals(250 * MB, Long.parseLong(first.get(MEMORY_LIMIT)));
+        assertEquals(500 * MB, Long.parseLong(first.get(MAP_LIMIT)));
+        limits.release(first);
+
+        Map<String, String> smallFirst = limits.reserve(small.getAbsolutePath());
+        assertEquals(MIN_MEMORY, Long.parseLong(smallFirst.get(MEMORY_LIMIT)));
+
+        Map<String, String> second = limits.reserve(large.getAbsolutePath());
+        assertEquals(largeNeeds, Long.parseLong(second.get(MEMORY_LIMIT)));
+
+        // Less than it needs is left after the fair share of the last process
+        Map<String, String> third = limits.reserve(large.getAbsolutePath());
+        assertEquals(1000 * MB - MIN_MEMORY - largeNeeds - 250 * MB, Long.parseLong(third.get(MEMORY_LIMIT)));
+
+        // The last process still gets its fair share, and the budget is not exceeded
+        Map<String, String> fourth = limits.reserve(large.getAbsolutePath());
+        assertEquals(250 * MB, Long.parseLong(fourth.get(MEMORY_LIMIT)));
+        assertEquals(1000 * MB, limits.getReserved());
+
+        limits.release(smallFirst);
+        limits.release(second);
+        limits.release(third);
+        limits.release(fourth);
+        assertEquals(0, limits.getReserved());
+
+        // A source that cannot be read gets its fair share
+        Map<String, String> unknown = limits.reserve(tempDir.resolve("source.raw").toString());
+        assertEquals(250 * MB, Long.parseLong(unknown.get(MEMORY_LIMIT)));
+        limits.release(unknown);
+        assertEquals(0, limits.getReserved());
+    }
+
+    @Test
+    public void testNeverOverBudget() throws IOException
+    {
+        File large = tempDir.resolve("large.png").toFile();
+        ImageIO.write(new BufferedImage(4000, 4000, BufferedImage.TYPE_BYTE_BINARY), "png", large);
+        ImageMagickResourceLimits limits = new ImageMagickResourceLimits(1000 * MB, 4);
+
+        for (int i = 0; i < 4; i++)
+        {
+            limits.reserve(large.getAbsolutePath());
+            assertTrue(limits.getReserved() <= 1000 * MB, "Reserved " + limits.getReserved());
+        }
+    }
+
+    @Test
+    public void testSmallImage() throws IOException
+    {
+        File small = tempDir.resolve("small.png").toFile();
+        ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "png", small);
+        ImageMagickResourceLimits limits = new ImageMagickResourceLimits(1000 * MB, 4);
+
+        assertEquals(MIN_MEMORY, Long.parseLong(limits.reserve(small.getAbsolutePath()).get(MEMORY_LIMIT)));
+
+        // Less than the minimum if that is more than the fair share
+        limits = new ImageMagickResourceLimits(64 * MB, 4);
+        assertEquals(16 * MB, Long.parseLong(limits.reserve(small.getAbsolutePath()).get(MEMORY_LIMIT)));
+    }
+
+    @Test
+    public void testParseCgroupMemoryLimit()
+    {
+        assertEquals(-1, ImageMagickResourceLimits.parseCgroupMemoryLimit("max\n"));
+        assertEquals(2147483648L, ImageMagickResourceLimits.parseCgroupMemoryLimit("2147483648\n"));
+        assertEquals(-1, ImageMagickResourceLimits.parseCgroupMemoryLimit("9223372036854771712"));
+    }
+}
@@ -32,6 +32,8 @@ import org.alfresco.transform.exceptions.TransformException;
 import java.util.List;
 import java.util.StringJoiner;
 
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_JPEG;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_TIFF;
 import static org.alfresco.transformer.util.Util.stringToBoolean;
 import static org.alfresco.transformer.util.Util.stringToInteger;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
@@ -63,6 +65,7 @@ public final class ImageMagickOptionsBuilder
     private Boolean allowEnlargement;
     private Boolean maintainAspectRatio;
     private String commandOptions;
+    private String sourceMimetype;
 
     private ImageMagickOptionsBuilder() {}
 
@@ -243,6 +246,47 @@ public final class ImageMagickOptionsBuilder
         return this;
     }
 
+    /**
+     * The source mimetype is only used to add hints that allow large images to be decoded or sampled at a reduced
+     * size when they are only going to be made smaller.
+     */
+    public ImageMagickOptionsBuilder withSourceMimetype(final String sourceMimetype)
+    {
+        this.sourceMimetype = sourceMimetype;
+        return this;
+    }
+
+    /**
+     * @return the options that must appear before the source in the command, or an empty String. When a jpeg is
+     * only being resized, the decoder is told the size required (twice the target size, so that the resize still
+     * has enough pixels for a good quality result), so that it may use DCT scaling to decode at 1/2, 1/4 or 1/8 of
+     * the full size.
+     */
+    public String buildDecodeOptions()
+    {
+        if (MIMETYPE_IMAGE_JPEG.equals(sourceMimetype) && isResizeOnly())
+        {
+            final int width = 2 * (resizeWidth != null ? resizeWidth : resizeHeight);
+            final int height = 2 * (resizeHeight != null ? resizeHeight : resizeWidth);
+            return "-define jpeg:size=" + width + 'x' + height;
+        }
+        return "";
+    }
+
+    /**
+     * The size hints are only safe if the resize is the only thing that depends on the size of the source, so not
+     * with a crop, a percentage or arbitrary command options.
+     */
+    private boolean isResizeOnly()
+    {
+        return (resizeWidth != null || resizeHeight != null) &&
+               (resizeWidth == null || resizeWidth > 0) && (resizeHeight == null || resizeHeight > 0) &&
+               (resizePercentage == null || !resizePercentage) &&
+               cropGravity == null && cropWidth == null && cropHeight == null && cropPercentage == null &&
+               cropXOffset == null && cropYOffset == null &&
+               (commandOptions == null || commandOptions.isBlank());
+    }
+
     public String build()
     {
         if (cropGravity != null)
@@ -319,6 +363,15 @@ public final class ImageMagickOptionsBuilder
 
         if (resizeHeight != null || resizeWidth != null || resizePercentage != null || maintainAspectRatio != null)
         {
+            if (MIMETYPE_IMAGE_TIFF.equals(sourceMimetype) && isResizeOnly() &&
+                (maintainAspectRatio == null || maintainAspectRatio))
+            {
+                // Huge tiffs have no reduced size decode, so are quickly sampled down to four times the target size
+                // before the slower, higher quality resize.
+                args.add("-sample");
+                args.add((resizeWidth != null ? Integer.toString(4 * resizeWidth) : "") + 'x' +
+                         (resizeHeight != null ? Integer.toString(4 * resizeHeight) : "") + '>');
+            }
             args.add(thumbnail != null && thumbnail ? "-thumbnail" : "-resize");
             StringBuilder resize = new StringBuilder();
             if (resizeWidth != null && resizeWidth >= 0)
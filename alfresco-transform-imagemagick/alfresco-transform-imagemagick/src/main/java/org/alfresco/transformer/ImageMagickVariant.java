@@ -0,0 +1,206 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer;
+
+import org.alfresco.transform.exceptions.TransformException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.alfresco.transformer.util.RequestParamMap.ALLOW_ENLARGEMENT;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_GRAVITY;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_HEIGHT;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_PERCENTAGE;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_WIDTH;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_X_OFFSET;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_Y_OFFSET;
+import static org.alfresco.transformer.util.RequestParamMap.MAINTAIN_ASPECT_RATIO;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_HEIGHT;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_PERCENTAGE;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_WIDTH;
+import static org.alfresco.transformer.util.RequestParamMap.TARGET_EXTENSION;
+import static org.alfresco.transformer.util.RequestParamMap.THUMBNAIL;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+/**
+ * One of the images produced by a single ImageMagick invocation when the {@code variants} transform option is
+ * supplied. The option describes each variant as a name followed by the crop and resize options that would
+ * otherwise be supplied to a separate transform, for example:
+ * <pre>
+ *    doclib:resizeWidth=100,resizeHeight=100,thumbnail=true;imgpreview:resizeWidth=960,resizeHeight=960
+ * </pre>
+ * A variant may also have a {@code targetExtension}, which defaults to {@code png}.
+ */
+public final class ImageMagickVariant
+{
+    public static final String DEFAULT_TARGET_EXTENSION = "png";
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final Pattern EXTENSION = Pattern.compile("[A-Za-z0-9]+");
+
+    private final String name;
+    private final ImageMagickOptionsBuilder builder = ImageMagickOptionsBuilder.builder();
+    private String targetExtension = DEFAULT_TARGET_EXTENSION;
+
+    private ImageMagickVariant(final String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getTargetExtension()
+    {
+        return targetExtension;
+    }
+
+    /**
+     * @return the file name used for the variant in the target zip
+     */
+    public String getFilename()
+    {
+        return name + '.' + targetExtension;
+    }
+
+    /**
+     * @return the ImageMagick options that crop and resize the source image to produce this variant
+     */
+    public String getOptions()
+    {
+        return builder.build();
+    }
+
+    /**
+     * @param variants the value of the {@code variants} transform option
+     * @return the variants in the order supplied
+     * @throws TransformException if the value is not valid
+     */
+    public static List<ImageMagickVariant> parse(final String variants)
+    {
+        final List<ImageMagickVariant> result = new ArrayList<>();
+        final Set<String> names = new HashSet<>();
+        for (String variant : variants.split(";"))
+        {
+            if (variant.isBlank())
+            {
+                continue;
+            }
+            final int colon = variant.indexOf(':');
+            final String name = (colon == -1 ? variant : variant.substring(0, colon)).trim();
+            if (!NAME.matcher(name).matches() || !names.add(name))
+            {
+                throw new TransformException(BAD_REQUEST.value(), "Invalid or duplicate variant name: " + name);
+            }
+
+            final ImageMagickVariant imageMagickVariant = new ImageMagickVariant(name);
+            if (colon != -1)
+            {
+                for (String option : variant.substring(colon + 1).split(","))
+                {
+                    if (!option.isBlank())
+                    {
+                        imageMagickVariant.setOption(option);
+                    }
+                }
+            }
+            result.add(imageMagickVariant);
+        }
+        if (result.isEmpty())
+        {
+            throw new TransformException(BAD_REQUEST.value(), "No variants supplied");
+        }
+        return result;
+    }
+
+    private void setOption(final String option)
+    {
+        final int equals = option.indexOf('=');
+        if (equals == -1)
+        {
+            throw new TransformException(BAD_REQUEST.value(),
+                "Invalid option for variant " + name + ": " + option.trim());
+        }
+        final String key = option.substring(0, equals).trim();
+        final String value = option.substring(equals + 1).trim();
+        switch (key)
+        {
+            case CROP_GRAVITY:
+                builder.withCropGravity(value);
+                break;
+            case CROP_WIDTH:
+                builder.withCropWidth(value);
+                break;
+            case CROP_HEIGHT:
+                builder.withCropHeight(value);
+                break;
+            case CROP_PERCENTAGE:
+                builder.withCropPercentage(value);
+                break;
+            case CROP_X_OFFSET:
+                builder.withCropXOffset(value);
+                break;
+            case CROP_Y_OFFSET:
+                builder.withCropYOffset(value);
+                break;
+            case THUMBNAIL:
+                builder.withThumbnail(value);
+                break;
+            case RESIZE_WIDTH:
+                builder.withResizeWidth(value);
+                break;
+            case RESIZE_HEIGHT:
+                builder.withResizeHeight(value);
+                break;
+            case RESIZE_PERCENTAGE:
+                builder.withResizePercentage(value);
+                break;
+            case ALLOW_ENLARGEMENT:
+                builder.withAllowEnlargement(value);
+                break;
+            case MAINTAIN_ASPECT_RATIO:
+                builder.withMaintainAspectRatio(value);
+                break;
+            case TARGET_EXTENSION:
+                if (!EXTENSION.matcher(value).matches())
+                {
+                    throw new TransformException(BAD_REQUEST.value(),
+                        "Invalid targetExtension for variant " + name + ": " + value);
+                }
+                targetExtension = value.toLowerCase();
+                break;
+            default:
+                throw new TransformException(BAD_REQUEST.value(),
+                    "Unsupported option for variant " + name + ": " + key);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import org.alfresco.transformer.logging.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_GIF;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_JPEG;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transformer.util.RequestParamMap.ALLOW_ENLARGEMENT;
+import static org.alfresco.transformer.util.RequestParamMap.ALPHA_REMOVE;
+import static org.alfresco.transformer.util.RequestParamMap.AUTO_ORIENT;
+import static org.alfresco.transformer.util.RequestParamMap.COMMAND_OPTIONS;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_GRAVITY;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_HEIGHT;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_PERCENTAGE;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_WIDTH;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_X_OFFSET;
+import static org.alfresco.transformer.util.RequestParamMap.CROP_Y_OFFSET;
+import static org.alfresco.transformer.util.RequestParamMap.END_PAGE;
+import static org.alfresco.transformer.util.RequestParamMap.MAINTAIN_ASPECT_RATIO;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_HEIGHT;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_PERCENTAGE;
+import static org.alfresco.transformer.util.RequestParamMap.RESIZE_WIDTH;
+import static org.alfresco.transformer.util.RequestParamMap.START_PAGE;
+import static org.alfresco.transformer.util.RequestParamMap.VARIANTS;
+
+/**
+ * Resizes common web images in process with ImageIO, rather than starting an ImageMagick process, which is most of
+ * the time taken for small images. Only a subset of the ImageMagick transform options is supported: a jpeg, png or
+ * gif source may be resized to a jpeg or png target using {@code resizeWidth}, {@code resizeHeight},
+ * {@code thumbnail}, {@code maintainAspectRatio} and {@code allowEnlargement}, with the same geometry as ImageMagick
+ * would use. Anything else, including images that would be auto-oriented, have an embedded colour profile, have
+ * several frames or that ImageIO cannot read, is left to ImageMagick.
+ * <p>
+ * Large sources are subsampled as they are decoded, to no less than twice the target size, and then scaled down in
+ * steps of no more than a half with bicubic interpolation, to avoid aliasing.
+ */
+public class ImageIOResizer
+{
+    private static final Logger logger = LoggerFactory.getLogger(ImageIOResizer.class);
+
+    private static final Map<String, String> SOURCE_FORMATS = Map.of(
+        MIMETYPE_IMAGE_JPEG, "jpeg",
+        MIMETYPE_IMAGE_PNG, "png",
+        MIMETYPE_IMAGE_GIF, "gif");
+    private static final Map<String, String> TARGET_FORMATS = Map.of(
+        MIMETYPE_IMAGE_JPEG, "jpeg",
+        MIMETYPE_IMAGE_PNG, "png");
+    private static final Set<String> UNSUPPORTED_OPTIONS = Set.of(START_PAGE, END_PAGE, COMMAND_OPTIONS,
+        CROP_GRAVITY, CROP_WIDTH, CROP_HEIGHT, CROP_PERCENTAGE, CROP_X_OFFSET, CROP_Y_OFFSET, RESIZE_PERCENTAGE,
+        VARIANTS);
+
+    private static final float JPEG_QUALITY = 0.92f;
+
+    private static final int JPEG_APP1 = 0xE1;
+    private static final int JPEG_APP2 = 0xE2;
+    private static final int JPEG_SOS = 0xDA;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    /**
+     * @return {@code true} if the transform options and mimetypes are ones that may be supported, which depends
+     *         on the source image too
+     */
+    public boolean isSupported(String sourceMimetype, String targetMimetype, Map<String, String> transformOptions)
+    {
+        return sourceMimetype != null && SOURCE_FORMATS.containsKey(sourceMimetype) &&
+               targetMimetype != null && TARGET_FORMATS.containsKey(targetMimetype) &&
+               Geometry.of(transformOptions) != null;
+    }
+
+    /**
+     * Resizes the source if the transform is one that is supported.
+     *
+     * @return {@code true} if the target has been written, or {@code false} if the transform should be done by
+     *         ImageMagick
+     */
+    public boolean transform(String sourceMimetype, String targetMimetype, Map<String, String> transformOptions,
+                             File sourceFile, File targetFile)
+    {
+        String sourceFormat = sourceMimetype == null ? null : SOURCE_FORMATS.get(sourceMimetype);
+        String targetFormat = targetMimetype == null ? null : TARGET_FORMATS.get(targetMimetype);
+        Geometry geometry = sourceFormat == null || targetFormat == null ? null : Geometry.of(transformOptions);
+        if (geometry == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            boolean autoOrient = !"false".equals(transformOptions.get(AUTO_ORIENT));
+            if ("jpeg".equals(sourceFormat) && !isPlainJpeg(sourceFile, autoOrient))
+            {
+                return false;
+            }
+            BufferedImage image = read(sourceFile, sourceFormat, geometry, "jpeg".equals(targetFormat));
+            if (image == null)
+            {
+                return false;
+            }
+            write(image, targetFormat, targetFile);
+            LogEntry.setOptions("ImageIO " + image.getWidth() + 'x' + image.getHeight());
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.debug("Unable to resize {} with ImageIO, so using ImageMagick: {}", sourceMimetype, e.getMessage());
+            return false;
+        }
+    }
+
+    private static BufferedImage read(File sourceFile, String sourceFormat, Geometry geometry, boolean opaqueTarget)
+        throws IOException
+    {
+        try (ImageInputStream input = ImageIO.createImageInputStream(sourceFile))
+        {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(sourceFormat);
+            if (input == null || !readers.hasNext())
+            {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(input, false, true);
+                if ("gif".equals(sourceFormat) && reader.getNumImages(true) > 1)
+                {
+                    return null;
+                }
+                ImageTypeSpecifier type = reader.getRawImageType(0);
+                boolean alpha = type == null || type.getColorModel().hasAlpha();
+                if (alpha && opaqueTarget)
+                {
+                    return null; // ImageMagick decides what happens to the transparent pixels
+                }
+
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int[] targetSize = geometry.getSize(width, height);
+                int targetWidth = targetSize[0];
+                int targetHeight = targetSize[1];
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.min(width / (2 * targetWidth), height / (2 * targetHeight)));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                return scale(image, targetWidth, targetHeight, alpha);
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    static BufferedImage scale(BufferedImage image, int targetWidth, int targetHeight, boolean alpha)
+    {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        do
+        {
+            int width = image.getWidth() / 2 >= targetWidth ? image.getWidth() / 2 : targetWidth;
+            int height = image.getHeight() / 2 >= targetHeight ? image.getHeight() / 2 : targetHeight;
+            BufferedImage scaled = new BufferedImage(width, height, type);
+            Graphics2D graphics = scaled.createGraphics();
+            try
+            {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(image, 0, 0, width, height, null);
+            }
+            finally
+            {
+                graphics.dispose();
+            }
+            image = scaled;
+        }
+        while (image.getWidth() != targetWidth || image.getHeight() != targetHeight);
+        return image;
+    }
+
+    private static void write(BufferedImage image, String targetFormat, File targetFile) throws IOException
+    {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(targetFormat).next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(targetFile))
+        {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(targetFormat))
+            {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally
+        {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Checks the jpeg's markers for the things ImageIO does not handle as ImageMagick would.
+     *
+     * @param autoOrient if the image would be auto-oriented by ImageMagick
+     * @return {@code false} if the image has an embedded ICC colour profile or needs to be rotated
+     */
+    static boolean isPlainJpeg(File sourceFile, boolean autoOrient) throws IOException
+    {
+        try (InputStream inputStream = Files.newInputStream(sourceFile.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream)))
+        {
+            if (in.readUnsignedShort() != 0xFFD8)
+            {
+                return false;
+            }
+            while (true)
+            {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || (marker & 0xFF) == JPEG_SOS)
+                {
+                    return true;
+                }
+                int length = in.readUnsignedShort() - 2;
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+                if ((marker & 0xFF) == JPEG_APP2 && startsWith(segment, "ICC_PROFILE\0"))
+                {
+                    return false;
+                }
+                if ((marker & 0xFF) == JPEG_APP1 && autoOrient && startsWith(segment, "Exif\0\0") &&
+                    getExifOrientation(segment, 6) > 1)
+                {
+                    return false;
+                }
+            }
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+    }
+
+    private static boolean startsWith(byte[] segment, String prefix)
+    {
+        byte[] bytes = prefix.getBytes(StandardCharsets.US_ASCII);
+        if (segment.length < bytes.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (segment[i] != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the orientation from the first IFD of the TIFF structure starting at {@code tiff}, or 0 if there is none
+     */
+    private static int getExifOrientation(byte[] segment, int tiff)
+    {
+        if (segment.length < tiff + 8)
+        {
+            return 0;
+        }
+        boolean littleEndian = segment[tiff] == 'I';
+        int ifd = tiff + readInt(segment, tiff + 4, littleEndian);
+        if (ifd < tiff || ifd + 2 > segment.length)
+        {
+            return 0;
+        }
+        int entries = readShort(segment, ifd, littleEndian);
+        for (int i = 0; i < entries; i++)
+        {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > segment.length)
+            {
+                return 0;
+            }
+            if (readShort(segment, entry, littleEndian) == EXIF_ORIENTATION_TAG)
+            {
+                return readShort(segment, entry + 8, littleEndian);
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] bytes, int offset, boolean littleEndian)
+    {
+        int b0 = bytes[offset] & 0xFF;
+        int b1 = bytes[offset + 1] & 0xFF;
+        return littleEndian ? b1 << 8 | b0 : b0 << 8 | b1;
+    }
+
+    private static int readInt(byte[] bytes, int offset, boolean littleEndian)
+    {
+        int s0 = readShort(bytes, offset, littleEndian);
+        int s1 = readShort(bytes, offset + 2, littleEndian);
+        return littleEndian ? s1 << 16 | s0 : s0 << 16 | s1;
+    }
+
+    /**
+     * The target size, worked out in the same way as ImageMagick's {@code -resize} geometry built by
+     * ImageMagickOptionsBuilder.
+     */
+    static class Geometry
+    {
+        private final Integer width;
+        private final Integer height;
+        private final boolean allowEnlargement;
+        private final boolean maintainAspectRatio;
+
+        Geometry(Integer width, Integer height, boolean allowEnlargement, boolean maintainAspectRatio)
+        {
+            this.width = width;
+            this.height = height;
+            this.allowEnlargement = allowEnlargement;
+            this.maintainAspectRatio = maintainAspectRatio;
+        }
+
+        /**
+         * @return the geometry, or {@code null} if the options are not supported
+         */
+        static Geometry of(Map<String, String> transformOptions)
+        {
+            if (UNSUPPORTED_OPTIONS.stream().anyMatch(transformOptions::containsKey) ||
+                "true".equals(transformOptions.get(ALPHA_REMOVE)))
+            {
+                return null;
+            }
+            try
+            {
+                String width = transformOptions.get(RESIZE_WIDTH);
+                String height = transformOptions.get(RESIZE_HEIGHT);
+                Integer w = width == null ? null : Integer.valueOf(width);
+                Integer h = height == null ? null : Integer.valueOf(height);
+                if ((w == null && h == null) || (w != null && w <= 0) || (h != null && h <= 0))
+                {
+                    return null;
+                }
+                return new Geometry(w, h, "true".equals(transformOptions.get(ALLOW_ENLARGEMENT)),
+                    !"false".equals(transformOptions.get(MAINTAIN_ASPECT_RATIO)));
+            }
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+        }
+
+        /**
+         * @return the target width and height
+         */
+        int[] getSize(int sourceWidth, int sourceHeight)
+        {
+            boolean larger = (width != null && sourceWidth > width) || (height != null && sourceHeight > height);
+            if (!allowEnlargement && !larger)
+            {
+                return new int[]{sourceWidth, sourceHeight};
+            }
+            if (width != null && height != null && !maintainAspectRatio)
+            {
+                return new int[]{width, height};
+            }
+            double scale = width == null ? (double) height / sourceHeight
+                : height == null ? (double) width / sourceWidth
+                : Math.min((double) width / sourceWidth, (double) height / sourceHeight);
+            return new int[]{
+                Math.max(1, (int) Math.round(sourceWidth * scale)),
+                Math.max(1, (int) Math.round(sourceHeight * scale))};
+        }
+    }
+}
@@ -28,11 +28,30 @@ package org.alfresco.transformer.executors;
 
 import org.alfresco.transform.exceptions.TransformException;
 import org.alfresco.transformer.ImageMagickOptionsBuilder;
+import org.alfresco.transformer.ImageMagickVariant;
+import org.alfresco.transformer.fs.TransformTarget;
+import org.alfresco.transformer.logging.LogEntry;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static org.alfresco.transformer.fs.FileManager.TempFileProvider.createTempFile;
 import static org.alfresco.transformer.util.RequestParamMap.ALLOW_ENLARGEMENT;
 import static org.alfresco.transformer.util.RequestParamMap.ALPHA_REMOVE;
 import static org.alfresco.transformer.util.RequestParamMap.AUTO_ORIENT;
@@ -51,8 +70,12 @@ import static org.alfresco.transformer.util.RequestParamMap.RESIZE_WIDTH;
 import static org.alfresco.transformer.util.RequestParamMap.START_PAGE;
 import static org.alfresco.transformer.util.RequestParamMap.THUMBNAIL;
 import static org.alfresco.transformer.util.RequestParamMap.TIMEOUT;
+import static org.alfresco.transformer.util.RequestParamMap.VARIANTS;
 import static org.alfresco.transformer.util.Util.stringToInteger;
 import static org.alfresco.transformer.util.Util.stringToLong;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.util.StringUtils.getFilenameExtension;
 
 /**
  * CommandExecutor implementation for running ImageMagick transformations. It runs the
@@ -62,12 +85,32 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
 {
     private static final String ID = "imagemagick";
 
+    private static final Set<String> STD_OUT_FORMATS = Set.of("png", "jpg", "jpeg", "gif");
+    private static final Set<String> SINGLE_FRAME_SOURCE_FORMATS = Set.of("jpg", "jpeg", "png", "bmp");
+    private static final Pattern MULTI_PAGE_RANGE = Pattern.compile("\\[\\d+-\\d+]$");
+    private static final Pattern SINGLE_PAGE = Pattern.compile("\\[\\d+]$");
+    private static final Pattern PAGE_RANGE = Pattern.compile("\\[[\\d-]+]$");
+    // Reported by ImageMagick when none of the pages in a range exist
+    private static final String NO_IMAGES_DEFINED = "no images defined";
+
+    private static final AtomicInteger PAGE_THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService PAGE_RENDERERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "imagemagick-pages-" + PAGE_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final String ROOT;
     private final String DYN;
     private final String EXE;
     private final String CODERS;
     private final String CONFIG;
 
+    private ImageIOResizer imageIOResizer;
+    private long memoryBudget = -1;
+    private volatile ImageMagickResourceLimits resourceLimits;
+    private int minPagesPerProcess;
+
     public ImageMagickCommandExecutor(String exe, String dyn, String root, String coders, String config)
     {
         if (exe == null || exe.isEmpty())
@@ -92,6 +135,69 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
         super.checkCommand = createCheckCommand();
     }
 
+    /**
+     * @param imageIOFastPath if {@code true}, simple resizes of jpeg, png and gif images are done in process by
+     *                        {@link ImageIOResizer} rather than by starting an ImageMagick process.
+     */
+    public void setImageIOFastPath(boolean imageIOFastPath)
+    {
+        imageIOResizer = imageIOFastPath ? new ImageIOResizer() : null;
+    }
+
+    /**
+     * Sets the memory shared by the ImageMagick processes, which is used to work out each process's resource limits
+     * (see {@link ImageMagickResourceLimits}).
+     *
+     * @param memoryBudget the memory in bytes. If zero, it is worked out from the container's memory. If less than
+     *                     zero, ImageMagick's default limits are used.
+     */
+    public synchronized void setMemoryBudget(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+        resourceLimits = null;
+    }
+
+    @Override
+    public synchronized void setConcurrencyLimits(int maxConcurrent, long maxWaitMs)
+    {
+        super.setConcurrencyLimits(maxConcurrent, maxWaitMs);
+        resourceLimits = null;
+    }
+
+    /**
+     * @return the limits for the budget set by {@link #setMemoryBudget(long)}, or {@code null} if there is none.
+     *         They are created when first used, so that they share the budget between the maximum number of
+     *         concurrent processes, whichever order the two are set in.
+     */
+    private ImageMagickResourceLimits getResourceLimits()
+    {
+        ImageMagickResourceLimits limits = resourceLimits;
+        if (limits == null)
+        {
+            synchronized (this)
+            {
+                if (resourceLimits == null && memoryBudget >= 0)
+                {
+                    resourceLimits = new ImageMagickResourceLimits(
+                        memoryBudget == 0 ? ImageMagickResourceLimits.getDefaultBudget() : memoryBudget,
+                        getConcurrencyLimiter().getMaxConcurrent());
+                }
+                limits = resourceLimits;
+            }
+        }
+        return limits;
+    }
+
+    /**
+     * @param minPagesPerProcess if greater than zero, a page range of at least twice this number of pages is split
+     *                           into chunks of at least this many pages, which are transformed by concurrent
+     *                           processes (up to the maximum number of concurrent processes) and then joined.
+     */
+    public void setMinPagesPerProcess(int minPagesPerProcess)
+    {
+        this.minPagesPerProcess = minPagesPerProcess;
+    }
+
     @Override
     public String getTransformerId()
     {
@@ -106,7 +212,8 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
         RuntimeExec runtimeExec = new RuntimeExec();
         Map<String, String[]> commandsAndArguments = new HashMap<>();
         commandsAndArguments.put(".*",
-            new String[]{EXE, "${source}", "SPLIT:${options}", "-strip", "-quiet", "${target}"});
+            new String[]{EXE, "SPLIT:${decodeOptions}", "${source}", "SPLIT:${options}", "-strip", "-quiet",
+                "${target}"});
         runtimeExec.setCommandsAndArguments(commandsAndArguments);
 
         Map<String, String> processProperties = new HashMap<>();
@@ -126,6 +233,7 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
         runtimeExec.setProcessProperties(processProperties);
 
         Map<String, String> defaultProperties = new HashMap<>();
+        defaultProperties.put("decodeOptions", null);
         defaultProperties.put("options", null);
         runtimeExec.setDefaultProperties(defaultProperties);
 
@@ -135,6 +243,67 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
         return runtimeExec;
     }
 
+    /**
+     * ImageMagick uses OpenMP, which by default starts a thread per CPU for each process.
+     */
+    @Override
+    protected Map<String, String> getThreadLimitProcessProperties(int threads)
+    {
+        return Map.of("MAGICK_THREAD_LIMIT", Integer.toString(threads));
+    }
+
+    @Override
+    protected Map<String, String> getProcessProperties(Map<String, String> properties, int threads)
+    {
+        Map<String, String> processProperties = getThreadLimitProcessProperties(threads);
+        ImageMagickResourceLimits resourceLimits = getResourceLimits();
+        if (resourceLimits != null)
+        {
+            processProperties = new HashMap<>(processProperties);
+            processProperties.putAll(resourceLimits.reserve(properties.get("source")));
+        }
+        return processProperties;
+    }
+
+    @Override
+    protected void processFinished(Map<String, String> processProperties)
+    {
+        ImageMagickResourceLimits resourceLimits = getResourceLimits();
+        if (resourceLimits != null)
+        {
+            resourceLimits.release(processProperties);
+        }
+    }
+
+    /**
+     * Single images in the common thumbnail formats are written to the standard output, with the format taken from
+     * the target's extension (for example {@code png:-}). Only used if the command selects a single frame, either
+     * with a single page such as {@code [0]} or because the source format only has one. Otherwise ImageMagick would
+     * write each frame to the standard output one after the other, rather than to separate files.
+     */
+    @Override
+    protected String getStdOutTarget(Map<String, String> properties, File targetFile)
+    {
+        String extension = getFilenameExtension(targetFile.getName());
+        String source = properties.get("source");
+        if (extension == null || !STD_OUT_FORMATS.contains(extension.toLowerCase()) ||
+            source == null || !isSingleFrame(source))
+        {
+            return null;
+        }
+        return extension.toLowerCase() + ":-";
+    }
+
+    private static boolean isSingleFrame(String source)
+    {
+        if (PAGE_RANGE.matcher(source).find())
+        {
+            return SINGLE_PAGE.matcher(source).find();
+        }
+        String sourceExtension = getFilenameExtension(source);
+        return sourceExtension != null && SINGLE_FRAME_SOURCE_FORMATS.contains(sourceExtension.toLowerCase());
+    }
+
     @Override
     protected RuntimeExec createCheckCommand()
     {
@@ -150,8 +319,36 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
                           Map<String, String> transformOptions,
                           File sourceFile, File targetFile) throws TransformException
     {
-        final String options = ImageMagickOptionsBuilder
+        transform(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+            TransformTarget.of(targetFile));
+    }
+
+    /**
+     * Single images in the common thumbnail formats may be captured rather than written to the target file, if the
+     * {@code target} allows it. See {@link #getStdOutTarget(Map, File)}.
+     */
+    @Override
+    public void transform(String transformName, String sourceMimetype, String targetMimetype,
+                          Map<String, String> transformOptions,
+                          File sourceFile, TransformTarget target) throws TransformException
+    {
+        final File targetFile = target.getFile();
+        final String variants = transformOptions.get(VARIANTS);
+        if (variants != null && !variants.isBlank())
+        {
+            transformVariants(ImageMagickVariant.parse(variants), transformOptions, sourceFile, targetFile);
+            return;
+        }
+        if (imageIOResizer != null &&
+            imageIOResizer.isSupported(sourceMimetype, targetMimetype, transformOptions) &&
+            resizeWithImageIO(sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile))
+        {
+            return;
+        }
+
+        final ImageMagickOptionsBuilder builder = ImageMagickOptionsBuilder
                 .builder()
+                .withSourceMimetype(sourceMimetype)
                 .withStartPage(transformOptions.get(START_PAGE))
                 .withEndPage(transformOptions.get(END_PAGE))
                 .withAlphaRemove(transformOptions.get(ALPHA_REMOVE))
@@ -168,8 +365,9 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
                 .withResizePercentage(transformOptions.get(RESIZE_PERCENTAGE))
                 .withAllowEnlargement(transformOptions.get(ALLOW_ENLARGEMENT))
                 .withMaintainAspectRatio(transformOptions.get(MAINTAIN_ASPECT_RATIO))
-                .withCommandOptions(transformOptions.get(COMMAND_OPTIONS))
-                .build();
+                .withCommandOptions(transformOptions.get(COMMAND_OPTIONS));
+        final String options = builder.build();
+        final String decodeOptions = builder.buildDecodeOptions();
 
         String pageRange = calculatePageRange(
                 stringToInteger(transformOptions.get(START_PAGE)),
@@ -178,7 +376,356 @@ public class ImageMagickCommandExecutor extends AbstractCommandExecutor
 
         Long timeout = stringToLong(transformOptions.get(TIMEOUT));
 
-        run(options, sourceFile, pageRange, targetFile, timeout);
+        final Integer startPage = stringToInteger(transformOptions.get(START_PAGE));
+        final Integer endPage = stringToInteger(transformOptions.get(END_PAGE));
+        final String commandOptions = transformOptions.get(COMMAND_OPTIONS);
+        if (minPagesPerProcess > 0 && startPage != null && endPage != null &&
+            endPage - startPage + 1 >= 2 * minPagesPerProcess && decodeOptions.isEmpty() &&
+            (commandOptions == null || commandOptions.isBlank()))
+        {
+            transformPagesInParallel(options, sourceFile, startPage, endPage, targetFile, timeout);
+        }
+        else if (decodeOptions.isEmpty())
+        {
+            run(options, sourceFile, pageRange, target, timeout);
+        }
+        else
+        {
+            LogEntry.setOptions(decodeOptions + ' ' + pageRange + (pageRange.isEmpty() ? "" : " ") + options);
+            final Map<String, String> properties = new HashMap<>();
+            properties.put("decodeOptions", decodeOptions);
+            properties.put("options", options);
+            properties.put("source", sourceFile.getAbsolutePath() + pageRange);
+            properties.put("target", targetFile.getAbsolutePath());
+            run(properties, target, timeout);
+        }
+    }
+
+    /**
+     * Splits a page range into chunks, which are transformed by concurrent processes into intermediate MIFF files
+     * (ImageMagick's own lossless format). MIFF files may be concatenated, so the chunks are joined in order into a
+     * single file, which is then written to the target by a final process. That process reads all the pages, so
+     * multi-page targets such as tiff and pdf are adjoined and other formats are written as the same sequence of
+     * files as they would be by a single process.
+     * <p>
+     * The timeout applies to the whole transform rather than to each process. The number of pages in the source is
+     * not known, so the end page may be beyond the last page. The trailing chunks then have no pages and ImageMagick
+     * reports that no images were defined. Those chunks are left out, just as a single process would have stopped at
+     * the last page. Any other failure, including one of a trailing chunk, fails the transform.
+     */
+    private void transformPagesInParallel(String options, File sourceFile, int startPage, int endPage,
+                                          File targetFile, Long timeout)
+    {
+        final int pages = endPage - startPage + 1;
+        final int chunks = Math.max(1, Math.min(getConcurrencyLimiter().getMaxConcurrent(), pages / minPagesPerProcess));
+        final long deadline = timeout != null && timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        LogEntry.setOptions("[" + startPage + '-' + endPage + "] in " + chunks + " processes " + options);
+
+        final List<File> chunkFiles = new ArrayList<>();
+        final PageChunks pageChunks = new PageChunks();
+        File joinedFile = null;
+        try
+        {
+            int chunkStart = startPage;
+            for (int i = 0; i < chunks; i++)
+            {
+                final int chunkEnd = chunkStart + pages / chunks + (i < pages % chunks ? 1 : 0) - 1;
+                final File chunkFile = createTempFile("pages_", "_" + chunkStart + "-" + chunkEnd + ".miff");
+                chunkFiles.add(chunkFile);
+
+                final Map<String, String> properties = new HashMap<>();
+                properties.put("options", options);
+                properties.put("source", sourceFile.getAbsolutePath() + "[" + chunkStart + '-' + chunkEnd + ']');
+                properties.put("target", chunkFile.getAbsolutePath());
+                pageChunks.submit(() -> run(properties, chunkFile, getRemainingTime(deadline)));
+                chunkStart = chunkEnd + 1;
+            }
+            final int chunksWithPages = pageChunks.waitFor();
+
+            joinedFile = createTempFile("pages_", "_joined.miff");
+            try (OutputStream outputStream = Files.newOutputStream(joinedFile.toPath()))
+            {
+                for (File chunkFile : chunkFiles.subList(0, chunksWithPages))
+                {
+                    Files.copy(chunkFile.toPath(), outputStream);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed to join the pages", e);
+            }
+
+            final Map<String, String> properties = new HashMap<>();
+            properties.put("source", joinedFile.getAbsolutePath() + "[0-" + (pages - 1) + ']');
+            properties.put("target", targetFile.getAbsolutePath());
+            run(properties, targetFile, getRemainingTime(deadline));
+        }
+        finally
+        {
+            // No chunk process may still be writing when the chunks are deleted
+            pageChunks.stopAndWait();
+            chunkFiles.forEach(File::delete);
+            if (joinedFile != null)
+            {
+                joinedFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the time left before the deadline, or {@code null} if there is no deadline
+     */
+    private static Long getRemainingTime(long deadline)
+    {
+        if (deadline == 0)
+        {
+            return null;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0)
+        {
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(), "Ran out of time transforming the pages");
+        }
+        return remaining;
+    }
+
+    /**
+     * The concurrent processes transforming the chunks of a page range.
+     */
+    private static class PageChunks
+    {
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final Set<Thread> running = new HashSet<>();
+        private boolean stopped;
+
+        void submit(Runnable chunk)
+        {
+            futures.add(PAGE_RENDERERS.submit(() -> {
+                synchronized (running)
+                {
+                    if (stopped)
+                    {
+                        return;
+                    }
+                    running.add(Thread.currentThread());
+                }
+                try
+                {
+                    chunk.run();
+                }
+                finally
+                {
+                    synchronized (running)
+                    {
+                        running.remove(Thread.currentThread());
+                    }
+                }
+            }));
+        }
+
+        /**
+         * Waits for all the chunks to finish, even if one fails.
+         *
+         * @return the number of chunks that have pages. Chunks at the end that failed because they had no images are
+         *         taken to be beyond the last page of the source.
+         */
+        int waitFor()
+        {
+            final RuntimeException[] failures = new RuntimeException[futures.size()];
+            for (int i = 0; i < futures.size(); i++)
+            {
+                try
+                {
+                    futures.get(i).get();
+                }
+                catch (ExecutionException e)
+                {
+                    failures[i] = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed to transform the pages",
+                            e.getCause());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new TransformException(INTERNAL_SERVER_ERROR.value(),
+                        "Interrupted while transforming the pages", e);
+                }
+            }
+
+            int chunksWithPages = failures.length;
+            while (chunksWithPages > 0 && isBeyondLastPage(failures[chunksWithPages - 1]))
+            {
+                chunksWithPages--;
+            }
+            for (int i = 0; i < chunksWithPages; i++)
+            {
+                if (failures[i] != null)
+                {
+                    throw failures[i];
+                }
+            }
+            if (chunksWithPages == 0)
+            {
+                throw failures[0];
+            }
+            return chunksWithPages;
+        }
+
+        private static boolean isBeyondLastPage(RuntimeException failure)
+        {
+            return failure instanceof TransformException && failure.getMessage() != null &&
+                failure.getMessage().contains(NO_IMAGES_DEFINED);
+        }
+
+        /**
+         * Stops any chunks that have not started and interrupts those that are running, which kills their processes
+         * (see {@link RuntimeExec}), and then waits for them to finish. Does nothing if they have all finished.
+         */
+        void stopAndWait()
+        {
+            synchronized (running)
+            {
+                stopped = true;
+                running.forEach(Thread::interrupt);
+            }
+            boolean interrupted = false;
+            for (Future<?> future : futures)
+            {
+                while (true)
+                {
+                    try
+                    {
+                        future.get();
+                        break;
+                    }
+                    catch (ExecutionException e)
+                    {
+                        break;
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean resizeWithImageIO(String sourceMimetype, String targetMimetype,
+                                      Map<String, String> transformOptions, File sourceFile, File targetFile)
+    {
+        // Shares the CPUs with the ImageMagick processes
+        ConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter();
+        concurrencyLimiter.acquire();
+        try
+        {
+            return imageIOResizer.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+        }
+        finally
+        {
+            concurrencyLimiter.release();
+        }
+    }
+
+    /**
+     * Produces several images from the source in a single ImageMagick process, so that the source is only read and
+     * decoded once, and zips them up into the target. The source (after the common options such as autoOrient) is
+     * held in a memory program register, which is cloned for each variant. Unless a page is requested, only the first
+     * page or frame is read, as each variant is a single image even if the source is a multi-frame gif or tiff:
+     * <pre>
+     *    convert source[0] -strip -write mpr:source +delete
+     *        ( mpr:source &lt;variant 1 options&gt; -write variant1 +delete ) ...
+     *        mpr:source &lt;last variant options&gt; lastVariant
+     * </pre>
+     */
+    private void transformVariants(List<ImageMagickVariant> variants, Map<String, String> transformOptions,
+                                   File sourceFile, File targetFile)
+    {
+        String pageRange = calculatePageRange(
+                stringToInteger(transformOptions.get(START_PAGE)),
+                stringToInteger(transformOptions.get(END_PAGE))
+        );
+        if (MULTI_PAGE_RANGE.matcher(pageRange).find())
+        {
+            throw new TransformException(BAD_REQUEST.value(), "Variants may only be created from a single page");
+        }
+        if (pageRange.isEmpty())
+        {
+            pageRange = "[0]";
+        }
+
+        final String commonOptions = ImageMagickOptionsBuilder
+                .builder()
+                .withAlphaRemove(transformOptions.get(ALPHA_REMOVE))
+                .withAutoOrient(transformOptions.get(AUTO_ORIENT))
+                .withCommandOptions(transformOptions.get(COMMAND_OPTIONS))
+                .build();
+
+        final List<File> variantFiles = new ArrayList<>();
+        try
+        {
+            final StringBuilder options = new StringBuilder(commonOptions)
+                    .append(" -strip -write mpr:source +delete");
+            for (int i = 0; i < variants.size(); i++)
+            {
+                final ImageMagickVariant variant = variants.get(i);
+                final File variantFile = createTempFile("variant_", "_" + variant.getFilename());
+                variantFiles.add(variantFile);
+                final String variantOptions = variant.getOptions();
+                if (i < variants.size() - 1)
+                {
+                    options.append(" ( mpr:source ").append(variantOptions)
+                           .append(" -write \"").append(variantFile.getAbsolutePath()).append("\" +delete )");
+                }
+                else
+                {
+                    options.append(" mpr:source ").append(variantOptions);
+                }
+            }
+
+            final File lastVariantFile = variantFiles.get(variantFiles.size() - 1);
+            LogEntry.setOptions(pageRange + " " + options);
+            final Map<String, String> properties = new HashMap<>();
+            properties.put("options", options.toString());
+            properties.put("source", sourceFile.getAbsolutePath() + pageRange);
+            properties.put("target", lastVariantFile.getAbsolutePath());
+            run(properties, lastVariantFile, stringToLong(transformOptions.get(TIMEOUT)));
+
+            zip(variants, variantFiles, targetFile);
+        }
+        finally
+        {
+            variantFiles.forEach(File::delete);
+        }
+    }
+
+    private static void zip(List<ImageMagickVariant> variants, List<File> variantFiles, File targetFile)
+    {
+        try (OutputStream outputStream = Files.newOutputStream(targetFile.toPath());
+             ZipOutputStream zip = new ZipOutputStream(outputStream))
+        {
+            for (int i = 0; i < variants.size(); i++)
+            {
+                final File variantFile = variantFiles.get(i);
+                if (variantFile.length() == 0)
+                {
+                    throw new TransformException(INTERNAL_SERVER_ERROR.value(),
+                        "Transformer failed to create the " + variants.get(i).getName() + " variant");
+                }
+                zip.putNextEntry(new ZipEntry(variants.get(i).getFilename()));
+                Files.copy(variantFile.toPath(), zip);
+                zip.closeEntry();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed to write the variants", e);
+        }
     }
 
     private static String calculatePageRange(Integer startPage, Integer endPage)
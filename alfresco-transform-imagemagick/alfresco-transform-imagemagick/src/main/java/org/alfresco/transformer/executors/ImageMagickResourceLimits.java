@@ -0,0 +1,251 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Works out the ImageMagick resource limits for each process, so that the processes running at the same time share
+ * the container's memory, rather than each one using ImageMagick's compiled in defaults, which are based on the
+ * memory of the host. Without them, a few large images can get the container OOM-killed, or push every process
+ * into ImageMagick's slow disk cache.
+ * <p>
+ * The memory needed by each process is estimated from the pixel dimensions of the source, which are read from its
+ * header. Each process may have a fair share of the memory (the budget divided by the maximum number of concurrent
+ * processes). A process is given the memory it needs if it is available, but always leaves a fair share for each of
+ * the other processes that could start while it runs, so the limits never add up to more than the budget. So a
+ * large image may use the memory that processes for smaller images do not need, and otherwise gets its fair share.
+ * Anything it needs beyond its limit goes to ImageMagick's disk cache. The limits are passed as the {@code MAGICK_*_LIMIT} environment
+ * variables, which are equivalent to {@code -limit} options.
+ */
+public class ImageMagickResourceLimits
+{
+    private static final Logger logger = LoggerFactory.getLogger(ImageMagickResourceLimits.class);
+
+    public static final String MEMORY_LIMIT = "MAGICK_MEMORY_LIMIT";
+    public static final String MAP_LIMIT = "MAGICK_MAP_LIMIT";
+    public static final String DISK_LIMIT = "MAGICK_DISK_LIMIT";
+
+    /**
+     * The size of a pixel in the cache of a Q16 build of ImageMagick, with four channels.
+     */
+    static final long BYTES_PER_PIXEL = 8;
+
+    /**
+     * The number of copies of the image that are held at the same time, such as the source and the resized image.
+     */
+    static final long COPIES = 3;
+
+    static final long MIN_MEMORY = 32L * 1024 * 1024;
+
+    private static final long UNLIMITED = Long.MAX_VALUE / 2;
+    private static final Pattern PAGE_RANGE = Pattern.compile("\\[[\\d-]+]$");
+    private static final Path CGROUP_V2_MEMORY_MAX = Paths.get("/sys/fs/cgroup/memory.max");
+    private static final Path CGROUP_V1_MEMORY_LIMIT = Paths.get("/sys/fs/cgroup/memory/memory.limit_in_bytes");
+
+    private final long budget;
+    private final int maxConcurrent;
+    private final long fairShare;
+    private long reserved;
+    private int reservations;
+
+    /**
+     * @param budget        the memory that may be shared between the ImageMagick processes
+     * @param maxConcurrent the maximum number of ImageMagick processes that run at the same time, which must be the
+     *                      maximum number of outstanding calls to {@link #reserve(String)}
+     */
+    public ImageMagickResourceLimits(long budget, int maxConcurrent)
+    {
+        this.budget = Math.max(MIN_MEMORY, budget);
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        fairShare = this.budget / this.maxConcurrent;
+        logger.debug("ImageMagick memory budget {} bytes, fair share {} bytes", this.budget, fairShare);
+    }
+
+    /**
+     * Sets aside the memory for a process. Must be followed by a call to {@link #release(Map)}.
+     *
+     * @param source the source the process will read, which may end in a page range such as {@code [2]}
+     * @return the environment properties that set the process's limits
+     */
+    public Map<String, String> reserve(String source)
+    {
+        long needed = getPixels(source) * BYTES_PER_PIXEL * COPIES;
+        long memory;
+        synchronized (this)
+        {
+            long others = Math.max(0, maxConcurrent - reservations - 1) * fairShare;
+            long available = Math.max(fairShare, budget - reserved - others);
+            memory = needed <= 0
+                ? fairShare
+                : Math.max(Math.min(MIN_MEMORY, fairShare), Math.min(needed, available));
+            reserved += memory;
+            reservations++;
+        }
+
+        Map<String, String> processProperties = new HashMap<>();
+        processProperties.put(MEMORY_LIMIT, Long.toString(memory));
+        processProperties.put(MAP_LIMIT, Long.toString(2 * memory));
+        long usableTempSpace = new File(System.getProperty("java.io.tmpdir")).getUsableSpace();
+        if (usableTempSpace > 0)
+        {
+            processProperties.put(DISK_LIMIT, Long.toString(Math.max(memory, usableTempSpace / maxConcurrent)));
+        }
+        return processProperties;
+    }
+
+    /**
+     * @param processProperties the value returned by {@link #reserve(String)}
+     */
+    public void release(Map<String, String> processProperties)
+    {
+        String memory = processProperties.get(MEMORY_LIMIT);
+        if (memory != null)
+        {
+            synchronized (this)
+            {
+                reserved -= Long.parseLong(memory);
+                reservations--;
+            }
+        }
+    }
+
+    synchronized long getReserved()
+    {
+        return reserved;
+    }
+
+    /**
+     * @return the number of pixels in the (first) image, or 0 if it cannot be read from the header
+     */
+    static long getPixels(String source)
+    {
+        if (source == null)
+        {
+            return 0;
+        }
+        File file = new File(PAGE_RANGE.matcher(source).replaceFirst(""));
+        try (ImageInputStream input = ImageIO.createImageInputStream(file))
+        {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext())
+            {
+                return 0;
+            }
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(input, true, true);
+                return (long) reader.getWidth(0) * reader.getHeight(0);
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.trace("Unable to read the size of {}: {}", file, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * @return the memory available to the ImageMagick processes, which is the container's memory limit (or the
+     *         physical memory if there is none) less the JVM's maximum heap, but no less than a quarter of it
+     */
+    public static long getDefaultBudget()
+    {
+        long memory = getContainerMemory();
+        return Math.max(memory / 4, memory - Runtime.getRuntime().maxMemory());
+    }
+
+    static long getContainerMemory()
+    {
+        long limit = -1;
+        try
+        {
+            if (Files.isReadable(CGROUP_V2_MEMORY_MAX))
+            {
+                limit = parseCgroupMemoryLimit(Files.readString(CGROUP_V2_MEMORY_MAX));
+            }
+            else if (Files.isReadable(CGROUP_V1_MEMORY_LIMIT))
+            {
+                limit = parseCgroupMemoryLimit(Files.readString(CGROUP_V1_MEMORY_LIMIT));
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.debug("Unable to read the cgroup memory limit: {}", e.getMessage());
+        }
+
+        long physical = getPhysicalMemory();
+        return limit > 0 && (physical <= 0 || limit < physical) ? limit : physical;
+    }
+
+    /**
+     * @param value the content of memory.max (v2), such as "max" or "2147483648", or memory.limit_in_bytes (v1),
+     *              which is a very large number if there is no limit
+     * @return the limit in bytes, or -1 if there is none
+     */
+    static long parseCgroupMemoryLimit(String value)
+    {
+        value = value.trim();
+        if ("max".equals(value))
+        {
+            return -1;
+        }
+        long limit = Long.parseLong(value);
+        return limit <= 0 || limit >= UNLIMITED ? -1 : limit;
+    }
+
+    private static long getPhysicalMemory()
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+        {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        return Runtime.getRuntime().maxMemory() * 4;
+    }
+}
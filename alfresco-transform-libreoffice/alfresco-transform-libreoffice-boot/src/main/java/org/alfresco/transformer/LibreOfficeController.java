@@ -26,10 +26,14 @@
  */
 package org.alfresco.transformer;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.alfresco.transformer.executors.LibreOfficeJavaExecutor;
+import org.alfresco.transformer.executors.LibreOfficePoolSettings;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.probes.ProbeTestTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 
@@ -81,12 +85,69 @@ public class LibreOfficeController extends AbstractTransformerController
     @Value("${transform.core.libreoffice.isEnabled}")
     private String isEnabled;
 
+    @Value("${transform.core.libreoffice.maxInstances:0}")
+    private int maxInstances;
+
+    @Value("${transform.core.libreoffice.instanceIdleSeconds:300}")
+    private long instanceIdleSeconds;
+
+    @Value("${transform.core.libreoffice.instanceMemoryMb:512}")
+    private long instanceMemoryMb;
+
+    @Value("${transform.core.libreoffice.memoryBudgetMb:0}")
+    private long memoryBudgetMb;
+
+    @Value("${transform.core.libreoffice.maxInstanceRssMb:0}")
+    private long maxInstanceRssMb;
+
+    @Value("${transform.core.libreoffice.maxConsecutiveTimeouts:2}")
+    private int maxConsecutiveTimeouts;
+
+    @Value("${transform.core.libreoffice.degradedLatencyFactor:3}")
+    private double degradedLatencyFactor;
+
+    @Value("${transform.core.libreoffice.profileWorkDir:}")
+    private String profileWorkDir;
+
+    @Value("${transform.core.libreoffice.timeoutQuantile:0.999}")
+    private double timeoutQuantile;
+
+    @Value("${transform.core.libreoffice.timeoutSafetyFactor:3}")
+    private double timeoutSafetyFactor;
+
+    @Value("${transform.core.libreoffice.minTimeoutMs:30000}")
+    private long minTimeoutMs;
+
+    @Value("${transform.core.libreoffice.maxInMemoryTargetKb:4096}")
+    private int maxInMemoryTargetKb;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     LibreOfficeJavaExecutor javaExecutor;
 
     @PostConstruct
     private void init()
     {
-        javaExecutor = new LibreOfficeJavaExecutor(execPath, maxTasksPerProcess, timeout, portNumbers, templateProfileDir, isEnabled);
+        LibreOfficePoolSettings poolSettings = new LibreOfficePoolSettings()
+            .withMaxInstances(maxInstances)
+            .withInstanceIdleSeconds(instanceIdleSeconds)
+            .withInstanceMemoryMb(instanceMemoryMb)
+            .withMemoryBudgetMb(memoryBudgetMb)
+            .withMaxInstanceRssMb(maxInstanceRssMb)
+            .withMaxConsecutiveTimeouts(maxConsecutiveTimeouts)
+            .withDegradedLatencyFactor(degradedLatencyFactor)
+            .withProfileWorkDir(profileWorkDir)
+            .withTimeoutQuantile(timeoutQuantile)
+            .withTimeoutSafetyFactor(timeoutSafetyFactor)
+            .withMinTimeoutMs(minTimeoutMs);
+        javaExecutor = new LibreOfficeJavaExecutor(execPath, maxTasksPerProcess, timeout, portNumbers,
+            templateProfileDir, isEnabled, poolSettings);
+        javaExecutor.setMaxInMemoryTargetBytes(maxInMemoryTargetKb * 1024);
+        if (meterRegistry != null)
+        {
+            javaExecutor.bindTo(meterRegistry);
+        }
     }
 
     @Override
@@ -128,6 +189,14 @@ public class LibreOfficeController extends AbstractTransformerController
     public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
                                  Map<String, String> transformOptions, File sourceFile, File targetFile)
     {
-        javaExecutor.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+        transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+            TransformTarget.of(targetFile));
+    }
+
+    @Override
+    public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
+                                 Map<String, String> transformOptions, File sourceFile, TransformTarget target)
+    {
+        javaExecutor.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, target);
     }
 }
@@ -35,15 +35,23 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
 import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.util.StringUtils.getFilenameExtension;
 
@@ -56,13 +64,23 @@ import java.util.UUID;
 
 import javax.annotation.PostConstruct;
 
+import com.sun.star.beans.PropertyValue;
+import com.sun.star.frame.XComponentLoader;
+import com.sun.star.frame.XStorable;
+import com.sun.star.io.XOutputStream;
+import com.sun.star.lang.XComponent;
+import com.sun.star.lang.XServiceInfo;
 import org.alfresco.transform.client.model.TransformReply;
 import org.alfresco.transform.client.model.TransformRequest;
+import org.alfresco.transformer.executors.JodConverter;
 import org.alfresco.transformer.executors.LibreOfficeJavaExecutor;
 import org.alfresco.transformer.executors.RuntimeExec.ExecutionResult;
 import org.alfresco.transformer.model.FileRefEntity;
 import org.alfresco.transformer.model.FileRefResponse;
+import org.artofsolving.jodconverter.office.OfficeContext;
 import org.artofsolving.jodconverter.office.OfficeException;
+import org.artofsolving.jodconverter.office.OfficeManager;
+import org.artofsolving.jodconverter.office.OfficeTask;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -211,6 +229,83 @@ public class LibreOfficeControllerTest extends AbstractTransformerControllerTest
                 containsString("LibreOffice server conversion failed:")));
     }
 
+    /**
+     * Runs single target conversions through the real {@code LibreOfficeStreamTask}, with an office manager that
+     * hands it mocked UNO objects. The stored document is the expected target.
+     */
+    private void mockStreamConversion(int maxInMemoryTargetBytes) throws Exception
+    {
+        XComponent document = mock(XComponent.class,
+            withSettings().extraInterfaces(XServiceInfo.class, XStorable.class));
+        when(((XServiceInfo) document).supportsService("com.sun.star.text.GenericTextDocument")).thenReturn(true);
+        doAnswer(invocation ->
+        {
+            for (PropertyValue property : (PropertyValue[]) invocation.getArgument(1))
+            {
+                if ("OutputStream".equals(property.Name))
+                {
+                    XOutputStream outputStream = (XOutputStream) property.Value;
+                    outputStream.writeBytes(expectedTargetFileBytes);
+                    outputStream.closeOutput();
+                }
+            }
+            return null;
+        }).when((XStorable) document).storeToURL(eq("private:stream"), any());
+
+        XComponentLoader loader = mock(XComponentLoader.class);
+        when(loader.loadComponentFromURL(anyString(), anyString(), anyInt(), any())).thenReturn(document);
+        OfficeContext officeContext = mock(OfficeContext.class);
+        when(officeContext.getService(any())).thenReturn(loader);
+
+        OfficeManager officeManager = mock(OfficeManager.class);
+        doAnswer(invocation ->
+        {
+            ((OfficeTask) invocation.getArgument(0)).execute(officeContext);
+            return null;
+        }).when(officeManager).execute(any());
+        JodConverter jodConverter = mock(JodConverter.class);
+        when(jodConverter.getOfficeManager()).thenReturn(officeManager);
+
+        ReflectionTestUtils.setField(javaExecutor, "jodconverter", jodConverter);
+        javaExecutor.setMaxInMemoryTargetBytes(maxInMemoryTargetBytes);
+    }
+
+    @Test
+    public void targetCapturedInMemoryTest() throws Exception
+    {
+        mockStreamConversion(1024 * 1024);
+
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param(TARGET_EXTENSION, targetExtension)
+                .param(SOURCE_MIMETYPE, sourceMimetype)
+                .param(TARGET_MIMETYPE, targetMimetype))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes));
+
+        verify(javaExecutor, never()).convert(any(), any());
+    }
+
+    @Test
+    public void capturedTargetSpilledToFileTest() throws Exception
+    {
+        mockStreamConversion(expectedTargetFileBytes.length / 2);
+
+        mockMvc
+            .perform(MockMvcRequestBuilders
+                .multipart("/transform")
+                .file(sourceFile)
+                .param(TARGET_EXTENSION, targetExtension)
+                .param(SOURCE_MIMETYPE, sourceMimetype)
+                .param(TARGET_MIMETYPE, targetMimetype))
+            .andExpect(status().is(OK.value()))
+            .andExpect(content().bytes(expectedTargetFileBytes));
+
+        verify(javaExecutor, never()).convert(any(), any());
+    }
+
     @Override
     protected void updateTransformRequestWithSpecificOptions(TransformRequest transformRequest)
     {
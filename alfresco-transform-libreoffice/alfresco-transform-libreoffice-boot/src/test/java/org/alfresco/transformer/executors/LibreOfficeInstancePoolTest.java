@@ -0,0 +1,512 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.artofsolving.jodconverter.office.OfficeException;
+import org.artofsolving.jodconverter.office.OfficeManager;
+import org.artofsolving.jodconverter.office.OfficeTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link LibreOfficeInstancePool} with office managers that run tasks without LibreOffice.
+ */
+public class LibreOfficeInstancePoolTest
+{
+    private final List<FakeOfficeManager> officeManagers = new CopyOnWriteArrayList<>();
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private LibreOfficeInstancePool pool;
+
+    @AfterEach
+    public void after()
+    {
+        unblock.countDown();
+        if (pool != null)
+        {
+            pool.stop();
+        }
+    }
+
+    private LibreOfficeInstancePool startPool(long taskQueueTimeoutMs, LibreOfficePoolSettings settings,
+        int... portNumbers)
+    {
+        createPool(taskQueueTimeoutMs, settings, portNumbers).start();
+        return pool;
+    }
+
+    private LibreOfficeInstancePool createPool(long taskQueueTimeoutMs, LibreOfficePoolSettings settings,
+        int... portNumbers)
+    {
+        pool = new LibreOfficeInstancePool(portNumber ->
+        {
+            FakeOfficeManager officeManager = new FakeOfficeManager(portNumber);
+            officeManagers.add(officeManager);
+            return officeManager;
+        }, portNumbers, taskQueueTimeoutMs, settings, 4);
+        return pool;
+    }
+
+    private final OfficeTask blockingTask = context ->
+    {
+        blocked.countDown();
+        try
+        {
+            unblock.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    };
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private CompletableFuture<Void> executeBlockingTask() throws InterruptedException
+    {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> pool.execute(blockingTask));
+        assertTrue(blocked.await(5, SECONDS));
+        return future;
+    }
+
+    @Test
+    public void testFixedSizeByDefault()
+    {
+        startPool(1000, new LibreOfficePoolSettings(), 8100, 8101);
+
+        assertEquals(2, pool.getInstanceCount());
+        assertEquals(2, pool.getMaxInstances());
+        assertEquals(8100, officeManagers.get(0).portNumber);
+        assertEquals(8101, officeManagers.get(1).portNumber);
+        assertTrue(officeManagers.stream().allMatch(officeManager -> officeManager.running));
+    }
+
+    @Test
+    public void testStartsAndWarmsUpCoreInstancesInParallel()
+    {
+        CountDownLatch starting = new CountDownLatch(2);
+        List<OfficeManager> warmedUp = new CopyOnWriteArrayList<>();
+        pool = new LibreOfficeInstancePool(portNumber -> new FakeOfficeManager(portNumber)
+        {
+            @Override
+            public void start()
+            {
+                starting.countDown();
+                try
+                {
+                    if (!starting.await(5, SECONDS))
+                    {
+                        throw new OfficeException("The instances were started one after another");
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                super.start();
+            }
+        }, new int[]{8100, 8101}, 1000, new LibreOfficePoolSettings(), 4);
+        pool.setInstanceWarmer(warmedUp::add);
+        pool.start();
+
+        assertEquals(2, pool.getInstanceCount());
+        assertEquals(2, warmedUp.size());
+    }
+
+    @Test
+    public void testEffectiveMaxInstances()
+    {
+        assertEquals(4, new LibreOfficePoolSettings().withMaxInstances(8).getEffectiveMaxInstances(1, 4));
+        assertEquals(3, new LibreOfficePoolSettings().withMaxInstances(3).getEffectiveMaxInstances(1, 4));
+        assertEquals(2, new LibreOfficePoolSettings().withMaxInstances(8).withMemoryBudgetMb(1024)
+                                                      .getEffectiveMaxInstances(1, 4));
+        // Never fewer than the configured port numbers
+        assertEquals(3, new LibreOfficePoolSettings().withMaxInstances(8).withMemoryBudgetMb(512)
+                                                      .getEffectiveMaxInstances(3, 2));
+    }
+
+    @Test
+    public void testGrowsWhenTasksWaitAndShrinksWhenIdle() throws Exception
+    {
+        startPool(5000, new LibreOfficePoolSettings().withMaxInstances(2).withInstanceIdleSeconds(0), 8100);
+        CompletableFuture<Void> first = executeBlockingTask();
+
+        // Runs on an extra instance, as the core instance is busy
+        pool.execute(context -> {});
+        assertEquals(2, pool.getInstanceCount());
+        FakeOfficeManager extra = officeManagers.get(1);
+        assertNotEquals(8100, extra.portNumber);
+        assertEquals(1, extra.tasks);
+
+        unblock.countDown();
+        first.get(5, SECONDS);
+        pool.stopIdleInstances();
+        assertEquals(1, pool.getInstanceCount());
+        assertFalse(extra.running);
+        assertTrue(officeManagers.get(0).running);
+    }
+
+    @Test
+    public void testTaskQueueTimeout() throws Exception
+    {
+        startPool(100, new LibreOfficePoolSettings(), 8100);
+        executeBlockingTask();
+
+        OfficeException e = assertThrows(OfficeException.class, () -> pool.execute(context -> {}));
+        assertTrue(e.getMessage().contains("100ms"), e.getMessage());
+        assertEquals(1, officeManagers.size());
+    }
+
+    @Test
+    public void testExecutionTimeExcludesWaitForInstance() throws Exception
+    {
+        startPool(5000, new LibreOfficePoolSettings(), 8100);
+        CompletableFuture<Void> first = executeBlockingTask();
+
+        AtomicLong executionMs = new AtomicLong(-1);
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() ->
+        {
+            long start = System.nanoTime();
+            pool.withTimeout(0, executionMs::set).execute(context -> {});
+            return MILLISECONDS.convert(System.nanoTime() - start, NANOSECONDS);
+        });
+        sleep(300);
+        unblock.countDown();
+        first.get(5, SECONDS);
+
+        long elapsedMs = second.get(5, SECONDS);
+        assertTrue(elapsedMs >= 300, "elapsed " + elapsedMs);
+        assertTrue(executionMs.get() >= 0 && executionMs.get() < 300, "execution " + executionMs.get());
+    }
+
+    @Test
+    public void testMetrics() throws Exception
+    {
+        createPool(1000, new LibreOfficePoolSettings().withMaxInstances(3), 8100, 8101);
+        pool.setInstanceWarmer(officeManager -> sleep(50));
+        pool.start();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        pool.bindTo(registry);
+        executeBlockingTask();
+
+        assertEquals(2, registry.get("libreoffice.pool.instances").gauge().value());
+        assertEquals(1, registry.get("libreoffice.pool.busy").gauge().value());
+        assertEquals(0, registry.get("libreoffice.pool.queue").gauge().value());
+        assertEquals(3, registry.get("libreoffice.pool.max").gauge().value());
+        assertTrue(registry.get("libreoffice.pool.startup").timeGauge().value(MILLISECONDS) >= 50);
+        assertTrue(registry.get("libreoffice.instance.startup").tag("stage", "warmup").timeGauge()
+                           .value(MILLISECONDS) >= 50);
+        assertTrue(registry.get("libreoffice.instance.startup").tag("stage", "start").timeGauge()
+                           .value(MILLISECONDS) >= 0);
+    }
+
+    @Test
+    public void testRecyclesAfterMaxTasks() throws Exception
+    {
+        CountDownLatch warmUp = new CountDownLatch(1);
+        List<OfficeManager> warmedUp = new CopyOnWriteArrayList<>();
+        createPool(1000, new LibreOfficePoolSettings(), 8100);
+        pool.setRecycling(2, 0);
+        pool.setInstanceWarmer(officeManager ->
+        {
+            if (officeManager != officeManagers.get(0))
+            {
+                await(warmUp);
+            }
+            warmedUp.add(officeManager);
+        });
+        pool.start();
+        FakeOfficeManager original = officeManagers.get(0);
+        assertEquals(List.of(original), warmedUp);
+
+        pool.execute(context -> {});
+        pool.execute(context -> {});
+        // The original instance carries on running tasks while the replacement is warming up
+        waitFor(() -> officeManagers.size() == 2);
+        pool.execute(context -> {});
+        assertEquals(3, original.tasks);
+        assertTrue(original.running);
+
+        warmUp.countDown();
+        waitFor(() -> pool.getRecycledInstanceCount() == 1);
+        FakeOfficeManager replacement = officeManagers.get(1);
+        assertEquals(List.of(original, replacement), warmedUp);
+        assertFalse(original.running);
+        assertTrue(replacement.running);
+        assertNotEquals(8100, replacement.portNumber);
+        assertEquals(1, pool.getInstanceCount());
+
+        pool.execute(context -> {});
+        assertEquals(1, replacement.tasks);
+    }
+
+    @Test
+    public void testRecyclesBusyInstanceOnceItsTaskHasFinished() throws Exception
+    {
+        createPool(1000, new LibreOfficePoolSettings(), 8100);
+        pool.setRecycling(0, 512 * 1024 * 1024);
+        pool.setRssProbe(portNumber -> portNumber == 8100 ? 600 * 1024 * 1024 : 100 * 1024 * 1024);
+        pool.start();
+        FakeOfficeManager original = officeManagers.get(0);
+
+        pool.execute(context -> {});
+        waitFor(() -> pool.getRecycledInstanceCount() == 1);
+        assertFalse(original.running);
+
+        // The replacement is under the threshold, so is kept, even when busy as the check runs
+        CompletableFuture<Void> task = executeBlockingTask();
+        pool.checkInstances();
+        unblock.countDown();
+        task.get(5, SECONDS);
+        assertEquals(1, pool.getRecycledInstanceCount());
+        assertTrue(officeManagers.get(1).running);
+    }
+
+    @Test
+    public void testKeepsInstanceIfReplacementFails() throws Exception
+    {
+        createPool(1000, new LibreOfficePoolSettings(), 8100);
+        pool.setRecycling(1, 0);
+        pool.setInstanceWarmer(officeManager ->
+        {
+            throw new OfficeException("Failed to convert");
+        });
+        pool.start();
+
+        waitFor(() ->
+        {
+            // Tried again after a later task
+            pool.execute(context -> {});
+            return officeManagers.size() >= 3;
+        });
+        waitFor(() -> !officeManagers.get(1).running);
+        assertEquals(0, pool.getRecycledInstanceCount());
+        assertTrue(officeManagers.get(0).running);
+        assertEquals(1, pool.getInstanceCount());
+    }
+
+    @Test
+    public void testRoutesToFastestFreeInstance() throws Exception
+    {
+        startPool(1000, new LibreOfficePoolSettings(), 8100, 8101);
+        officeManagers.get(0).delayMs = 50;
+
+        for (int i = 0; i < 3; i++)
+        {
+            pool.execute(context -> {});
+        }
+        assertEquals(1, officeManagers.get(0).tasks);
+        assertEquals(2, officeManagers.get(1).tasks);
+        assertTrue(pool.getInstanceStats().get(0).getAverageMs() >= 50);
+    }
+
+    @Test
+    public void testRecyclesAfterConsecutiveTimeouts() throws Exception
+    {
+        startPool(1000, new LibreOfficePoolSettings().withMaxConsecutiveTimeouts(2), 8100);
+        FakeOfficeManager original = officeManagers.get(0);
+        original.timingOut = true;
+
+        for (int i = 0; i < 2; i++)
+        {
+            assertThrows(OfficeException.class, () -> pool.execute(context -> {}));
+        }
+        assertEquals(2, pool.getTimedOutTaskCount());
+        waitFor(() -> pool.getRecycledInstanceCount() == 1);
+        assertFalse(original.running);
+        assertEquals(0, pool.getInstanceStats().get(0).getTimeouts());
+    }
+
+    @Test
+    public void testRecyclesSlowInstance() throws Exception
+    {
+        startPool(1000, new LibreOfficePoolSettings().withDegradedLatencyFactor(3), 8100, 8101);
+        officeManagers.get(0).delayMs = 20;
+        officeManagers.get(1).delayMs = 100;
+
+        // Pairs of concurrent tasks, so that both instances are used
+        for (int i = 0; i < 50 && pool.getRecycledInstanceCount() == 0; i++)
+        {
+            CompletableFuture.allOf(CompletableFuture.runAsync(() -> pool.execute(context -> {})),
+                CompletableFuture.runAsync(() -> pool.execute(context -> {}))).get(5, SECONDS);
+        }
+        waitFor(() -> pool.getRecycledInstanceCount() == 1);
+        assertTrue(officeManagers.get(0).running);
+        assertFalse(officeManagers.get(1).running);
+        assertEquals(2, pool.getInstanceCount());
+    }
+
+    @Test
+    public void testKillsTaskThatExceedsItsTimeout() throws Exception
+    {
+        List<Integer> killed = new CopyOnWriteArrayList<>();
+        createPool(1000, new LibreOfficePoolSettings(), 8100);
+        pool.setProcessKiller(portNumber ->
+        {
+            killed.add(portNumber);
+            officeManagers.get(0).kill();
+        });
+        pool.start();
+        officeManagers.get(0).delayMs = 5000;
+
+        OfficeException e = assertThrows(OfficeException.class,
+            () -> pool.withTimeout(100).execute(context -> {}));
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertEquals(List.of(8100), killed);
+        assertEquals(1, pool.getTimedOutTaskCount());
+
+        // A task that finishes in time is left alone
+        officeManagers.get(0).delayMs = 0;
+        pool.withTimeout(1000).execute(context -> {});
+        assertEquals(1, killed.size());
+        assertEquals(1, pool.getTimedOutTaskCount());
+    }
+
+    @Test
+    public void testParseVmRss()
+    {
+        assertEquals(12345 * 1024L, OfficeProcesses.parseVmRss("Name:\tsoffice.bin\nVmRSS:\t   12345 kB\n"));
+        assertEquals(OfficeProcesses.UNKNOWN, OfficeProcesses.parseVmRss("Name:\tsoffice.bin\n"));
+    }
+
+    private static void sleep(long ms)
+    {
+        try
+        {
+            Thread.sleep(ms);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class FakeOfficeManager implements OfficeManager
+    {
+        private final int portNumber;
+        private volatile boolean running;
+        private volatile int tasks;
+        private volatile long delayMs;
+        private volatile boolean timingOut;
+        private volatile Thread executing;
+
+        private FakeOfficeManager(int portNumber)
+        {
+            this.portNumber = portNumber;
+        }
+
+        @Override
+        public void execute(OfficeTask task)
+        {
+            tasks++;
+            if (timingOut)
+            {
+                throw new OfficeException("task did not complete within timeout", new TimeoutException());
+            }
+            executing = Thread.currentThread();
+            try
+            {
+                Thread.sleep(delayMs);
+            }
+            catch (InterruptedException e)
+            {
+                // As JodConverter does when the process is killed
+                throw new OfficeException("task failed", e);
+            }
+            finally
+            {
+                executing = null;
+            }
+            task.execute(null);
+        }
+
+        private void kill()
+        {
+            Thread thread = executing;
+            if (thread != null)
+            {
+                thread.interrupt();
+            }
+        }
+
+        @Override
+        public void start()
+        {
+            running = true;
+        }
+
+        @Override
+        public void stop()
+        {
+            running = false;
+        }
+
+        @Override
+        public boolean isRunning()
+        {
+            return running;
+        }
+    }
+}
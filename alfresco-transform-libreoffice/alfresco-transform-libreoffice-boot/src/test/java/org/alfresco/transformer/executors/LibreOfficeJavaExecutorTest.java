@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.executors.LibreOfficeJavaExecutor.getLoadProperties;
+import static org.alfresco.transformer.executors.LibreOfficeJavaExecutor.getPageRange;
+import static org.alfresco.transformer.executors.LibreOfficeJavaExecutor.parseTargetExtensions;
+import static org.alfresco.transformer.util.RequestParamMap.PAGE_LIMIT;
+import static org.alfresco.transformer.util.RequestParamMap.PAGE_RANGE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the parts of {@link LibreOfficeJavaExecutor} that do not need LibreOffice.
+ */
+public class LibreOfficeJavaExecutorTest
+{
+    @Test
+    public void testParseTargetExtensions()
+    {
+        assertEquals(List.of("pdf"), parseTargetExtensions("pdf"));
+        assertEquals(List.of("pdf", "html", "odt"), parseTargetExtensions(" PDF, .html,odt,pdf"));
+    }
+
+    @Test
+    public void testParseInvalidTargetExtensions()
+    {
+        assertThrows(TransformException.class, () -> parseTargetExtensions("pdf,"));
+        assertThrows(TransformException.class, () -> parseTargetExtensions("pdf,,html"));
+        assertThrows(TransformException.class,
+            () -> parseTargetExtensions("a,b,c,d,e,f,g,h,i,j,k"));
+    }
+
+    @Test
+    public void testGetPageRange()
+    {
+        assertNull(getPageRange(Map.of()));
+        assertEquals("1-3", getPageRange(Map.of(PAGE_LIMIT, "3")));
+        assertNull(getPageRange(Map.of(PAGE_LIMIT, "-1")));
+        assertEquals("2", getPageRange(Map.of(PAGE_RANGE, "2")));
+        assertEquals("1-3,5,7-9", getPageRange(Map.of(PAGE_RANGE, " 1-3, 5,7-9 ")));
+        assertNull(getPageRange(Map.of(PAGE_RANGE, " ")));
+    }
+
+    @Test
+    public void testGetInvalidPageRange()
+    {
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_LIMIT, "two")));
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_RANGE, "0-2")));
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_RANGE, "3-1")));
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_RANGE, "1-2-3")));
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_RANGE, "1,")));
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_RANGE, "99999999999")));
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_LIMIT, "2", PAGE_RANGE, "1")));
+    }
+
+    @Test
+    public void testPageRangeOnlyForPdfTargets()
+    {
+        assertEquals("1-3", getPageRange(Map.of(PAGE_LIMIT, "3"), true));
+        assertNull(getPageRange(Map.of(), false));
+        TransformException e = assertThrows(TransformException.class,
+            () -> getPageRange(Map.of(PAGE_LIMIT, "3"), false));
+        assertEquals(BAD_REQUEST.value(), e.getStatusCode());
+        assertThrows(TransformException.class, () -> getPageRange(Map.of(PAGE_RANGE, "2"), false));
+    }
+
+    @Test
+    public void testStreamLoadProperties()
+    {
+        Map<String, Object> loadProperties = getLoadProperties("unknown");
+        assertEquals(true, loadProperties.get("Hidden"));
+        assertEquals(true, loadProperties.get("ReadOnly"));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.executors.LibreOfficeTimeoutPolicy.MIN_SAMPLES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link LibreOfficeTimeoutPolicy}.
+ */
+public class LibreOfficeTimeoutPolicyTest
+{
+    private static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+    private static final String XLSX = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private final LibreOfficeTimeoutPolicy policy = new LibreOfficeTimeoutPolicy(0.999, 3, 1000, 1200000);
+
+    private void record(String sourceMimetype, long sourceSize, long durationMs, int times)
+    {
+        for (int i = 0; i < times; i++)
+        {
+            policy.recordDuration(sourceMimetype, sourceSize, durationMs);
+        }
+    }
+
+    @Test
+    public void testUsesGlobalTimeoutUntilEnoughConversions()
+    {
+        record(DOCX, 50000, 2000, MIN_SAMPLES - 1);
+        assertEquals(0, policy.getTimeoutMs(DOCX, 50000, null));
+
+        record(DOCX, 50000, 2000, 1);
+        long timeoutMs = policy.getTimeoutMs(DOCX, 50000, null);
+        assertTrue(timeoutMs >= 6000 && timeoutMs < 6000 * 1.1, "timeout " + timeoutMs);
+    }
+
+    @Test
+    public void testKeyedByMimetypeAndSize()
+    {
+        record(DOCX, 50000, 2000, MIN_SAMPLES);
+        record(XLSX, 5000000, 100000, MIN_SAMPLES);
+
+        assertTrue(policy.getTimeoutMs(DOCX, 60000, null) < 10000);
+        assertEquals(0, policy.getTimeoutMs(DOCX, 5000000, null));
+        assertEquals(0, policy.getTimeoutMs(XLSX, 50000, null));
+        assertTrue(policy.getTimeoutMs(XLSX, 5000000, null) >= 300000);
+    }
+
+    @Test
+    public void testUsesTheQuantile()
+    {
+        record(DOCX, 50000, 100, 998);
+        record(DOCX, 50000, 10000, 2);
+
+        long timeoutMs = policy.getTimeoutMs(DOCX, 50000, null);
+        assertTrue(timeoutMs >= 30000, "timeout " + timeoutMs);
+    }
+
+    @Test
+    public void testMinimumAndMaximum()
+    {
+        record(DOCX, 50000, 10, MIN_SAMPLES);
+        assertEquals(1000, policy.getTimeoutMs(DOCX, 50000, null));
+
+        // No shorter than the global timeout, so it is left to JodConverter
+        record(XLSX, 50000, 500000, MIN_SAMPLES);
+        assertEquals(0, policy.getTimeoutMs(XLSX, 50000, null));
+    }
+
+    @Test
+    public void testRequestTimeoutTakesPrecedence()
+    {
+        record(DOCX, 50000, 2000, MIN_SAMPLES);
+
+        assertEquals(500, policy.getTimeoutMs(DOCX, 50000, 500L));
+        assertEquals(500, policy.getTimeoutMs(XLSX, 50000, 500L));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        LibreOfficeTimeoutPolicy disabled = new LibreOfficeTimeoutPolicy(0.999, 0, 1000, 1200000);
+        for (int i = 0; i < MIN_SAMPLES; i++)
+        {
+            disabled.recordDuration(DOCX, 50000, 2000);
+        }
+        assertEquals(0, disabled.getTimeoutMs(DOCX, 50000, null));
+        assertEquals(500, disabled.getTimeoutMs(DOCX, 50000, 500L));
+    }
+
+    @Test
+    public void testBuckets()
+    {
+        assertEquals(0, LibreOfficeTimeoutPolicy.getSizeBucket(0));
+        assertEquals(1, LibreOfficeTimeoutPolicy.getSizeBucket(1));
+        assertEquals(10, LibreOfficeTimeoutPolicy.getSizeBucket(1023));
+        assertEquals(11, LibreOfficeTimeoutPolicy.getSizeBucket(1024));
+
+        for (long durationMs : new long[]{2, 10, 999, 123456})
+        {
+            long upperBoundMs = LibreOfficeTimeoutPolicy.getDurationBucketUpperBoundMs(
+                LibreOfficeTimeoutPolicy.getDurationBucket(durationMs));
+            assertTrue(upperBoundMs >= durationMs && upperBoundMs <= durationMs * 1.1 + 1, "bound " + upperBoundMs);
+        }
+    }
+}
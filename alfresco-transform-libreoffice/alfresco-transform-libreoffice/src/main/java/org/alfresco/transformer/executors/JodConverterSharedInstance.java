@@ -30,6 +30,9 @@ import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -37,6 +40,7 @@ import java.util.StringTokenizer;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import org.artofsolving.jodconverter.OfficeDocumentConverter;
 import org.artofsolving.jodconverter.office.DefaultOfficeManagerConfiguration;
 import org.artofsolving.jodconverter.office.OfficeException;
 import org.artofsolving.jodconverter.office.OfficeManager;
@@ -55,6 +59,15 @@ public class JodConverterSharedInstance implements JodConverter
 {
     private static final Logger logger = LoggerFactory.getLogger(JodConverterSharedInstance.class);
 
+    // JodConverter's defaults, which are needed as the pool rather than JodConverter decides on the instances
+    private static final int DEFAULT_PORT_NUMBER = 2002;
+    private static final long DEFAULT_TASK_QUEUE_TIMEOUT = 30000;
+    private static final int DEFAULT_MAX_TASKS_PER_PROCESS = 200;
+
+    // LibreOffice writes to its profile as it starts, so the copies are made on a tmpfs if there is space
+    private static final File TMPFS_DIR = new File("/dev/shm");
+    private static final long PROFILE_SPACE_BYTES = 16 * 1024 * 1024;
+
     private OfficeManager officeManager;
     private boolean isAvailable = false;
 
@@ -77,8 +90,10 @@ public class JodConverterSharedInstance implements JodConverter
     private Long taskExecutionTimeout;
     private Long taskQueueTimeout;
     private File templateProfileDir;
+    private File profileWorkDir;
     private Boolean enabled;
     private Long connectTimeout;
+    private LibreOfficePoolSettings poolSettings = new LibreOfficePoolSettings();
 
     private String deprecatedOooExe;
     private Boolean deprecatedOooEnabled;
@@ -179,6 +194,11 @@ public class JodConverterSharedInstance implements JodConverter
         this.connectTimeout = parseStringForLong(connectTimeout.trim());
     }
 
+    void setPoolSettings(LibreOfficePoolSettings poolSettings)
+    {
+        this.poolSettings = poolSettings;
+    }
+
     void setEnabled(final String enabledStr)
     {
         enabled = parseEnabled(enabledStr);
@@ -310,6 +330,12 @@ public class JodConverterSharedInstance implements JodConverter
             logger.debug("  jodconverter.taskQueueTimeout = {}", taskQueueTimeout);
             logger.debug("  jodconverter.connectTimeout = {}", connectTimeout);
             logger.debug("  jodconverter.url = {}", url);
+            logger.debug("  pool.maxInstances = {}", poolSettings.getMaxInstances());
+            logger.debug("  pool.instanceIdleSeconds = {}", poolSettings.getInstanceIdleSeconds());
+            logger.debug("  pool.instanceMemoryMb = {}", poolSettings.getInstanceMemoryMb());
+            logger.debug("  pool.memoryBudgetMb = {}", poolSettings.getMemoryBudgetMb());
+            logger.debug("  pool.maxInstanceRssMb = {}", poolSettings.getMaxInstanceRssMb());
+            logger.debug("  pool.profileWorkDir = {}", poolSettings.getProfileWorkDir());
         }
 
         // Only start the JodConverter instance(s) if the subsystem is enabled.
@@ -325,37 +351,28 @@ public class JodConverterSharedInstance implements JodConverter
 
             try
             {
-                DefaultOfficeManagerConfiguration defaultOfficeMgrConfig = new DefaultOfficeManagerConfiguration();
-                if (maxTasksPerProcess != null && maxTasksPerProcess > 0)
-                {
-                    defaultOfficeMgrConfig.setMaxTasksPerProcess(maxTasksPerProcess);
-                }
-                if (officeHome != null && officeHome.length() != 0)
-                {
-                    defaultOfficeMgrConfig.setOfficeHome(officeHome);
-                }
-                if (portNumbers != null && portNumbers.length != 0)
-                {
-                    defaultOfficeMgrConfig.setPortNumbers(portNumbers);
-                }
-                if (taskExecutionTimeout != null && taskExecutionTimeout > 0)
-                {
-                    defaultOfficeMgrConfig.setTaskExecutionTimeout(taskExecutionTimeout);
-                }
-                if (taskQueueTimeout != null && taskQueueTimeout > 0)
-                {
-                    defaultOfficeMgrConfig.setTaskQueueTimeout(taskQueueTimeout);
-                }
-                if (templateProfileDir != null)
-                {
-                    defaultOfficeMgrConfig.setTemplateProfileDir(templateProfileDir);
-                }
-                if (connectTimeout != null)
-                {
-                    defaultOfficeMgrConfig.setConnectTimeout(connectTimeout);
-                }
-                // Try to configure and start the JodConverter library.
-                officeManager = defaultOfficeMgrConfig.buildOfficeManager();
+                // Try to configure and start the JodConverter library, with one office manager per instance.
+                int[] corePortNumbers = portNumbers != null && portNumbers.length != 0
+                                        ? portNumbers
+                                        : new int[]{DEFAULT_PORT_NUMBER};
+                long poolQueueTimeout = taskQueueTimeout != null && taskQueueTimeout > 0
+                                        ? taskQueueTimeout
+                                        : DEFAULT_TASK_QUEUE_TIMEOUT;
+                int cpus = ConcurrencyLimiter.getAvailableCpus();
+                profileWorkDir = getProfileWorkDir(poolSettings.getProfileWorkDir(), TMPFS_DIR,
+                    poolSettings.getEffectiveMaxInstances(corePortNumbers.length, cpus));
+                logger.info("LibreOffice profiles will be created in {}",
+                    profileWorkDir == null ? System.getProperty("java.io.tmpdir") : profileWorkDir);
+                LibreOfficeInstancePool pool = new LibreOfficeInstancePool(
+                    portNumber -> buildOfficeManager(officeHome, portNumber), corePortNumbers, poolQueueTimeout,
+                    poolSettings, cpus);
+                // The pool rather than JodConverter recycles the instances, so that it may warm up a replacement first
+                pool.setRecycling(maxTasksPerProcess != null && maxTasksPerProcess > 0
+                                  ? maxTasksPerProcess
+                                  : DEFAULT_MAX_TASKS_PER_PROCESS,
+                    poolSettings.getMaxInstanceRssMb() * 1024 * 1024);
+                pool.setInstanceWarmer(this::warmUp);
+                officeManager = pool;
                 officeManager.start();
             }
             catch (IllegalStateException e)
@@ -386,6 +403,97 @@ public class JodConverterSharedInstance implements JodConverter
         this.isAvailable = true;
     }
 
+    private OfficeManager buildOfficeManager(String officeHome, int portNumber)
+    {
+        DefaultOfficeManagerConfiguration defaultOfficeMgrConfig = new DefaultOfficeManagerConfiguration();
+        defaultOfficeMgrConfig.setMaxTasksPerProcess(Integer.MAX_VALUE);
+        if (officeHome != null && officeHome.length() != 0)
+        {
+            defaultOfficeMgrConfig.setOfficeHome(officeHome);
+        }
+        defaultOfficeMgrConfig.setPortNumber(portNumber);
+        if (taskExecutionTimeout != null && taskExecutionTimeout > 0)
+        {
+            defaultOfficeMgrConfig.setTaskExecutionTimeout(taskExecutionTimeout);
+        }
+        if (taskQueueTimeout != null && taskQueueTimeout > 0)
+        {
+            defaultOfficeMgrConfig.setTaskQueueTimeout(taskQueueTimeout);
+        }
+        if (templateProfileDir != null)
+        {
+            defaultOfficeMgrConfig.setTemplateProfileDir(templateProfileDir);
+        }
+        if (profileWorkDir != null)
+        {
+            defaultOfficeMgrConfig.setWorkDir(profileWorkDir);
+        }
+        if (connectTimeout != null)
+        {
+            defaultOfficeMgrConfig.setConnectTimeout(connectTimeout);
+        }
+        return defaultOfficeMgrConfig.buildOfficeManager();
+    }
+
+    /**
+     * Works out the directory in which JodConverter creates the copy of the user profile used by each instance.
+     *
+     * @param configured   the configured directory, if any
+     * @param tmpfsDir     used if nothing is configured and it has space for the profiles of all the instances
+     * @param maxInstances the number of instances the pool may grow to
+     * @return the directory, or {@code null} for JodConverter's default, the Java temp directory
+     */
+    static File getProfileWorkDir(String configured, File tmpfsDir, int maxInstances)
+    {
+        if (configured != null && !configured.isBlank())
+        {
+            File dir = new File(configured.trim());
+            if (!dir.isDirectory() || !dir.canWrite())
+            {
+                throw new RuntimeException(
+                    "LibreOffice profile work directory " + configured + " is not a writable directory.");
+            }
+            return dir;
+        }
+        if (tmpfsDir.isDirectory() && tmpfsDir.canWrite() &&
+            tmpfsDir.getUsableSpace() >= PROFILE_SPACE_BYTES * maxInstances)
+        {
+            return tmpfsDir;
+        }
+        return null;
+    }
+
+    /**
+     * Converts a small text document, so that LibreOffice has loaded what it needs before a real request arrives.
+     */
+    private void warmUp(OfficeManager instanceOfficeManager)
+    {
+        File source = null;
+        File target = null;
+        try
+        {
+            source = Files.createTempFile("warm_up_", ".txt").toFile();
+            target = Files.createTempFile("warm_up_", ".pdf").toFile();
+            Files.writeString(source.toPath(), "LibreOffice warm up");
+            new OfficeDocumentConverter(instanceOfficeManager).convert(source, target);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to create the warm up files", e);
+        }
+        finally
+        {
+            if (source != null)
+            {
+                source.delete();
+            }
+            if (target != null)
+            {
+                target.delete();
+            }
+        }
+    }
+
     private String getString(int[] portNumbers)
     {
         StringBuilder portInfo = new StringBuilder();
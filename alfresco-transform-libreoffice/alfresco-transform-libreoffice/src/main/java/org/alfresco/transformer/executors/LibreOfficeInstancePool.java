@@ -0,0 +1,1120 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongConsumer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.artofsolving.jodconverter.office.OfficeException;
+import org.artofsolving.jodconverter.office.OfficeManager;
+import org.artofsolving.jodconverter.office.OfficeTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of LibreOffice instances that grows and shrinks with the load. JodConverter's own pool has one process per
+ * configured port number for its whole life, so each instance here is a single port JodConverter
+ * {@link OfficeManager} and this class decides which of them runs each task.
+ * <p>
+ * The instances on the configured port numbers (the core instances) are started and warmed up in parallel with
+ * the pool, so that it is ready in the time taken by the slowest of them rather than all of them, and are always
+ * kept. When a task has to wait because they are all busy, an extra instance is started in the background on a free
+ * port, up to a maximum that is limited by the CPUs available to the container and by a memory budget (see
+ * {@link LibreOfficePoolSettings#getEffectiveMaxInstances(int, int)}). Extra instances are stopped again once they
+ * have been idle for a cool-down period. A task waits for up to the task queue timeout for an instance, after which
+ * it fails, as it would with JodConverter's own pool.
+ * <p>
+ * Rather than JodConverter restarting an instance once it has run {@code maxTasksPerProcess} tasks, which stalls
+ * the tasks routed to it for the whole start-up time, the pool recycles instances without downtime. A replacement
+ * instance is started and warmed up (its profile is copied from the template profile by JodConverter and it runs a
+ * first conversion, see {@link InstanceWarmer}) while the old instance carries on running tasks. Only then is the
+ * old instance taken out of use, and stopped once its current task has finished. Instances are also recycled if the
+ * resident set size (RSS) of their soffice process grows beyond a threshold, which is checked after each task and
+ * periodically.
+ * <p>
+ * Tasks are routed to the free instance that has been fastest recently, going by a moving average of its
+ * conversion times, and then to the one using the least memory. An instance is considered to be degrading if
+ * several of its tasks in a row time out, or its moving average is a number of times that of the other instances.
+ * It is then only used if no other instance is free, and is recycled. The statistics of each instance are available
+ * from {@link #getInstanceStats()}.
+ * <p>
+ * JodConverter applies the same execution timeout to every task, so a task may also be given a shorter timeout of its
+ * own (see {@link #withTimeout(long)}). If it has not finished by then, the soffice process of its instance is
+ * killed, which makes JodConverter abandon the task and start a new process, rather than the instance being held for
+ * the whole of the global timeout.
+ * <p>
+ * The size of the pool, the number of waiting tasks, the number of recycled instances and how long the pool and
+ * the stages of the last instance to be started took to start up are published as metrics if a
+ * {@link MeterRegistry} is bound.
+ */
+public class LibreOfficeInstancePool implements OfficeManager, MeterBinder
+{
+    private static final Logger logger = LoggerFactory.getLogger(LibreOfficeInstancePool.class);
+
+    private static final long MAX_CHECK_SECONDS = 30;
+    private static final long MB = 1024 * 1024;
+    private static final double AVERAGE_WEIGHT = 0.2;
+    private static final int MIN_TASKS_FOR_LATENCY = 10;
+
+    /**
+     * Creates the {@link OfficeManager} of a single LibreOffice instance.
+     */
+    public interface InstanceFactory
+    {
+        OfficeManager create(int portNumber);
+    }
+
+    /**
+     * Gets a newly started instance ready for use, normally by running a small conversion, so that the first task
+     * routed to it does not pay for loading LibreOffice's libraries and configuration.
+     */
+    public interface InstanceWarmer
+    {
+        void warmUp(OfficeManager officeManager);
+    }
+
+    private final InstanceFactory instanceFactory;
+    private final int[] corePortNumbers;
+    private final int maxInstances;
+    private final long taskQueueTimeoutMs;
+    private final long instanceIdleMs;
+    private final int maxConsecutiveTimeouts;
+    private final double degradedLatencyFactor;
+    private int maxTasksPerInstance;
+    private long maxRssBytes;
+    private InstanceWarmer instanceWarmer = officeManager -> {};
+    private IntToLongFunction rssProbe = OfficeProcesses::getRssBytes;
+    private IntConsumer processKiller = OfficeProcesses::kill;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition instanceAvailable = lock.newCondition();
+    private final List<Instance> instances = new ArrayList<>(); // guarded by lock
+    private int waitingTasks;                                   // guarded by lock
+    private int startingInstances;                              // guarded by lock
+    private volatile boolean running;
+    private final AtomicLong recycledInstances = new AtomicLong();
+    private final AtomicLong timedOutTasks = new AtomicLong();
+    private volatile long poolStartUpMs;
+    private volatile long instanceStartMs;
+    private volatile long instanceWarmUpMs;
+
+    private ExecutorService instanceStarter;
+    private ScheduledExecutorService instanceChecker;
+
+    /**
+     * @param instanceFactory    creates the single port office manager of each instance
+     * @param corePortNumbers    the port numbers of the instances that are always running
+     * @param taskQueueTimeoutMs the maximum time a task waits for a free instance
+     * @param settings           how far the pool may grow and how quickly it shrinks
+     * @param cpus               the CPUs available to the container
+     */
+    public LibreOfficeInstancePool(InstanceFactory instanceFactory, int[] corePortNumbers, long taskQueueTimeoutMs,
+        LibreOfficePoolSettings settings, int cpus)
+    {
+        this.instanceFactory = instanceFactory;
+        this.corePortNumbers = corePortNumbers.clone();
+        this.taskQueueTimeoutMs = taskQueueTimeoutMs;
+        this.instanceIdleMs = SECONDS.toMillis(settings.getInstanceIdleSeconds());
+        this.maxConsecutiveTimeouts = settings.getMaxConsecutiveTimeouts();
+        this.degradedLatencyFactor = settings.getDegradedLatencyFactor();
+        maxInstances = settings.getEffectiveMaxInstances(corePortNumbers.length, cpus);
+        logger.debug("LibreOffice pool of {} to {} instances on {} CPUs", corePortNumbers.length, maxInstances,
+            cpus);
+    }
+
+    /**
+     * @param maxTasksPerInstance the number of tasks after which an instance is recycled. Not used if less than or
+     *                            equal to zero.
+     * @param maxRssBytes         the RSS of an instance's soffice process beyond which it is recycled. Not used if
+     *                            less than or equal to zero.
+     */
+    public void setRecycling(int maxTasksPerInstance, long maxRssBytes)
+    {
+        this.maxTasksPerInstance = maxTasksPerInstance;
+        this.maxRssBytes = maxRssBytes;
+    }
+
+    public void setInstanceWarmer(InstanceWarmer instanceWarmer)
+    {
+        this.instanceWarmer = instanceWarmer;
+    }
+
+    /**
+     * @param rssProbe returns the RSS in bytes of the soffice process on a port, or a negative value if unknown
+     */
+    void setRssProbe(IntToLongFunction rssProbe)
+    {
+        this.rssProbe = rssProbe;
+    }
+
+    /**
+     * @param processKiller kills the soffice process on a port
+     */
+    void setProcessKiller(IntConsumer processKiller)
+    {
+        this.processKiller = processKiller;
+    }
+
+    /**
+     * Starts and warms up the core instances in parallel. An instance that fails to start is still added to the pool
+     * (as JodConverter's own pool does), so that it may be retried by later tasks, but the first failure is rethrown
+     * once all have been started. An instance that fails to warm up is used anyway. The pool is stopped if an
+     * instance cannot be created at all.
+     */
+    @Override
+    public void start() throws OfficeException
+    {
+        long start = System.nanoTime();
+        instanceStarter = Executors.newCachedThreadPool(daemonThreadFactory("libreoffice-instance-starter"));
+        instanceChecker = Executors.newSingleThreadScheduledExecutor(
+            daemonThreadFactory("libreoffice-instance-checker"));
+        long checkMs = Math.max(1000, Math.min(instanceIdleMs, SECONDS.toMillis(MAX_CHECK_SECONDS)));
+        instanceChecker.scheduleWithFixedDelay(this::checkInstances, checkMs, checkMs, MILLISECONDS);
+        running = true;
+
+        List<Instance> coreInstances = new ArrayList<>();
+        for (int portNumber : corePortNumbers)
+        {
+            try
+            {
+                coreInstances.add(new Instance(portNumber, instanceFactory.create(portNumber), true));
+            }
+            catch (RuntimeException e)
+            {
+                // Such as JodConverter being unable to find LibreOffice
+                stop();
+                throw e;
+            }
+        }
+
+        List<Future<OfficeException>> starting = new ArrayList<>();
+        for (Instance instance : coreInstances)
+        {
+            starting.add(instanceStarter.submit(() -> startCoreInstance(instance)));
+        }
+        OfficeException failure = null;
+        for (Future<OfficeException> future : starting)
+        {
+            OfficeException instanceFailure = getStartFailure(future);
+            failure = failure == null ? instanceFailure : failure;
+        }
+        coreInstances.forEach(this::addInstance);
+        poolStartUpMs = NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("Started {} LibreOffice instances in {}ms", coreInstances.size(), poolStartUpMs);
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the reason the core instance failed to start, or {@code null} if it started
+     */
+    private OfficeException startCoreInstance(Instance instance)
+    {
+        try
+        {
+            startAndWarmUp(instance.portNumber, instance.officeManager, "the core", false);
+            return null;
+        }
+        catch (OfficeException e)
+        {
+            return e;
+        }
+    }
+
+    private static OfficeException getStartFailure(Future<OfficeException> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new OfficeException("Interrupted while starting the LibreOffice instances", e);
+        }
+        catch (ExecutionException e)
+        {
+            return new OfficeException("Unable to start a LibreOffice instance", e.getCause());
+        }
+    }
+
+    /**
+     * Starts an instance and then warms it up, recording how long each stage took. The time taken to copy the
+     * template profile is part of the start stage, as JodConverter does it just before starting the process.
+     *
+     * @param warmUpRequired if {@code false}, an instance that fails to warm up is used anyway
+     */
+    private void startAndWarmUp(int portNumber, OfficeManager officeManager, String description,
+        boolean warmUpRequired)
+    {
+        long start = System.nanoTime();
+        officeManager.start();
+        long started = System.nanoTime();
+        try
+        {
+            instanceWarmer.warmUp(officeManager);
+        }
+        catch (RuntimeException e)
+        {
+            if (warmUpRequired)
+            {
+                throw e;
+            }
+            logger.warn("Unable to warm up {} LibreOffice instance on port {}: {}", description, portNumber,
+                e.getMessage());
+        }
+        long startMs = NANOSECONDS.toMillis(started - start);
+        long warmUpMs = NANOSECONDS.toMillis(System.nanoTime() - started);
+        instanceStartMs = startMs;
+        instanceWarmUpMs = warmUpMs;
+        logger.info("Started {} LibreOffice instance on port {} in {}ms (start {}ms, warm up {}ms)", description,
+            portNumber, startMs + warmUpMs, startMs, warmUpMs);
+    }
+
+    @Override
+    public void stop() throws OfficeException
+    {
+        List<Instance> stopping;
+        lock.lock();
+        try
+        {
+            running = false;
+            stopping = new ArrayList<>(instances);
+            instances.clear();
+            instanceAvailable.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (instanceChecker != null)
+        {
+            instanceChecker.shutdownNow();
+            instanceStarter.shutdownNow();
+        }
+        stopping.forEach(this::stopInstance);
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Runs the task on a free instance, waiting for one if they are all busy.
+     */
+    @Override
+    public void execute(OfficeTask task) throws OfficeException
+    {
+        execute(task, 0);
+    }
+
+    /**
+     * As {@link #execute(OfficeTask)}, but the task is abandoned and the soffice process of its instance killed if
+     * it has not finished within the timeout.
+     *
+     * @param timeoutMs the time the task may run for, once it has an instance. If less than or equal to zero, only
+     *                  JodConverter's task execution timeout applies.
+     */
+    public void execute(OfficeTask task, long timeoutMs) throws OfficeException
+    {
+        execute(task, timeoutMs, null);
+    }
+
+    /**
+     * As {@link #execute(OfficeTask, long)}, but also reports the time the task took once it had an instance, whether
+     * or not it succeeded. Unlike timing the call, this does not include the time spent waiting for a free instance.
+     *
+     * @param executionMsListener called with the time in milliseconds, or {@code null}
+     */
+    public void execute(OfficeTask task, long timeoutMs, LongConsumer executionMsListener) throws OfficeException
+    {
+        Instance instance = acquire();
+        long start = System.nanoTime();
+        AtomicBoolean killed = new AtomicBoolean();
+        ScheduledFuture<?> deadline = timeoutMs <= 0 ? null : instanceChecker.schedule(() ->
+        {
+            killed.set(true);
+            logger.warn("LibreOffice task on port {} did not finish within {}ms. Killing its process",
+                instance.portNumber, timeoutMs);
+            processKiller.accept(instance.portNumber);
+        }, timeoutMs, MILLISECONDS);
+        boolean timedOut = false;
+        try
+        {
+            instance.officeManager.execute(task);
+        }
+        catch (OfficeException e)
+        {
+            // JodConverter restarts the process when a task times out or its process is killed
+            timedOut = killed.get() || e.getCause() instanceof TimeoutException;
+            if (killed.get())
+            {
+                throw new OfficeException("task did not complete within its timeout of " + timeoutMs + "ms",
+                    new TimeoutException());
+            }
+            throw e;
+        }
+        finally
+        {
+            if (deadline != null)
+            {
+                deadline.cancel(false);
+            }
+            long executionMs = NANOSECONDS.toMillis(System.nanoTime() - start);
+            release(instance, executionMs, timedOut || killed.get());
+            if (executionMsListener != null)
+            {
+                executionMsListener.accept(executionMs);
+            }
+        }
+    }
+
+    /**
+     * @return a view of the pool that runs each task with the given timeout, such as for use with JodConverter's
+     *         {@code OfficeDocumentConverter}. Starting and stopping it has no effect on the pool.
+     */
+    public OfficeManager withTimeout(long timeoutMs)
+    {
+        return withTimeout(timeoutMs, null);
+    }
+
+    /**
+     * As {@link #withTimeout(long)}, but the time each task took once it had an instance is also reported. See
+     * {@link #execute(OfficeTask, long, LongConsumer)}.
+     */
+    public OfficeManager withTimeout(long timeoutMs, LongConsumer executionMsListener)
+    {
+        return new OfficeManager()
+        {
+            @Override
+            public void execute(OfficeTask task) throws OfficeException
+            {
+                LibreOfficeInstancePool.this.execute(task, timeoutMs, executionMsListener);
+            }
+
+            @Override
+            public void start() throws OfficeException
+            {
+            }
+
+            @Override
+            public void stop() throws OfficeException
+            {
+            }
+
+            @Override
+            public boolean isRunning()
+            {
+                return LibreOfficeInstancePool.this.isRunning();
+            }
+        };
+    }
+
+    private Instance acquire()
+    {
+        long deadline = System.nanoTime() + MILLISECONDS.toNanos(taskQueueTimeoutMs);
+        lock.lock();
+        try
+        {
+            waitingTasks++;
+            try
+            {
+                while (true)
+                {
+                    if (!running)
+                    {
+                        throw new OfficeException("The LibreOffice instance pool is not running");
+                    }
+                    Instance instance = selectInstance();
+                    if (instance != null)
+                    {
+                        instance.busy = true;
+                        return instance;
+                    }
+                    startExtraInstanceIfNeeded();
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        throw new OfficeException("No LibreOffice instance became free within " +
+                            taskQueueTimeoutMs + "ms");
+                    }
+                    instanceAvailable.awaitNanos(remaining);
+                }
+            }
+            finally
+            {
+                waitingTasks--;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new OfficeException("Interrupted while waiting for a LibreOffice instance", e);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     *
+     * @return the preferred free instance, or {@code null} if there is none
+     */
+    private Instance selectInstance()
+    {
+        Instance selected = null;
+        for (Instance instance : instances)
+        {
+            if (!instance.busy && !instance.draining && (selected == null || instance.isPreferredTo(selected)))
+            {
+                selected = instance;
+            }
+        }
+        return selected;
+    }
+
+    private void release(Instance instance, long durationMs, boolean timedOut)
+    {
+        long rssBytes = maxRssBytes > 0 ? rssProbe.applyAsLong(instance.portNumber) : OfficeProcesses.UNKNOWN;
+        if (timedOut)
+        {
+            timedOutTasks.incrementAndGet();
+        }
+        boolean replaced = false;
+        lock.lock();
+        try
+        {
+            instance.busy = false;
+            instance.lastUsed = System.currentTimeMillis();
+            instance.recordTask(durationMs, timedOut, rssBytes);
+            if (instance.draining)
+            {
+                replaced = instances.remove(instance);
+            }
+            else
+            {
+                recycleIfNeeded(instance, rssBytes);
+                instanceAvailable.signal();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (replaced)
+        {
+            stopInstance(instance);
+        }
+    }
+
+    /**
+     * Called with the lock held. Starts a replacement for the instance in the background if it has run too many
+     * tasks, is using too much memory or is degrading. The instance carries on running tasks until the replacement
+     * is ready, but a degrading instance is only used if no other instance is free.
+     */
+    private void recycleIfNeeded(Instance instance, long rssBytes)
+    {
+        if (!running || instance.replacementStarting || instance.draining)
+        {
+            return;
+        }
+        String reason = null;
+        if (maxTasksPerInstance > 0 && instance.tasks >= maxTasksPerInstance)
+        {
+            reason = instance.tasks + " tasks";
+        }
+        else if (maxRssBytes > 0 && rssBytes > maxRssBytes)
+        {
+            reason = "reaching an RSS of " + rssBytes / MB + "MB";
+        }
+        else if (maxConsecutiveTimeouts > 0 && instance.consecutiveTimeouts >= maxConsecutiveTimeouts)
+        {
+            reason = instance.consecutiveTimeouts + " consecutive timeouts";
+            instance.degraded = true;
+        }
+        else if (isSlow(instance))
+        {
+            reason = String.format("slowing to an average of %.0fms", instance.averageMs);
+            instance.degraded = true;
+        }
+        if (reason != null)
+        {
+            logger.info("Recycling the LibreOffice instance on port {} after {}: {}", instance.portNumber, reason,
+                new InstanceStats(instance));
+            instance.replacementStarting = true;
+            instanceStarter.execute(() -> startInstance(instance));
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     *
+     * @return {@code true} if the moving average of the instance's conversion times is more than the degraded
+     *         latency factor times the median of the other instances' averages
+     */
+    private boolean isSlow(Instance instance)
+    {
+        if (degradedLatencyFactor <= 0 || instance.tasks < MIN_TASKS_FOR_LATENCY)
+        {
+            return false;
+        }
+        double[] others = instances.stream()
+                                   .filter(other -> other != instance && other.tasks >= MIN_TASKS_FOR_LATENCY)
+                                   .mapToDouble(other -> other.averageMs)
+                                   .sorted()
+                                   .toArray();
+        if (others.length == 0)
+        {
+            return false;
+        }
+        double median = others.length % 2 == 1
+                        ? others[others.length / 2]
+                        : (others[others.length / 2 - 1] + others[others.length / 2]) / 2;
+        return instance.averageMs > degradedLatencyFactor * Math.max(1, median);
+    }
+
+    /**
+     * Called with the lock held. Starts another instance in the background if there are more waiting tasks than
+     * instances already being started and the pool has not reached its maximum size.
+     */
+    private void startExtraInstanceIfNeeded()
+    {
+        if (waitingTasks > startingInstances && instances.size() + startingInstances < maxInstances)
+        {
+            startingInstances++;
+            instanceStarter.execute(() -> startInstance(null));
+        }
+    }
+
+    /**
+     * Starts and warms up an extra instance, or the replacement of an instance being recycled, and adds it to the
+     * pool. A recycled instance is taken out of use once its replacement is ready, and stopped straight away if it
+     * is not running a task. If the replacement fails to start, the instance stays in use and recycling is tried
+     * again after its next task.
+     *
+     * @param replacing the instance being recycled, or {@code null} for an extra instance
+     */
+    private void startInstance(Instance replacing)
+    {
+        Instance instance = null;
+        try
+        {
+            int portNumber = findFreePort();
+            OfficeManager officeManager = instanceFactory.create(portNumber);
+            try
+            {
+                startAndWarmUp(portNumber, officeManager, replacing == null ? "an extra" : "a replacement", true);
+            }
+            catch (RuntimeException e)
+            {
+                stopInstance(new Instance(portNumber, officeManager, false));
+                throw e;
+            }
+            instance = new Instance(portNumber, officeManager, replacing != null && replacing.core);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.warn("Unable to start {} LibreOffice instance: {}",
+                replacing == null ? "an extra" : "a replacement", e.getMessage());
+        }
+
+        boolean stopReplaced = false;
+        lock.lock();
+        try
+        {
+            if (replacing == null)
+            {
+                startingInstances--;
+            }
+            else
+            {
+                replacing.replacementStarting = false;
+            }
+            if (instance != null && running)
+            {
+                instances.add(instance);
+                instance.lastUsed = System.currentTimeMillis();
+                if (replacing != null && instances.contains(replacing))
+                {
+                    replacing.draining = true;
+                    recycledInstances.incrementAndGet();
+                    stopReplaced = !replacing.busy && instances.remove(replacing);
+                }
+                instanceAvailable.signal();
+                instance = null;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (instance != null)
+        {
+            // The pool was stopped while the instance was starting
+            stopInstance(instance);
+        }
+        if (stopReplaced)
+        {
+            stopInstance(replacing);
+        }
+    }
+
+    /**
+     * Run periodically to stop idle extra instances, to update the RSS of each instance and to recycle idle
+     * instances that are using too much memory.
+     */
+    void checkInstances()
+    {
+        try
+        {
+            stopIdleInstances();
+            for (Instance instance : getInstances())
+            {
+                long rssBytes = rssProbe.applyAsLong(instance.portNumber);
+                lock.lock();
+                try
+                {
+                    instance.rssBytes = rssBytes;
+                    if (!instance.busy && instances.contains(instance))
+                    {
+                        recycleIfNeeded(instance, rssBytes);
+                    }
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+            logger.debug("LibreOffice instances: {}", getInstanceStats());
+        }
+        catch (RuntimeException e)
+        {
+            // Must not escape, or the scheduled task would stop running.
+            logger.error("LibreOffice instance check failed", e);
+        }
+    }
+
+    /**
+     * Stops the extra instances that have been idle for longer than the cool-down period.
+     */
+    void stopIdleInstances()
+    {
+        List<Instance> idle = new ArrayList<>();
+        long idleSince = System.currentTimeMillis() - instanceIdleMs;
+        lock.lock();
+        try
+        {
+            instances.removeIf(instance ->
+            {
+                boolean stop = !instance.core && !instance.busy && !instance.replacementStarting &&
+                               instance.lastUsed <= idleSince;
+                if (stop)
+                {
+                    idle.add(instance);
+                }
+                return stop;
+            });
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        idle.forEach(instance ->
+        {
+            logger.info("Stopping the idle extra LibreOffice instance on port {}", instance.portNumber);
+            stopInstance(instance);
+        });
+    }
+
+    private void stopInstance(Instance instance)
+    {
+        try
+        {
+            instance.officeManager.stop();
+        }
+        catch (RuntimeException e)
+        {
+            // Must not stop the other instances being stopped
+            logger.warn("Unable to stop the LibreOffice instance on port {}: {}", instance.portNumber,
+                e.getMessage());
+        }
+    }
+
+    private List<Instance> getInstances()
+    {
+        lock.lock();
+        try
+        {
+            return new ArrayList<>(instances);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void addInstance(Instance instance)
+    {
+        lock.lock();
+        try
+        {
+            instances.add(instance);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    static int findFreePort() throws IOException
+    {
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            return socket.getLocalPort();
+        }
+    }
+
+    public int getInstanceCount()
+    {
+        lock.lock();
+        try
+        {
+            return instances.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getBusyInstanceCount()
+    {
+        lock.lock();
+        try
+        {
+            return (int) instances.stream().filter(instance -> instance.busy).count();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getWaitingTaskCount()
+    {
+        lock.lock();
+        try
+        {
+            return waitingTasks;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxInstances()
+    {
+        return maxInstances;
+    }
+
+    public long getRecycledInstanceCount()
+    {
+        return recycledInstances.get();
+    }
+
+    public long getTimedOutTaskCount()
+    {
+        return timedOutTasks.get();
+    }
+
+    /**
+     * @return a snapshot of the statistics of each instance in the pool
+     */
+    public List<InstanceStats> getInstanceStats()
+    {
+        lock.lock();
+        try
+        {
+            List<InstanceStats> stats = new ArrayList<>(instances.size());
+            instances.forEach(instance -> stats.add(new InstanceStats(instance)));
+            return stats;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how long the core instances took to start and warm up, or zero if the pool has not been started
+     */
+    public long getPoolStartUpMs()
+    {
+        return poolStartUpMs;
+    }
+
+    /**
+     * @return how long the last instance to be started took to start its process, including copying the template
+     *         profile
+     */
+    public long getInstanceStartMs()
+    {
+        return instanceStartMs;
+    }
+
+    /**
+     * @return how long the last instance to be started took to run its warm up conversion
+     */
+    public long getInstanceWarmUpMs()
+    {
+        return instanceWarmUpMs;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry)
+    {
+        Gauge.builder("libreoffice.pool.instances", this, LibreOfficeInstancePool::getInstanceCount)
+             .description("The number of running LibreOffice instances")
+             .register(registry);
+        Gauge.builder("libreoffice.pool.busy", this, LibreOfficeInstancePool::getBusyInstanceCount)
+             .description("The number of LibreOffice instances running a task")
+             .register(registry);
+        Gauge.builder("libreoffice.pool.queue", this, LibreOfficeInstancePool::getWaitingTaskCount)
+             .description("The number of tasks waiting for a free LibreOffice instance")
+             .register(registry);
+        Gauge.builder("libreoffice.pool.max", this, LibreOfficeInstancePool::getMaxInstances)
+             .description("The maximum number of LibreOffice instances")
+             .register(registry);
+        FunctionCounter.builder("libreoffice.pool.recycled", this, LibreOfficeInstancePool::getRecycledInstanceCount)
+                       .description("The number of LibreOffice instances replaced by a new instance")
+                       .register(registry);
+        FunctionCounter.builder("libreoffice.pool.timeouts", this, LibreOfficeInstancePool::getTimedOutTaskCount)
+                       .description("The number of LibreOffice tasks that timed out")
+                       .register(registry);
+        TimeGauge.builder("libreoffice.pool.startup", this, MILLISECONDS, LibreOfficeInstancePool::getPoolStartUpMs)
+                 .description("The time taken to start and warm up the core LibreOffice instances")
+                 .register(registry);
+        TimeGauge.builder("libreoffice.instance.startup", this, MILLISECONDS,
+                     LibreOfficeInstancePool::getInstanceStartMs)
+                 .description("The time the last LibreOffice instance to be started took in each stage")
+                 .tag("stage", "start")
+                 .register(registry);
+        TimeGauge.builder("libreoffice.instance.startup", this, MILLISECONDS,
+                     LibreOfficeInstancePool::getInstanceWarmUpMs)
+                 .description("The time the last LibreOffice instance to be started took in each stage")
+                 .tag("stage", "warmup")
+                 .register(registry);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LibreOfficeInstancePool" + Arrays.toString(corePortNumbers);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix)
+    {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A single LibreOffice instance. The mutable fields are guarded by the pool's lock.
+     */
+    private static class Instance
+    {
+        private final int portNumber;
+        private final OfficeManager officeManager;
+        private final boolean core;
+        private boolean busy;
+        private long lastUsed = System.currentTimeMillis();
+        private int tasks;
+        private boolean replacementStarting;
+        private boolean draining;
+        private double averageMs;
+        private long rssBytes = OfficeProcesses.UNKNOWN;
+        private int timeouts;
+        private int consecutiveTimeouts;
+        private boolean degraded;
+
+        private Instance(int portNumber, OfficeManager officeManager, boolean core)
+        {
+            this.portNumber = portNumber;
+            this.officeManager = officeManager;
+            this.core = core;
+        }
+
+        private void recordTask(long durationMs, boolean timedOut, long rssBytes)
+        {
+            averageMs = tasks == 0 ? durationMs : averageMs + AVERAGE_WEIGHT * (durationMs - averageMs);
+            tasks++;
+            if (timedOut)
+            {
+                timeouts++;
+                consecutiveTimeouts++;
+            }
+            else
+            {
+                consecutiveTimeouts = 0;
+            }
+            if (rssBytes >= 0)
+            {
+                this.rssBytes = rssBytes;
+            }
+        }
+
+        /**
+         * Healthy instances are preferred to degrading ones, then the fastest recently and then the one using the
+         * least memory, if known.
+         */
+        private boolean isPreferredTo(Instance other)
+        {
+            if (degraded != other.degraded)
+            {
+                return !degraded;
+            }
+            if (averageMs != other.averageMs)
+            {
+                return averageMs < other.averageMs;
+            }
+            return rssBytes >= 0 && other.rssBytes >= 0 && rssBytes < other.rssBytes;
+        }
+    }
+
+    /**
+     * A snapshot of the statistics of an instance.
+     */
+    public static class InstanceStats
+    {
+        private final int portNumber;
+        private final int tasks;
+        private final double averageMs;
+        private final long rssBytes;
+        private final int timeouts;
+        private final boolean busy;
+        private final boolean degraded;
+
+        private InstanceStats(Instance instance)
+        {
+            portNumber = instance.portNumber;
+            tasks = instance.tasks;
+            averageMs = instance.averageMs;
+            rssBytes = instance.rssBytes;
+            timeouts = instance.timeouts;
+            busy = instance.busy;
+            degraded = instance.degraded;
+        }
+
+        public int getPortNumber()
+        {
+            return portNumber;
+        }
+
+        public int getTasks()
+        {
+            return tasks;
+        }
+
+        /**
+         * @return the exponentially weighted moving average of the instance's conversion times
+         */
+        public double getAverageMs()
+        {
+            return averageMs;
+        }
+
+        /**
+         * @return the last RSS read of the instance's soffice process, or a negative value if unknown
+         */
+        public long getRssBytes()
+        {
+            return rssBytes;
+        }
+
+        public int getTimeouts()
+        {
+            return timeouts;
+        }
+
+        public boolean isBusy()
+        {
+            return busy;
+        }
+
+        public boolean isDegraded()
+        {
+            return degraded;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("port=%d tasks=%d averageMs=%.0f rssMb=%s timeouts=%d%s", portNumber, tasks,
+                averageMs, rssBytes < 0 ? "?" : Long.toString(rssBytes / MB), timeouts, degraded ? " degraded" : "");
+        }
+    }
+}
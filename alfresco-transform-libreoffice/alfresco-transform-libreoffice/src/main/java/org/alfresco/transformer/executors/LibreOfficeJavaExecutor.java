@@ -27,23 +27,56 @@
 package org.alfresco.transformer.executors;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.star.document.UpdateDocMode;
 import com.sun.star.task.ErrorCodeIOException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.fs.CapturedTarget;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.artofsolving.jodconverter.OfficeDocumentConverter;
+import org.artofsolving.jodconverter.document.DefaultDocumentFormatRegistry;
+import org.artofsolving.jodconverter.document.DocumentFamily;
+import org.artofsolving.jodconverter.document.DocumentFormat;
+import org.artofsolving.jodconverter.document.DocumentFormatRegistry;
 import org.artofsolving.jodconverter.office.OfficeException;
 import org.artofsolving.jodconverter.office.OfficeManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_PDF;
+import static org.alfresco.transformer.util.RequestParamMap.INCLUDE_METADATA;
+import static org.alfresco.transformer.util.RequestParamMap.PAGE_LIMIT;
+import static org.alfresco.transformer.util.RequestParamMap.PAGE_RANGE;
+import static org.alfresco.transformer.util.RequestParamMap.TARGET_EXTENSIONS;
+import static org.alfresco.transformer.util.RequestParamMap.TIMEOUT;
+import static org.alfresco.transformer.util.Util.stringToLong;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 
@@ -59,6 +92,23 @@ public class LibreOfficeJavaExecutor implements JavaExecutor
 
     private static final int JODCONVERTER_TRANSFORMATION_ERROR_CODE = 3088;
 
+    public static final int MAX_TARGETS = 10;
+
+    private static final String METADATA_ENTRY = "metadata.json";
+
+    private static final String PDF_EXTENSION = "pdf";
+
+    // The page numbers and ranges accepted by LibreOffice's PDF export filter, such as "1-3,5"
+    private static final Pattern PAGE_RANGE_PATTERN = Pattern.compile("\\d{1,9}(-\\d{1,9})?(,\\d{1,9}(-\\d{1,9})?)*");
+
+    private static final DocumentFormatRegistry FORMAT_REGISTRY = new DefaultDocumentFormatRegistry();
+
+    // The same as JodConverter's OfficeDocumentConverter
+    private static final Map<String, Object> DEFAULT_LOAD_PROPERTIES = Map.of(
+        "Hidden", true,
+        "ReadOnly", true,
+        "UpdateDocMode", UpdateDocMode.QUIET_UPDATE);
+
     private static String LIBREOFFICE_HOME;
 
     private static String LIBREOFFICE_MAX_TASKS_PER_PROCESS;
@@ -75,9 +125,23 @@ public class LibreOfficeJavaExecutor implements JavaExecutor
 
     private final JodConverter jodconverter;
 
+    private final LibreOfficeTimeoutPolicy timeoutPolicy;
+
     private final ObjectMapper jsonObjectMapper = new ObjectMapper();
 
+    private int maxInMemoryTargetBytes;
+
     public LibreOfficeJavaExecutor(String path, String maxTasksPerProcess, String timeout,  String portNumbers, String templateProfileDir, String isEnabled)
+    {
+        this(path, maxTasksPerProcess, timeout, portNumbers, templateProfileDir, isEnabled,
+            new LibreOfficePoolSettings());
+    }
+
+    /**
+     * @param poolSettings how far the pool of LibreOffice instances may grow beyond one instance per port number
+     */
+    public LibreOfficeJavaExecutor(String path, String maxTasksPerProcess, String timeout,  String portNumbers,
+        String templateProfileDir, String isEnabled, LibreOfficePoolSettings poolSettings)
     {
         if (path == null || path.isEmpty())
         {
@@ -116,10 +180,12 @@ public class LibreOfficeJavaExecutor implements JavaExecutor
         }
         LIBREOFFICE_IS_ENABLED = isEnabled;
 
-        jodconverter = createJodConverter();
+        jodconverter = createJodConverter(poolSettings);
+        timeoutPolicy = new LibreOfficeTimeoutPolicy(poolSettings.getTimeoutQuantile(),
+            poolSettings.getTimeoutSafetyFactor(), poolSettings.getMinTimeoutMs(), Long.parseLong(timeout));
     }
 
-    private static JodConverter createJodConverter()
+    private static JodConverter createJodConverter(LibreOfficePoolSettings poolSettings)
     {
         final JodConverterSharedInstance jodconverter = new JodConverterSharedInstance();
 
@@ -131,11 +197,35 @@ public class LibreOfficeJavaExecutor implements JavaExecutor
         jodconverter.setPortNumbers(LIBREOFFICE_PORT_NUMBERS);                             // jodconverter.portNumbers
         jodconverter.setTemplateProfileDir(LIBREOFFICE_TEMPLATE_PROFILE_DIR);              // jodconverter.templateProfileDir
         jodconverter.setEnabled(LIBREOFFICE_IS_ENABLED);                                   // jodconverter.enabled
+        jodconverter.setPoolSettings(poolSettings);
         jodconverter.afterPropertiesSet();
 
         return jodconverter;
     }
 
+    /**
+     * Publishes the metrics of the pool of LibreOffice instances, if it was started.
+     */
+    public void bindTo(MeterRegistry registry)
+    {
+        OfficeManager officeManager = jodconverter.getOfficeManager();
+        if (officeManager instanceof MeterBinder)
+        {
+            ((MeterBinder) officeManager).bindTo(registry);
+        }
+    }
+
+    /**
+     * @param maxInMemoryTargetBytes if greater than zero, LibreOffice writes the target to a stream that is captured
+     *                               in memory rather than to the target file, unless it is larger than this or the
+     *                               caller of the transform is unable to use it. See {@link CapturedTarget} and
+     *                               {@link LibreOfficeStreamTask}.
+     */
+    public void setMaxInMemoryTargetBytes(int maxInMemoryTargetBytes)
+    {
+        this.maxInMemoryTargetBytes = maxInMemoryTargetBytes;
+    }
+
     @Override
     public String getTransformerId()
     {
@@ -146,48 +236,195 @@ public class LibreOfficeJavaExecutor implements JavaExecutor
     public void transform(String transformName, String sourceMimetype, String targetMimetype, Map<String, String> transformOptions,
                           File sourceFile, File targetFile)
     {
-        call(sourceFile, targetFile);
+        transform(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+            TransformTarget.of(targetFile));
     }
 
     @Override
-    public void call(File sourceFile, File targetFile, String... args)
+    public void transform(String transformName, String sourceMimetype, String targetMimetype, Map<String, String> transformOptions,
+                          File sourceFile, TransformTarget target)
     {
+        final String targetExtensions = transformOptions.get(TARGET_EXTENSIONS);
+        if (targetExtensions != null && !targetExtensions.isBlank())
+        {
+            final List<String> extensions = parseTargetExtensions(targetExtensions);
+            convertToTargets(sourceFile, extensions, Boolean.parseBoolean(transformOptions.get(INCLUDE_METADATA)),
+                getPageRange(transformOptions, extensions.contains(PDF_EXTENSION)), target.getFile());
+            return;
+        }
+        final String pageRange = getPageRange(transformOptions, MIMETYPE_PDF.equals(targetMimetype));
+        final long sourceSize = sourceFile.length();
+        final long timeoutMs = timeoutPolicy.getTimeoutMs(sourceMimetype, sourceSize,
+            getRequestTimeoutMs(transformOptions));
+        final AtomicLong executionMs = new AtomicLong(-1);
+        final long start = System.nanoTime();
         try
         {
-            convert(sourceFile, targetFile);
+            convert(sourceFile, target, pageRange, timeoutMs, executionMs::set);
         }
-        catch (OfficeException e)
+        catch (TransformException e)
         {
-            throw new TransformException(BAD_REQUEST.value(),
-                "LibreOffice server conversion failed: \n" +
-                "   from file: " + sourceFile + "\n" +
-                "   to file: " + targetFile, e);
+            // Counting the time taken by an abandoned conversion pushes the timeout up if it was too short
+            if (isTimeout(e))
+            {
+                timeoutPolicy.recordDuration(sourceMimetype, sourceSize, getExecutionMs(start, executionMs.get()));
+            }
+            throw e;
         }
-        catch (Throwable throwable)
+        timeoutPolicy.recordDuration(sourceMimetype, sourceSize, getExecutionMs(start, executionMs.get()));
+    }
+
+    /**
+     * @param executionMs the time the conversion took once it had a LibreOffice instance, as reported by a
+     *                    {@link LibreOfficeInstancePool}, or -1 if it was not reported
+     * @return the execution time, so that time spent queuing for an instance does not push the timeout up. If it was
+     *         not reported, the time since {@code start}.
+     */
+    private static long getExecutionMs(long start, long executionMs)
+    {
+        return executionMs >= 0 ? executionMs : NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Override
+    public void call(File sourceFile, File targetFile, String... args)
+    {
+        convert(sourceFile, TransformTarget.of(targetFile), null, 0, null);
+    }
+
+    /**
+     * @param pageRange           the pages to be included in a PDF target, such as "1-3,5", or {@code null} for all
+     *                            of them
+     * @param timeoutMs           the time the conversion may take, or zero to leave it to JodConverter's timeout
+     * @param executionMsListener told the time the conversion took once it had an instance of a
+     *                            {@link LibreOfficeInstancePool}, or {@code null}. Not called for conversions
+     *                            left to {@link #convert(File, File)}.
+     */
+    private void convert(File sourceFile, TransformTarget target, String pageRange, long timeoutMs,
+        LongConsumer executionMsListener)
+    {
+        final File targetFile = target.getFile();
+        DocumentFormat outputFormat = maxInMemoryTargetBytes > 0 ? getOutputFormat(targetFile, pageRange) : null;
+        CapturedTarget capturedTarget = outputFormat == null ? null : target.capture(maxInMemoryTargetBytes);
+        // Closing the captured target may fail if it was spilled to the target file. If the conversion has already
+        // failed, that is added to its exception rather than hiding it.
+        try (capturedTarget)
         {
-            // Because of the known bug with empty Spreadsheets in JodConverter try to catch exception and produce empty pdf file
-            if (throwable.getCause() instanceof ErrorCodeIOException &&
-                ((ErrorCodeIOException) throwable.getCause()).ErrCode == JODCONVERTER_TRANSFORMATION_ERROR_CODE)
+            try
             {
-                logger.warn("Transformation failed: \n" +
-                            "from file: " + sourceFile + "\n" +
-                            "to file: " + targetFile +
-                            "Source file " + sourceFile + " has no content");
-                produceEmptyPdfFile(targetFile);
+                if (capturedTarget != null)
+                {
+                    getOfficeManager(timeoutMs, executionMsListener).execute(new LibreOfficeStreamTask(sourceFile,
+                        getLoadProperties(getExtension(sourceFile)), capturedTarget, outputFormat));
+                }
+                else if (pageRange == null && timeoutMs <= 0)
+                {
+                    convert(sourceFile, targetFile);
+                }
+                else
+                {
+                    OfficeDocumentConverter converter = new OfficeDocumentConverter(
+                        getOfficeManager(timeoutMs, executionMsListener));
+                    if (pageRange == null)
+                    {
+                        converter.convert(sourceFile, targetFile);
+                    }
+                    else
+                    {
+                        converter.convert(sourceFile, targetFile,
+                            withPageRange(FORMAT_REGISTRY.getFormatByExtension(PDF_EXTENSION), pageRange));
+                    }
+                }
             }
-            else
+            catch (OfficeException e)
+            {
+                throw new TransformException(BAD_REQUEST.value(),
+                    "LibreOffice server conversion failed: \n" +
+                    "   from file: " + sourceFile + "\n" +
+                    "   to file: " + targetFile, e);
+            }
+            catch (Throwable throwable)
             {
-                throw throwable;
+                // Because of the known bug with empty Spreadsheets in JodConverter try to catch exception and produce empty pdf file
+                if (throwable.getCause() instanceof ErrorCodeIOException &&
+                    ((ErrorCodeIOException) throwable.getCause()).ErrCode == JODCONVERTER_TRANSFORMATION_ERROR_CODE)
+                {
+                    logger.warn("Transformation failed: \n" +
+                                "from file: " + sourceFile + "\n" +
+                                "to file: " + targetFile +
+                                "Source file " + sourceFile + " has no content");
+                    produceEmptyPdfFile(targetFile, capturedTarget);
+                }
+                else
+                {
+                    throw throwable;
+                }
             }
         }
+        catch (IOException e)
+        {
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed to write the target file", e);
+        }
 
-        if (!targetFile.exists() || targetFile.length() == 0L)
+        if (capturedTarget != null ? capturedTarget.size() == 0 : !targetFile.exists() || targetFile.length() == 0L)
         {
             throw new TransformException(INTERNAL_SERVER_ERROR.value(),
                 "Transformer failed to create an output file");
         }
     }
 
+    /**
+     * @return the format of the target file, limited to the given pages, or {@code null} if its extension is unknown
+     */
+    private static DocumentFormat getOutputFormat(File targetFile, String pageRange)
+    {
+        DocumentFormat outputFormat = FORMAT_REGISTRY.getFormatByExtension(getExtension(targetFile));
+        return outputFormat == null || pageRange == null ? outputFormat : withPageRange(outputFormat, pageRange);
+    }
+
+    /**
+     * @return the properties JodConverter would use to load a document with the given extension
+     */
+    static Map<String, Object> getLoadProperties(String sourceExtension)
+    {
+        Map<String, Object> loadProperties = new HashMap<>(DEFAULT_LOAD_PROPERTIES);
+        DocumentFormat inputFormat = FORMAT_REGISTRY.getFormatByExtension(sourceExtension);
+        if (inputFormat != null && inputFormat.getLoadProperties() != null)
+        {
+            loadProperties.putAll(inputFormat.getLoadProperties());
+        }
+        return loadProperties;
+    }
+
+    /**
+     * @return the office manager to run a task with the given timeout. If zero, JodConverter's timeout applies. A
+     *         {@link LibreOfficeInstancePool} also reports the time the task took to the listener.
+     */
+    private OfficeManager getOfficeManager(long timeoutMs, LongConsumer executionMsListener)
+    {
+        OfficeManager officeManager = jodconverter.getOfficeManager();
+        return officeManager instanceof LibreOfficeInstancePool
+               ? ((LibreOfficeInstancePool) officeManager).withTimeout(timeoutMs, executionMsListener)
+               : officeManager;
+    }
+
+    private static Long getRequestTimeoutMs(Map<String, String> transformOptions)
+    {
+        try
+        {
+            return stringToLong(StringUtils.trimToNull(transformOptions.get(TIMEOUT)));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new TransformException(BAD_REQUEST.value(), "Invalid " + TIMEOUT + ": " +
+                transformOptions.get(TIMEOUT));
+        }
+    }
+
+    private static boolean isTimeout(TransformException e)
+    {
+        return e.getCause() instanceof OfficeException && e.getCause().getCause() instanceof TimeoutException;
+    }
+
     public void convert(File sourceFile, File targetFile)
     {
         OfficeManager officeManager = jodconverter.getOfficeManager();
@@ -196,10 +433,216 @@ public class LibreOfficeJavaExecutor implements JavaExecutor
     }
 
     /**
-     * This method produces an empty PDF file at the specified File location.
+     * Converts the source to several formats from a single load of the document (see
+     * {@link LibreOfficeMultiTargetTask}) and zips them up into the target as {@code document.<extension>} entries.
+     * The document's properties are added as a {@code metadata.json} entry if requested.
+     *
+     * @param pageRange the pages to be included in a PDF target, such as "1-3,5", or {@code null} for all of them
+     */
+    public void convertToTargets(File sourceFile, List<String> targetExtensions, boolean includeMetadata,
+        String pageRange, File targetFile)
+    {
+        LibreOfficeMultiTargetTask task = new LibreOfficeMultiTargetTask(sourceFile,
+            getLoadProperties(getExtension(sourceFile)), includeMetadata);
+        Map<String, File> entries = new LinkedHashMap<>();
+        try
+        {
+            for (String extension : targetExtensions)
+            {
+                DocumentFormat outputFormat = FORMAT_REGISTRY.getFormatByExtension(extension);
+                if (outputFormat == null)
+                {
+                    throw new TransformException(BAD_REQUEST.value(), "Unsupported target extension: " + extension);
+                }
+                if (pageRange != null && PDF_EXTENSION.equals(extension))
+                {
+                    outputFormat = withPageRange(outputFormat, pageRange);
+                }
+                File outputFile = Files.createTempFile("target_", "." + extension).toFile();
+                entries.put("document." + extension, outputFile);
+                task.addTarget(outputFile, outputFormat);
+            }
+
+            try
+            {
+                jodconverter.getOfficeManager().execute(task);
+            }
+            catch (OfficeException e)
+            {
+                throw new TransformException(BAD_REQUEST.value(),
+                    "LibreOffice server conversion failed: \n" +
+                    "   from file: " + sourceFile + "\n" +
+                    "   to: " + targetExtensions, e);
+            }
+            zip(entries, task.getMetadata(), targetFile);
+        }
+        catch (IOException e)
+        {
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(),
+                "Failed to create the targets of " + sourceFile, e);
+        }
+        finally
+        {
+            entries.values().forEach(File::delete);
+        }
+    }
+
+    /**
+     * @param targetExtensions a comma separated list of extensions, such as "pdf,html"
+     */
+    static List<String> parseTargetExtensions(String targetExtensions)
+    {
+        Set<String> extensions = new LinkedHashSet<>();
+        for (String extension : targetExtensions.split(",", -1))
+        {
+            extension = extension.trim().toLowerCase();
+            extension = extension.startsWith(".") ? extension.substring(1) : extension;
+            if (extension.isEmpty())
+            {
+                throw new TransformException(BAD_REQUEST.value(),
+                    "Invalid " + TARGET_EXTENSIONS + ": " + targetExtensions);
+            }
+            extensions.add(extension);
+        }
+        if (extensions.size() > MAX_TARGETS)
+        {
+            throw new TransformException(BAD_REQUEST.value(),
+                "No more than " + MAX_TARGETS + " " + TARGET_EXTENSIONS + " may be requested: " + targetExtensions);
+        }
+        return new ArrayList<>(extensions);
+    }
+
+    /**
+     * As {@link #getPageRange(Map)}, but the options are rejected if there is no PDF target, as they only apply to
+     * the PDF export filter.
+     *
+     * @param pdfTarget {@code true} if the target, or one of the targets, is a PDF
+     * @throws TransformException (400) if a page range is requested without a PDF target
+     */
+    static String getPageRange(Map<String, String> transformOptions, boolean pdfTarget)
+    {
+        final String pageRange = getPageRange(transformOptions);
+        if (pageRange != null && !pdfTarget)
+        {
+            throw new TransformException(BAD_REQUEST.value(),
+                PAGE_LIMIT + " and " + PAGE_RANGE + " may only be used with a PDF target");
+        }
+        return pageRange;
+    }
+
+    /**
+     * Works out the pages to be included in a PDF target from the {@code pageLimit} or {@code pageRange} transform
+     * options. Only one of them may be supplied.
+     *
+     * @return a page range in the form used by LibreOffice's PDF export filter, such as "1-3,5", or {@code null} if
+     *         all pages are to be included
+     */
+    static String getPageRange(Map<String, String> transformOptions)
+    {
+        final String pageLimit = StringUtils.trimToNull(transformOptions.get(PAGE_LIMIT));
+        final String pageRange = StringUtils.deleteWhitespace(transformOptions.get(PAGE_RANGE));
+        if (pageLimit != null && !StringUtils.isEmpty(pageRange))
+        {
+            throw new TransformException(BAD_REQUEST.value(),
+                "Only one of " + PAGE_LIMIT + " or " + PAGE_RANGE + " may be supplied");
+        }
+        if (pageLimit != null)
+        {
+            int limit;
+            try
+            {
+                limit = Integer.parseInt(pageLimit);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new TransformException(BAD_REQUEST.value(), "Invalid " + PAGE_LIMIT + ": " + pageLimit);
+            }
+            // As with the misc engine's textToPdf, a limit of zero or less means there is no limit
+            return limit > 0 ? "1-" + limit : null;
+        }
+        if (StringUtils.isEmpty(pageRange))
+        {
+            return null;
+        }
+        if (!PAGE_RANGE_PATTERN.matcher(pageRange).matches())
+        {
+            throw new TransformException(BAD_REQUEST.value(), "Invalid " + PAGE_RANGE + ": " + pageRange);
+        }
+        for (String range : pageRange.split(","))
+        {
+            String[] pages = range.split("-");
+            int first = Integer.parseInt(pages[0]);
+            int last = Integer.parseInt(pages[pages.length - 1]);
+            if (first < 1 || last < first)
+            {
+                throw new TransformException(BAD_REQUEST.value(), "Invalid " + PAGE_RANGE + ": " + pageRange);
+            }
+        }
+        return pageRange;
+    }
+
+    /**
+     * @return a copy of the format whose export filter only includes the given pages. JodConverter converts the
+     *         nested FilterData map into the PropertyValue[] the filter expects.
+     */
+    static DocumentFormat withPageRange(DocumentFormat format, String pageRange)
+    {
+        DocumentFormat limited = new DocumentFormat(format.getName(), format.getExtension(), format.getMediaType());
+        limited.setInputFamily(format.getInputFamily());
+        limited.setLoadProperties(format.getLoadProperties());
+        for (DocumentFamily family : DocumentFamily.values())
+        {
+            Map<String, ?> storeProperties = format.getStoreProperties(family);
+            if (storeProperties != null)
+            {
+                Map<String, Object> properties = new HashMap<>(storeProperties);
+                Map<String, Object> filterData = new HashMap<>();
+                Object existingFilterData = properties.get("FilterData");
+                if (existingFilterData instanceof Map)
+                {
+                    ((Map<?, ?>) existingFilterData).forEach((key, value) -> filterData.put((String) key, value));
+                }
+                filterData.put("PageRange", pageRange);
+                properties.put("FilterData", filterData);
+                limited.setStoreProperties(family, properties);
+            }
+        }
+        return limited;
+    }
+
+    private void zip(Map<String, File> entries, Map<String, Serializable> metadata, File targetFile)
+        throws IOException
+    {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(targetFile));
+             ZipOutputStream zip = new ZipOutputStream(outputStream))
+        {
+            for (Map.Entry<String, File> entry : entries.entrySet())
+            {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                Files.copy(entry.getValue().toPath(), zip);
+                zip.closeEntry();
+            }
+            if (metadata != null)
+            {
+                zip.putNextEntry(new ZipEntry(METADATA_ENTRY));
+                zip.write(jsonObjectMapper.writeValueAsBytes(metadata));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static String getExtension(File file)
+    {
+        String name = file.getName();
+        int i = name.lastIndexOf('.');
+        return i == -1 ? "" : name.substring(i + 1).toLowerCase();
+    }
+
+    /**
+     * This method produces an empty PDF file at the specified File location, or in the captured target if there is one.
      * Apache's PDFBox is used to create the PDF file.
      */
-    private static void produceEmptyPdfFile(File targetFile)
+    private static void produceEmptyPdfFile(File targetFile, CapturedTarget capturedTarget)
     {
         // If improvement PDFBOX-914 is incorporated, we can do this with a straight call to
         // org.apache.pdfbox.TextToPdf.createPDFFromText(new StringReader(""));
@@ -214,7 +657,14 @@ public class LibreOfficeJavaExecutor implements JavaExecutor
             pdfDoc.addPage(pdfPage);
 
             // Now write the in-memory PDF document into the temporary file.
-            pdfDoc.save(targetFile.getAbsolutePath());
+            if (capturedTarget != null)
+            {
+                pdfDoc.save(capturedTarget);
+            }
+            else
+            {
+                pdfDoc.save(targetFile.getAbsolutePath());
+            }
         }
         catch (IOException iox)
         {
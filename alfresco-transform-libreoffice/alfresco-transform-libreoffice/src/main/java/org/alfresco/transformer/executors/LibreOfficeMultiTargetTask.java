@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.artofsolving.jodconverter.office.OfficeUtils.SERVICE_DESKTOP;
+import static org.artofsolving.jodconverter.office.OfficeUtils.cast;
+import static org.artofsolving.jodconverter.office.OfficeUtils.toUnoProperties;
+import static org.artofsolving.jodconverter.office.OfficeUtils.toUrl;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sun.star.document.XDocumentProperties;
+import com.sun.star.document.XDocumentPropertiesSupplier;
+import com.sun.star.frame.XComponentLoader;
+import com.sun.star.frame.XStorable;
+import com.sun.star.io.IOException;
+import com.sun.star.lang.IllegalArgumentException;
+import com.sun.star.lang.XComponent;
+import com.sun.star.lang.XServiceInfo;
+import com.sun.star.task.ErrorCodeIOException;
+import com.sun.star.util.CloseVetoException;
+import com.sun.star.util.XCloseable;
+import com.sun.star.util.XRefreshable;
+import org.artofsolving.jodconverter.document.DocumentFamily;
+import org.artofsolving.jodconverter.document.DocumentFormat;
+import org.artofsolving.jodconverter.office.OfficeContext;
+import org.artofsolving.jodconverter.office.OfficeException;
+import org.artofsolving.jodconverter.office.OfficeTask;
+
+/**
+ * Loads a document once and then stores it in several formats and, optionally, reads its properties, all in the same
+ * LibreOffice session. Importing the document is normally the most expensive part of a conversion (particularly for
+ * large spreadsheets), so this is much quicker than a separate JodConverter conversion for each target.
+ * <p>
+ * The store properties of each target format are chosen from the family of the loaded document, as JodConverter's
+ * own conversion task does.
+ */
+public class LibreOfficeMultiTargetTask implements OfficeTask
+{
+    // The same keys as LibreOfficeExtractMetadataTask
+    private static final String KEY_AUTHOR = "author";
+    private static final String KEY_TITLE = "title";
+    private static final String KEY_DESCRIPTION = "description";
+
+    private final File inputFile;
+    private final Map<String, ?> loadProperties;
+    private final Map<File, DocumentFormat> targets = new LinkedHashMap<>();
+    private final boolean extractMetadata;
+    private Map<String, Serializable> metadata;
+
+    /**
+     * @param inputFile       the document to be loaded
+     * @param loadProperties  the properties used to load it
+     * @param extractMetadata if {@code true} the document's properties are read, see {@link #getMetadata()}
+     */
+    public LibreOfficeMultiTargetTask(File inputFile, Map<String, ?> loadProperties, boolean extractMetadata)
+    {
+        this.inputFile = inputFile;
+        this.loadProperties = loadProperties;
+        this.extractMetadata = extractMetadata;
+    }
+
+    public LibreOfficeMultiTargetTask addTarget(File outputFile, DocumentFormat outputFormat)
+    {
+        targets.put(outputFile, outputFormat);
+        return this;
+    }
+
+    /**
+     * @return the author, title and description of the document, or {@code null} if they were not requested
+     */
+    public Map<String, Serializable> getMetadata()
+    {
+        return metadata;
+    }
+
+    @Override
+    public void execute(OfficeContext context) throws OfficeException
+    {
+        XComponent document = null;
+        try
+        {
+            document = loadDocument(context);
+            DocumentFamily family = getDocumentFamily(document);
+            XStorable storable = cast(XStorable.class, document);
+            for (Map.Entry<File, DocumentFormat> target : targets.entrySet())
+            {
+                Map<String, ?> storeProperties = target.getValue().getStoreProperties(family);
+                if (storeProperties == null)
+                {
+                    throw new OfficeException("unsupported conversion: " + family + " to " +
+                        target.getValue().getExtension());
+                }
+                storable.storeToURL(toUrl(target.getKey()), toUnoProperties(storeProperties));
+            }
+            if (extractMetadata)
+            {
+                metadata = readMetadata(document);
+            }
+        }
+        catch (OfficeException officeException)
+        {
+            throw officeException;
+        }
+        catch (Exception exception)
+        {
+            throw new OfficeException("conversion failed", exception);
+        }
+        finally
+        {
+            close(document);
+        }
+    }
+
+    private XComponent loadDocument(OfficeContext context) throws IOException
+    {
+        if (!inputFile.exists())
+        {
+            throw new OfficeException("input document not found");
+        }
+        XComponentLoader loader = cast(XComponentLoader.class, context.getService(SERVICE_DESKTOP));
+        XComponent document;
+        try
+        {
+            document = loader.loadComponentFromURL(toUrl(inputFile), "_blank", 0,
+                toUnoProperties(loadProperties));
+        }
+        catch (IllegalArgumentException illegalArgumentException)
+        {
+            throw new OfficeException("could not load document: " + inputFile.getName(),
+                illegalArgumentException);
+        }
+        catch (ErrorCodeIOException errorCodeIOException)
+        {
+            throw new OfficeException("could not load document: " + inputFile.getName() + "; errorCode: " +
+                                      errorCodeIOException.ErrCode, errorCodeIOException);
+        }
+        if (document == null)
+        {
+            throw new OfficeException("could not load document: " + inputFile.getName());
+        }
+        XRefreshable refreshable = cast(XRefreshable.class, document);
+        if (refreshable != null)
+        {
+            refreshable.refresh();
+        }
+        return document;
+    }
+
+    /**
+     * The same checks as JodConverter, which are not available outside its conversion task. Also used by
+     * {@link LibreOfficeStreamTask}.
+     */
+    static DocumentFamily getDocumentFamily(XComponent document)
+    {
+        XServiceInfo serviceInfo = cast(XServiceInfo.class, document);
+        if (serviceInfo.supportsService("com.sun.star.text.GenericTextDocument"))
+        {
+            // Includes Text, Web and Global documents
+            return DocumentFamily.TEXT;
+        }
+        if (serviceInfo.supportsService("com.sun.star.sheet.SpreadsheetDocument"))
+        {
+            return DocumentFamily.SPREADSHEET;
+        }
+        if (serviceInfo.supportsService("com.sun.star.presentation.PresentationDocument"))
+        {
+            return DocumentFamily.PRESENTATION;
+        }
+        if (serviceInfo.supportsService("com.sun.star.drawing.DrawingDocument"))
+        {
+            return DocumentFamily.DRAWING;
+        }
+        throw new OfficeException("document of unknown family: " + serviceInfo.getImplementationName());
+    }
+
+    private static Map<String, Serializable> readMetadata(XComponent document)
+    {
+        XDocumentPropertiesSupplier supplier = cast(XDocumentPropertiesSupplier.class, document);
+        XDocumentProperties properties = supplier.getDocumentProperties();
+        Map<String, Serializable> metadata = new HashMap<>(3);
+        metadata.put(KEY_AUTHOR, emptyToNull(properties.getAuthor()));
+        metadata.put(KEY_DESCRIPTION, emptyToNull(properties.getSubject()));
+        metadata.put(KEY_TITLE, emptyToNull(properties.getTitle()));
+        return metadata;
+    }
+
+    private static String emptyToNull(String value)
+    {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    static void close(XComponent document)
+    {
+        if (document != null)
+        {
+            XCloseable closeable = cast(XCloseable.class, document);
+            if (closeable != null)
+            {
+                try
+                {
+                    closeable.close(true);
+                }
+                catch (CloseVetoException closeVetoException)
+                {
+                    // whoever raised the veto should close the document
+                }
+            }
+            else
+            {
+                document.dispose();
+            }
+        }
+    }
+}
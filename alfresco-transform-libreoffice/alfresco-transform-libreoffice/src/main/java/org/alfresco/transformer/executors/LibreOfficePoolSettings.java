@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+/**
+ * Settings of the {@link LibreOfficeInstancePool} that go beyond those JodConverter provides for its own, fixed
+ * size, pool. The defaults keep the pool at one instance per configured port number.
+ */
+public class LibreOfficePoolSettings
+{
+    private int maxInstances;
+    private long instanceIdleSeconds = 300;
+    private long instanceMemoryMb = 512;
+    private long memoryBudgetMb;
+    private long maxInstanceRssMb;
+    private int maxConsecutiveTimeouts = 2;
+    private double degradedLatencyFactor = 3;
+    private String profileWorkDir = "";
+    private double timeoutQuantile = 0.999;
+    private double timeoutSafetyFactor = 3;
+    private long minTimeoutMs = 30000;
+
+    /**
+     * @param maxInstances the maximum number of LibreOffice instances the pool may grow to under load. The
+     *                     configured port numbers are always used, so values less than or equal to their number
+     *                     result in a fixed size pool.
+     */
+    public LibreOfficePoolSettings withMaxInstances(int maxInstances)
+    {
+        this.maxInstances = maxInstances;
+        return this;
+    }
+
+    /**
+     * @param instanceIdleSeconds how long an instance started to handle extra load must have been idle before it is
+     *                            shut down again
+     */
+    public LibreOfficePoolSettings withInstanceIdleSeconds(long instanceIdleSeconds)
+    {
+        this.instanceIdleSeconds = instanceIdleSeconds;
+        return this;
+    }
+
+    /**
+     * @param instanceMemoryMb the memory to allow for each instance when applying the memory budget
+     */
+    public LibreOfficePoolSettings withInstanceMemoryMb(long instanceMemoryMb)
+    {
+        this.instanceMemoryMb = instanceMemoryMb;
+        return this;
+    }
+
+    /**
+     * @param memoryBudgetMb the memory available to all the instances. If less than or equal to zero, only the CPUs
+     *                       available to the container limit the number of instances.
+     */
+    public LibreOfficePoolSettings withMemoryBudgetMb(long memoryBudgetMb)
+    {
+        this.memoryBudgetMb = memoryBudgetMb;
+        return this;
+    }
+
+    /**
+     * @param maxInstanceRssMb the resident set size of an instance's soffice process beyond which it is replaced by
+     *                         a new instance. Not used if less than or equal to zero.
+     */
+    public LibreOfficePoolSettings withMaxInstanceRssMb(long maxInstanceRssMb)
+    {
+        this.maxInstanceRssMb = maxInstanceRssMb;
+        return this;
+    }
+
+    /**
+     * @param maxConsecutiveTimeouts the number of tasks in a row that may time out on an instance before it is
+     *                               considered to be degrading. Not used if less than or equal to zero.
+     */
+    public LibreOfficePoolSettings withMaxConsecutiveTimeouts(int maxConsecutiveTimeouts)
+    {
+        this.maxConsecutiveTimeouts = maxConsecutiveTimeouts;
+        return this;
+    }
+
+    /**
+     * @param degradedLatencyFactor how many times slower than the median of the other instances, going by a moving
+     *                              average of the conversion times, an instance may be before it is considered to
+     *                              be degrading. Not used if less than or equal to zero.
+     */
+    public LibreOfficePoolSettings withDegradedLatencyFactor(double degradedLatencyFactor)
+    {
+        this.degradedLatencyFactor = degradedLatencyFactor;
+        return this;
+    }
+
+    /**
+     * @param profileWorkDir the directory in which the copy of the user profile used by each instance is created. If
+     *                       empty, a tmpfs is used if there is one with enough space, otherwise the Java temp
+     *                       directory.
+     */
+    public LibreOfficePoolSettings withProfileWorkDir(String profileWorkDir)
+    {
+        this.profileWorkDir = profileWorkDir == null ? "" : profileWorkDir.trim();
+        return this;
+    }
+
+    /**
+     * @param timeoutQuantile the quantile of the earlier conversion times of similar documents from which their
+     *                        timeout is predicted (see {@link LibreOfficeTimeoutPolicy})
+     */
+    public LibreOfficePoolSettings withTimeoutQuantile(double timeoutQuantile)
+    {
+        this.timeoutQuantile = timeoutQuantile;
+        return this;
+    }
+
+    /**
+     * @param timeoutSafetyFactor the multiple of the quantile that a conversion may take. If less than or equal to
+     *                            zero, the global timeout is used for all conversions.
+     */
+    public LibreOfficePoolSettings withTimeoutSafetyFactor(double timeoutSafetyFactor)
+    {
+        this.timeoutSafetyFactor = timeoutSafetyFactor;
+        return this;
+    }
+
+    /**
+     * @param minTimeoutMs the shortest timeout that will be predicted
+     */
+    public LibreOfficePoolSettings withMinTimeoutMs(long minTimeoutMs)
+    {
+        this.minTimeoutMs = minTimeoutMs;
+        return this;
+    }
+
+    public int getMaxInstances()
+    {
+        return maxInstances;
+    }
+
+    public long getInstanceIdleSeconds()
+    {
+        return instanceIdleSeconds;
+    }
+
+    public long getInstanceMemoryMb()
+    {
+        return instanceMemoryMb;
+    }
+
+    public long getMemoryBudgetMb()
+    {
+        return memoryBudgetMb;
+    }
+
+    public long getMaxInstanceRssMb()
+    {
+        return maxInstanceRssMb;
+    }
+
+    public int getMaxConsecutiveTimeouts()
+    {
+        return maxConsecutiveTimeouts;
+    }
+
+    public double getDegradedLatencyFactor()
+    {
+        return degradedLatencyFactor;
+    }
+
+    public String getProfileWorkDir()
+    {
+        return profileWorkDir;
+    }
+
+    public double getTimeoutQuantile()
+    {
+        return timeoutQuantile;
+    }
+
+    public double getTimeoutSafetyFactor()
+    {
+        return timeoutSafetyFactor;
+    }
+
+    public long getMinTimeoutMs()
+    {
+        return minTimeoutMs;
+    }
+
+    /**
+     * @param coreInstances the number of configured port numbers
+     * @param cpus          the number of CPUs available to the container
+     * @return the number of instances the pool may grow to: {@link #getMaxInstances()} limited by the CPUs and the
+     *         memory budget, but never less than the number of core instances
+     */
+    int getEffectiveMaxInstances(int coreInstances, int cpus)
+    {
+        long max = Math.min(maxInstances, cpus);
+        if (memoryBudgetMb > 0)
+        {
+            max = Math.min(max, memoryBudgetMb / Math.max(1, instanceMemoryMb));
+        }
+        return (int) Math.max(coreInstances, max);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.executors.LibreOfficeMultiTargetTask.close;
+import static org.alfresco.transformer.executors.LibreOfficeMultiTargetTask.getDocumentFamily;
+import static org.artofsolving.jodconverter.office.OfficeUtils.SERVICE_DESKTOP;
+import static org.artofsolving.jodconverter.office.OfficeUtils.cast;
+import static org.artofsolving.jodconverter.office.OfficeUtils.toUnoProperties;
+import static org.artofsolving.jodconverter.office.OfficeUtils.toUrl;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.star.frame.XComponentLoader;
+import com.sun.star.frame.XStorable;
+import com.sun.star.lang.IllegalArgumentException;
+import com.sun.star.lang.XComponent;
+import com.sun.star.lib.uno.adapter.OutputStreamToXOutputStreamAdapter;
+import com.sun.star.task.ErrorCodeIOException;
+import com.sun.star.util.XRefreshable;
+import org.artofsolving.jodconverter.document.DocumentFamily;
+import org.artofsolving.jodconverter.document.DocumentFormat;
+import org.artofsolving.jodconverter.office.OfficeContext;
+import org.artofsolving.jodconverter.office.OfficeException;
+import org.artofsolving.jodconverter.office.OfficeTask;
+
+/**
+ * Converts a document and writes the result to a Java stream rather than a file, using LibreOffice's
+ * {@code private:stream} URL and a UNO adapter over the Java stream. This avoids writing a target to disk only for it
+ * to be read back to be returned.
+ * <p>
+ * The document is still loaded from its file, as LibreOffice needs to seek within most formats (such as the zip based
+ * ODF and OOXML ones) and would otherwise copy the content of a stream into a temporary file of its own.
+ * <p>
+ * The output stream is closed by LibreOffice once the document has been stored.
+ */
+public class LibreOfficeStreamTask implements OfficeTask
+{
+    private static final String PRIVATE_STREAM = "private:stream";
+
+    private final File inputFile;
+    private final Map<String, ?> loadProperties;
+    private final OutputStream outputStream;
+    private final DocumentFormat outputFormat;
+
+    /**
+     * @param inputFile      the document to be loaded
+     * @param loadProperties the properties used to load it
+     * @param outputStream   the stream to which the converted document is written
+     * @param outputFormat   the format of the converted document
+     */
+    public LibreOfficeStreamTask(File inputFile, Map<String, ?> loadProperties, OutputStream outputStream,
+        DocumentFormat outputFormat)
+    {
+        this.inputFile = inputFile;
+        this.loadProperties = loadProperties;
+        this.outputStream = outputStream;
+        this.outputFormat = outputFormat;
+    }
+
+    @Override
+    public void execute(OfficeContext context) throws OfficeException
+    {
+        XComponent document = null;
+        try
+        {
+            document = loadDocument(context);
+            DocumentFamily family = getDocumentFamily(document);
+            Map<String, ?> storeProperties = outputFormat.getStoreProperties(family);
+            if (storeProperties == null)
+            {
+                throw new OfficeException("unsupported conversion: " + family + " to " +
+                    outputFormat.getExtension());
+            }
+            Map<String, Object> properties = new HashMap<>(storeProperties);
+            properties.put("OutputStream", new OutputStreamToXOutputStreamAdapter(outputStream));
+            cast(XStorable.class, document).storeToURL(PRIVATE_STREAM, toUnoProperties(properties));
+        }
+        catch (OfficeException officeException)
+        {
+            throw officeException;
+        }
+        catch (Exception exception)
+        {
+            throw new OfficeException("conversion failed", exception);
+        }
+        finally
+        {
+            close(document);
+        }
+    }
+
+    private XComponent loadDocument(OfficeContext context) throws com.sun.star.io.IOException
+    {
+        if (!inputFile.exists())
+        {
+            throw new OfficeException("input document not found");
+        }
+        XComponentLoader loader = cast(XComponentLoader.class, context.getService(SERVICE_DESKTOP));
+        XComponent document;
+        try
+        {
+            document = loader.loadComponentFromURL(toUrl(inputFile), "_blank", 0, toUnoProperties(loadProperties));
+        }
+        catch (IllegalArgumentException illegalArgumentException)
+        {
+            throw new OfficeException("could not load document: " + inputFile.getName(), illegalArgumentException);
+        }
+        catch (ErrorCodeIOException errorCodeIOException)
+        {
+            throw new OfficeException("could not load document: " + inputFile.getName() + "; errorCode: " +
+                                      errorCodeIOException.ErrCode, errorCodeIOException);
+        }
+        if (document == null)
+        {
+            throw new OfficeException("could not load document: " + inputFile.getName());
+        }
+        XRefreshable refreshable = cast(XRefreshable.class, document);
+        if (refreshable != null)
+        {
+            refreshable.refresh();
+        }
+        return document;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Predicts how long a LibreOffice conversion should take from the time taken by earlier conversions of documents of
+ * the same type and a similar size. A stuck conversion of a small document may then be abandoned long before the
+ * global {@code LIBREOFFICE_TIMEOUT}, without cutting short large documents that are known to take a long time.
+ * <p>
+ * The durations are counted in a histogram per source mimetype and power of two size bucket, whose buckets are 10%
+ * apart. The timeout is a quantile of the histogram (such as p99.9) multiplied by a safety factor, but no less than a
+ * minimum. Until enough conversions have been seen, or if the timeout would be more than the global timeout, the
+ * global timeout is used. Conversions that time out are counted as taking the time they were allowed, so a type of
+ * document that becomes slower pushes its timeout up rather than failing every time. The counts are halved once a
+ * histogram is full, so that it follows changes over time.
+ */
+public class LibreOfficeTimeoutPolicy
+{
+    static final int MIN_SAMPLES = 100;
+    private static final int MAX_SAMPLES = 10000;
+
+    private static final double DURATION_GROWTH = 1.1;
+    private static final double LOG_DURATION_GROWTH = Math.log(DURATION_GROWTH);
+    private static final int DURATION_BUCKETS = 200; // up to about 2 days
+
+    private final double quantile;
+    private final double safetyFactor;
+    private final long minTimeoutMs;
+    private final long maxTimeoutMs;
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * @param quantile     the quantile of the earlier durations to use, such as 0.999
+     * @param safetyFactor the multiple of the quantile that a conversion may take. If less than or equal to zero,
+     *                     timeouts are not predicted.
+     * @param minTimeoutMs the shortest timeout that will be predicted
+     * @param maxTimeoutMs the global timeout. Predictions of it or more are not used.
+     */
+    public LibreOfficeTimeoutPolicy(double quantile, double safetyFactor, long minTimeoutMs, long maxTimeoutMs)
+    {
+        this.quantile = Math.min(1, Math.max(0, quantile));
+        this.safetyFactor = safetyFactor;
+        this.minTimeoutMs = minTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+    }
+
+    /**
+     * @param requestTimeoutMs the timeout supplied with the request, if any, which takes precedence
+     * @return the timeout in milliseconds, or zero if the global timeout should be used
+     */
+    public long getTimeoutMs(String sourceMimetype, long sourceSize, Long requestTimeoutMs)
+    {
+        if (requestTimeoutMs != null && requestTimeoutMs > 0)
+        {
+            return requestTimeoutMs;
+        }
+        if (safetyFactor <= 0)
+        {
+            return 0;
+        }
+        Histogram histogram = histograms.get(getKey(sourceMimetype, sourceSize));
+        long predictedMs = histogram == null ? -1 : histogram.getQuantileMs(quantile);
+        if (predictedMs < 0)
+        {
+            return 0;
+        }
+        long timeoutMs = Math.max(minTimeoutMs, (long) Math.ceil(predictedMs * safetyFactor));
+        return maxTimeoutMs > 0 && timeoutMs >= maxTimeoutMs ? 0 : timeoutMs;
+    }
+
+    /**
+     * Records the time taken by a conversion that finished or timed out.
+     */
+    public void recordDuration(String sourceMimetype, long sourceSize, long durationMs)
+    {
+        if (safetyFactor > 0)
+        {
+            histograms.computeIfAbsent(getKey(sourceMimetype, sourceSize), key -> new Histogram())
+                      .record(durationMs);
+        }
+    }
+
+    private static String getKey(String sourceMimetype, long sourceSize)
+    {
+        return sourceMimetype + ':' + getSizeBucket(sourceSize);
+    }
+
+    /**
+     * @return the number of bits needed for the size, so each bucket holds sizes up to twice those of the last
+     */
+    static int getSizeBucket(long sourceSize)
+    {
+        return 64 - Long.numberOfLeadingZeros(Math.max(0, sourceSize));
+    }
+
+    static int getDurationBucket(long durationMs)
+    {
+        if (durationMs <= 1)
+        {
+            return 0;
+        }
+        return (int) Math.min(DURATION_BUCKETS - 1, Math.ceil(Math.log(durationMs) / LOG_DURATION_GROWTH));
+    }
+
+    static long getDurationBucketUpperBoundMs(int bucket)
+    {
+        return (long) Math.ceil(Math.pow(DURATION_GROWTH, bucket));
+    }
+
+    private static class Histogram
+    {
+        private final long[] counts = new long[DURATION_BUCKETS];
+        private long total;
+
+        private synchronized void record(long durationMs)
+        {
+            counts[getDurationBucket(durationMs)]++;
+            if (++total >= MAX_SAMPLES)
+            {
+                total = 0;
+                for (int i = 0; i < counts.length; i++)
+                {
+                    counts[i] /= 2;
+                    total += counts[i];
+                }
+            }
+        }
+
+        /**
+         * @return the upper bound of the bucket holding the quantile, or -1 if there are too few samples
+         */
+        private synchronized long getQuantileMs(double quantile)
+        {
+            if (total < MIN_SAMPLES)
+            {
+                return -1;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long count = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                count += counts[i];
+                if (count >= rank)
+                {
+                    return getDurationBucketUpperBoundMs(i);
+                }
+            }
+            return getDurationBucketUpperBoundMs(counts.length - 1);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the soffice processes started by JodConverter, reads how much memory they use and kills them. JodConverter
+ * does not expose the processes it starts, so they are found from the port number in their {@code -accept}
+ * argument. The resident set size (RSS) is read from {@code /proc}, so is only available on Linux.
+ */
+final class OfficeProcesses
+{
+    private static final Logger logger = LoggerFactory.getLogger(OfficeProcesses.class);
+
+    static final long UNKNOWN = -1;
+
+    private static final String VM_RSS = "VmRSS:";
+
+    private static final Map<Integer, ProcessHandle> processesByPort = new ConcurrentHashMap<>();
+
+    private OfficeProcesses()
+    {
+    }
+
+    /**
+     * @return the resident set size in bytes of the soffice process listening on the port, or {@link #UNKNOWN}
+     */
+    static long getRssBytes(int portNumber)
+    {
+        ProcessHandle process = getProcess(portNumber).orElse(null);
+        if (process == null)
+        {
+            return UNKNOWN;
+        }
+        Path status = Paths.get("/proc", Long.toString(process.pid()), "status");
+        try
+        {
+            return parseVmRss(Files.readString(status));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.debug("Unable to read the RSS of the soffice process on port {}: {}", portNumber,
+                e.getMessage());
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Forcibly stops the soffice process listening on the port. JodConverter then abandons the task it was running
+     * and starts a new process.
+     *
+     * @return {@code true} if the process was found
+     */
+    static boolean kill(int portNumber)
+    {
+        Optional<ProcessHandle> process = getProcess(portNumber);
+        process.ifPresent(ProcessHandle::destroyForcibly);
+        processesByPort.remove(portNumber);
+        return process.isPresent();
+    }
+
+    private static Optional<ProcessHandle> getProcess(int portNumber)
+    {
+        ProcessHandle process = processesByPort.get(portNumber);
+        if (process == null || !process.isAlive())
+        {
+            // JodConverter starts a new process on the same port if the previous one had to be killed
+            process = findProcess(portNumber).orElse(null);
+            if (process == null)
+            {
+                processesByPort.remove(portNumber);
+                return Optional.empty();
+            }
+            processesByPort.put(portNumber, process);
+        }
+        return Optional.of(process);
+    }
+
+    private static Optional<ProcessHandle> findProcess(int portNumber)
+    {
+        String port = "port=" + portNumber + ";";
+        return ProcessHandle.allProcesses()
+                            .filter(process -> process.info().arguments()
+                                                      .map(args -> Arrays.stream(args).anyMatch(arg ->
+                                                          arg.startsWith("-accept=") && arg.contains(port)))
+                                                      .orElse(false))
+                            .findFirst();
+    }
+
+    /**
+     * @param status the content of /proc/[pid]/status
+     * @return the VmRSS value in bytes, or {@link #UNKNOWN} if there is none
+     */
+    static long parseVmRss(String status)
+    {
+        for (String line : status.split("\n"))
+        {
+            if (line.startsWith(VM_RSS))
+            {
+                String[] values = line.substring(VM_RSS.length()).trim().split("\\s+");
+                return Long.parseLong(values[0]) * 1024; // always in kB
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -67,12 +67,29 @@ public class AlfrescoPdfRendererController extends AbstractTransformerController
     @Value("${transform.core.pdfrenderer.exe}")
     private String execPath;
 
+    @Value("${transform.core.pdfrenderer.maxConcurrentProcesses:0}")
+    private int maxConcurrentProcesses;
+
+    @Value("${transform.core.pdfrenderer.maxQueueWaitSeconds:300}")
+    private long maxQueueWaitSeconds;
+
+    @Value("${transform.core.pdfrenderer.inProcess:false}")
+    private boolean inProcess;
+
+    @Value("${transform.core.pdfrenderer.scratchMemoryMb:16}")
+    private long scratchMemoryMb;
+
+    @Value("${transform.core.pdfrenderer.documentCacheSize:4}")
+    private int documentCacheSize;
+
     PdfRendererCommandExecutor commandExecutor;
 
     @PostConstruct
     private void init()
     {
         commandExecutor = new PdfRendererCommandExecutor(execPath);
+        commandExecutor.setConcurrencyLimits(maxConcurrentProcesses, maxQueueWaitSeconds * 1000);
+        commandExecutor.setInProcess(inProcess, scratchMemoryMb * 1024 * 1024, documentCacheSize);
     }
 
     @Override
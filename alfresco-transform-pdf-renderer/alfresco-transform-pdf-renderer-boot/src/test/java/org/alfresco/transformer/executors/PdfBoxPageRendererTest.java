@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.PdfRendererOptionsBuilder;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the in process rendering of pdf pages with PDFBox.
+ */
+public class PdfBoxPageRendererTest
+{
+    private static final long SCRATCH_MEMORY = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void scaleTest()
+    {
+        assertArrayEquals(new float[]{1, 1}, PdfBoxPageRenderer.getScale(200, 100, null, null, false, true));
+        assertArrayEquals(new float[]{0.5f, 0.5f}, PdfBoxPageRenderer.getScale(200, 100, 100, null, false, false));
+        assertArrayEquals(new float[]{0.5f, 0.5f}, PdfBoxPageRenderer.getScale(200, 100, null, 50, false, false));
+        assertArrayEquals(new float[]{0.25f, 0.25f}, PdfBoxPageRenderer.getScale(200, 100, 50, 50, false, true));
+        assertArrayEquals(new float[]{0.25f, 0.5f}, PdfBoxPageRenderer.getScale(200, 100, 50, 50, false, false));
+        assertArrayEquals(new float[]{1, 1}, PdfBoxPageRenderer.getScale(200, 100, 400, 400, false, true));
+        assertArrayEquals(new float[]{2, 2}, PdfBoxPageRenderer.getScale(200, 100, 400, 400, true, true));
+    }
+
+    @Test
+    public void renderRequestedPageTest() throws Exception
+    {
+        File source = createPdf("source.pdf");
+        File target = tempDir.resolve("target.png").toFile();
+        PdfBoxPageRenderer renderer = new PdfBoxPageRenderer(SCRATCH_MEMORY, 0);
+
+        assertTrue(renderer.render(options(1, 100, 100), source, target));
+
+        BufferedImage image = ImageIO.read(target);
+        assertEquals(50, image.getWidth());
+        assertEquals(100, image.getHeight());
+        assertEquals(0, renderer.getCachedDocumentCount());
+    }
+
+    @Test
+    public void firstPageAtPointSizeByDefaultTest() throws Exception
+    {
+        File source = createPdf("source.pdf");
+        File target = tempDir.resolve("target.png").toFile();
+
+        assertTrue(new PdfBoxPageRenderer(SCRATCH_MEMORY, 0).render(options(null, null, null), source, target));
+
+        BufferedImage image = ImageIO.read(target);
+        assertEquals(300, image.getWidth());
+        assertEquals(200, image.getHeight());
+    }
+
+    @Test
+    public void cachedDocumentTest() throws Exception
+    {
+        // Each request has its own copy of the source
+        File source1 = createPdf("source1.pdf");
+        File source2 = tempDir.resolve("source2.pdf").toFile();
+        Files.copy(source1.toPath(), source2.toPath());
+        File otherSource = createPdf("other.pdf", PDRectangle.A4);
+        File target = tempDir.resolve("target.png").toFile();
+        PdfBoxPageRenderer renderer = new PdfBoxPageRenderer(SCRATCH_MEMORY, 1);
+
+        assertTrue(renderer.render(options(0, 150, null), source1, target));
+        assertEquals(150, ImageIO.read(target).getWidth());
+        Files.delete(source1.toPath());
+
+        assertTrue(renderer.render(options(1, null, 50), source2, target));
+        assertEquals(25, ImageIO.read(target).getWidth());
+        assertEquals(1, renderer.getCachedDocumentCount());
+
+        // Evicts the first document
+        assertTrue(renderer.render(options(0, 100, null), otherSource, target));
+        assertEquals(1, renderer.getCachedDocumentCount());
+
+        renderer.clear();
+        assertEquals(0, renderer.getCachedDocumentCount());
+    }
+
+    @Test
+    public void missingPageTest() throws Exception
+    {
+        File source = createPdf("source.pdf");
+        File target = tempDir.resolve("target.png").toFile();
+        PdfBoxPageRenderer renderer = new PdfBoxPageRenderer(SCRATCH_MEMORY, 2);
+
+        TransformException e = assertThrows(TransformException.class,
+            () -> renderer.render(options(2, null, null), source, target));
+        assertEquals(400, e.getStatusCode());
+
+        // The document is still cached and usable
+        assertTrue(renderer.render(options(0, null, null), source, target));
+        assertEquals(1, renderer.getCachedDocumentCount());
+    }
+
+    @Test
+    public void unreadableSourceTest() throws Exception
+    {
+        File source = tempDir.resolve("source.pdf").toFile();
+        Files.writeString(source.toPath(), "not a pdf");
+        File target = tempDir.resolve("target.png").toFile();
+
+        assertFalse(new PdfBoxPageRenderer(SCRATCH_MEMORY, 2).render(options(0, null, null), source, target));
+        assertFalse(new PdfBoxPageRenderer(SCRATCH_MEMORY, 0).render(options(0, null, null), source, target));
+    }
+
+    @Test
+    public void renderFailureTest() throws Exception
+    {
+        // The image would have more pixels than an array may hold, so a RuntimeException is thrown rather than an
+        // IOException
+        File source = createPdf("source.pdf");
+        File target = tempDir.resolve("target.png").toFile();
+        PdfRendererOptionsBuilder options = options(0, 100000, null).withAllowPdfEnlargement(true);
+
+        assertFalse(new PdfBoxPageRenderer(SCRATCH_MEMORY, 2).render(options, source, target));
+        assertFalse(new PdfBoxPageRenderer(SCRATCH_MEMORY, 2).renderPages(options, List.of(0), source,
+            List.of(target)));
+    }
+
+    private static PdfRendererOptionsBuilder options(Integer page, Integer width, Integer height)
+    {
+        return PdfRendererOptionsBuilder.builder()
+            .withPage(page)
+            .withWidth(width)
+            .withHeight(height)
+            .withMaintainPdfAspectRatio(true);
+    }
+
+    private File createPdf(String name) throws IOException
+    {
+        return createPdf(name, new PDRectangle(300, 200), new PDRectangle(100, 200));
+    }
+
+    private File createPdf(String name, PDRectangle... pageSizes) throws IOException
+    {
+        File file = tempDir.resolve(name).toFile();
+        try (PDDocument document = new PDDocument())
+        {
+            for (PDRectangle pageSize : pageSizes)
+            {
+                document.addPage(new PDPage(pageSize));
+            }
+            document.save(file);
+        }
+        return file;
+    }
+}
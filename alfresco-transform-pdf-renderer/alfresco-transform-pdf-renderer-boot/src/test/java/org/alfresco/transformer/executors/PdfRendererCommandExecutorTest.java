@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.util.RequestParamMap.PAGES;
+import static org.alfresco.transformer.util.RequestParamMap.WIDTH_REQUEST_PARAM;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.executors.RuntimeExec.ExecutionResult;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the rendering of several pages into a zip, both in process and with a mock command that writes its options
+ * to its target.
+ */
+public class PdfRendererCommandExecutorTest
+{
+    private final PdfRendererCommandExecutor executor = new PdfRendererCommandExecutor("/usr/bin/alfresco-pdf-renderer");
+    private final RuntimeExec mockTransformCommand = mock(RuntimeExec.class);
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void before()
+    {
+        executor.transformCommand = mockTransformCommand;
+        executor.setConcurrencyLimits(3, 0);
+        ExecutionResult result = mock(ExecutionResult.class);
+        when(mockTransformCommand.execute(any(), anyLong())).thenAnswer(invocation -> {
+            Map<String, String> properties = invocation.getArgument(0);
+            Files.writeString(new File(properties.get("target")).toPath(), properties.get("options"));
+            return result;
+        });
+    }
+
+    @Test
+    public void parsePagesTest()
+    {
+        assertEquals(List.of(0), PdfRendererCommandExecutor.parsePages("0"));
+        assertEquals(List.of(0, 1, 2, 4, 7, 8), PdfRendererCommandExecutor.parsePages("7-8, 0-2,4,1"));
+
+        for (String pages : new String[]{"-1", "3-1", "a", "1-2-3", "1,", "1-"})
+        {
+            TransformException e = assertThrows(TransformException.class,
+                () -> PdfRendererCommandExecutor.parsePages(pages), pages);
+            assertEquals(400, e.getStatusCode());
+        }
+        assertThrows(TransformException.class, () -> PdfRendererCommandExecutor.parsePages("0-1000"));
+        assertEquals(PdfRendererCommandExecutor.MAX_PAGES,
+            PdfRendererCommandExecutor.parsePages("0-999").size());
+    }
+
+    @Test
+    public void pagesWithProcessesTest() throws IOException
+    {
+        File source = createPdf(6);
+        File target = tempDir.resolve("target.zip").toFile();
+
+        executor.transform("application/pdf", "application/zip",
+            new HashMap<>(Map.of(PAGES, "1-4", WIDTH_REQUEST_PARAM, "100")), source, target);
+
+        Map<String, byte[]> entries = unzip(target);
+        assertEquals(List.of("page-1.png", "page-2.png", "page-3.png", "page-4.png"),
+            new ArrayList<>(entries.keySet()));
+        assertEquals("--width=100 --page=3", new String(entries.get("page-3.png"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void pagesInProcessTest() throws IOException
+    {
+        executor.setInProcess(true, 1024 * 1024, 2);
+        File source = createPdf(6);
+        File target = tempDir.resolve("target.zip").toFile();
+
+        executor.transform("application/pdf", "application/zip",
+            new HashMap<>(Map.of(PAGES, "0,2-5", WIDTH_REQUEST_PARAM, "100")), source, target);
+
+        verify(mockTransformCommand, never()).execute(any(), anyLong());
+        Map<String, byte[]> entries = unzip(target);
+        assertEquals(List.of("page-0.png", "page-2.png", "page-3.png", "page-4.png", "page-5.png"),
+            new ArrayList<>(entries.keySet()));
+        for (byte[] png : entries.values())
+        {
+            assertEquals(100, ImageIO.read(new ByteArrayInputStream(png)).getWidth());
+        }
+    }
+
+    @Test
+    public void missingPageInProcessTest() throws IOException
+    {
+        executor.setInProcess(true, 1024 * 1024, 2);
+        File source = createPdf(2);
+        File target = tempDir.resolve("target.zip").toFile();
+
+        TransformException e = assertThrows(TransformException.class, () ->
+            executor.transform("application/pdf", "application/zip", new HashMap<>(Map.of(PAGES, "0-2")),
+                source, target));
+        assertEquals(400, e.getStatusCode());
+    }
+
+    private File createPdf(int pages) throws IOException
+    {
+        File file = tempDir.resolve("source.pdf").toFile();
+        try (PDDocument document = new PDDocument())
+        {
+            for (int i = 0; i < pages; i++)
+            {
+                document.addPage(new PDPage(PDRectangle.A4));
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    private static Map<String, byte[]> unzip(File zipFile) throws IOException
+    {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(zipFile.toPath())))
+        {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null)
+            {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
@@ -101,6 +101,31 @@ public final class PdfRendererOptionsBuilder
         return this;
     }
 
+    public Integer getPage()
+    {
+        return page;
+    }
+
+    public Integer getWidth()
+    {
+        return width;
+    }
+
+    public Integer getHeight()
+    {
+        return height;
+    }
+
+    public boolean isAllowPdfEnlargement()
+    {
+        return allowPdfEnlargement != null && allowPdfEnlargement;
+    }
+
+    public boolean isMaintainPdfAspectRatio()
+    {
+        return maintainPdfAspectRatio != null && maintainPdfAspectRatio;
+    }
+
     public String build()
     {
         StringJoiner args = new StringJoiner(" ");
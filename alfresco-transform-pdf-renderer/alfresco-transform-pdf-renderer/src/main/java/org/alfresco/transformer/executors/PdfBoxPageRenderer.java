@@ -0,0 +1,401 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.PdfRendererOptionsBuilder;
+import org.alfresco.transformer.logging.LogEntry;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+/**
+ * Renders a single page of a PDF (or PDF compatible Illustrator file) to a png in process with PDFBox, rather than
+ * by starting an alfresco-pdf-renderer process. It uses the same options: the zero based {@code page}, the
+ * {@code width} and {@code height} in pixels, {@code allowPdfEnlargement} and {@code maintainPdfAspectRatio}. Without
+ * a width or height, the page is rendered at 72 dpi.
+ * <p>
+ * Each document is parsed with its own scratch memory budget, beyond which PDFBox buffers it in a temporary file.
+ * Parsed documents are kept in a small least recently used cache, keyed on a digest of the source's content (as
+ * each request has its own copy of the source), so that requests for other pages of the same document do not parse
+ * it again. A document is rendered by one thread at a time, as a PDDocument is not thread safe.
+ * <p>
+ * Several pages may also be rendered from a single load of a document with
+ * {@link #renderPages(PdfRendererOptionsBuilder, List, File, List)}.
+ */
+public class PdfBoxPageRenderer
+{
+    private static final Logger logger = LoggerFactory.getLogger(PdfBoxPageRenderer.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long scratchMemoryBytes;
+    private final int maxCachedDocuments;
+    private final Map<String, CachedDocument> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param scratchMemoryBytes the memory used to buffer each document, beyond which a temporary file is used
+     * @param maxCachedDocuments the number of parsed documents to keep. If less than or equal to zero, each document
+     *                           is closed once its page has been rendered.
+     */
+    public PdfBoxPageRenderer(long scratchMemoryBytes, int maxCachedDocuments)
+    {
+        this.scratchMemoryBytes = scratchMemoryBytes;
+        this.maxCachedDocuments = maxCachedDocuments;
+    }
+
+    /**
+     * Renders the page requested in the options to the target.
+     *
+     * @return {@code true} if the target has been written, or {@code false} if PDFBox was unable to read or render
+     *         the source (including any unexpected runtime failure in PDFBox), so the transform should be done by
+     *         alfresco-pdf-renderer
+     * @throws TransformException if the page does not exist
+     */
+    public boolean render(PdfRendererOptionsBuilder options, File sourceFile, File targetFile)
+    {
+        CachedDocument document;
+        try
+        {
+            document = open(sourceFile);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.debug("Unable to read {} with PDFBox, so using alfresco-pdf-renderer: {}", sourceFile.getName(),
+                e.getMessage());
+            return false;
+        }
+
+        try
+        {
+            BufferedImage image;
+            synchronized (document)
+            {
+                image = renderPage(document.document, getPageIndex(options), options);
+            }
+            LogEntry.setOptions("PDFBox " + image.getWidth() + 'x' + image.getHeight());
+            return ImageIO.write(image, "png", targetFile);
+        }
+        catch (TransformException e)
+        {
+            throw e;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.debug("Unable to render {} with PDFBox, so using alfresco-pdf-renderer: {}", sourceFile.getName(),
+                e.getMessage());
+            return false;
+        }
+        finally
+        {
+            close(document);
+        }
+    }
+
+    /**
+     * Renders several pages from a single load of the source, which is not cached, as the pages are rendered by the
+     * calling thread and documents are rendered by one thread at a time. The page in the options is ignored.
+     *
+     * @param pageIndexes the zero based pages to render
+     * @param targetFiles the png files to write, one for each page
+     * @return {@code true} if the targets have been written, or {@code false} if PDFBox was unable to read or render
+     *         the source
+     * @throws TransformException if one of the pages does not exist
+     */
+    public boolean renderPages(PdfRendererOptionsBuilder options, List<Integer> pageIndexes, File sourceFile,
+                               List<File> targetFiles)
+    {
+        try (PDDocument document = PDDocument.load(sourceFile, MemoryUsageSetting.setupMixed(scratchMemoryBytes)))
+        {
+            for (int i = 0; i < pageIndexes.size(); i++)
+            {
+                if (!ImageIO.write(renderPage(document, pageIndexes.get(i), options), "png", targetFiles.get(i)))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch (TransformException e)
+        {
+            throw e;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.debug("Unable to render {} with PDFBox, so using alfresco-pdf-renderer: {}", sourceFile.getName(),
+                e.getMessage());
+            return false;
+        }
+    }
+
+    private static int getPageIndex(PdfRendererOptionsBuilder options)
+    {
+        return options.getPage() == null || options.getPage() < 0 ? 0 : options.getPage();
+    }
+
+    private static BufferedImage renderPage(PDDocument document, int pageIndex, PdfRendererOptionsBuilder options)
+        throws IOException
+    {
+        if (pageIndex >= document.getNumberOfPages())
+        {
+            throw new TransformException(BAD_REQUEST.value(), "The page " + pageIndex +
+                " does not exist. The document has " + document.getNumberOfPages() + " pages");
+        }
+
+        PDPage page = document.getPage(pageIndex);
+        PDRectangle cropBox = page.getCropBox();
+        boolean rotated = page.getRotation() % 180 != 0;
+        float pageWidth = rotated ? cropBox.getHeight() : cropBox.getWidth();
+        float pageHeight = rotated ? cropBox.getWidth() : cropBox.getHeight();
+        float[] scale = getScale(pageWidth, pageHeight, options.getWidth(), options.getHeight(),
+            options.isAllowPdfEnlargement(), options.isMaintainPdfAspectRatio());
+
+        BufferedImage image = new BufferedImage(
+            Math.max(1, Math.round(pageWidth * scale[0])), Math.max(1, Math.round(pageHeight * scale[1])),
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try
+        {
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(0, 0, image.getWidth(), image.getHeight());
+            new PDFRenderer(document).renderPageToGraphics(pageIndex, graphics, scale[0], scale[1]);
+        }
+        finally
+        {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Works out the horizontal and vertical scale from points to pixels. A missing or negative width or height is
+     * worked out from the other, and if both are missing the page is rendered at 72 dpi (one pixel per point).
+     */
+    static float[] getScale(float pageWidth, float pageHeight, Integer width, Integer height,
+                            boolean allowEnlargement, boolean maintainAspectRatio)
+    {
+        boolean hasWidth = width != null && width > 0;
+        boolean hasHeight = height != null && height > 0;
+        float scaleX = hasWidth ? width / pageWidth : 1;
+        float scaleY = hasHeight ? height / pageHeight : 1;
+        if (hasWidth && !hasHeight)
+        {
+            scaleY = scaleX;
+        }
+        else if (hasHeight && !hasWidth)
+        {
+            scaleX = scaleY;
+        }
+        else if (maintainAspectRatio)
+        {
+            scaleX = scaleY = Math.min(scaleX, scaleY);
+        }
+        if (!allowEnlargement)
+        {
+            scaleX = Math.min(scaleX, 1);
+            scaleY = Math.min(scaleY, 1);
+        }
+        return new float[]{scaleX, scaleY};
+    }
+
+    private CachedDocument open(File sourceFile) throws IOException
+    {
+        if (maxCachedDocuments <= 0)
+        {
+            CachedDocument document = new CachedDocument(
+                PDDocument.load(sourceFile, MemoryUsageSetting.setupMixed(scratchMemoryBytes)));
+            document.evicted = true;
+            document.users = 1;
+            return document;
+        }
+
+        String key = digest(sourceFile);
+        synchronized (cache)
+        {
+            CachedDocument document = cache.get(key);
+            if (document != null)
+            {
+                document.users++;
+                return document;
+            }
+        }
+
+        // Loaded from a stream, so that the cached copy does not depend on the source file, which is removed once
+        // the request has been handled.
+        PDDocument loaded;
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(sourceFile.toPath())))
+        {
+            loaded = PDDocument.load(inputStream, MemoryUsageSetting.setupMixed(scratchMemoryBytes));
+        }
+        synchronized (cache)
+        {
+            CachedDocument document = cache.get(key);
+            if (document != null)
+            {
+                // Another request loaded the same document at the same time
+                loaded.close();
+                document.users++;
+                return document;
+            }
+            document = new CachedDocument(loaded);
+            document.users = 1;
+            cache.put(key, document);
+            evictEldest();
+            return document;
+        }
+    }
+
+    private void evictEldest()
+    {
+        Iterator<CachedDocument> documents = cache.values().iterator();
+        while (cache.size() > maxCachedDocuments && documents.hasNext())
+        {
+            CachedDocument document = documents.next();
+            documents.remove();
+            document.evicted = true;
+            if (document.users == 0)
+            {
+                closeQuietly(document.document);
+            }
+        }
+    }
+
+    private void close(CachedDocument document)
+    {
+        synchronized (cache)
+        {
+            document.users--;
+            if (document.evicted && document.users == 0)
+            {
+                closeQuietly(document.document);
+            }
+        }
+    }
+
+    /**
+     * Closes the cached documents, which are otherwise only closed when they are evicted.
+     */
+    public void clear()
+    {
+        synchronized (cache)
+        {
+            Iterator<CachedDocument> documents = cache.values().iterator();
+            while (documents.hasNext())
+            {
+                CachedDocument document = documents.next();
+                documents.remove();
+                document.evicted = true;
+                if (document.users == 0)
+                {
+                    closeQuietly(document.document);
+                }
+            }
+        }
+    }
+
+    int getCachedDocumentCount()
+    {
+        synchronized (cache)
+        {
+            return cache.size();
+        }
+    }
+
+    private static void closeQuietly(PDDocument document)
+    {
+        try
+        {
+            document.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("Unable to close a cached document: {}", e.getMessage());
+        }
+    }
+
+    private static String digest(File sourceFile) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(sourceFile.toPath()), digest))
+        {
+            while (inputStream.read(buffer) != -1)
+            {
+                // just reading updates the digest
+            }
+        }
+        StringBuilder key = new StringBuilder(Long.toString(sourceFile.length())).append(':');
+        for (byte b : digest.digest())
+        {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    private static class CachedDocument
+    {
+        private final PDDocument document;
+        private int users;
+        private boolean evicted;
+
+        private CachedDocument(PDDocument document)
+        {
+            this.document = document;
+        }
+    }
+}
@@ -29,17 +29,37 @@ package org.alfresco.transformer.executors;
 import org.alfresco.transform.exceptions.TransformException;
 import org.alfresco.transformer.PdfRendererOptionsBuilder;
 
+import org.alfresco.transformer.logging.LogEntry;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static org.alfresco.transformer.fs.FileManager.TempFileProvider.createTempFile;
 import static org.alfresco.transformer.util.RequestParamMap.ALLOW_PDF_ENLARGEMENT;
 import static org.alfresco.transformer.util.RequestParamMap.HEIGHT_REQUEST_PARAM;
 import static org.alfresco.transformer.util.RequestParamMap.MAINTAIN_PDF_ASPECT_RATIO;
+import static org.alfresco.transformer.util.RequestParamMap.PAGES;
 import static org.alfresco.transformer.util.RequestParamMap.PAGE_REQUEST_PARAM;
 import static org.alfresco.transformer.util.RequestParamMap.TIMEOUT;
 import static org.alfresco.transformer.util.RequestParamMap.WIDTH_REQUEST_PARAM;
 import static org.alfresco.transformer.util.Util.stringToLong;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 
 /**
  * CommandExecutor implementation for running PDF Renderer transformations. It runs the
@@ -49,10 +69,24 @@ public class PdfRendererCommandExecutor extends AbstractCommandExecutor
 {
     private static String ID = "pdfrenderer";
 
+    /**
+     * The maximum number of pages that may be requested with the {@code pages} option.
+     */
+    public static final int MAX_PAGES = 1000;
+
+    private static final AtomicInteger PAGE_THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService PAGE_RENDERERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "pdfrenderer-pages-" + PAGE_THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public static final String LICENCE = "This transformer uses alfresco-pdf-renderer which uses the PDFium library from Google Inc. See the license at https://pdfium.googlesource.com/pdfium/+/master/LICENSE or in /pdfium.txt";
 
     private final String EXE;
 
+    private PdfBoxPageRenderer pdfBoxPageRenderer;
+
     public PdfRendererCommandExecutor(String exe)
     {
         if (exe == null || exe.isEmpty())
@@ -64,6 +98,22 @@ public class PdfRendererCommandExecutor extends AbstractCommandExecutor
         super.checkCommand = createCheckCommand();
     }
 
+    /**
+     * @param inProcess          if {@code true}, pages are rendered in process by {@link PdfBoxPageRenderer} rather
+     *                           than by starting an alfresco-pdf-renderer process, which is still used for sources
+     *                           that PDFBox cannot read.
+     * @param scratchMemoryBytes the memory used to buffer each document being rendered in process
+     * @param maxCachedDocuments the number of documents kept parsed for later requests for their other pages
+     */
+    public void setInProcess(boolean inProcess, long scratchMemoryBytes, int maxCachedDocuments)
+    {
+        if (pdfBoxPageRenderer != null)
+        {
+            pdfBoxPageRenderer.clear();
+        }
+        pdfBoxPageRenderer = inProcess ? new PdfBoxPageRenderer(scratchMemoryBytes, maxCachedDocuments) : null;
+    }
+
     @Override
     public String getTransformerId()
     {
@@ -103,17 +153,235 @@ public class PdfRendererCommandExecutor extends AbstractCommandExecutor
                           Map<String, String> transformOptions,
                           File sourceFile, File targetFile) throws TransformException
     {
-        final String options = PdfRendererOptionsBuilder
+        final PdfRendererOptionsBuilder builder = PdfRendererOptionsBuilder
                 .builder()
                 .withPage(transformOptions.get(PAGE_REQUEST_PARAM))
                 .withWidth(transformOptions.get(WIDTH_REQUEST_PARAM))
                 .withHeight(transformOptions.get(HEIGHT_REQUEST_PARAM))
                 .withAllowPdfEnlargement(transformOptions.get(ALLOW_PDF_ENLARGEMENT))
-                .withMaintainPdfAspectRatio(transformOptions.get(MAINTAIN_PDF_ASPECT_RATIO))
-                .build();
-
+                .withMaintainPdfAspectRatio(transformOptions.get(MAINTAIN_PDF_ASPECT_RATIO));
         Long timeout = stringToLong(transformOptions.get(TIMEOUT));
 
+        final String pages = transformOptions.get(PAGES);
+        if (pages != null && !pages.isBlank())
+        {
+            transformPages(builder, parsePages(pages), sourceFile, targetFile, timeout);
+            return;
+        }
+        if (pdfBoxPageRenderer != null && renderInProcess(builder, sourceFile, targetFile))
+        {
+            return;
+        }
+        final String options = builder.build();
+
         run(options, sourceFile, targetFile, timeout);
     }
+
+    /**
+     * Renders several pages and zips them up into the target as {@code page-<n>.png} entries. The pages are split
+     * into contiguous groups, one for each of the processes that may run at the same time, which are rendered
+     * concurrently. In process, each group is rendered from a single load of the document. Otherwise each page is
+     * rendered by its own alfresco-pdf-renderer process.
+     */
+    private void transformPages(PdfRendererOptionsBuilder builder, List<Integer> pages, File sourceFile,
+                                File targetFile, Long timeout)
+    {
+        final int groups = Math.min(pages.size(), getConcurrencyLimiter().getMaxConcurrent());
+        final List<File> pageFiles = new ArrayList<>();
+        try
+        {
+            for (Integer page : pages)
+            {
+                pageFiles.add(createTempFile("page_", "_" + page + ".png"));
+            }
+
+            if (pdfBoxPageRenderer != null && renderPagesInProcess(builder, pages, groups, sourceFile, pageFiles))
+            {
+                LogEntry.setOptions("PDFBox " + pages.size() + " pages in " + groups + " threads");
+            }
+            else
+            {
+                final List<Future<Boolean>> futures = new ArrayList<>();
+                forEachGroup(pages.size(), groups, (from, to) -> {
+                    final List<Map<String, String>> pageProperties = new ArrayList<>();
+                    for (int i = from; i < to; i++)
+                    {
+                        final Map<String, String> properties = new HashMap<>();
+                        properties.put("options", builder.withPage(pages.get(i)).build());
+                        properties.put("source", sourceFile.getAbsolutePath());
+                        properties.put("target", pageFiles.get(i).getAbsolutePath());
+                        pageProperties.add(properties);
+                    }
+                    futures.add(PAGE_RENDERERS.submit(() -> {
+                        pageProperties.forEach(properties ->
+                            run(properties, new File(properties.get("target")), timeout));
+                        return true;
+                    }));
+                });
+                LogEntry.setOptions(pages.size() + " pages in " + groups + " processes " +
+                    builder.withPage((Integer) null).build());
+                waitFor(futures);
+            }
+
+            zip(pages, pageFiles, targetFile);
+        }
+        finally
+        {
+            pageFiles.forEach(File::delete);
+        }
+    }
+
+    private boolean renderPagesInProcess(PdfRendererOptionsBuilder builder, List<Integer> pages, int groups,
+                                         File sourceFile, List<File> pageFiles)
+    {
+        final List<Future<Boolean>> futures = new ArrayList<>();
+        forEachGroup(pages.size(), groups, (from, to) -> futures.add(PAGE_RENDERERS.submit(() -> {
+            // Shares the CPUs with the alfresco-pdf-renderer processes
+            ConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter();
+            concurrencyLimiter.acquire();
+            try
+            {
+                return pdfBoxPageRenderer.renderPages(builder, pages.subList(from, to), sourceFile,
+                    pageFiles.subList(from, to));
+            }
+            finally
+            {
+                concurrencyLimiter.release();
+            }
+        })));
+        return waitFor(futures);
+    }
+
+    private static void forEachGroup(int size, int groups, BiConsumer<Integer, Integer> consumer)
+    {
+        int from = 0;
+        for (int i = 0; i < groups; i++)
+        {
+            final int to = from + size / groups + (i < size % groups ? 1 : 0);
+            consumer.accept(from, to);
+            from = to;
+        }
+    }
+
+    /**
+     * Waits for all the groups to finish, even if one fails, so that none are still writing when the pages are
+     * deleted.
+     *
+     * @return {@code true} if all the groups returned {@code true}
+     */
+    private static boolean waitFor(List<Future<Boolean>> futures)
+    {
+        RuntimeException failure = null;
+        boolean result = true;
+        for (Future<Boolean> future : futures)
+        {
+            try
+            {
+                result &= future.get();
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed to render the pages",
+                            e.getCause());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new TransformException(INTERNAL_SERVER_ERROR.value(),
+                    "Interrupted while rendering the pages", e);
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+        return result;
+    }
+
+    private static void zip(List<Integer> pages, List<File> pageFiles, File targetFile)
+    {
+        try (OutputStream outputStream = Files.newOutputStream(targetFile.toPath());
+             ZipOutputStream zip = new ZipOutputStream(outputStream))
+        {
+            for (int i = 0; i < pages.size(); i++)
+            {
+                final File pageFile = pageFiles.get(i);
+                if (pageFile.length() == 0)
+                {
+                    throw new TransformException(INTERNAL_SERVER_ERROR.value(),
+                        "Transformer failed to render page " + pages.get(i));
+                }
+                zip.putNextEntry(new ZipEntry("page-" + pages.get(i) + ".png"));
+                Files.copy(pageFile.toPath(), zip);
+                zip.closeEntry();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed to write the pages", e);
+        }
+    }
+
+    /**
+     * Parses the {@code pages} option, which is a comma separated list of zero based page numbers and ranges, such
+     * as {@code 0-4,7,9-10}.
+     *
+     * @return the pages in ascending order, without duplicates
+     */
+    static List<Integer> parsePages(String pages)
+    {
+        final TreeSet<Integer> pageIndexes = new TreeSet<>();
+        for (String part : pages.split(",", -1))
+        {
+            final String[] range = part.trim().split("-", -1);
+            try
+            {
+                if (range.length > 2)
+                {
+                    throw new NumberFormatException();
+                }
+                final int start = Integer.parseInt(range[0].trim());
+                final int end = range.length == 1 ? start : Integer.parseInt(range[1].trim());
+                if (start < 0 || end < start || end - start >= MAX_PAGES)
+                {
+                    throw new NumberFormatException();
+                }
+                for (int page = start; page <= end && pageIndexes.size() <= MAX_PAGES; page++)
+                {
+                    pageIndexes.add(page);
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                throw new TransformException(BAD_REQUEST.value(), "Invalid pages: " + pages);
+            }
+        }
+        if (pageIndexes.size() > MAX_PAGES)
+        {
+            throw new TransformException(BAD_REQUEST.value(),
+                "No more than " + MAX_PAGES + " pages may be requested: " + pages);
+        }
+        return new ArrayList<>(pageIndexes);
+    }
+
+    private boolean renderInProcess(PdfRendererOptionsBuilder builder, File sourceFile, File targetFile)
+    {
+        // Shares the CPUs with the alfresco-pdf-renderer processes
+        ConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter();
+        concurrencyLimiter.acquire();
+        try
+        {
+            return pdfBoxPageRenderer.render(builder, sourceFile, targetFile);
+        }
+        finally
+        {
+            concurrencyLimiter.release();
+        }
+    }
 }
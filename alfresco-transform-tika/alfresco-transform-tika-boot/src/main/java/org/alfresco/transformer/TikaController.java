@@ -26,17 +26,24 @@
  */
 package org.alfresco.transformer;
 
+import org.alfresco.transformer.executors.TikaForkedWorkerPool;
 import org.alfresco.transformer.executors.TikaJavaExecutor;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.probes.ProbeTestTransform;
+import org.alfresco.transformer.tika.parsers.ExifToolParser;
+import org.alfresco.transformer.tika.parsers.ExifToolWorkerPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 
+import javax.annotation.PreDestroy;
 import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.alfresco.transformer.executors.Tika.PDF_BOX;
 import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_PDF;
 import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_PLAIN;
@@ -69,10 +76,38 @@ public class TikaController extends AbstractTransformerController
     private static final Logger logger = LoggerFactory.getLogger(TikaController.class);
 
     private TikaJavaExecutor javaExecutor;
+    private final boolean streamTargets;
 
-    public TikaController(@Value("${transform.core.tika.pdfBox.notExtractBookmarksTextDefault:false}") boolean notExtractBookmarksTextDefault)
+    public TikaController(@Value("${transform.core.tika.pdfBox.notExtractBookmarksTextDefault:false}") boolean notExtractBookmarksTextDefault,
+                          @Value("${transform.core.tika.exifTool.workers:4}") int exifToolWorkers,
+                          @Value("${transform.core.tika.exifTool.maxFilesPerWorker:1000}") int exifToolMaxFilesPerWorker,
+                          @Value("${transform.core.tika.exifTool.timeoutSeconds:60}") long exifToolTimeoutSeconds,
+                          @Value("${transform.core.tika.forked.workers:0}") int forkedWorkers,
+                          @Value("${transform.core.tika.forked.maxHeap:512m}") String forkedMaxHeap,
+                          @Value("${transform.core.tika.forked.maxFilesPerWorker:100}") int forkedMaxFilesPerWorker,
+                          @Value("${transform.core.tika.forked.timeoutSeconds:300}") long forkedTimeoutSeconds,
+                          @Value("${transform.core.tika.forked.inProcessMaxSizeKb:1024}") long inProcessMaxSizeKb,
+                          @Value("${transform.core.tika.forked.inProcessMimetypes:text/plain,text/csv,text/html,text/xml,application/xhtml+xml}") String[] inProcessMimetypes,
+                          @Value("${transform.core.tika.streamTargets:false}") boolean streamTargets)
     {
-        javaExecutor= new TikaJavaExecutor(notExtractBookmarksTextDefault);
+        this.streamTargets = streamTargets;
+        ExifToolWorkerPool exifToolWorkerPool = exifToolWorkers > 0
+            ? new ExifToolWorkerPool(new ExifToolParser().getExecutable(), exifToolWorkers,
+                exifToolMaxFilesPerWorker, SECONDS.toMillis(exifToolTimeoutSeconds))
+            : null;
+        javaExecutor= new TikaJavaExecutor(notExtractBookmarksTextDefault, exifToolWorkerPool);
+        if (forkedWorkers > 0)
+        {
+            javaExecutor.setForkedWorkerPool(new TikaForkedWorkerPool(forkedWorkers, forkedMaxHeap,
+                forkedMaxFilesPerWorker, SECONDS.toMillis(forkedTimeoutSeconds)),
+                inProcessMaxSizeKb * 1024, Arrays.asList(inProcessMimetypes));
+        }
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        javaExecutor.close();
     }
 
     @Override
@@ -103,11 +138,26 @@ public class TikaController extends AbstractTransformerController
         };
     }
 
+    @Override
+    protected boolean isStreamable(String transformName, String sourceMimetype, String targetMimetype,
+                                   Map<String, String> transformOptions)
+    {
+        return streamTargets && TikaJavaExecutor.isStreamable(targetMimetype);
+    }
+
     @Override
     public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
                                  Map<String, String> transformOptions, File sourceFile, File targetFile)
+    {
+        transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+            TransformTarget.of(targetFile));
+    }
+
+    @Override
+    public void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
+                                 Map<String, String> transformOptions, File sourceFile, TransformTarget target)
     {
         transformOptions.put(TRANSFORM_NAME_PARAMETER, transformName);
-        javaExecutor.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+        javaExecutor.transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, target);
     }
 }
@@ -0,0 +1,245 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_HTML;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_PLAIN;
+import static org.alfresco.transformer.util.RequestParamMap.MAX_CHARACTERS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpHeaders.CONTENT_LENGTH;
+import static org.springframework.http.HttpHeaders.TRAILER;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.alfresco.transformer.clients.AlfrescoSharedFileStoreClient;
+import org.alfresco.transformer.executors.TikaJavaExecutor;
+import org.alfresco.transformer.fs.TransformTarget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.LinkedMultiValueMap;
+
+/**
+ * Tests the TikaController sending text targets to the client as they are written, rather than via the target file.
+ */
+@WebMvcTest(properties = "transform.core.tika.streamTargets=true")
+public class TikaControllerStreamedTargetTest
+{
+    private static final String TRAILERS_ATTRIBUTE = "trailers";
+    private static final String SENTENCE = "The quick brown fox jumps over the lazy dog";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TikaController controller;
+
+    @MockBean
+    private AlfrescoSharedFileStoreClient alfrescoSharedFileStoreClient;
+
+    private TikaJavaExecutor javaExecutor;
+
+    /**
+     * A MockHttpServletResponse ignores trailers, so the supplier set by the StreamedTarget is kept as a request
+     * attribute.
+     */
+    @TestConfiguration
+    static class TrailerCaptureConfiguration
+    {
+        @Bean
+        public Filter trailerCaptureFilter()
+        {
+            return (request, response, chain) -> chain.doFilter(request,
+                new HttpServletResponseWrapper((HttpServletResponse) response)
+                {
+                    @Override
+                    public void setTrailerFields(Supplier<Map<String, String>> supplier)
+                    {
+                        request.setAttribute(TRAILERS_ATTRIBUTE, supplier);
+                    }
+                });
+        }
+    }
+
+    @AfterEach
+    public void after()
+    {
+        if (javaExecutor != null)
+        {
+            ReflectionTestUtils.setField(controller, "javaExecutor", javaExecutor);
+        }
+    }
+
+    private static byte[] html(int paragraphs)
+    {
+        StringBuilder sb = new StringBuilder("<html><body>\n");
+        for (int i = 0; i < paragraphs; i++)
+        {
+            sb.append("<p>").append(SENTENCE).append("</p>\n");
+        }
+        return sb.append("</body></html>\n").toString().getBytes(UTF_8);
+    }
+
+    private MvcResult transform(byte[] source, String... params) throws Exception
+    {
+        MockMultipartFile sourceFile = new MockMultipartFile("file", "quick.html", MIMETYPE_HTML, source);
+        return mockMvc.perform(MockMvcRequestBuilders.multipart("/transform")
+                                                     .file(sourceFile)
+                                                     .param("targetExtension", "txt")
+                                                     .param("targetEncoding", "UTF-8")
+                                                     .param("targetMimetype", MIMETYPE_TEXT_PLAIN)
+                                                     .param("sourceMimetype", MIMETYPE_HTML)
+                                                     .params(toParams(params)))
+                      .andExpect(status().is(OK.value()))
+                      .andExpect(header().string(CONTENT_DISPOSITION, "attachment; filename*= UTF-8''quick.txt"))
+                      .andReturn();
+    }
+
+    private static LinkedMultiValueMap<String, String> toParams(String... params)
+    {
+        LinkedMultiValueMap<String, String> map = new LinkedMultiValueMap<>();
+        for (int i = 0; i < params.length; i += 2)
+        {
+            map.add(params[i], params[i + 1]);
+        }
+        return map;
+    }
+
+    private static int count(String content, String sentence)
+    {
+        int count = 0;
+        for (int i = content.indexOf(sentence); i >= 0; i = content.indexOf(sentence, i + sentence.length()))
+        {
+            count++;
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> getTrailers(MvcResult result)
+    {
+        Supplier<Map<String, String>> trailers =
+            (Supplier<Map<String, String>>) result.getRequest().getAttribute(TRAILERS_ATTRIBUTE);
+        assertNotNull(trailers, "Trailers should have been set");
+        return trailers.get();
+    }
+
+    @Test
+    public void smallTargetReturnedFromMemoryTest() throws Exception
+    {
+        MvcResult result = transform(html(10));
+
+        String content = result.getResponse().getContentAsString(UTF_8);
+        assertEquals(10, count(content, SENTENCE));
+        assertEquals(String.valueOf(result.getResponse().getContentAsByteArray().length),
+            result.getResponse().getHeader(CONTENT_LENGTH));
+        assertNull(result.getResponse().getHeader(TRAILER));
+        assertNull(result.getRequest().getAttribute(TRAILERS_ATTRIBUTE));
+    }
+
+    @Test
+    public void largeTargetStreamedTest() throws Exception
+    {
+        MvcResult result = transform(html(5000));
+
+        String content = result.getResponse().getContentAsString(UTF_8);
+        assertTrue(content.length() > 64 * 1024, "The target should be larger than is kept in memory");
+        assertEquals(5000, count(content, SENTENCE), "The content should only have been sent once");
+        assertNull(result.getResponse().getHeader(CONTENT_LENGTH));
+        assertEquals(TransformTarget.TRUNCATED_HEADER, result.getResponse().getHeader(TRAILER));
+        assertNull(result.getResponse().getHeader(TransformTarget.TRUNCATED_HEADER));
+        assertTrue(getTrailers(result).isEmpty());
+    }
+
+    @Test
+    public void truncatedStreamedTargetReportedInTrailerTest() throws Exception
+    {
+        MvcResult result = transform(html(5000), MAX_CHARACTERS, "100000");
+
+        String content = result.getResponse().getContentAsString(UTF_8);
+        assertTrue(content.length() > 64 * 1024, "The target should be larger than is kept in memory");
+        assertTrue(content.length() <= 100000, "The target should have been truncated");
+        assertNull(result.getResponse().getHeader(TransformTarget.TRUNCATED_HEADER),
+            "The response was committed before the target was truncated");
+        assertEquals(MAX_CHARACTERS + "=100000", getTrailers(result).get(TransformTarget.TRUNCATED_HEADER));
+    }
+
+    @Test
+    public void failureAfterStreamingStartedTest() throws Exception
+    {
+        javaExecutor = (TikaJavaExecutor) ReflectionTestUtils.getField(controller, "javaExecutor");
+        TikaJavaExecutor failingExecutor = mock(TikaJavaExecutor.class);
+        doAnswer(invocation ->
+        {
+            TransformTarget target = invocation.getArgument(4);
+            assertFalse(target.getFile().exists(), "The target file should not be created for a streamed target");
+            try (OutputStream os = target.stream())
+            {
+                os.write(new byte[100 * 1024]);
+            }
+            throw new RuntimeException("Failed mid-stream");
+        }).when(failingExecutor).transform(anyString(), anyString(), anyMap(), any(File.class), any(TransformTarget.class));
+        ReflectionTestUtils.setField(controller, "javaExecutor", failingExecutor);
+
+        MvcResult result = transform(html(10));
+
+        // The response is left as it is, for its connection to be closed (see TikaStreamedTargetHttpRequestTest)
+        assertEquals(100 * 1024, result.getResponse().getContentAsByteArray().length);
+        assertTrue(AbortResponseValve.isAborted(result.getRequest()), "The response should have been aborted");
+        assertTrue(getTrailers(result).isEmpty());
+    }
+}
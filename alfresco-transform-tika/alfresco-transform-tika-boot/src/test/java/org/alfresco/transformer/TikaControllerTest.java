@@ -61,10 +61,12 @@ import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_XHTML;
 import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_XML;
 import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_ZIP;
 import static org.alfresco.transformer.util.RequestParamMap.INCLUDE_CONTENTS;
+import static org.alfresco.transformer.util.RequestParamMap.MAX_CHARACTERS;
 import static org.alfresco.transformer.util.RequestParamMap.NOT_EXTRACT_BOOKMARKS_TEXT;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -654,4 +656,65 @@ public class TikaControllerTest extends AbstractTransformerControllerTest
         assertEquals(transformRequest.getClientData(), transformReply.getClientData());
         assertEquals(transformRequest.getSchema(), transformReply.getSchema());
     }
+
+    @Test
+    public void testPojoTransformTruncated() throws Exception
+    {
+        String sourceFileRef = UUID.randomUUID().toString();
+        File sourceFile = getTestFile("quick.html", true);
+        String targetFileRef = UUID.randomUUID().toString();
+
+        TransformRequest transformRequest = new TransformRequest();
+        transformRequest.setRequestId("1");
+        transformRequest.setSchema(1);
+        transformRequest.setClientData("Alfresco Digital Business Platform");
+        transformRequest.setTransformRequestOptions(new HashMap<>(Map.of(MAX_CHARACTERS, "10")));
+        transformRequest.setSourceReference(sourceFileRef);
+        transformRequest.setSourceExtension("html");
+        transformRequest.setSourceSize(sourceFile.length());
+        transformRequest.setTargetExtension("txt");
+        transformRequest.setSourceMediaType(MIMETYPE_HTML);
+        transformRequest.setTargetMediaType(MIMETYPE_TEXT_PLAIN);
+        transformRequest.getTransformRequestOptions().put("targetEncoding", "UTF-8");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(CONTENT_DISPOSITION, "attachment; filename=quick.html");
+        ResponseEntity<Resource> response = new ResponseEntity<>(new FileSystemResource(
+            sourceFile), headers, OK);
+
+        when(alfrescoSharedFileStoreClient.retrieveFile(sourceFileRef)).thenReturn(response);
+        when(alfrescoSharedFileStoreClient.saveFile(any()))
+            .thenReturn(new FileRefResponse(new FileRefEntity(targetFileRef)));
+        when(alfrescoSharedFileStoreClient.saveContent(any()))
+            .thenReturn(new FileRefResponse(new FileRefEntity(targetFileRef)));
+
+        String transformationReplyAsString = mockMvc
+            .perform(MockMvcRequestBuilders
+                .post("/transform")
+                .header(ACCEPT, APPLICATION_JSON_VALUE)
+                .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                .content(objectMapper.writeValueAsString(transformRequest)))
+            .andExpect(status().is(CREATED.value()))
+            .andReturn().getResponse().getContentAsString();
+
+        TransformReply transformReply = objectMapper.readValue(transformationReplyAsString,
+            TransformReply.class);
+
+        // The target is still returned, but the client is told that it is incomplete
+        assertEquals(targetFileRef, transformReply.getTargetReference());
+        assertEquals("Target truncated (" + MAX_CHARACTERS + "=10)", transformReply.getErrorDetails());
+
+        // A target that was not truncated has no error details
+        transformRequest.getTransformRequestOptions().remove(MAX_CHARACTERS);
+        transformationReplyAsString = mockMvc
+            .perform(MockMvcRequestBuilders
+                .post("/transform")
+                .header(ACCEPT, APPLICATION_JSON_VALUE)
+                .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                .content(objectMapper.writeValueAsString(transformRequest)))
+            .andExpect(status().is(CREATED.value()))
+            .andReturn().getResponse().getContentAsString();
+
+        assertNull(objectMapper.readValue(transformationReplyAsString, TransformReply.class).getErrorDetails());
+    }
 }
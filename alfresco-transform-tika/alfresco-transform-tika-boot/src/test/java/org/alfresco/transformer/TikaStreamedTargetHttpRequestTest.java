@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_HTML;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_PLAIN;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.executors.TikaJavaExecutor;
+import org.alfresco.transformer.fs.TransformTarget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Tests what a client receives from a real server when a transform fails after part of its streamed target has been
+ * sent. A MockMvc response does not show how the connection ends.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = "transform.core.tika.streamTargets=true")
+public class TikaStreamedTargetHttpRequestTest
+{
+    private static final String BOUNDARY = "streamedTargetBoundary";
+    private static final String SENTENCE = "The quick brown fox jumps over the lazy dog\n";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TikaController controller;
+
+    private TikaJavaExecutor javaExecutor;
+
+    @AfterEach
+    public void after()
+    {
+        if (javaExecutor != null)
+        {
+            ReflectionTestUtils.setField(controller, "javaExecutor", javaExecutor);
+        }
+    }
+
+    private static void addPart(ByteArrayOutputStream body, String name, String value)
+    {
+        body.writeBytes(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" +
+            value + "\r\n").getBytes(UTF_8));
+    }
+
+    /**
+     * @return the raw response, read until the server closes the connection
+     */
+    private String transform() throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; " +
+            "filename=\"quick.html\"\r\nContent-Type: " + MIMETYPE_HTML + "\r\n\r\n" +
+            "<html><body><p>" + SENTENCE + "</p></body></html>\r\n").getBytes(UTF_8));
+        addPart(body, "targetExtension", "txt");
+        addPart(body, "sourceMimetype", MIMETYPE_HTML);
+        addPart(body, "targetMimetype", MIMETYPE_TEXT_PLAIN);
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(UTF_8));
+
+        try (Socket socket = new Socket("localhost", port))
+        {
+            socket.setSoTimeout(30000);
+            OutputStream os = socket.getOutputStream();
+            os.write(("POST /transform HTTP/1.1\r\n" +
+                "Host: localhost:" + port + "\r\n" +
+                // So that a completed response is followed by the server closing the connection too
+                "Connection: close\r\n" +
+                "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n" +
+                "Content-Length: " + body.size() + "\r\n\r\n").getBytes(ISO_8859_1));
+            body.writeTo(os);
+            os.flush();
+            return new String(socket.getInputStream().readAllBytes(), ISO_8859_1);
+        }
+    }
+
+    @Test
+    public void failureAfterStreamingStartedAbortsResponseTest() throws Exception
+    {
+        javaExecutor = (TikaJavaExecutor) ReflectionTestUtils.getField(controller, "javaExecutor");
+        TikaJavaExecutor failingExecutor = mock(TikaJavaExecutor.class);
+        doAnswer(invocation ->
+        {
+            TransformTarget target = invocation.getArgument(4);
+            try (OutputStream os = target.stream())
+            {
+                for (int i = 0; i < 100 * 1024 / SENTENCE.length(); i++)
+                {
+                    os.write(SENTENCE.getBytes(UTF_8));
+                }
+            }
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed mid-stream");
+        }).when(failingExecutor).transform(anyString(), anyString(), anyMap(), any(File.class), any(TransformTarget.class));
+        ReflectionTestUtils.setField(controller, "javaExecutor", failingExecutor);
+
+        String response = transform();
+
+        // The client sees the status and the start of the target, but the response has no final chunk
+        assertTrue(response.startsWith("HTTP/1.1 200"), response.substring(0, Math.min(200, response.length())));
+        assertTrue(response.contains("Transfer-Encoding: chunked"), "The target should have been streamed");
+        assertTrue(response.contains(SENTENCE));
+        assertFalse(response.endsWith("\r\n0\r\n\r\n"), "The response should have been left incomplete");
+        // Nothing else, such as an error page, is appended to the target
+        String lastChunk = response.substring(response.lastIndexOf(SENTENCE) + SENTENCE.length());
+        assertFalse(lastChunk.contains("Failed mid-stream"), lastChunk);
+        assertFalse(lastChunk.contains("{"), lastChunk);
+    }
+}
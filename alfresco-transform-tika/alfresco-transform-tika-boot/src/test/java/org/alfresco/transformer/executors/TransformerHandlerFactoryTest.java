@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.executors.Tika.HTML;
+import static org.alfresco.transformer.executors.Tika.XML;
+import static org.alfresco.transformer.executors.TransformerHandlerFactory.newTransformerHandler;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Tests the shared {@link TransformerHandlerFactory} and Tika config.
+ */
+public class TransformerHandlerFactoryTest
+{
+    @Test
+    public void testHtml() throws Exception
+    {
+        String html = write(HTML, "quick");
+        assertTrue(html.contains("<p>quick</p>"), html);
+        assertFalse(html.startsWith("<?xml"), html);
+    }
+
+    @Test
+    public void testXml() throws Exception
+    {
+        String xml = write(XML, "quick");
+        assertTrue(xml.startsWith("<?xml"), xml);
+        assertTrue(xml.contains("<p>quick</p>"), xml);
+    }
+
+    @Test
+    public void testInvalidMethod()
+    {
+        assertThrows(IllegalArgumentException.class, () -> newTransformerHandler("text", new StringWriter()));
+    }
+
+    @Test
+    public void testConcurrentHandlers() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+            {
+                String text = "request" + i;
+                results.add(executor.submit(() -> write(XML, text)));
+            }
+            for (int i = 0; i < results.size(); i++)
+            {
+                String xml = results.get(i).get();
+                assertTrue(xml.contains("<p>request" + i + "</p>"), xml);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharedTikaConfig() throws Exception
+    {
+        assertSame(Tika.getTikaConfig(), Tika.getTikaConfig());
+        assertSame(Tika.getAutoDetectParser(), Tika.getAutoDetectParser());
+        assertSame(Tika.getTikaConfig(), Tika.readTikaConfig(null));
+    }
+
+    private static String write(String method, String text) throws Exception
+    {
+        StringWriter output = new StringWriter();
+        write(newTransformerHandler(method, output), text);
+        return output.toString();
+    }
+
+    private static void write(ContentHandler contentHandler, String text) throws Exception
+    {
+        AttributesImpl attributes = new AttributesImpl();
+        contentHandler.startDocument();
+        contentHandler.startElement("", "html", "html", attributes);
+        contentHandler.startElement("", "body", "body", attributes);
+        contentHandler.startElement("", "p", "p", attributes);
+        contentHandler.characters(text.toCharArray(), 0, text.length());
+        contentHandler.endElement("", "p", "p");
+        contentHandler.endElement("", "body", "body");
+        contentHandler.endElement("", "html", "html");
+        contentHandler.endDocument();
+    }
+}
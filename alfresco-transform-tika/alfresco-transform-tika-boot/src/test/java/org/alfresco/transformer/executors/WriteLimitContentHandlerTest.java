@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.executors.Tika.MAX_CHARACTERS;
+import static org.alfresco.transformer.executors.Tika.TARGET_ENCODING;
+import static org.alfresco.transformer.executors.Tika.TARGET_MIMETYPE;
+import static org.alfresco.transformer.executors.Tika.TIKA_AUTO;
+import static org.alfresco.transformer.executors.Tika.XML;
+import static org.alfresco.transformer.executors.TransformerHandlerFactory.newTransformerHandler;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_PLAIN;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_XML;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AbstractParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.ToTextContentHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Tests the {@code maxCharacters} limit on the content written by Tika.
+ */
+public class WriteLimitContentHandlerTest
+{
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBelowLimit() throws Exception
+    {
+        StringWriter output = new StringWriter();
+        WriteLimitContentHandler handler = new WriteLimitContentHandler(TEXT.length())
+            .decorate(newTransformerHandler(XML, output));
+
+        write(handler, TEXT);
+
+        assertFalse(handler.isWriteLimitReached());
+        assertTrue(output.toString().contains("<p>" + TEXT + "</p>"), output.toString());
+    }
+
+    @Test
+    public void testTruncatedXmlIsWellFormed() throws Exception
+    {
+        StringWriter output = new StringWriter();
+        WriteLimitContentHandler handler = new WriteLimitContentHandler(9)
+            .decorate(newTransformerHandler(XML, output));
+
+        assertThrows(WriteLimitReachedException.class, () -> write(handler, TEXT));
+        assertTrue(handler.isWriteLimitReached());
+
+        // Further events, such as those of a parser that carries on, are ignored
+        assertThrows(WriteLimitReachedException.class, () -> handler.characters(new char[]{'x'}, 0, 1));
+        handler.endElement("", "p", "p");
+
+        handler.endOpenElements();
+        String xml = output.toString();
+        assertTrue(xml.contains("<p>The quick</p>"), xml);
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    @Test
+    public void testTruncatedText() throws Exception
+    {
+        StringWriter output = new StringWriter();
+        WriteLimitContentHandler handler = new WriteLimitContentHandler(15)
+            .decorate(new ToTextContentHandler(output));
+
+        assertThrows(WriteLimitReachedException.class, () ->
+        {
+            write(handler, "The quick");
+            write(handler, " brown fox");
+        });
+        handler.endOpenElements();
+
+        assertEquals("The quick brown", output.toString());
+    }
+
+    @Test
+    public void testTikaTransformTruncated() throws Exception
+    {
+        File source = tempDir.resolve("source.html").toFile();
+        Files.write(source.toPath(), ("<html><head><title>quick</title></head><body><p>" + TEXT +
+            "</p><p>" + TEXT + "</p></body></html>").getBytes(StandardCharsets.UTF_8));
+        File target = tempDir.resolve("target.txt").toFile();
+        Tika tika = new Tika();
+
+        assertTrue(tika.transform(args(source, target, MIMETYPE_TEXT_PLAIN, MAX_CHARACTERS + 20)));
+        assertEquals("The quick brown fox ", read(target));
+
+        assertFalse(tika.transform(args(source, target, MIMETYPE_TEXT_PLAIN, MAX_CHARACTERS + 1000)));
+        assertTrue(read(target).trim().endsWith(TEXT), read(target));
+
+        assertTrue(tika.transform(args(source, target, MIMETYPE_XML, MAX_CHARACTERS + 20)));
+        String xml = read(target);
+        assertFalse(xml.contains("lazy"), xml);
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(target);
+    }
+
+    @Test
+    public void testTruncatedWhenParserSwallowsLimit() throws Exception
+    {
+        File source = tempDir.resolve("source.html").toFile();
+        Files.write(source.toPath(), new byte[0]);
+        File target = tempDir.resolve("target.xml").toFile();
+
+        assertTrue(new Tika().transform(writingParser(e -> {}), null, false, false,
+            source.getAbsolutePath(), target.getAbsolutePath(), MIMETYPE_XML, "UTF-8", 9));
+        String xml = read(target);
+        assertTrue(xml.contains("<p>The quick</p>"), xml);
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(target);
+    }
+
+    @Test
+    public void testTruncatedWhenParserWrapsLimitInRuntimeException() throws Exception
+    {
+        File source = tempDir.resolve("source.html").toFile();
+        Files.write(source.toPath(), new byte[0]);
+        File target = tempDir.resolve("target.xml").toFile();
+        Tika tika = new Tika();
+
+        assertTrue(tika.transform(writingParser(e -> { throw new IllegalStateException(e); }), null, false,
+            false, source.getAbsolutePath(), target.getAbsolutePath(), MIMETYPE_XML, "UTF-8", 9));
+        String xml = read(target);
+        assertTrue(xml.contains("<p>The quick</p>"), xml);
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(target);
+
+        // Not hidden when the limit has not been reached
+        Parser failingParser = new AbstractParser()
+        {
+            @Override
+            public Set<MediaType> getSupportedTypes(ParseContext context)
+            {
+                return Set.of();
+            }
+
+            @Override
+            public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+            {
+                throw new IllegalStateException("parser failed");
+            }
+        };
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> tika.transform(failingParser,
+            null, false, false, source.getAbsolutePath(), target.getAbsolutePath(), MIMETYPE_XML, "UTF-8", 9));
+        assertEquals("parser failed", e.getMessage());
+    }
+
+    @Test
+    public void testInvalidMaxCharacters()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new Tika().transform(
+            args(new File("source.html"), new File("target.txt"), MIMETYPE_TEXT_PLAIN, MAX_CHARACTERS + "lots")));
+    }
+
+    private interface LimitReachedHandler
+    {
+        void handle(SAXException e);
+    }
+
+    /**
+     * @return a parser that writes {@link #TEXT}, passing any exception thrown by the handler to the given handler
+     *         rather than throwing it
+     */
+    private static Parser writingParser(LimitReachedHandler limitReachedHandler)
+    {
+        return new AbstractParser()
+        {
+            @Override
+            public Set<MediaType> getSupportedTypes(ParseContext context)
+            {
+                return Set.of();
+            }
+
+            @Override
+            public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws SAXException
+            {
+                try
+                {
+                    write(handler, TEXT);
+                }
+                catch (WriteLimitReachedException e)
+                {
+                    limitReachedHandler.handle(e);
+                }
+            }
+        };
+    }
+
+    private static String[] args(File source, File target, String targetMimetype, String maxCharacters)
+    {
+        return new String[]{TIKA_AUTO, TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + "UTF-8", maxCharacters,
+            source.getAbsolutePath(), target.getAbsolutePath()};
+    }
+
+    private static String read(File file) throws Exception
+    {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(ContentHandler handler, String text) throws SAXException
+    {
+        AttributesImpl attributes = new AttributesImpl();
+        handler.startDocument();
+        handler.startElement("", "html", "html", attributes);
+        handler.startElement("", "body", "body", attributes);
+        handler.startElement("", "p", "p", attributes);
+        handler.characters(text.toCharArray(), 0, text.length());
+        handler.endElement("", "p", "p");
+        handler.endElement("", "body", "body");
+        handler.endElement("", "html", "html");
+        handler.endDocument();
+    }
+}
@@ -42,16 +42,13 @@ import org.apache.tika.parser.pdf.PDFParserConfig;
 import org.apache.tika.parser.pkg.PackageParser;
 import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.ExpandedTitleContentHandler;
+import org.apache.tika.sax.ToTextContentHandler;
 import org.slf4j.Logger;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
-import javax.xml.transform.OutputKeys;
 import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
 import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
 import java.io.FileInputStream;
@@ -65,6 +62,7 @@ import java.net.URL;
 import java.util.List;
 import java.util.regex.Pattern;
 
+import static org.alfresco.transformer.executors.TransformerHandlerFactory.newTransformerHandler;
 import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_HTML;
 import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_JPEG;
 import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_IMAGE_PNG;
@@ -462,6 +460,7 @@ public class Tika
     public static final String TARGET_ENCODING = "--targetEncoding=";
     public static final String INCLUDE_CONTENTS = "--includeContents";
     public static final String NOT_EXTRACT_BOOKMARKS_TEXT = "--notExtractBookmarksText";
+    public static final String MAX_CHARACTERS = "--maxCharacters=";
 
     public static final String CSV = "csv";
     public static final String DOC = "doc";
@@ -501,17 +500,23 @@ public class Tika
         }
     };
 
+    // Shared by the transforms and all the metadata extractors, see getTikaConfig()
+    private static TikaConfig sharedTikaConfig;
+    private static AutoDetectParser sharedAutoDetectParser;
+
     public Tika() throws TikaException, IOException, SAXException
     {
-        TikaConfig tikaConfig = readTikaConfig();
-        autoDetectParser = new AutoDetectParser(tikaConfig);
+        autoDetectParser = getAutoDetectParser();
     }
 
+    /**
+     * @return the shared TikaConfig, or {@code null} if tika-config.xml could not be read, which is logged
+     */
     public static TikaConfig readTikaConfig(Logger logger)
     {
         try
         {
-            return readTikaConfig();
+            return getTikaConfig();
         }
         catch (Exception e)
         {
@@ -520,6 +525,48 @@ public class Tika
         }
     }
 
+    /**
+     * @return the shared AutoDetectParser, or {@code null} if tika-config.xml could not be read, which is logged
+     */
+    public static AutoDetectParser getAutoDetectParser(Logger logger)
+    {
+        try
+        {
+            return getAutoDetectParser();
+        }
+        catch (Exception e)
+        {
+            logger.error("Failed to read tika-config.xml", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reading tika-config.xml loads and creates every parser on the classpath, so it is only done once and the result
+     * is shared by the transforms and all the metadata extractors. Tika parsers are thread safe, so are able to be
+     * used by concurrent requests.
+     */
+    public static synchronized TikaConfig getTikaConfig() throws TikaException, IOException, SAXException
+    {
+        if (sharedTikaConfig == null)
+        {
+            sharedTikaConfig = readTikaConfig();
+        }
+        return sharedTikaConfig;
+    }
+
+    /**
+     * @return an AutoDetectParser using the shared {@link #getTikaConfig()}, which is also shared
+     */
+    public static synchronized AutoDetectParser getAutoDetectParser() throws TikaException, IOException, SAXException
+    {
+        if (sharedAutoDetectParser == null)
+        {
+            sharedAutoDetectParser = new AutoDetectParser(getTikaConfig());
+        }
+        return sharedAutoDetectParser;
+    }
+
     private static TikaConfig readTikaConfig() throws TikaException, IOException, SAXException
     {
         ClassLoader classLoader = Tika.class.getClassLoader();
@@ -549,8 +596,14 @@ public class Tika
         System.out.println("Finished in " + (System.currentTimeMillis() - start) + "ms");
     }
 
-    // Extracts parameters form args
-    public void transform(String[] args)
+    // Extracts parameters form args. Returns true if the target was truncated at --maxCharacters.
+    public boolean transform(String[] args)
+    {
+        return transform(args, null);
+    }
+
+    // As transform(String[]), but the target is written to the targetStream rather than the target file, if supplied.
+    public boolean transform(String[] args, OutputStream targetStream)
     {
         String transform = null;
         String targetMimetype = null;
@@ -559,6 +612,7 @@ public class Tika
         String targetFilename = null;
         Boolean includeContents = null;
         Boolean notExtractBookmarksText = null;
+        String maxCharacters = null;
 
         for (String arg : args)
         {
@@ -582,6 +636,10 @@ public class Tika
                     getValue(arg, false, notExtractBookmarksText, NOT_EXTRACT_BOOKMARKS_TEXT);
                     notExtractBookmarksText = true;
                 }
+                else if (arg.startsWith(MAX_CHARACTERS))
+                {
+                    maxCharacters = getValue(arg, true, maxCharacters, MAX_CHARACTERS);
+                }
                 else
                 {
                     throw new IllegalArgumentException("Unexpected argument " + arg);
@@ -614,8 +672,21 @@ public class Tika
         includeContents = includeContents == null ? false : includeContents;
         notExtractBookmarksText = notExtractBookmarksText == null ? false : notExtractBookmarksText;
 
-        transform(transform, includeContents, notExtractBookmarksText, sourceFilename,
-            targetFilename, targetMimetype, targetEncoding);
+        Integer maxCharactersValue = null;
+        if (maxCharacters != null)
+        {
+            try
+            {
+                maxCharactersValue = Integer.valueOf(maxCharacters);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Invalid " + MAX_CHARACTERS + maxCharacters);
+            }
+        }
+
+        return transform(transform, includeContents, notExtractBookmarksText, sourceFilename,
+            targetFilename, targetStream, targetMimetype, targetEncoding, maxCharactersValue);
     }
 
     private String getValue(String arg, boolean valueExpected, Object value, String optionName)
@@ -637,10 +708,11 @@ public class Tika
     }
 
     // Adds transform specific values such as parser and documentSelector.
-    private void transform(String transform, Boolean includeContents,
+    private boolean transform(String transform, Boolean includeContents,
         Boolean notExtractBookmarksText,
         String sourceFilename,
-        String targetFilename, String targetMimetype, String targetEncoding)
+        String targetFilename, OutputStream targetStream, String targetMimetype, String targetEncoding,
+        Integer maxCharacters)
     {
         Parser parser = null;
         DocumentSelector documentSelector = null;
@@ -670,70 +742,97 @@ public class Tika
             break;
         }
 
-        transform(parser, documentSelector, includeContents, notExtractBookmarksText,
-            sourceFilename, targetFilename, targetMimetype, targetEncoding);
+        return transform(parser, documentSelector, includeContents, notExtractBookmarksText,
+            sourceFilename, targetFilename, targetStream, targetMimetype, targetEncoding, maxCharacters);
     }
 
-    private void transform(Parser parser, DocumentSelector documentSelector,
+    boolean transform(Parser parser, DocumentSelector documentSelector,
         Boolean includeContents,
         Boolean notExtractBookmarksText,
         String sourceFilename,
-        String targetFilename, String targetMimetype, String targetEncoding)
+        String targetFilename, String targetMimetype, String targetEncoding, Integer maxCharacters)
     {
+        return transform(parser, documentSelector, includeContents, notExtractBookmarksText,
+            sourceFilename, targetFilename, null, targetMimetype, targetEncoding, maxCharacters);
+    }
 
+    private boolean transform(Parser parser, DocumentSelector documentSelector,
+        Boolean includeContents,
+        Boolean notExtractBookmarksText,
+        String sourceFilename,
+        String targetFilename, OutputStream targetStream, String targetMimetype, String targetEncoding,
+        Integer maxCharacters)
+    {
+        boolean truncated = false;
+        // When the caller is able to, the content is sent to it as it is written, while the document is being parsed
         try (InputStream is = new BufferedInputStream(new FileInputStream(sourceFilename));
-             OutputStream os = new FileOutputStream(targetFilename);
+             OutputStream os = targetStream == null ? new FileOutputStream(targetFilename) : targetStream;
              Writer ow = new BufferedWriter(new OutputStreamWriter(os, targetEncoding)))
         {
             Metadata metadata = new Metadata();
             ParseContext context = buildParseContext(documentSelector, includeContents,
                 notExtractBookmarksText);
-            ContentHandler handler = getContentHandler(targetMimetype, ow);
+            WriteLimitContentHandler writeLimitHandler = maxCharacters == null || maxCharacters <= 0
+                ? null
+                : new WriteLimitContentHandler(maxCharacters);
+            ContentHandler handler = getContentHandler(targetMimetype, ow, writeLimitHandler);
 
-            parser.parse(is, handler, metadata, context);
+            try
+            {
+                parser.parse(is, handler, metadata, context);
+            }
+            catch (SAXException | TikaException | IOException | RuntimeException e)
+            {
+                // The parser is stopped when the limit is reached, possibly wrapping the exception
+                if (writeLimitHandler == null || !writeLimitHandler.isWriteLimitReached())
+                {
+                    throw e;
+                }
+            }
+            // Some parsers swallow the exception and carry on, with their further events being ignored. Either
+            // way the content written so far is kept, and the open elements are ended so that the target is well
+            // formed.
+            if (writeLimitHandler != null && writeLimitHandler.isWriteLimitReached())
+            {
+                writeLimitHandler.endOpenElements();
+                truncated = true;
+            }
         }
         catch (SAXException | TikaException | IOException e)
         {
             throw new IllegalStateException(e.getMessage(), e);
         }
+        return truncated;
     }
 
-    private ContentHandler getContentHandler(String targetMimetype, Writer output)
+    private ContentHandler getContentHandler(String targetMimetype, Writer output,
+        WriteLimitContentHandler writeLimitHandler)
     {
         try
         {
+            // Any limit is applied just before the content is written, after the body has been selected
             ContentHandler handler;
             if (MIMETYPE_TEXT_PLAIN.equals(targetMimetype))
             {
-                handler = new BodyContentHandler(output);
+                handler = new BodyContentHandler(limit(new ToTextContentHandler(output), writeLimitHandler));
+            }
+            else if (MIMETYPE_HTML.equals(targetMimetype))
+            {
+                handler = new ExpandedTitleContentHandler(
+                    limit(newTransformerHandler(HTML, output), writeLimitHandler));
+            }
+            else if (MIMETYPE_XHTML.equals(targetMimetype) ||
+                     MIMETYPE_XML.equals(targetMimetype))
+            {
+                handler = limit(newTransformerHandler(XML, output), writeLimitHandler);
+            }
+            else if (MIMETYPE_TEXT_CSV.equals(targetMimetype))
+            {
+                handler = new CsvContentHandler(limit(new ToTextContentHandler(output), writeLimitHandler));
             }
             else
             {
-                SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-                TransformerHandler transformerHandler;
-                transformerHandler = factory.newTransformerHandler();
-                transformerHandler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
-                transformerHandler.setResult(new StreamResult(output));
-                handler = transformerHandler;
-
-                if (MIMETYPE_HTML.equals(targetMimetype))
-                {
-                    transformerHandler.getTransformer().setOutputProperty(OutputKeys.METHOD, HTML);
-                    return new ExpandedTitleContentHandler(transformerHandler);
-                }
-                else if (MIMETYPE_XHTML.equals(targetMimetype) ||
-                         MIMETYPE_XML.equals(targetMimetype))
-                {
-                    transformerHandler.getTransformer().setOutputProperty(OutputKeys.METHOD, XML);
-                }
-                else if (MIMETYPE_TEXT_CSV.equals(targetMimetype))
-                {
-                    handler = new CsvContentHandler(output);
-                }
-                else
-                {
-                    throw new IllegalArgumentException("Invalid target mimetype " + targetMimetype);
-                }
+                throw new IllegalArgumentException("Invalid target mimetype " + targetMimetype);
             }
             return handler;
         }
@@ -743,6 +842,11 @@ public class Tika
         }
     }
 
+    private static ContentHandler limit(ContentHandler handler, WriteLimitContentHandler writeLimitHandler)
+    {
+        return writeLimitHandler == null ? handler : writeLimitHandler.decorate(handler);
+    }
+
     /**
      * A wrapper around the normal Tika BodyContentHandler for CSV rather encoding than tab separated.
      */
@@ -759,6 +863,11 @@ public class Tika
             super(output);
         }
 
+        protected CsvContentHandler(ContentHandler handler)
+        {
+            super(handler);
+        }
+
         @Override
         public void ignorableWhitespace(char[] ch, int start, int length)
             throws SAXException
@@ -851,6 +960,7 @@ public class Tika
     private ParseContext buildParseContext(DocumentSelector documentSelector,
         Boolean includeContents, Boolean notExtractBookmarksText)
     {
+        // Unlike the parsers, a new context is needed for each document, as parsers keep per document state in it
         ParseContext context = new ParseContext();
 
         if (documentSelector != null)
@@ -868,7 +978,7 @@ public class Tika
         // If Archive transform
         if (includeContents != null)
         {
-            context.set(Parser.class, includeContents ? autoDetectParser : new EmptyParser());
+            context.set(Parser.class, includeContents ? autoDetectParser : EmptyParser.INSTANCE);
         }
 
         return context;
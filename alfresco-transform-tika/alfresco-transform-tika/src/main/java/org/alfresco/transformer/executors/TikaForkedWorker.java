@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.transformer.metadataExtractors.AbstractTikaMetadataExtractor;
+
+/**
+ * The main class of the child JVMs started by the {@link TikaForkedWorkerPool}. Each line read from standard input
+ * holds the tab separated arguments of a single {@link Tika#transform(String[])}, or of a metadata extraction if the
+ * first argument is {@link #EXTRACT_METADATA} (followed by the extractor's name, the source mimetype, the transform
+ * options as json, the source and the target). Once done, a single line is written to standard output:
+ * <ul>
+ *     <li>{@code OK} - the target was written</li>
+ *     <li>{@code TRUNCATED} - the target was written up to the {@code --maxCharacters} limit</li>
+ *     <li>{@code INVALID<tab>message} - the arguments were invalid</li>
+ *     <li>{@code FAILED<tab>message} - the transform failed</li>
+ * </ul>
+ * The worker exits when its standard input is closed. Anything else written to standard output, such as by a parser
+ * or the logging, is sent to standard error instead.
+ */
+public class TikaForkedWorker
+{
+    static final char SEPARATOR = '\t';
+    static final String OK = "OK";
+    static final String TRUNCATED = "TRUNCATED";
+    static final String INVALID = "INVALID";
+    static final String FAILED = "FAILED";
+    static final String EXTRACT_METADATA = "--extractMetadata";
+
+    private static final ObjectMapper jsonObjectMapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception
+    {
+        PrintStream results = new PrintStream(System.out, false, UTF_8);
+        System.setOut(System.err);
+
+        Tika tika = new Tika();
+        // IPTC extraction uses ExifTool's own processes, so is left to the parent with its ExifTool workers
+        Map<String, AbstractTikaMetadataExtractor> metadataExtractors =
+            TikaJavaExecutor.createMetadataExtractors(null);
+        BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, UTF_8));
+        String request;
+        while ((request = requests.readLine()) != null)
+        {
+            String result;
+            try
+            {
+                String[] requestArgs = request.split(String.valueOf(SEPARATOR));
+                result = EXTRACT_METADATA.equals(requestArgs[0]) ? extractMetadata(metadataExtractors, requestArgs)
+                    : tika.transform(requestArgs) ? TRUNCATED : OK;
+            }
+            catch (IllegalArgumentException e)
+            {
+                result = INVALID + SEPARATOR + toLine(e.getMessage());
+            }
+            catch (Exception | StackOverflowError e)
+            {
+                result = FAILED + SEPARATOR + toLine(e.getMessage());
+            }
+            results.println(result);
+            results.flush();
+        }
+    }
+
+    private static String extractMetadata(Map<String, AbstractTikaMetadataExtractor> metadataExtractors,
+        String[] args) throws Exception
+    {
+        if (args.length != 6)
+        {
+            throw new IllegalArgumentException("Expected 6 arguments to " + EXTRACT_METADATA);
+        }
+        AbstractTikaMetadataExtractor metadataExtractor = metadataExtractors.get(args[1]);
+        if (metadataExtractor == null)
+        {
+            throw new IllegalArgumentException("Unknown metadata extractor " + args[1]);
+        }
+        Map<String, String> transformOptions = jsonObjectMapper.readValue(args[3], new TypeReference<>() {});
+        metadataExtractor.extractMetadata(args[2].isEmpty() ? null : args[2], transformOptions, new File(args[4]),
+            new File(args[5]));
+        return OK;
+    }
+
+    private static String toLine(String message)
+    {
+        return message == null ? "" : message.replace('\r', ' ').replace('\n', ' ');
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.alfresco.transformer.executors.TikaForkedWorker.EXTRACT_METADATA;
+import static org.alfresco.transformer.executors.TikaForkedWorker.FAILED;
+import static org.alfresco.transformer.executors.TikaForkedWorker.INVALID;
+import static org.alfresco.transformer.executors.TikaForkedWorker.OK;
+import static org.alfresco.transformer.executors.TikaForkedWorker.SEPARATOR;
+import static org.alfresco.transformer.executors.TikaForkedWorker.TRUNCATED;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of child JVMs that run Tika transforms and metadata extractions, so that a malformed or hostile document (such as a zip bomb) that
+ * uses up the heap or never finishes only takes down a worker rather than the whole T-Engine and every transform in
+ * progress. Each worker has its own maximum heap and exits if it runs out of memory.
+ * <p>
+ * The arguments of each transform are written to a worker's standard input and its result is read back from its
+ * standard output, as described in {@link TikaForkedWorker}. The source and target are files, so the content itself
+ * does not need to pass through the pipes.
+ * <p>
+ * As with the ExifToolWorkerPool, workers are started when first needed, up to the size of the pool. A worker is
+ * replaced after it has processed {@code maxFilesPerWorker} files, if it exits or if it does not finish a file within
+ * the timeout, in which case it is killed. Workers stop when the pool is closed, or when the JVM exits, as their
+ * standard input is then closed.
+ */
+public class TikaForkedWorkerPool implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(TikaForkedWorkerPool.class);
+
+    private static final String SPRING_BOOT_LOADER_PACKAGE = "org.springframework.boot.loader.";
+    private static final String SPRING_BOOT_PROPERTIES_LAUNCHER = SPRING_BOOT_LOADER_PACKAGE + "PropertiesLauncher";
+    private static final long STOP_WAIT_MS = 1000;
+
+    private final List<String> command;
+    private final int maxFilesPerWorker;
+    private final long timeoutMs;
+    private final Semaphore permits;
+    private final Deque<Worker> idleWorkers = new ConcurrentLinkedDeque<>();
+    private final ScheduledExecutorService timeoutScheduler;
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private final ObjectMapper jsonObjectMapper = new ObjectMapper();
+    private volatile boolean closed;
+
+    /**
+     * @param maxWorkers        the maximum number of worker JVMs, which is also the number of files that may be
+     *                          transformed at the same time
+     * @param maxHeap           the maximum heap of each worker, such as {@code 512m}, or blank for the JVM's default
+     * @param maxFilesPerWorker the number of files a worker transforms before it is replaced
+     * @param timeoutMs         the maximum time a worker may take to transform a single file
+     */
+    public TikaForkedWorkerPool(int maxWorkers, String maxHeap, int maxFilesPerWorker, long timeoutMs)
+    {
+        command = getCommand(maxHeap);
+        this.maxFilesPerWorker = Math.max(1, maxFilesPerWorker);
+        this.timeoutMs = timeoutMs;
+        permits = new Semaphore(Math.max(1, maxWorkers), true);
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "tika-worker-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs {@link Tika#transform(String[])} with the given arguments in one of the workers, waiting for a worker to
+     * become free if they are all busy.
+     *
+     * @return {@code true} if the target was truncated at {@code --maxCharacters}
+     * @throws IllegalArgumentException if the arguments are invalid
+     * @throws IllegalStateException    if the transform failed
+     * @throws IOException              if the worker exited, for example after running out of memory, or took longer
+     *                                  than the timeout
+     */
+    public boolean transform(String[] args) throws IOException
+    {
+        return toTruncated(execute(toRequest(args)));
+    }
+
+    /**
+     * Runs the named metadata extractor of the {@link TikaJavaExecutor} in one of the workers, waiting for a worker
+     * to become free if they are all busy.
+     *
+     * @throws IllegalArgumentException if the extractor is unknown or the options are invalid
+     * @throws IllegalStateException    if the extraction failed
+     * @throws IOException              if the worker exited or took longer than the timeout
+     */
+    public void extractMetadata(String extractorName, String sourceMimetype, Map<String, String> transformOptions,
+        File sourceFile, File targetFile) throws IOException
+    {
+        toTruncated(execute(toRequest(new String[]{EXTRACT_METADATA, extractorName,
+            sourceMimetype == null ? "" : sourceMimetype, jsonObjectMapper.writeValueAsString(transformOptions),
+            sourceFile.getAbsolutePath(), targetFile.getAbsolutePath()})));
+    }
+
+    private String execute(String request) throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("The Tika worker pool has been closed");
+        }
+        try
+        {
+            permits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a Tika worker");
+        }
+        Worker worker = null;
+        boolean reusable = false;
+        try
+        {
+            worker = borrowWorker();
+            String result = worker.transform(request, timeoutMs);
+            reusable = ++worker.filesProcessed < maxFilesPerWorker;
+            return result;
+        }
+        finally
+        {
+            if (worker != null)
+            {
+                if (reusable && !closed)
+                {
+                    idleWorkers.offerFirst(worker);
+                }
+                else
+                {
+                    worker.stop();
+                }
+            }
+            permits.release();
+        }
+    }
+
+    private static String toRequest(String[] args)
+    {
+        StringBuilder request = new StringBuilder();
+        for (String arg : args)
+        {
+            if (arg.indexOf(SEPARATOR) != -1 || arg.indexOf('\n') != -1 || arg.indexOf('\r') != -1)
+            {
+                throw new IllegalArgumentException("Unexpected tab or new line in argument " + arg);
+            }
+            if (request.length() > 0)
+            {
+                request.append(SEPARATOR);
+            }
+            request.append(arg);
+        }
+        return request.toString();
+    }
+
+    private static boolean toTruncated(String result)
+    {
+        int i = result.indexOf(SEPARATOR);
+        String status = i == -1 ? result : result.substring(0, i);
+        String message = i == -1 ? null : result.substring(i + 1);
+        switch (status)
+        {
+        case OK:
+            return false;
+        case TRUNCATED:
+            return true;
+        case INVALID:
+            throw new IllegalArgumentException(message);
+        case FAILED:
+            throw new IllegalStateException(message);
+        default:
+            throw new IllegalStateException("Unexpected result from Tika worker: " + result);
+        }
+    }
+
+    private Worker borrowWorker() throws IOException
+    {
+        Worker worker;
+        while ((worker = idleWorkers.pollFirst()) != null)
+        {
+            if (worker.process.isAlive())
+            {
+                return worker;
+            }
+            logger.debug("Replacing Tika worker {} which has exited", worker.id);
+            worker.stop();
+        }
+        return new Worker(workerCount.incrementAndGet());
+    }
+
+    /**
+     * @return the java command that starts a worker. Within a Spring Boot executable jar the worker's classes are
+     * nested in the jar, so the worker is started by Spring Boot's launcher.
+     */
+    static List<String> getCommand(String maxHeap)
+    {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (maxHeap != null && !maxHeap.isBlank())
+        {
+            command.add("-Xmx" + maxHeap.trim());
+        }
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        if (TikaForkedWorker.class.getClassLoader().getClass().getName().startsWith(SPRING_BOOT_LOADER_PACKAGE))
+        {
+            command.add("-Dloader.main=" + TikaForkedWorker.class.getName());
+            command.add(SPRING_BOOT_PROPERTIES_LAUNCHER);
+        }
+        else
+        {
+            command.add(TikaForkedWorker.class.getName());
+        }
+        return command;
+    }
+
+    /**
+     * @return the number of workers started so far, including those that have since been replaced
+     */
+    public int getWorkersStarted()
+    {
+        return workerCount.get();
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        Worker worker;
+        while ((worker = idleWorkers.pollFirst()) != null)
+        {
+            worker.stop();
+        }
+        timeoutScheduler.shutdownNow();
+    }
+
+    private class Worker
+    {
+        private final int id;
+        private final Process process;
+        private final Writer stdIn;
+        private final BufferedReader stdOut;
+        private int filesProcessed;
+        private volatile boolean timedOut;
+
+        private Worker(int id) throws IOException
+        {
+            this.id = id;
+            process = new ProcessBuilder(command).start();
+            stdIn = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF_8));
+            stdOut = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+            Thread stdErrReader = new Thread(this::logStdErr, "tika-worker-stderr-" + id);
+            stdErrReader.setDaemon(true);
+            stdErrReader.start();
+            logger.debug("Started Tika worker {}", id);
+        }
+
+        private String transform(String request, long timeoutMs) throws IOException
+        {
+            ScheduledFuture<?> timeout = timeoutMs > 0
+                ? timeoutScheduler.schedule(this::timeout, timeoutMs, MILLISECONDS)
+                : null;
+            try
+            {
+                stdIn.write(request);
+                stdIn.write('\n');
+                stdIn.flush();
+
+                String result = stdOut.readLine();
+                if (result == null)
+                {
+                    throw new IOException("Tika worker " + id + " exited unexpectedly, possibly running out of memory");
+                }
+                return result;
+            }
+            catch (IOException e)
+            {
+                if (timedOut)
+                {
+                    throw new IOException("Tika took longer than " + timeoutMs + "ms", e);
+                }
+                throw e;
+            }
+            finally
+            {
+                if (timeout != null)
+                {
+                    timeout.cancel(false);
+                }
+            }
+        }
+
+        private void timeout()
+        {
+            timedOut = true;
+            logger.debug("Tika worker {} has taken too long. Killing process", id);
+            process.destroyForcibly();
+        }
+
+        private void stop()
+        {
+            try
+            {
+                stdIn.close();
+                if (!process.waitFor(STOP_WAIT_MS, MILLISECONDS))
+                {
+                    process.destroyForcibly();
+                }
+            }
+            catch (IOException e)
+            {
+                process.destroyForcibly();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+            logger.debug("Stopped Tika worker {} after {} files", id, filesProcessed);
+        }
+
+        private void logStdErr()
+        {
+            try (BufferedReader stdErr = new BufferedReader(new InputStreamReader(process.getErrorStream(), UTF_8)))
+            {
+                String line;
+                while ((line = stdErr.readLine()) != null)
+                {
+                    logger.debug("Tika worker {}: {}", id, line);
+                }
+            }
+            catch (IOException e)
+            {
+                // The stream is closed when the process is killed
+            }
+        }
+    }
+}
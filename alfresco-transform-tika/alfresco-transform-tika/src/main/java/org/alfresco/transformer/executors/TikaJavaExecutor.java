@@ -27,6 +27,8 @@
 package org.alfresco.transformer.executors;
 
 import com.google.common.collect.ImmutableMap;
+import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.logging.LogEntry;
 import org.alfresco.transformer.metadataExtractors.AbstractTikaMetadataExtractor;
 import org.alfresco.transformer.metadataExtractors.DWGMetadataExtractor;
@@ -39,7 +41,9 @@ import org.alfresco.transformer.metadataExtractors.PoiMetadataExtractor;
 import org.alfresco.transformer.metadataExtractors.TikaAudioMetadataExtractor;
 import org.alfresco.transformer.metadataExtractors.TikaAutoMetadataExtractor;
 import org.alfresco.transformer.metadataExtractors.IPTCMetadataExtractor;
+import org.alfresco.transformer.tika.parsers.ExifToolWorkerPool;
 import org.alfresco.transformer.util.RequestParamMap;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.tika.exception.TikaException;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -47,17 +51,26 @@ import org.xml.sax.SAXException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
 
 import static java.lang.Boolean.parseBoolean;
 import static org.alfresco.transformer.executors.Tika.INCLUDE_CONTENTS;
+import static org.alfresco.transformer.executors.Tika.MAX_CHARACTERS;
 import static org.alfresco.transformer.executors.Tika.TARGET_ENCODING;
 import static org.alfresco.transformer.executors.Tika.TARGET_MIMETYPE;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_HTML;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_CSV;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_PLAIN;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 
 /**
  * JavaExecutor implementation for running TIKA transformations. It loads the
- * transformation logic in the same JVM (check {@link Tika}).
+ * transformation logic in the same JVM (check {@link Tika}), or when configured
+ * in child JVMs (check {@link TikaForkedWorkerPool}).
  */
 public class TikaJavaExecutor implements JavaExecutor
 {
@@ -69,28 +82,34 @@ public class TikaJavaExecutor implements JavaExecutor
         "This transformer uses Tika from Apache. See the license at http://www.apache.org/licenses/LICENSE-2.0. or in /Apache\\ 2.0.txt\n" +
         "This transformer uses ExifTool by Phil Harvey. See license at https://exiftool.org/#license. or in /Perl-Artistic-License.txt";
 
+    private static final Set<String> STREAMABLE_TARGET_MIMETYPES =
+        Set.of(MIMETYPE_TEXT_PLAIN, MIMETYPE_HTML, MIMETYPE_TEXT_CSV);
+
     private final Tika tika;
-    private final Map<String, AbstractTikaMetadataExtractor> metadataExtractor = ImmutableMap
-            .<String, AbstractTikaMetadataExtractor>builder()
-            .put("DWGMetadataExtractor", new DWGMetadataExtractor())
-            .put("MailMetadataExtractor", new MailMetadataExtractor())
-            .put("MP3MetadataExtractor", new MP3MetadataExtractor())
-            .put("OfficeMetadataExtractor", new OfficeMetadataExtractor())
-            .put("OpenDocumentMetadataExtractor", new OpenDocumentMetadataExtractor())
-            .put("PdfBoxMetadataExtractor", new PdfBoxMetadataExtractor())
-            .put("PoiMetadataExtractor", new PoiMetadataExtractor())
-            .put("TikaAudioMetadataExtractor", new TikaAudioMetadataExtractor())
-            .put("TikaAutoMetadataExtractor", new TikaAutoMetadataExtractor())
-            .put("IPTCMetadataExtractor", new IPTCMetadataExtractor())
-            .build();
+    private final ExifToolWorkerPool exifToolWorkerPool;
+    private TikaForkedWorkerPool forkedWorkerPool;
+    private long inProcessMaxSourceBytes;
+    private Set<String> inProcessMimetypes = Set.of();
+    private final Map<String, AbstractTikaMetadataExtractor> metadataExtractor;
     private final Map<String, AbstractTikaMetadataExtractor> metadataEmbedder = ImmutableMap
             .<String, AbstractTikaMetadataExtractor>builder()
             .put("SamplePoiMetadataEmbedder", new PoiMetadataExtractor())
             .build();
 
     public TikaJavaExecutor(boolean notExtractBookmarksTextDefault)
+    {
+        this(notExtractBookmarksTextDefault, null);
+    }
+
+    /**
+     * @param exifToolWorkerPool long running ExifTool workers used by the IPTCMetadataExtractor, or {@code null} to
+     *                           start a new ExifTool process for each file
+     */
+    public TikaJavaExecutor(boolean notExtractBookmarksTextDefault, ExifToolWorkerPool exifToolWorkerPool)
     {
         this.notExtractBookmarksTextDefault = notExtractBookmarksTextDefault;
+        this.exifToolWorkerPool = exifToolWorkerPool;
+        metadataExtractor = createMetadataExtractors(exifToolWorkerPool);
         try
         {
             tika = new Tika();
@@ -106,6 +125,41 @@ public class TikaJavaExecutor implements JavaExecutor
         this(false);
     }
 
+    /**
+     * @return the metadata extractors by name. Also used by the {@link TikaForkedWorker}.
+     */
+    static Map<String, AbstractTikaMetadataExtractor> createMetadataExtractors(ExifToolWorkerPool exifToolWorkerPool)
+    {
+        return ImmutableMap
+            .<String, AbstractTikaMetadataExtractor>builder()
+            .put("DWGMetadataExtractor", new DWGMetadataExtractor())
+            .put("MailMetadataExtractor", new MailMetadataExtractor())
+            .put("MP3MetadataExtractor", new MP3MetadataExtractor())
+            .put("OfficeMetadataExtractor", new OfficeMetadataExtractor())
+            .put("OpenDocumentMetadataExtractor", new OpenDocumentMetadataExtractor())
+            .put("PdfBoxMetadataExtractor", new PdfBoxMetadataExtractor())
+            .put("PoiMetadataExtractor", new PoiMetadataExtractor())
+            .put("TikaAudioMetadataExtractor", new TikaAudioMetadataExtractor())
+            .put("TikaAutoMetadataExtractor", new TikaAutoMetadataExtractor())
+            .put("IPTCMetadataExtractor", new IPTCMetadataExtractor(exifToolWorkerPool))
+            .build();
+    }
+
+    /**
+     * Stops any ExifTool worker processes and Tika child JVMs. Called when the T-Engine shuts down.
+     */
+    public void close()
+    {
+        if (exifToolWorkerPool != null)
+        {
+            exifToolWorkerPool.close();
+        }
+        if (forkedWorkerPool != null)
+        {
+            forkedWorkerPool.close();
+        }
+    }
+
     @Override
     public String getTransformerId()
     {
@@ -116,6 +170,19 @@ public class TikaJavaExecutor implements JavaExecutor
     public void transform(String transformName, String sourceMimetype, String targetMimetype,
                           Map<String, String> transformOptions, File sourceFile, File targetFile)
             throws Exception
+    {
+        transform(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+            TransformTarget.of(targetFile));
+    }
+
+    /**
+     * Text targets of transforms run in this JVM are sent to the client as they are written, if the {@code target}
+     * allows it. A target truncated at its {@code maxCharacters} limit is recorded in the {@code target}.
+     */
+    @Override
+    public void transform(String transformName, String sourceMimetype, String targetMimetype,
+                          Map<String, String> transformOptions, File sourceFile, TransformTarget target)
+            throws Exception
     {
         final boolean includeContents = parseBoolean(
                 transformOptions.getOrDefault(RequestParamMap.INCLUDE_CONTENTS, "false"));
@@ -128,17 +195,130 @@ public class TikaJavaExecutor implements JavaExecutor
                     "notExtractBookmarksText default value has been overridden to {}",
                     notExtractBookmarksTextDefault);
         }
-        call(sourceFile, targetFile, transformName,
+        final Integer maxCharacters = getMaxCharacters(transformOptions);
+        String[] args = {transformName,
                 includeContents ? INCLUDE_CONTENTS : null,
                 notExtractBookmarksText ? Tika.NOT_EXTRACT_BOOKMARKS_TEXT : null,
-                TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + targetEncoding);
+                TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + targetEncoding};
+        if (maxCharacters != null)
+        {
+            args = Arrays.copyOf(args, args.length + 1);
+            args[args.length - 1] = MAX_CHARACTERS + maxCharacters;
+        }
+        if (isForked(sourceMimetype, sourceFile))
+        {
+            callForked(sourceFile, target, args);
+        }
+        else
+        {
+            call(sourceFile, target, args);
+        }
+    }
+
+    /**
+     * Runs transforms in child JVMs rather than in this one, apart from small sources of trusted types.
+     *
+     * @param forkedWorkerPool         the child JVMs, or {@code null} to run all transforms in this JVM
+     * @param inProcessMaxSourceBytes  the size up to which sources of the trusted types are still transformed in this
+     *                                 JVM
+     * @param inProcessMimetypes       the trusted source mimetypes
+     */
+    public void setForkedWorkerPool(TikaForkedWorkerPool forkedWorkerPool, long inProcessMaxSourceBytes,
+                                    Collection<String> inProcessMimetypes)
+    {
+        this.forkedWorkerPool = forkedWorkerPool;
+        this.inProcessMaxSourceBytes = inProcessMaxSourceBytes;
+        this.inProcessMimetypes = Set.copyOf(inProcessMimetypes);
+    }
+
+    /**
+     * @return {@code true} if a target of the mimetype may be sent to the client as it is written, while the source
+     *         is being parsed. Only transforms run in this JVM do so.
+     */
+    public static boolean isStreamable(String targetMimetype)
+    {
+        return STREAMABLE_TARGET_MIMETYPES.contains(targetMimetype);
+    }
+
+    boolean isForked(String sourceMimetype, File sourceFile)
+    {
+        return forkedWorkerPool != null &&
+               !(inProcessMimetypes.contains(sourceMimetype) && sourceFile.length() <= inProcessMaxSourceBytes);
+    }
+
+    /**
+     * @return the maximum number of characters to write to the target, or {@code null} if there is no limit
+     */
+    static Integer getMaxCharacters(Map<String, String> transformOptions)
+    {
+        final String maxCharacters = StringUtils.trimToNull(transformOptions.get(RequestParamMap.MAX_CHARACTERS));
+        if (maxCharacters == null)
+        {
+            return null;
+        }
+        int limit;
+        try
+        {
+            limit = Integer.parseInt(maxCharacters);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new TransformException(BAD_REQUEST.value(),
+                "Invalid " + RequestParamMap.MAX_CHARACTERS + ": " + maxCharacters);
+        }
+        // As with pageLimit, a limit of zero or less means there is no limit
+        return limit > 0 ? limit : null;
     }
 
     @Override
     public void call(File sourceFile, File targetFile, String... args)
     {
-        args = buildArgs(sourceFile, targetFile, args);
-        tika.transform(args);
+        call(sourceFile, TransformTarget.of(targetFile), args);
+    }
+
+    /**
+     * As {@link #call(File, File, String...)}, but the target is written to the stream given by
+     * {@link TransformTarget#stream()} rather than the target file, if there is one, and the {@code target} is told
+     * if it is truncated.
+     */
+    public void call(File sourceFile, TransformTarget target, String... args)
+    {
+        args = buildArgs(sourceFile, target.getFile(), args);
+        if (tika.transform(args, target.stream()))
+        {
+            // The target is still valid, so is returned, but the caller is told it is incomplete
+            target.setTruncated(getMaxCharactersArg(args));
+        }
+    }
+
+    private void callForked(File sourceFile, TransformTarget target, String... args)
+    {
+        args = buildArgs(sourceFile, target.getFile(), args);
+        boolean truncated;
+        try
+        {
+            truncated = forkedWorkerPool.transform(args);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        if (truncated)
+        {
+            target.setTruncated(getMaxCharactersArg(args));
+        }
+    }
+
+    private static String getMaxCharactersArg(String[] args)
+    {
+        for (String arg : args)
+        {
+            if (arg.startsWith(MAX_CHARACTERS))
+            {
+                return RequestParamMap.MAX_CHARACTERS + '=' + arg.substring(MAX_CHARACTERS.length());
+            }
+        }
+        return RequestParamMap.MAX_CHARACTERS;
     }
 
     private static String[] buildArgs(File sourceFile, File targetFile, String[] args)
@@ -184,10 +364,28 @@ public class TikaJavaExecutor implements JavaExecutor
                             throws Exception
     {
         AbstractTikaMetadataExtractor metadataExtractor = this.metadataExtractor.get(transformName);
-        metadataExtractor.extractMetadata(sourceMimetype, transformOptions, sourceFile, targetFile);
+        // The IPTC extractor's parsing is already done by ExifTool processes
+        if (!(metadataExtractor instanceof IPTCMetadataExtractor) && isForked(sourceMimetype, sourceFile))
+        {
+            try
+            {
+                forkedWorkerPool.extractMetadata(transformName, sourceMimetype, transformOptions, sourceFile,
+                    targetFile);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        else
+        {
+            metadataExtractor.extractMetadata(sourceMimetype, transformOptions, sourceFile, targetFile);
+        }
     }
 
     /**
+     * Always run in this JVM, even when there are child JVMs.
+     *
      * @deprecated The content repository's TikaPoweredMetadataExtracter provides no non test implementations.
      *             This code exists in case there are custom implementations, that need to be converted to T-Engines.
      *             It is simply a copy and paste from the content repository and has received limited testing.
@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.alfresco.transformer.executors.Tika.HTML;
+import static org.alfresco.transformer.executors.Tika.XML;
+
+import java.io.Writer;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Creates the {@link TransformerHandler}s that write Tika's SAX events out as html or xml.
+ * <p>
+ * {@link SAXTransformerFactory#newInstance()} looks up the factory implementation with a ServiceLoader, which is
+ * expensive to do for every request, so a single factory is shared. A TransformerFactory is not guaranteed to be
+ * thread safe, so handlers are created while holding its lock, but once created each handler is only used by the
+ * request it was created for.
+ */
+public final class TransformerHandlerFactory
+{
+    private static final SAXTransformerFactory FACTORY =
+        (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+
+    private TransformerHandlerFactory()
+    {
+    }
+
+    /**
+     * @param method {@link Tika#HTML} or {@link Tika#XML}
+     * @param output where the content is written
+     * @return a new handler that writes the content to the output using the given method, with indentation
+     */
+    public static TransformerHandler newTransformerHandler(String method, Writer output)
+        throws TransformerConfigurationException
+    {
+        if (!HTML.equals(method) && !XML.equals(method))
+        {
+            throw new IllegalArgumentException("Invalid output method " + method);
+        }
+
+        TransformerHandler transformerHandler;
+        synchronized (FACTORY)
+        {
+            transformerHandler = FACTORY.newTransformerHandler();
+        }
+        transformerHandler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
+        transformerHandler.getTransformer().setOutputProperty(OutputKeys.METHOD, method);
+        transformerHandler.setResult(new StreamResult(output));
+        return transformerHandler;
+    }
+}
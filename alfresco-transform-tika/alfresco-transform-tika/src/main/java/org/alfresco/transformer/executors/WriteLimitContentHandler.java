@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Passes on no more than a maximum number of characters to the handler that writes the target, so that a very large
+ * document may be cut short rather than using a lot of time and space.
+ * <p>
+ * Once the limit is reached a {@link WriteLimitReachedException} is thrown to stop the parser (Tika's parsers rethrow
+ * it rather than carrying on) and any further events are ignored. The caller then uses {@link #endOpenElements()} to
+ * end the elements that were still open, so that an html or xml target is still well formed.
+ */
+public class WriteLimitContentHandler extends ContentHandlerDecorator
+{
+    private final int maxCharacters;
+    private final Deque<String[]> openElements = new ArrayDeque<>();
+    private int characters;
+    private boolean writeLimitReached;
+
+    /**
+     * @param maxCharacters the maximum number of characters to pass on
+     */
+    public WriteLimitContentHandler(int maxCharacters)
+    {
+        this.maxCharacters = maxCharacters;
+    }
+
+    /**
+     * @param handler the handler to which events are passed
+     * @return this handler
+     */
+    public WriteLimitContentHandler decorate(ContentHandler handler)
+    {
+        setContentHandler(handler);
+        return this;
+    }
+
+    public boolean isWriteLimitReached()
+    {
+        return writeLimitReached;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException
+    {
+        if (!writeLimitReached)
+        {
+            super.startElement(uri, localName, name, atts);
+            openElements.push(new String[]{uri, localName, name});
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String name) throws SAXException
+    {
+        if (!writeLimitReached)
+        {
+            openElements.poll();
+            super.endElement(uri, localName, name);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException
+    {
+        int allowed = allow(length);
+        if (allowed > 0)
+        {
+            super.characters(ch, start, allowed);
+        }
+        checkWriteLimit(allowed, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
+    {
+        int allowed = allow(length);
+        if (allowed > 0)
+        {
+            super.ignorableWhitespace(ch, start, allowed);
+        }
+        checkWriteLimit(allowed, length);
+    }
+
+    @Override
+    public void endDocument() throws SAXException
+    {
+        if (!writeLimitReached)
+        {
+            super.endDocument();
+        }
+    }
+
+    /**
+     * Ends the elements still open when the limit was reached and then the document.
+     */
+    public void endOpenElements() throws SAXException
+    {
+        while (!openElements.isEmpty())
+        {
+            String[] element = openElements.pop();
+            super.endElement(element[0], element[1], element[2]);
+        }
+        super.endDocument();
+    }
+
+    private int allow(int length)
+    {
+        int allowed = writeLimitReached ? 0 : Math.min(length, maxCharacters - characters);
+        characters += allowed;
+        return allowed;
+    }
+
+    private void checkWriteLimit(int allowed, int length) throws SAXException
+    {
+        if (allowed < length)
+        {
+            writeLimitReached = true;
+            throw new WriteLimitReachedException(maxCharacters);
+        }
+    }
+}
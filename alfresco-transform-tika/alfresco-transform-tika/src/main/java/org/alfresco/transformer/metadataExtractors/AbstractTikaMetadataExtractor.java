@@ -97,6 +97,8 @@ public abstract class AbstractTikaMetadataExtractor extends AbstractMetadataExtr
     private final DateTimeFormatter tikaUTCDateFormater;
     private final DateTimeFormatter tikaDateFormater;
 
+    private volatile Parser parser;
+
     public AbstractTikaMetadataExtractor(Logger logger)
     {
         super(logger);
@@ -158,9 +160,22 @@ public abstract class AbstractTikaMetadataExtractor extends AbstractMetadataExtr
      * Returns the correct Tika Parser to process the document.
      * If you don't know which you want, use {@link TikaAutoMetadataExtractor}
      * which makes use of the Tika auto-detection.
+     * Only called once, as Tika parsers are thread safe, so the same one is used for every document.
      */
     protected abstract Parser getParser();
 
+    private Parser getSharedParser()
+    {
+        Parser sharedParser = parser;
+        if (sharedParser == null)
+        {
+            // A race only results in an extra parser being created
+            sharedParser = getParser();
+            parser = sharedParser;
+        }
+        return sharedParser;
+    }
+
     /**
      * Returns the Tika Embedder to modify
      * the document.
@@ -222,7 +237,7 @@ public abstract class AbstractTikaMetadataExtractor extends AbstractMetadataExtr
 
         try (InputStream is = new FileInputStream(sourceFile))
         {
-            Parser parser = getParser();
+            Parser parser = getSharedParser();
 
             Metadata metadata = new Metadata();
             metadata.add(Metadata.CONTENT_TYPE, sourceMimetype);
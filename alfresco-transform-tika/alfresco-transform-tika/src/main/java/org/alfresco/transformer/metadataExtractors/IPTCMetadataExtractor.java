@@ -34,6 +34,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.alfresco.transformer.tika.parsers.ExifToolParser;
+import org.alfresco.transformer.tika.parsers.ExifToolWorkerPool;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.Parser;
@@ -51,9 +52,24 @@ public class IPTCMetadataExtractor extends AbstractTikaMetadataExtractor
 
     private ExifToolParser parser;
 
+    private final ExifToolWorkerPool workerPool;
+
+    // Used for the mappings it has in common, rather than creating a new one for each file
+    private final TikaAutoMetadataExtractor tikaAutoMetadataExtractor = new TikaAutoMetadataExtractor();
+
     public IPTCMetadataExtractor() 
+    {
+        this(null);
+    }
+
+    /**
+     * @param workerPool long running ExifTool workers used to extract the metadata, or {@code null} to start a new
+     *                   ExifTool process for each file
+     */
+    public IPTCMetadataExtractor(ExifToolWorkerPool workerPool)
     {
         super(logger);
+        this.workerPool = workerPool;
     }
 
     @Override
@@ -61,6 +77,7 @@ public class IPTCMetadataExtractor extends AbstractTikaMetadataExtractor
     {
         if (this.parser == null) {
             this.parser = new ExifToolParser();
+            this.parser.setWorkerPool(workerPool);
         }
         return this.parser;  
     }
@@ -74,7 +91,7 @@ public class IPTCMetadataExtractor extends AbstractTikaMetadataExtractor
     protected Map<String, Serializable> extractSpecific(Metadata metadata, Map<String, Serializable> properties,
             Map<String, String> headers) 
     {
-        properties = new TikaAutoMetadataExtractor().extractSpecific(metadata, properties, headers);
+        properties = tikaAutoMetadataExtractor.extractSpecific(metadata, properties, headers);
         ExifToolParser etParser = (ExifToolParser)this.getParser();
         if (etParser.getSeparator()!=null)
         {
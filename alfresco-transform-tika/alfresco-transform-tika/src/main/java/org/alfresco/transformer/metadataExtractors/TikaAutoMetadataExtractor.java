@@ -30,7 +30,6 @@ import org.alfresco.transformer.util.MimetypeMap;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TIFF;
-import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.Parser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import java.io.Serializable;
 import java.util.Map;
 
+import static org.alfresco.transformer.executors.Tika.getAutoDetectParser;
 import static org.alfresco.transformer.executors.Tika.readTikaConfig;
 
 /**
@@ -79,12 +79,12 @@ public class TikaAutoMetadataExtractor extends AbstractTikaMetadataExtractor
     }
 
     /**
-     * Does auto-detection to select the best Tika Parser.
+     * Does auto-detection to select the best Tika Parser. The AutoDetectParser is shared with the transforms.
      */
     @Override
     protected Parser getParser()
     {
-        return new AutoDetectParser(tikaConfig);
+        return getAutoDetectParser(logger);
     }
 
     /**
@@ -39,6 +39,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -75,6 +76,8 @@ public class ExifToolParser extends ExternalParser {
 
     private String separator;
 
+    private ExifToolWorkerPool workerPool;
+
     public ExifToolParser() {
         super();
         try {
@@ -108,6 +111,19 @@ public class ExifToolParser extends ExternalParser {
         return this.separator;
     }
 
+    /**
+     * @param workerPool if set, files are processed by its long running ExifTool workers rather than by starting a new
+     *                   ExifTool process for each file. Only used if the command reads the {@code ${INPUT}} file and
+     *                   ExifTool does not write to the {@code ${OUTPUT}} file.
+     */
+    public void setWorkerPool(ExifToolWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    public ExifToolWorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
     @Override
     public void setCommand(String... command){
         super.setCommand(command);
@@ -186,14 +202,16 @@ public class ExifToolParser extends ExternalParser {
 
         File output = null;
 
-        // Build our getCommand()
-        String[] cmd;
-        if (getCommand().length == 1) {
-            cmd = getCommand()[0].split(" ");
-        } else {
-            cmd = new String[getCommand().length];
-            System.arraycopy(getCommand(), 0, cmd, 0, getCommand().length);
+        if (workerPool != null) {
+            List<String> args = getStayOpenArguments(stream.getFile().getPath());
+            if (args != null) {
+                parseWithWorkerPool(args, xhtml, metadata, hasPatterns);
+                return;
+            }
         }
+
+        // Build our getCommand()
+        String[] cmd = getCommandTokens();
         for (int i = 0; i < cmd.length; i++) {
             if (cmd[i].indexOf(INPUT_FILE_TOKEN) != -1) {
                 cmd[i] = cmd[i].replace(INPUT_FILE_TOKEN, stream.getFile().getPath());
@@ -257,6 +275,78 @@ public class ExifToolParser extends ExternalParser {
         }
     }
 
+    private String[] getCommandTokens() {
+        if (getCommand().length == 1) {
+            return getCommand()[0].split(" ");
+        }
+        String[] cmd = new String[getCommand().length];
+        System.arraycopy(getCommand(), 0, cmd, 0, getCommand().length);
+        return cmd;
+    }
+
+    /**
+     * Works out the arguments to pass to a {@code -stay_open} ExifTool worker from the configured command, which
+     * are those after the exiftool executable with the input file substituted.
+     *
+     * @return the arguments, or {@code null} if the command cannot be run by a worker
+     */
+    protected List<String> getStayOpenArguments(String inputPath) {
+        String[] cmd = getCommandTokens();
+        int exifTool = getExecutableIndex(cmd);
+        boolean hasInput = false;
+        List<String> args = new ArrayList<>();
+        for (int i = exifTool + 1; i < cmd.length; i++) {
+            if (cmd[i].contains(OUTPUT_FILE_TOKEN)) {
+                return null;
+            }
+            if (cmd[i].contains(INPUT_FILE_TOKEN)) {
+                hasInput = true;
+            }
+            args.add(cmd[i].replace(INPUT_FILE_TOKEN, inputPath));
+        }
+        return exifTool < cmd.length && hasInput ? args : null;
+    }
+
+    /**
+     * @return the exiftool executable in the configured command, including any path, so that the workers of an
+     *         {@link ExifToolWorkerPool} run the same ExifTool as a process started for each file would
+     */
+    public String getExecutable() {
+        String[] cmd = getCommandTokens();
+        int exifTool = getExecutableIndex(cmd);
+        return exifTool < cmd.length ? cmd[exifTool] : ExifToolWorkerPool.DEFAULT_EXECUTABLE;
+    }
+
+    private static int getExecutableIndex(String[] cmd) {
+        int exifTool = 0;
+        while (exifTool < cmd.length
+                && !new File(cmd[exifTool]).getName().equals(ExifToolWorkerPool.DEFAULT_EXECUTABLE)) {
+            exifTool++;
+        }
+        return exifTool;
+    }
+
+    /**
+     * Equivalent to running the configured command in a new process, other than anything before the exiftool
+     * executable (such as the {@code env FOO=${OUTPUT}} in the default config) being ignored. As ExifTool does not
+     * write to the output file, the output is empty.
+     */
+    private void parseWithWorkerPool(List<String> args, XHTMLContentHandler xhtml, Metadata metadata,
+            boolean hasPatterns) throws IOException, SAXException, TikaException {
+        List<String> lines;
+        try {
+            lines = workerPool.execute(args);
+        } catch (IOException e) {
+            throw new TikaException("ExifTool failed: " + e.getMessage(), e);
+        }
+        if (hasPatterns) {
+            for (String line : lines) {
+                addMetadata(line, metadata);
+            }
+        }
+        extractOutput(InputStream.nullInputStream(), xhtml);
+    }
+
     /**
      * Adapted from {@link org.apache.tika.parser.external.ExternalParser}<p>
      * Starts a thread that extracts the contents of the standard output
@@ -343,17 +433,7 @@ public class ExifToolParser extends ExternalParser {
                 try {
                     String line;
                     while ((line = reader.readLine()) != null) {
-                        for (Pattern p : getMetadataExtractionPatterns().keySet()) {
-                            Matcher m = p.matcher(line);
-                            if (m.find()) {
-                                if (getMetadataExtractionPatterns().get(p) != null
-                                        && !getMetadataExtractionPatterns().get(p).equals("")) {
-                                    metadata.add(getMetadataExtractionPatterns().get(p), m.group(1));
-                                } else {
-                                    metadata.add(m.group(1), m.group(2));
-                                }
-                            }
-                        }
+                        addMetadata(line, metadata);
                     }
                 } catch (IOException e) {
                     // Ignore
@@ -369,4 +449,18 @@ public class ExifToolParser extends ExternalParser {
         } catch (InterruptedException ignore) {
         }
     }
+
+    private void addMetadata(String line, Metadata metadata) {
+        for (Pattern p : getMetadataExtractionPatterns().keySet()) {
+            Matcher m = p.matcher(line);
+            if (m.find()) {
+                if (getMetadataExtractionPatterns().get(p) != null
+                        && !getMetadataExtractionPatterns().get(p).equals("")) {
+                    metadata.add(getMetadataExtractionPatterns().get(p), m.group(1));
+                } else {
+                    metadata.add(m.group(1), m.group(2));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,273 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.tika.parsers;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of long running {@code exiftool -stay_open True -@ -} processes, so that the cost of starting Perl and
+ * loading the ExifTool modules is not paid for every file. The arguments for each file are written to a worker's
+ * standard input one per line, followed by {@code -execute<n>}. The worker's standard output is then read up to the
+ * matching {@code {ready<n>}} line.
+ * <p>
+ * Workers are started when first needed, up to the size of the pool. A worker is replaced after it has processed
+ * {@code maxFilesPerWorker} files, if it fails or if it does not finish a file within the timeout. A worker that has
+ * been idle for a while is checked with {@code -ver} before it is reused. Workers stop when the pool is closed, or
+ * when the JVM exits, as their standard input is then closed.
+ */
+public class ExifToolWorkerPool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExifToolWorkerPool.class);
+
+    public static final String DEFAULT_EXECUTABLE = "exiftool";
+
+    private static final long HEALTH_CHECK_IDLE_MS = 60 * 1000;
+    private static final long STOP_WAIT_MS = 1000;
+
+    private final String executable;
+    private final int maxFilesPerWorker;
+    private final long timeoutMs;
+    private final Semaphore permits;
+    private final Deque<Worker> idleWorkers = new ConcurrentLinkedDeque<>();
+    private final ScheduledExecutorService timeoutScheduler;
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param executable        the exiftool command
+     * @param maxWorkers        the maximum number of worker processes, which is also the number of files that may be
+     *                          processed at the same time
+     * @param maxFilesPerWorker the number of files a worker processes before it is replaced
+     * @param timeoutMs         the maximum time a worker may take to process a single file
+     */
+    public ExifToolWorkerPool(String executable, int maxWorkers, int maxFilesPerWorker, long timeoutMs) {
+        this.executable = executable;
+        this.maxFilesPerWorker = Math.max(1, maxFilesPerWorker);
+        this.timeoutMs = timeoutMs;
+        permits = new Semaphore(Math.max(1, maxWorkers), true);
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exiftool-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs ExifTool with the given arguments using one of the workers, waiting for a worker to become free if they are
+     * all busy.
+     *
+     * @param args the arguments for a single execution, including the file to be processed
+     * @return the lines written to standard output
+     * @throws IOException if the worker fails or takes longer than the timeout
+     */
+    public List<String> execute(List<String> args) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an ExifTool worker");
+        }
+        Worker worker = null;
+        boolean reusable = false;
+        try {
+            worker = borrowWorker();
+            List<String> output = worker.execute(args, timeoutMs);
+            reusable = ++worker.filesProcessed < maxFilesPerWorker;
+            return output;
+        } finally {
+            if (worker != null) {
+                if (reusable && !closed) {
+                    idleWorkers.offerFirst(worker);
+                } else {
+                    worker.stop();
+                }
+            }
+            permits.release();
+        }
+    }
+
+    private Worker borrowWorker() throws IOException {
+        Worker worker;
+        while ((worker = idleWorkers.pollFirst()) != null) {
+            if (worker.isHealthy()) {
+                return worker;
+            }
+            logger.debug("Replacing unhealthy ExifTool worker {}", worker.id);
+            worker.stop();
+        }
+        return new Worker(workerCount.incrementAndGet());
+    }
+
+    /**
+     * @return the number of workers started so far, including those that have since been replaced
+     */
+    public int getWorkersStarted() {
+        return workerCount.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Worker worker;
+        while ((worker = idleWorkers.pollFirst()) != null) {
+            worker.stop();
+        }
+        timeoutScheduler.shutdownNow();
+    }
+
+    private class Worker {
+        private final int id;
+        private final Process process;
+        private final Writer stdIn;
+        private final BufferedReader stdOut;
+        private int executions;
+        private int filesProcessed;
+        private long lastUsed;
+        private volatile boolean timedOut;
+
+        private Worker(int id) throws IOException {
+            this.id = id;
+            process = new ProcessBuilder(executable, "-stay_open", "True", "-@", "-").start();
+            stdIn = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF_8));
+            stdOut = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+            Thread stdErrReader = new Thread(this::logStdErr, "exiftool-stderr-" + id);
+            stdErrReader.setDaemon(true);
+            stdErrReader.start();
+            lastUsed = System.currentTimeMillis();
+            logger.debug("Started ExifTool worker {}", id);
+        }
+
+        private List<String> execute(List<String> args, long timeoutMs) throws IOException {
+            String ready = "{ready" + (++executions) + "}";
+            ScheduledFuture<?> timeout = timeoutMs > 0
+                    ? timeoutScheduler.schedule(this::timeout, timeoutMs, MILLISECONDS)
+                    : null;
+            try {
+                for (String arg : args) {
+                    stdIn.write(arg);
+                    stdIn.write('\n');
+                }
+                stdIn.write("-execute" + executions + "\n");
+                stdIn.flush();
+
+                List<String> lines = new ArrayList<>();
+                String line;
+                while ((line = stdOut.readLine()) != null) {
+                    if (line.equals(ready)) {
+                        lastUsed = System.currentTimeMillis();
+                        return lines;
+                    }
+                    lines.add(line);
+                }
+                throw new IOException("ExifTool worker " + id + " exited unexpectedly");
+            } catch (IOException e) {
+                if (timedOut) {
+                    throw new IOException("ExifTool took longer than " + timeoutMs + "ms", e);
+                }
+                throw e;
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+        }
+
+        private void timeout() {
+            timedOut = true;
+            logger.debug("ExifTool worker {} has taken too long. Killing process", id);
+            List<ProcessHandle> descendants = process.descendants().collect(toList());
+            process.destroyForcibly();
+            descendants.forEach(ProcessHandle::destroyForcibly);
+        }
+
+        private boolean isHealthy() {
+            if (!process.isAlive()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - lastUsed < HEALTH_CHECK_IDLE_MS) {
+                return true;
+            }
+            try {
+                List<String> version = execute(List.of("-ver"), timeoutMs);
+                return !version.isEmpty() && !version.get(0).isBlank();
+            } catch (IOException e) {
+                logger.debug("ExifTool worker {} failed its health check: {}", id, e.getMessage());
+                return false;
+            }
+        }
+
+        private void stop() {
+            try {
+                stdIn.write("-stay_open\nFalse\n");
+                stdIn.close();
+                if (!process.waitFor(STOP_WAIT_MS, MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                process.destroyForcibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+            logger.debug("Stopped ExifTool worker {} after {} files", id, filesProcessed);
+        }
+
+        private void logStdErr() {
+            try (BufferedReader stdErr = new BufferedReader(new InputStreamReader(process.getErrorStream(), UTF_8))) {
+                String line;
+                while ((line = stdErr.readLine()) != null) {
+                    logger.debug("ExifTool worker {}: {}", id, line);
+                }
+            } catch (IOException e) {
+                // The stream is closed when the process is killed
+            }
+        }
+    }
+}
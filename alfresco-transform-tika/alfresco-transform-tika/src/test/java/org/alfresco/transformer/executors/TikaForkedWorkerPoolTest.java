@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.alfresco.transformer.executors.Tika.MAX_CHARACTERS;
+import static org.alfresco.transformer.executors.Tika.TARGET_ENCODING;
+import static org.alfresco.transformer.executors.Tika.TARGET_MIMETYPE;
+import static org.alfresco.transformer.executors.Tika.TIKA_AUTO;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_HTML;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_PDF;
+import static org.alfresco.transformer.util.MimetypeMap.MIMETYPE_TEXT_PLAIN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs Tika in child JVMs started with the test's classpath.
+ */
+public class TikaForkedWorkerPoolTest
+{
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog";
+
+    @TempDir
+    Path tempDir;
+
+    private File source;
+    private File target;
+    private TikaForkedWorkerPool pool;
+
+    @BeforeEach
+    public void before() throws IOException
+    {
+        source = tempDir.resolve("source.html").toFile();
+        Files.writeString(source.toPath(), "<html><body><p>" + TEXT + "</p></body></html>");
+        target = tempDir.resolve("target.txt").toFile();
+    }
+
+    @AfterEach
+    public void after()
+    {
+        if (pool != null)
+        {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testWorkerReused() throws Exception
+    {
+        pool = new TikaForkedWorkerPool(1, "256m", 10, 60000);
+
+        assertFalse(pool.transform(args()));
+        assertEquals(TEXT, Files.readString(target.toPath(), UTF_8).trim());
+        assertTrue(pool.transform(args(MAX_CHARACTERS + 9)));
+        assertEquals("The quick", Files.readString(target.toPath(), UTF_8));
+        assertEquals(1, pool.getWorkersStarted());
+    }
+
+    @Test
+    public void testWorkerReplacedAfterMaxFiles() throws Exception
+    {
+        pool = new TikaForkedWorkerPool(1, "256m", 1, 60000);
+
+        pool.transform(args());
+        pool.transform(args());
+        assertEquals(2, pool.getWorkersStarted());
+    }
+
+    @Test
+    public void testInvalidArgumentsAndFailures() throws Exception
+    {
+        pool = new TikaForkedWorkerPool(1, "256m", 10, 60000);
+
+        IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class,
+            () -> pool.transform(args("--unknown")));
+        assertTrue(invalid.getMessage().contains("--unknown"), invalid.getMessage());
+
+        source.delete();
+        assertThrows(IllegalStateException.class, () -> pool.transform(args()));
+
+        // The worker is still used after a transform fails
+        assertEquals(1, pool.getWorkersStarted());
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        pool = new TikaForkedWorkerPool(1, "256m", 10, 1);
+
+        IOException e = assertThrows(IOException.class, () -> pool.transform(args()));
+        assertTrue(e.getMessage().contains("longer than"), e.getMessage());
+    }
+
+    @Test
+    public void testExtractMetadata() throws Exception
+    {
+        pool = new TikaForkedWorkerPool(1, "256m", 10, 60000);
+        File expected = tempDir.resolve("expected.json").toFile();
+        target = tempDir.resolve("target.json").toFile();
+        TikaJavaExecutor.createMetadataExtractors(null).get("TikaAutoMetadataExtractor")
+            .extractMetadata(MIMETYPE_HTML, Map.of(), source, expected);
+
+        pool.extractMetadata("TikaAutoMetadataExtractor", MIMETYPE_HTML, Map.of(), source, target);
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        assertEquals(jsonObjectMapper.readValue(expected, Map.class), jsonObjectMapper.readValue(target, Map.class));
+
+        assertThrows(IllegalArgumentException.class,
+            () -> pool.extractMetadata("UnknownMetadataExtractor", MIMETYPE_HTML, Map.of(), source, target));
+        assertEquals(1, pool.getWorkersStarted());
+    }
+
+    @Test
+    public void testExecutorExtractsMetadataInWorkersUntilClosed() throws Exception
+    {
+        TikaJavaExecutor executor = new TikaJavaExecutor();
+        pool = new TikaForkedWorkerPool(1, "256m", 10, 60000);
+        executor.setForkedWorkerPool(pool, 0, List.of());
+        target = tempDir.resolve("target.json").toFile();
+
+        executor.extractMetadata("TikaAutoMetadataExtractor", MIMETYPE_HTML, null, Map.of(), source, target);
+        assertEquals(1, pool.getWorkersStarted());
+        assertTrue(target.length() > 0);
+
+        executor.close();
+        assertThrows(IllegalStateException.class, () -> executor.extractMetadata("TikaAutoMetadataExtractor",
+            MIMETYPE_HTML, null, Map.of(), source, target));
+        assertEquals(1, pool.getWorkersStarted());
+    }
+
+    @Test
+    public void testCommand()
+    {
+        List<String> command = TikaForkedWorkerPool.getCommand("512m");
+        assertTrue(command.contains("-Xmx512m"), command.toString());
+        assertTrue(command.contains("-XX:+ExitOnOutOfMemoryError"), command.toString());
+        assertEquals(TikaForkedWorker.class.getName(), command.get(command.size() - 1));
+        assertFalse(TikaForkedWorkerPool.getCommand(" ").stream().anyMatch(arg -> arg.startsWith("-Xmx")));
+    }
+
+    @Test
+    public void testInProcessSources() throws Exception
+    {
+        TikaJavaExecutor executor = new TikaJavaExecutor();
+        assertFalse(executor.isForked(MIMETYPE_PDF, source));
+
+        pool = new TikaForkedWorkerPool(1, "256m", 10, 60000);
+        executor.setForkedWorkerPool(pool, source.length(), List.of(MIMETYPE_HTML, MIMETYPE_TEXT_PLAIN));
+        assertFalse(executor.isForked(MIMETYPE_HTML, source));
+        assertTrue(executor.isForked(MIMETYPE_PDF, source));
+
+        executor.setForkedWorkerPool(pool, source.length() - 1, List.of(MIMETYPE_HTML, MIMETYPE_TEXT_PLAIN));
+        assertTrue(executor.isForked(MIMETYPE_HTML, source));
+    }
+
+    private String[] args(String... extraArgs)
+    {
+        String[] args = {TIKA_AUTO, TARGET_MIMETYPE + MIMETYPE_TEXT_PLAIN, TARGET_ENCODING + "UTF-8"};
+        String[] all = new String[args.length + extraArgs.length + 2];
+        System.arraycopy(args, 0, all, 0, args.length);
+        System.arraycopy(extraArgs, 0, all, args.length, extraArgs.length);
+        all[all.length - 2] = source.getAbsolutePath();
+        all[all.length - 1] = target.getAbsolutePath();
+        return all;
+    }
+}
@@ -41,6 +41,7 @@ import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.alfresco.transformer.fs.TransformTarget;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -57,70 +58,71 @@ public class TikaJavaExecutorTest {
 
         File mockSourceFile = mock(File.class);
         File mockTargetFile = mock(File.class);
+        TransformTarget mockTarget = TransformTarget.of(mockTargetFile);
         String transformName = "transformName";
         String sourceMimetype = "sourceMimetype";
         String targetMimetype = "targetMimetype";
         String defaultEncoding = "UTF-8";
 
         // no need to continue execution passed here or check values as we're checking the correct params passed to this method later.
-        lenient().doNothing().when(executorSpyDefaultTrue).call(any(), any(), any(), any(), any(), any(), any());
-        lenient().doNothing().when(executorSpyDefaultFalse).call(any(), any(), any(), any(), any(), any(), any());
+        lenient().doNothing().when(executorSpyDefaultTrue).call(any(File.class), any(TransformTarget.class), any(), any(), any(), any(), any());
+        lenient().doNothing().when(executorSpyDefaultFalse).call(any(File.class), any(TransformTarget.class), any(), any(), any(), any(), any());
 
         Map<String, String> transformOptions = new HashMap<String,String>();
 
         // use empty transformOptions to test defaults
         executorSpyDefaultTrue.transform(transformName, sourceMimetype, targetMimetype, transformOptions,
-                mockSourceFile, mockTargetFile);
+                mockSourceFile, mockTarget);
         executorSpyDefaultFalse.transform(transformName, sourceMimetype, targetMimetype, transformOptions,
-                mockSourceFile, mockTargetFile);
+                mockSourceFile, mockTarget);
 
         // when default set to true, with no options passed we should get a call method with NOT_EXTRACT_BOOKMARKS_TEXT
-        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTargetFile, transformName, null,
+        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTarget, transformName, null,
                 NOT_EXTRACT_BOOKMARKS_TEXT, TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + defaultEncoding);
 
         // when default set to false, with no options passed we should get a call method without NOT_EXTRACT_BOOKMARKS_TEXT
-        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTargetFile, transformName, null, null,
+        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTarget, transformName, null, null,
                 TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + defaultEncoding);
         
         // use transforms with notExtractBookmarksText set to true
         clearInvocations(executorSpyDefaultTrue, executorSpyDefaultFalse);
         transformOptions.put("notExtractBookmarksText", "true");
         executorSpyDefaultTrue.transform(transformName, sourceMimetype, targetMimetype, transformOptions,
-                mockSourceFile, mockTargetFile);
+                mockSourceFile, mockTarget);
         executorSpyDefaultFalse.transform(transformName, sourceMimetype, targetMimetype, transformOptions,
-                mockSourceFile, mockTargetFile);
+                mockSourceFile, mockTarget);
 
         // both call methods should have NOT_EXTRACT_BOOKMARKS_TEXT
-        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTargetFile, transformName, null,
+        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTarget, transformName, null,
                 NOT_EXTRACT_BOOKMARKS_TEXT, TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + defaultEncoding);
 
-        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTargetFile, transformName, null,
+        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTarget, transformName, null,
                 NOT_EXTRACT_BOOKMARKS_TEXT, TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + defaultEncoding);
 
         // use transforms with notExtractBookmarksText set to false
         clearInvocations(executorSpyDefaultTrue, executorSpyDefaultFalse);
         transformOptions.replace("notExtractBookmarksText", "true", "false");
-        executorSpyDefaultTrue.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTargetFile);
-        executorSpyDefaultFalse.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTargetFile);
+        executorSpyDefaultTrue.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTarget);
+        executorSpyDefaultFalse.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTarget);
 
         // both call methods should have NOT_EXTRACT_BOOKMARKS_TEXT
-        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTargetFile, transformName, null, null,
+        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTarget, transformName, null, null,
                 TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + defaultEncoding);
 
-        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTargetFile, transformName, null, null,
+        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTarget, transformName, null, null,
                 TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + defaultEncoding);
 
         // use full set of pdfbox transformOptions just to be safe
         clearInvocations(executorSpyDefaultTrue, executorSpyDefaultFalse);
         transformOptions.put("targetEncoding", "anyEncoding");
-        executorSpyDefaultTrue.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTargetFile);
-        executorSpyDefaultFalse.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTargetFile);
+        executorSpyDefaultTrue.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTarget);
+        executorSpyDefaultFalse.transform(transformName, sourceMimetype, targetMimetype, transformOptions, mockSourceFile, mockTarget);
 
         // both call methods should have NOT_EXTRACT_BOOKMARKS_TEXT but the encoding will change
-        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTargetFile, transformName, null, null,
+        verify(executorSpyDefaultTrue, times(1)).call(mockSourceFile, mockTarget, transformName, null, null,
                 TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + "anyEncoding");
 
-        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTargetFile, transformName, null, null,
+        verify(executorSpyDefaultFalse, times(1)).call(mockSourceFile, mockTarget, transformName, null, null,
                 TARGET_MIMETYPE + targetMimetype, TARGET_ENCODING + "anyEncoding");
     }
 }
@@ -27,6 +27,9 @@
 package org.alfresco.transformer.tika.parsers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -56,4 +59,32 @@ public class ExifToolParserTest {
 
     }
 
+    @Test
+    public void testGetStayOpenArguments() {
+        exifToolParser.setCommand("env FOO=${OUTPUT} exiftool -args -G1 -sep \"|||\" ${INPUT}");
+        assertEquals(List.of("-args", "-G1", "-sep", "\"|||\"", "/tmp/source.jpg"),
+                exifToolParser.getStayOpenArguments("/tmp/source.jpg"));
+
+        // ExifTool writes to the output file
+        exifToolParser.setCommand("exiftool -w ${OUTPUT} ${INPUT}");
+        assertNull(exifToolParser.getStayOpenArguments("/tmp/source.jpg"));
+
+        // No input file
+        exifToolParser.setCommand("exiftool -args -");
+        assertNull(exifToolParser.getStayOpenArguments("/tmp/source.jpg"));
+
+        // Not ExifTool
+        exifToolParser.setCommand("identify -verbose ${INPUT}");
+        assertNull(exifToolParser.getStayOpenArguments("/tmp/source.jpg"));
+    }
+
+    @Test
+    public void testGetExecutable() {
+        exifToolParser.setCommand("env FOO=${OUTPUT} /opt/exiftool/exiftool -args -G1 -sep \"|||\" ${INPUT}");
+        assertEquals("/opt/exiftool/exiftool", exifToolParser.getExecutable());
+
+        exifToolParser.setCommand("identify -verbose ${INPUT}");
+        assertEquals(ExifToolWorkerPool.DEFAULT_EXECUTABLE, exifToolParser.getExecutable());
+    }
+
 }
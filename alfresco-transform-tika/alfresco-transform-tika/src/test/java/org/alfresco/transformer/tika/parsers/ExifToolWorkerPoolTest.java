@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.tika.parsers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Uses a shell script that follows the exiftool -stay_open protocol, so that ExifTool does not need to be installed.
+ */
+@DisabledOnOs(WINDOWS)
+public class ExifToolWorkerPoolTest {
+
+    private static final String FAKE_EXIFTOOL =
+            "#!/bin/sh\n" +
+            "while IFS= read -r line; do\n" +
+            "  case \"$line\" in\n" +
+            "    -execute*) echo \"{ready${line#-execute}}\" ;;\n" +
+            "    -stay_open|False) ;;\n" +
+            "    sleep) sleep 30 ;;\n" +
+            "    *) echo \"-Pid=$$\"; echo \"-Arg=$line\" ;;\n" +
+            "  esac\n" +
+            "done\n";
+
+    @TempDir
+    Path tempDir;
+
+    private ExifToolWorkerPool pool;
+
+    @AfterEach
+    public void after() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private ExifToolWorkerPool createPool(int maxWorkers, int maxFilesPerWorker, long timeoutMs) throws IOException {
+        Path script = tempDir.resolve("exiftool");
+        Files.writeString(script, FAKE_EXIFTOOL);
+        File scriptFile = script.toFile();
+        scriptFile.setExecutable(true);
+        pool = new ExifToolWorkerPool(scriptFile.getPath(), maxWorkers, maxFilesPerWorker, timeoutMs);
+        return pool;
+    }
+
+    @Test
+    public void testWorkerReused() throws IOException {
+        createPool(1, 100, 10000);
+
+        List<String> first = pool.execute(List.of("-args", "a.jpg"));
+        List<String> second = pool.execute(List.of("-args", "b.jpg"));
+
+        assertEquals(List.of(first.get(0), "-Arg=-args", first.get(0), "-Arg=a.jpg"), first);
+        assertEquals(first.get(0), second.get(0), "The same process should have been used");
+        assertEquals("-Arg=b.jpg", second.get(3));
+        assertEquals(1, pool.getWorkersStarted());
+    }
+
+    @Test
+    public void testWorkerReplacedAfterMaxFiles() throws IOException {
+        createPool(1, 2, 10000);
+
+        String pid1 = pool.execute(List.of("a.jpg")).get(0);
+        String pid2 = pool.execute(List.of("b.jpg")).get(0);
+        String pid3 = pool.execute(List.of("c.jpg")).get(0);
+
+        assertEquals(pid1, pid2);
+        assertTrue(!pid1.equals(pid3), "A new process should have been started");
+        assertEquals(2, pool.getWorkersStarted());
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        createPool(1, 100, 500);
+
+        long start = System.currentTimeMillis();
+        IOException e = assertThrows(IOException.class, () -> pool.execute(List.of("sleep")));
+        assertTrue(e.getMessage().contains("500ms"), e.getMessage());
+        assertTrue(System.currentTimeMillis() - start < 10000, "Worker was not killed");
+
+        // The killed worker is replaced
+        assertEquals("-Arg=a.jpg", pool.execute(List.of("a.jpg")).get(1));
+        assertEquals(2, pool.getWorkersStarted());
+    }
+}
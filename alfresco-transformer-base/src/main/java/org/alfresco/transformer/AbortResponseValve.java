@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer;
+
+import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.apache.coyote.ActionCode;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * AbortResponseValve
+ * <br/>
+ * Closes the connection of a request that failed after its response was committed, such as one sending a
+ * {@link org.alfresco.transformer.fs.StreamedTarget}. The 200 status and part of the content have already been
+ * sent, so leaving the response incomplete is the only way left to tell the client. The connection is closed
+ * without sending anything else, so a chunked response has no final chunk and nothing such as an error page is
+ * appended to the content.
+ */
+public class AbortResponseValve extends ValveBase
+{
+    private static final String ABORT_ATTRIBUTE = AbortResponseValve.class.getName() + ".abort";
+
+    public AbortResponseValve()
+    {
+        super(true);
+    }
+
+    /**
+     * Marks the current request, so that its connection is closed once it has been handled.
+     */
+    public static void abort()
+    {
+        RequestContextHolder.currentRequestAttributes().setAttribute(ABORT_ATTRIBUTE, Boolean.TRUE, SCOPE_REQUEST);
+    }
+
+    /**
+     * @return {@code true} if {@link #abort()} was called while handling the request
+     */
+    public static boolean isAborted(ServletRequest request)
+    {
+        return request.getAttribute(ABORT_ATTRIBUTE) != null;
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException
+    {
+        getNext().invoke(request, response);
+        if (isAborted(request))
+        {
+            response.getCoyoteResponse().action(ActionCode.CLOSE_NOW, null);
+        }
+    }
+}
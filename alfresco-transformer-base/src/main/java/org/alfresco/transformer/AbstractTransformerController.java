@@ -33,6 +33,9 @@ import org.alfresco.transform.client.model.config.TransformConfig;
 import org.alfresco.transform.client.registry.TransformServiceRegistry;
 import org.alfresco.transform.exceptions.TransformException;
 import org.alfresco.transformer.clients.AlfrescoSharedFileStoreClient;
+import org.alfresco.transformer.fs.CapturedTarget;
+import org.alfresco.transformer.fs.StreamedTarget;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.logging.LogEntry;
 import org.alfresco.transformer.model.FileRefResponse;
 import org.slf4j.Logger;
@@ -51,9 +54,12 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -67,6 +73,7 @@ import static org.alfresco.transformer.fs.FileManager.createAttachment;
 import static org.alfresco.transformer.fs.FileManager.createSourceFile;
 import static org.alfresco.transformer.fs.FileManager.createTargetFile;
 import static org.alfresco.transformer.fs.FileManager.createTargetFileName;
+import static org.alfresco.transformer.fs.FileManager.createTargetFilePath;
 import static org.alfresco.transformer.fs.FileManager.deleteFile;
 import static org.alfresco.transformer.fs.FileManager.getFilenameFromContentDisposition;
 import static org.alfresco.transformer.fs.FileManager.save;
@@ -166,20 +173,89 @@ public abstract class AbstractTransformerController implements TransformControll
                 sourceMultipartFile.getOriginalFilename(), targetExtension);
         getProbeTestTransform().incrementTransformerCount();
         final File sourceFile = createSourceFile(request, sourceMultipartFile);
-        final File targetFile = createTargetFile(request, targetFilename);
 
         Map<String, String> transformOptions = getTransformOptions(requestParameters);
         String transformName = getTransformerName(sourceMimetype, targetMimetype, requestTransformName, sourceFile, transformOptions);
-        transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+        boolean streamable = isStreamable(transformName, sourceMimetype, targetMimetype, transformOptions);
+        // A streamed target is normally not written to the target file, so it is left to the transformer to create it
+        final File targetFile = streamable
+            ? createTargetFilePath(request, targetFilename)
+            : createTargetFile(request, targetFilename);
+        final TransformTarget target = streamable
+            ? TransformTarget.streamable(targetFile, targetFilename, getResponse())
+            : TransformTarget.capturable(targetFile);
+        try
+        {
+            transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, target);
+        }
+        catch (RuntimeException e)
+        {
+            StreamedTarget streamedTarget = target.getStreamedTarget();
+            if (streamedTarget != null && streamedTarget.isCommitted())
+            {
+                // Part of the target has already been sent with a 200 status, so the only way left to report the
+                // error is to close the connection without completing the response
+                logger.error("Transform failed after its target was partly sent", e);
+                LogEntry.setStatusCodeAndMessage(INTERNAL_SERVER_ERROR.value(),
+                    "Failed after streaming " + streamedTarget.size() + " bytes: " + e.getMessage());
+                AbortResponseValve.abort();
+                return null;
+            }
+            throw e;
+        }
 
-        final ResponseEntity<Resource> body = createAttachment(targetFilename, targetFile);
-        LogEntry.setTargetSize(targetFile.length());
-        long time = LogEntry.setStatusCodeAndMessage(OK.value(), "Success");
+        final StreamedTarget streamedTarget = target.getStreamedTarget();
+        final CapturedTarget capturedTarget = target.getCapturedTarget();
+        final String truncated = target.getTruncated();
+        ResponseEntity<Resource> body = null;
+        if (streamedTarget != null && streamedTarget.isCommitted())
+        {
+            // The target has already been sent. Returning null leaves the response as it is.
+            if (truncated != null)
+            {
+                streamedTarget.addTrailer(TransformTarget.TRUNCATED_HEADER, truncated);
+            }
+        }
+        else
+        {
+            // The target may have been captured or kept in memory rather than written to the target file
+            Resource resource = streamedTarget != null ? streamedTarget.toResource()
+                : capturedTarget != null ? capturedTarget.toResource()
+                : null;
+            body = resource == null
+                ? createAttachment(targetFilename, targetFile)
+                : createAttachment(targetFilename, resource);
+            if (truncated != null)
+            {
+                body = ResponseEntity.ok().headers(body.getHeaders())
+                    .header(TransformTarget.TRUNCATED_HEADER, truncated).body(body.getBody());
+            }
+        }
+        LogEntry.setTargetSize(streamedTarget != null ? streamedTarget.size()
+            : capturedTarget != null ? capturedTarget.size()
+            : targetFile.length());
+        long time = LogEntry.setStatusCodeAndMessage(OK.value(),
+            truncated == null ? "Success" : "Success (truncated " + truncated + ")");
         time += LogEntry.addDelay(testDelay);
         getProbeTestTransform().recordTransformTime(time);
         return body;
     }
 
+    private static HttpServletResponse getResponse()
+    {
+        return ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getResponse();
+    }
+
+    /**
+     * Indicates if the target of an HTTP transform may be sent to the client while the transform is running, if the
+     * transformer writes it to a {@link StreamedTarget}. By default it is not.
+     */
+    protected boolean isStreamable(String transformName, String sourceMimetype, String targetMimetype,
+        Map<String, String> transformOptions)
+    {
+        return false;
+    }
+
     protected Map<String, String> getTransformOptions(Map<String, String> requestParameters)
     {
         Map<String, String> transformOptions = new HashMap<>(requestParameters);
@@ -196,7 +272,7 @@ public abstract class AbstractTransformerController implements TransformControll
      *
      * @param request The transformation request
      * @param timeout Transformation timeout
-     * @return A transformation reply
+     * @return A transformation reply. If the target was truncated, its errorDetails say so even though it succeeded.
      */
     @PostMapping(value = "/transform", produces = APPLICATION_JSON_VALUE)
     @ResponseBody
@@ -264,6 +340,7 @@ public abstract class AbstractTransformerController implements TransformControll
         final File targetFile = buildFile(targetFilename);
 
         // Run the transformation
+        final TransformTarget target = TransformTarget.capturable(targetFile);
         try
         {
 
@@ -271,7 +348,7 @@ public abstract class AbstractTransformerController implements TransformControll
             String sourceMimetype = request.getSourceMediaType();
             Map<String, String> transformOptions = request.getTransformRequestOptions();
             String transformName = getTransformerName(sourceFile, sourceMimetype, targetMimetype, transformOptions);
-            transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+            transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, target);
         }
         catch (TransformException e)
         {
@@ -294,7 +371,11 @@ public abstract class AbstractTransformerController implements TransformControll
         FileRefResponse targetRef;
         try
         {
-            targetRef = alfrescoSharedFileStoreClient.saveFile(targetFile);
+            // The target may have been captured in memory rather than written to the target file
+            CapturedTarget capturedTarget = target.getCapturedTarget();
+            targetRef = capturedTarget == null
+                ? alfrescoSharedFileStoreClient.saveFile(targetFile)
+                : alfrescoSharedFileStoreClient.saveContent(capturedTarget.toResource());
         }
         catch (TransformException e)
         {
@@ -342,6 +423,11 @@ public abstract class AbstractTransformerController implements TransformControll
 
         reply.setTargetReference(targetRef.getEntry().getFileRef());
         reply.setStatus(CREATED.value());
+        // There are no response headers to report a truncated target in, as the HTTP endpoint does
+        if (target.getTruncated() != null)
+        {
+            reply.setErrorDetails("Target truncated (" + target.getTruncated() + ")");
+        }
 
         logger.info("Sending successful {}, timeout {} ms", reply, timeout);
         return new ResponseEntity<>(reply, HttpStatus.valueOf(reply.getStatus()));
@@ -40,6 +40,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.alfresco.transform.client.model.TransformReply;
 import org.alfresco.transform.client.model.TransformRequest;
 import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.logging.LogEntry;
 import org.alfresco.transformer.probes.ProbeTestTransform;
 import org.slf4j.Logger;
@@ -76,6 +77,19 @@ public interface TransformController
     void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
                        Map<String, String> transformOptions, File sourceFile, File targetFile);
 
+    /**
+     * As {@link #transformImpl(String, String, String, Map, File, File)}, but the target tells the transformer if
+     * the caller is able to use content written to a stream rather than the target file, and collects anything the
+     * transformer reports about the target. Overridden by T-Engines with transformers that make use of it.
+     *
+     * @param target the target, including the target file
+     */
+    default void transformImpl(String transformName, String sourceMimetype, String targetMimetype,
+                               Map<String, String> transformOptions, File sourceFile, TransformTarget target)
+    {
+        transformImpl(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, target.getFile());
+    }
+
     /**
      * @deprecated use {@link #transformImpl(String, String, String, Map, File, File)} and timeout should be part of
      * the transformOptions created from the TransformRequest.
@@ -188,7 +202,7 @@ public interface TransformController
 
         LogEntry.setStatusCodeAndMessage(statusCode, message);
 
-        response.sendError(statusCode, getTransformerName() + " - " + message);
+        sendError(response, statusCode, getTransformerName() + " - " + message);
     }
 
     @ExceptionHandler(MissingServletRequestParameterException.class)
@@ -202,7 +216,7 @@ public interface TransformController
 
         LogEntry.setStatusCodeAndMessage(statusCode, message);
 
-        response.sendError(statusCode, getTransformerName() + " - " + message);
+        sendError(response, statusCode, getTransformerName() + " - " + message);
     }
 
     @ExceptionHandler(TransformException.class)
@@ -217,7 +231,23 @@ public interface TransformController
         long time = LogEntry.setStatusCodeAndMessage(statusCode, message);
         getProbeTestTransform().recordTransformTime(time);
 
-        response.sendError(statusCode, getTransformerName() + " - " + message);
+        sendError(response, statusCode, getTransformerName() + " - " + message);
+    }
+
+    /**
+     * Sends an error response. If the response has already been committed, such as when part of a streamed target
+     * has been sent, its status can no longer be changed, so the connection is closed without completing it instead.
+     */
+    default void sendError(HttpServletResponse response, int statusCode, String message) throws IOException
+    {
+        if (response.isCommitted())
+        {
+            AbortResponseValve.abort();
+        }
+        else
+        {
+            response.sendError(statusCode, message);
+        }
     }
 
     //endregion
@@ -81,12 +81,22 @@ public class AlfrescoSharedFileStoreClient
      * @return A FileRefResponse containing detail about file's reference
      */
     public FileRefResponse saveFile(File file)
+    {
+        return saveContent(new FileSystemResource(file.getAbsolutePath()));
+    }
+
+    /**
+     * Stores the given content in Shared File Store
+     *
+     * @param content Content to be stored, which must have a filename
+     * @return A FileRefResponse containing detail about file's reference
+     */
+    public FileRefResponse saveContent(Resource content)
     {
         try
         {
-            FileSystemResource value = new FileSystemResource(file.getAbsolutePath());
             LinkedMultiValueMap<String, Object> map = new LinkedMultiValueMap<>();
-            map.add("file", value);
+            map.add("file", content);
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MULTIPART_FORM_DATA);
             HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = new HttpEntity<>(map,
@@ -28,9 +28,12 @@ package org.alfresco.transformer.config;
 
 import org.alfresco.transform.client.model.TransformRequestValidator;
 import org.alfresco.transform.client.registry.TransformServiceRegistry;
+import org.alfresco.transformer.AbortResponseValve;
 import org.alfresco.transformer.TransformInterceptor;
 import org.alfresco.transformer.TransformRegistryImpl;
 import org.alfresco.transformer.clients.AlfrescoSharedFileStoreClient;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
@@ -55,6 +58,12 @@ public class WebApplicationConfig implements WebMvcConfigurer
         return new TransformInterceptor();
     }
 
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> abortResponseValveCustomizer()
+    {
+        return factory -> factory.addContextValves(new AbortResponseValve());
+    }
+
     @Bean
     public RestTemplate restTemplate()
     {
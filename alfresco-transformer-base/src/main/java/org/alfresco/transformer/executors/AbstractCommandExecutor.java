@@ -26,14 +26,19 @@
  */
 package org.alfresco.transformer.executors;
 
+import static java.util.Collections.emptyMap;
 import static org.alfresco.transformer.executors.RuntimeExec.ExecutionResult;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.fs.CapturedTarget;
+import org.alfresco.transformer.fs.TransformTarget;
 
 /**
  *
@@ -42,16 +47,153 @@ public abstract class AbstractCommandExecutor implements CommandExecutor
 {
     protected RuntimeExec transformCommand = createTransformCommand();
     protected RuntimeExec checkCommand = createCheckCommand();
+    private volatile ConcurrencyLimiter concurrencyLimiter;
+    private int maxInMemoryTargetBytes;
 
     protected abstract RuntimeExec createTransformCommand();
 
     protected abstract RuntimeExec createCheckCommand();
 
+    /**
+     * @param maxConcurrent the maximum number of transform processes to run at the same time. If less than or equal
+     *                      to zero, the number of CPUs available to the container is used.
+     * @param maxWaitMs     the maximum time a request waits for a free slot before failing. If less than or equal to
+     *                      zero, there is no limit.
+     */
+    public void setConcurrencyLimits(int maxConcurrent, long maxWaitMs)
+    {
+        concurrencyLimiter = new ConcurrencyLimiter(getTransformerId(), maxConcurrent, maxWaitMs);
+    }
+
+    /**
+     * @return the limiter set by {@link #setConcurrencyLimits(int, long)}, or one using the defaults. It is created
+     *         when first used rather than during construction, as it uses the subclass's {@link #getTransformerId()}.
+     */
+    protected ConcurrencyLimiter getConcurrencyLimiter()
+    {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter == null)
+        {
+            synchronized (this)
+            {
+                if (concurrencyLimiter == null)
+                {
+                    concurrencyLimiter = new ConcurrencyLimiter(getTransformerId(), 0,
+                        ConcurrencyLimiter.DEFAULT_MAX_WAIT_MS);
+                }
+                limiter = concurrencyLimiter;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * @param maxInMemoryTargetBytes if greater than zero, the command is able to write its target to the standard
+     *                               output (see {@link #getStdOutTarget(Map, File)}) and the caller of the transform
+     *                               is able to use it, the target is captured in memory rather than being written to
+     *                               the target file, unless it is larger than this. See {@link CapturedTarget}.
+     */
+    public void setMaxInMemoryTargetBytes(int maxInMemoryTargetBytes)
+    {
+        this.maxInMemoryTargetBytes = maxInMemoryTargetBytes;
+    }
+
+    /**
+     * @param properties the properties the command will be executed with
+     * @param targetFile the target file
+     * @return the value to use for the {@code target} property so that the command writes the target to the
+     *         standard output, or {@code null} if it should be written to the target file
+     */
+    protected String getStdOutTarget(Map<String, String> properties, File targetFile)
+    {
+        return null;
+    }
+
+    /**
+     * Environment properties used to limit the threads used by a single transform process, so that the processes
+     * running at the same time share the available CPUs rather than oversubscribing them. The value is fixed when the
+     * process starts, so a process started while others are running keeps its smaller share after they finish.
+     *
+     * @param threads the number of threads the process should use
+     * @return additional environment properties for the transform process
+     */
+    protected Map<String, String> getThreadLimitProcessProperties(int threads)
+    {
+        return emptyMap();
+    }
+
+    /**
+     * Environment properties for a single transform process, called once it has been given a slot to run in. By
+     * default these are just the {@link #getThreadLimitProcessProperties(int)}, but they may also depend on the
+     * command's properties, such as the source file. Followed by a call to {@link #processFinished(Map)}.
+     *
+     * @param properties the properties the command will be executed with
+     * @param threads    the number of threads the process should use
+     * @return additional environment properties for the transform process
+     */
+    protected Map<String, String> getProcessProperties(Map<String, String> properties, int threads)
+    {
+        return getThreadLimitProcessProperties(threads);
+    }
+
+    /**
+     * Called once the transform process has finished, so that any resources set aside for it may be released.
+     *
+     * @param processProperties the value returned by {@link #getProcessProperties(Map, int)}
+     */
+    protected void processFinished(Map<String, String> processProperties)
+    {
+    }
+
     @Override
     public void run(Map<String, String> properties, File targetFile, Long timeout)
+    {
+        run(properties, TransformTarget.of(targetFile), timeout);
+    }
+
+    @Override
+    public void run(Map<String, String> properties, TransformTarget target, Long timeout)
     {
         timeout = timeout != null && timeout > 0 ? timeout : 0;
-        final ExecutionResult result = transformCommand.execute(properties, timeout);
+        final File targetFile = target.getFile();
+        String stdOutTarget = maxInMemoryTargetBytes > 0 ? getStdOutTarget(properties, targetFile) : null;
+        CapturedTarget capturedTarget = stdOutTarget == null ? null : target.capture(maxInMemoryTargetBytes);
+        if (capturedTarget != null)
+        {
+            properties = new HashMap<>(properties);
+            properties.put("target", stdOutTarget);
+        }
+
+        final ExecutionResult result;
+        // Closing the captured target may fail if it was spilled to the target file. If the transform has already
+        // failed, that is added to its exception rather than hiding it.
+        try (capturedTarget)
+        {
+            ConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter();
+            int threads = concurrencyLimiter.acquire();
+            Map<String, String> processProperties = null;
+            try
+            {
+                processProperties = getProcessProperties(properties, threads);
+                result = capturedTarget != null
+                    ? transformCommand.execute(properties, processProperties, timeout, capturedTarget)
+                    : processProperties.isEmpty()
+                    ? transformCommand.execute(properties, timeout)
+                    : transformCommand.execute(properties, processProperties, timeout);
+            }
+            finally
+            {
+                if (processProperties != null)
+                {
+                    processFinished(processProperties);
+                }
+                concurrencyLimiter.release();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(), "Failed to write the target file", e);
+        }
 
         if (result.getExitValue() != 0 && result.getStdErr() != null && result.getStdErr().length() > 0)
         {
@@ -59,7 +201,7 @@ public abstract class AbstractCommandExecutor implements CommandExecutor
                 "Transformer exit code was not 0: \n" + result.getStdErr());
         }
 
-        if (!targetFile.exists() || targetFile.length() == 0)
+        if (capturedTarget != null ? capturedTarget.size() == 0 : !targetFile.exists() || targetFile.length() == 0)
         {
             throw new TransformException(INTERNAL_SERVER_ERROR.value(),
                 "Transformer failed to create an output file");
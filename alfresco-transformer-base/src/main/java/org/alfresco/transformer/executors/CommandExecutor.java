@@ -26,6 +26,7 @@
  */
 package org.alfresco.transformer.executors;
 
+import org.alfresco.transformer.fs.TransformTarget;
 import org.alfresco.transformer.logging.LogEntry;
 
 import java.io.File;
@@ -41,6 +42,15 @@ public interface CommandExecutor extends Transformer
 {
     void run(Map<String, String> properties, File targetFile, Long timeout);
 
+    /**
+     * As {@link #run(Map, File, Long)}, but the command may write the content to a stream rather than the target
+     * file, if the caller of the transform is able to use it.
+     */
+    default void run(Map<String, String> properties, TransformTarget target, Long timeout)
+    {
+        run(properties, target.getFile(), timeout);
+    }
+
     String version();
 
     default void run(String options, File sourceFile, File targetFile,
@@ -58,14 +68,20 @@ public interface CommandExecutor extends Transformer
 
     default void run(String options, File sourceFile, String pageRange, File targetFile,
         Long timeout)
+    {
+        run(options, sourceFile, pageRange, TransformTarget.of(targetFile), timeout);
+    }
+
+    default void run(String options, File sourceFile, String pageRange, TransformTarget target,
+        Long timeout)
     {
         LogEntry.setOptions(pageRange + (pageRange.isEmpty() ? "" : " ") + options);
 
         Map<String, String> properties = new HashMap<>();
         properties.put("options", options);
         properties.put("source", sourceFile.getAbsolutePath() + pageRange);
-        properties.put("target", targetFile.getAbsolutePath());
+        properties.put("target", target.getFile().getAbsolutePath());
 
-        run(properties, targetFile, timeout);
+        run(properties, target, timeout);
     }
 }
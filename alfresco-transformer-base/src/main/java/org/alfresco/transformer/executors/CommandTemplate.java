@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link RuntimeExec} command, compiled once into literal text and {@code ${name}} variable slots, so that each
+ * execution only has to fill in the values rather than search every argument for every property.
+ * <p>
+ * An argument starting with {@code SPLIT:} is split into several arguments once its variables have been filled in,
+ * using {@link ExecParameterTokenizer#tokenize(String)}, which caches the tokens of recently used values. Unlike the
+ * original string replacement, values are not themselves searched for variables, so the result no longer depends on
+ * the order in which the properties are replaced, and a variable without a value is left as it is.
+ */
+final class CommandTemplate
+{
+    private static final String VAR_OPEN = "${";
+    private static final String VAR_CLOSE = "}";
+    private static final String DIRECTIVE_SPLIT = "SPLIT:";
+
+    private final Argument[] arguments;
+
+    private CommandTemplate(Argument[] arguments)
+    {
+        this.arguments = arguments;
+    }
+
+    static CommandTemplate compile(String[] command)
+    {
+        Argument[] arguments = new Argument[command.length];
+        for (int i = 0; i < command.length; i++)
+        {
+            arguments[i] = Argument.compile(command[i]);
+        }
+        return new CommandTemplate(arguments);
+    }
+
+    /**
+     * @param properties        the values of the variables, which take precedence over the defaults
+     * @param defaultProperties the default values of the variables
+     * @return the command with its variables replaced by their values ({@code null} values are treated as empty
+     *         strings) and the {@code SPLIT:} arguments split up
+     */
+    String[] fill(Map<String, String> properties, Map<String, String> defaultProperties)
+    {
+        List<String> command = new ArrayList<>(arguments.length + 8);
+        for (Argument argument : arguments)
+        {
+            String value = argument.fill(properties, defaultProperties);
+            if (argument.split)
+            {
+                command.addAll(ExecParameterTokenizer.tokenize(value));
+            }
+            else
+            {
+                command.add(value);
+            }
+        }
+        return command.toArray(new String[0]);
+    }
+
+    /**
+     * An argument, held as alternating literal text and variable names, starting with literal text (which may be
+     * empty).
+     */
+    private static final class Argument
+    {
+        private final boolean split;
+        private final String[] parts;
+
+        private Argument(boolean split, String[] parts)
+        {
+            this.split = split;
+            this.parts = parts;
+        }
+
+        static Argument compile(String argument)
+        {
+            if (argument == null)
+            {
+                // Such as an executable that has not been set yet
+                return new Argument(false, new String[]{null});
+            }
+            boolean split = argument.startsWith(DIRECTIVE_SPLIT);
+            if (split)
+            {
+                argument = argument.substring(DIRECTIVE_SPLIT.length());
+            }
+            List<String> parts = new ArrayList<>();
+            int start = 0;
+            int open;
+            while ((open = argument.indexOf(VAR_OPEN, start)) != -1)
+            {
+                int close = argument.indexOf(VAR_CLOSE, open + VAR_OPEN.length());
+                if (close == -1)
+                {
+                    break;
+                }
+                parts.add(argument.substring(start, open));
+                parts.add(argument.substring(open + VAR_OPEN.length(), close));
+                start = close + VAR_CLOSE.length();
+            }
+            parts.add(argument.substring(start));
+            return new Argument(split, parts.toArray(new String[0]));
+        }
+
+        String fill(Map<String, String> properties, Map<String, String> defaultProperties)
+        {
+            if (parts.length == 1)
+            {
+                return parts[0];
+            }
+            if (parts.length == 3 && parts[0].isEmpty() && parts[2].isEmpty())
+            {
+                // Just a variable, such as ${source}
+                return getValue(parts[1], properties, defaultProperties);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < parts.length; i++)
+            {
+                sb.append(i % 2 == 0 ? parts[i] : getValue(parts[i], properties, defaultProperties));
+            }
+            return sb.toString();
+        }
+
+        private static String getValue(String name, Map<String, String> properties,
+                                       Map<String, String> defaultProperties)
+        {
+            String value;
+            if (properties.containsKey(name))
+            {
+                value = properties.get(name);
+            }
+            else if (defaultProperties.containsKey(name))
+            {
+                value = defaultProperties.get(name);
+            }
+            else
+            {
+                return VAR_OPEN + name + VAR_CLOSE;
+            }
+            return value == null ? "" : value;
+        }
+    }
+}
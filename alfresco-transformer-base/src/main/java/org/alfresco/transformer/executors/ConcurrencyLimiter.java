@@ -0,0 +1,206 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of external processes a {@link CommandExecutor} runs at the same time. Running more processes
+ * than there are CPUs available to the container just makes them all slower, particularly as tools such as
+ * ImageMagick use several threads of their own.
+ * <p>
+ * Requests wait for a free slot in a fair (first come, first served) queue, for up to a maximum time, after which
+ * they fail with a {@code 429}. The CPUs are split between the processes running at the time a process starts (see
+ * {@link #getThreadsPerProcess()}), so that they may be told how many threads to use.
+ * <p>
+ * The number of CPUs is taken from the container's cgroup CPU quota (v1 or v2) if there is one, as well as the
+ * number of processors visible to the JVM.
+ */
+public class ConcurrencyLimiter
+{
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    public static final long DEFAULT_MAX_WAIT_MS = 5 * 60 * 1000;
+
+    private static final Path CGROUP_V2_CPU_MAX = Paths.get("/sys/fs/cgroup/cpu.max");
+    private static final Path CGROUP_V1_CPU_QUOTA = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+    private static final Path CGROUP_V1_CPU_PERIOD = Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+
+    private final String name;
+    private final int cpus;
+    private final int maxConcurrent;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * @param name          used in messages, normally the transformer id
+     * @param maxConcurrent the maximum number of processes to run at the same time. If less than or equal to zero,
+     *                      the number of CPUs available to the container is used.
+     * @param maxWaitMs     the maximum time to wait for a free slot before giving up. If less than or equal to zero,
+     *                      there is no limit.
+     */
+    public ConcurrencyLimiter(String name, int maxConcurrent, long maxWaitMs)
+    {
+        this(name, getAvailableCpus(), maxConcurrent, maxWaitMs);
+    }
+
+    ConcurrencyLimiter(String name, int cpus, int maxConcurrent, long maxWaitMs)
+    {
+        this.name = name;
+        this.cpus = cpus;
+        this.maxConcurrent = maxConcurrent > 0 ? maxConcurrent : cpus;
+        this.maxWaitMs = maxWaitMs;
+        permits = new Semaphore(this.maxConcurrent, true);
+        logger.debug("{} limited to {} concurrent processes on {} CPUs", name, this.maxConcurrent, cpus);
+    }
+
+    /**
+     * Waits for a free slot. Must be followed by a call to {@link #release()}.
+     *
+     * @return the number of threads the process should use, see {@link #getThreadsPerProcess()}
+     * @throws TransformException if there is no free slot within the maximum wait time
+     */
+    public int acquire()
+    {
+        try
+        {
+            if (maxWaitMs > 0)
+            {
+                if (!permits.tryAcquire(maxWaitMs, MILLISECONDS))
+                {
+                    throw new TransformException(TOO_MANY_REQUESTS.value(),
+                        "Waited more than " + maxWaitMs + "ms for one of the " + maxConcurrent + " " + name +
+                        " processes to finish");
+                }
+            }
+            else
+            {
+                permits.acquire();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new TransformException(INTERNAL_SERVER_ERROR.value(),
+                "Interrupted while waiting to run a " + name + " process", e);
+        }
+        running.incrementAndGet();
+        return getThreadsPerProcess();
+    }
+
+    public void release()
+    {
+        running.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * @return the available CPUs divided between the processes currently running, but at least 1. A process is only
+     *         told this when it starts, so it does not get more threads if the load drops while it is running.
+     */
+    public int getThreadsPerProcess()
+    {
+        return Math.max(1, cpus / Math.max(1, running.get()));
+    }
+
+    public int getMaxConcurrent()
+    {
+        return maxConcurrent;
+    }
+
+    public int getCpus()
+    {
+        return cpus;
+    }
+
+    /**
+     * @return the number of CPUs available to the container, rounded up.
+     */
+    public static int getAvailableCpus()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int quota = -1;
+        try
+        {
+            if (Files.isReadable(CGROUP_V2_CPU_MAX))
+            {
+                quota = parseCgroupV2CpuMax(Files.readString(CGROUP_V2_CPU_MAX));
+            }
+            else if (Files.isReadable(CGROUP_V1_CPU_QUOTA) && Files.isReadable(CGROUP_V1_CPU_PERIOD))
+            {
+                quota = parseCgroupV1CpuQuota(Files.readString(CGROUP_V1_CPU_QUOTA),
+                    Files.readString(CGROUP_V1_CPU_PERIOD));
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.debug("Unable to read the cgroup CPU quota: {}", e.getMessage());
+        }
+        return quota > 0 ? Math.min(processors, quota) : processors;
+    }
+
+    /**
+     * @param cpuMax the content of cpu.max, such as "max 100000" or "150000 100000"
+     * @return the quota in CPUs, rounded up, or -1 if there is none
+     */
+    static int parseCgroupV2CpuMax(String cpuMax)
+    {
+        String[] values = cpuMax.trim().split("\\s+");
+        if (values.length < 2 || "max".equals(values[0]))
+        {
+            return -1;
+        }
+        return toCpus(Long.parseLong(values[0]), Long.parseLong(values[1]));
+    }
+
+    /**
+     * @return the quota in CPUs, rounded up, or -1 if there is none
+     */
+    static int parseCgroupV1CpuQuota(String quota, String period)
+    {
+        return toCpus(Long.parseLong(quota.trim()), Long.parseLong(period.trim()));
+    }
+
+    private static int toCpus(long quota, long period)
+    {
+        return quota <= 0 || period <= 0 ? -1 : (int) Math.max(1, (quota + period - 1) / period);
+    }
+}
@@ -27,12 +27,15 @@
 package org.alfresco.transformer.executors;
 
 import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DUPLICATED FROM *alfresco-core*.
@@ -63,6 +66,18 @@ import java.util.StringTokenizer;
  */
 public class ExecParameterTokenizer
 {
+    /**
+     * The maximum number of parameter strings whose tokens are cached by {@link #tokenize(String)}.
+     */
+    static final int MAX_CACHED_STRINGS = 256;
+
+    /**
+     * Parameter strings longer than this are not cached, as they are unlikely to be repeated.
+     */
+    static final int MAX_CACHED_LENGTH = 1024;
+
+    private static final Map<String, List<String>> CACHED_TOKENS = new ConcurrentHashMap<>();
+
     /**
      * The string to be tokenized.
      */
@@ -78,6 +93,39 @@ public class ExecParameterTokenizer
         this.str = str;
     }
 
+    /**
+     * Returns the same tokens as {@link #getAllTokens()}, but caches them, as the same options tend to be used
+     * over and over again. The cache is simply emptied once it is full.
+     *
+     * @return an unmodifiable list of the tokens
+     */
+    public static List<String> tokenize(String str)
+    {
+        if (str.isEmpty())
+        {
+            return List.of();
+        }
+        List<String> tokens = CACHED_TOKENS.get(str);
+        if (tokens == null)
+        {
+            tokens = unmodifiableList(new ExecParameterTokenizer(str).getAllTokens());
+            if (str.length() <= MAX_CACHED_LENGTH)
+            {
+                if (CACHED_TOKENS.size() >= MAX_CACHED_STRINGS)
+                {
+                    CACHED_TOKENS.clear();
+                }
+                CACHED_TOKENS.put(str, tokens);
+            }
+        }
+        return tokens;
+    }
+
+    static int getCachedStringCount()
+    {
+        return CACHED_TOKENS.size();
+    }
+
     /**
      * This method returns the tokens in a parameter string.
      * Any tokens not contained within single or double quotes will be tokenized in the normal
@@ -151,9 +199,8 @@ public class ExecParameterTokenizer
         {
             if (cursorPosition < nextQuotedRegionIndices.getFirst())
             {
-                int startIndexOfNextQuotedRegion = nextQuotedRegionIndices.getFirst() - 1;
                 result.add(new UnquotedSubstring(
-                    str.substring(cursorPosition, startIndexOfNextQuotedRegion)));
+                    str.substring(cursorPosition, nextQuotedRegionIndices.getFirst())));
             }
             result.add(new QuotedSubstring(str.substring(nextQuotedRegionIndices.getFirst(),
                 nextQuotedRegionIndices.getSecond())));
@@ -161,9 +208,9 @@ public class ExecParameterTokenizer
         }
 
         // We've processed all the quoted regions, but there may be a final unquoted region
-        if (cursorPosition < str.length() - 1)
+        if (cursorPosition < str.length())
         {
-            result.add(new UnquotedSubstring(str.substring(cursorPosition, str.length() - 1)));
+            result.add(new UnquotedSubstring(str.substring(cursorPosition)));
         }
 
         return result;
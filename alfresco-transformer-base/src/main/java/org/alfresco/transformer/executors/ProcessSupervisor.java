@@ -0,0 +1,383 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Supervises the external processes started by {@link RuntimeExec}. It is shared by all instances, so rather than
+ * each RuntimeExec having its own Timer thread and each execution creating two new threads to gobble the output,
+ * there is:
+ * <ul>
+ * <li>a single scheduler thread that kills processes (including any child processes) that exceed their timeout,</li>
+ * <li>a shared pool of reusable daemon threads that read the standard output and error streams into bounded
+ *     buffers, which only keep the last {@link #MAX_CAPTURE_SIZE} bytes of each, and</li>
+ * <li>{@link Process#onExit()} to find out when a process has finished.</li>
+ * </ul>
+ * Reading a process's streams blocks, so the pool grows to the number of streams being read at the same time,
+ * but its threads are reused by later executions rather than being created for each one.
+ */
+public final class ProcessSupervisor
+{
+    private static final Logger logger = LoggerFactory.getLogger(ProcessSupervisor.class);
+
+    /**
+     * The maximum number of bytes kept from each of the standard output and error streams.
+     */
+    public static final int MAX_CAPTURE_SIZE = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final long IDLE_READER_SECONDS = 60;
+
+    private static final ProcessSupervisor INSTANCE = new ProcessSupervisor();
+
+    private final ScheduledExecutorService timeoutScheduler;
+    private final ExecutorService streamReaders;
+
+    private ProcessSupervisor()
+    {
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("process-timeout"));
+        streamReaders = new ThreadPoolExecutor(0, Integer.MAX_VALUE, IDLE_READER_SECONDS, SECONDS,
+            new SynchronousQueue<>(), daemonThreadFactory("process-stream-reader"));
+    }
+
+    public static ProcessSupervisor getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix)
+    {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true); // must not hold up the VM if it is terminating
+            return thread;
+        };
+    }
+
+    /**
+     * Starts reading the output of a newly started process and, if required, schedules it to be killed.
+     *
+     * @param process   the process to supervise
+     * @param charset   the charset of the process's output
+     * @param timeoutMs a timeout after which the process and its descendants are killed. Ignored if less than or
+     *                  equal to zero.
+     * @param command   the command used to start the process, only used in log messages
+     */
+    public SupervisedProcess supervise(Process process, Charset charset, long timeoutMs, String command)
+    {
+        return supervise(process, charset, timeoutMs, command, null);
+    }
+
+    /**
+     * As {@link #supervise(Process, Charset, long, String)}, but the standard output may be copied to a stream
+     * rather than being kept, for commands that write their result to it.
+     *
+     * @param stdOutTarget if not {@code null}, the stream to which the standard output is copied. It is not closed.
+     */
+    public SupervisedProcess supervise(Process process, Charset charset, long timeoutMs, String command,
+        OutputStream stdOutTarget)
+    {
+        SupervisedProcess supervisedProcess = new SupervisedProcess(process, charset, command);
+        supervisedProcess.stdOutReader = stdOutTarget == null
+            ? read(process.getInputStream(), supervisedProcess.stdOut)
+            : copy(process.getInputStream(), stdOutTarget, supervisedProcess);
+        supervisedProcess.stdErrReader = read(process.getErrorStream(), supervisedProcess.stdErr);
+
+        if (timeoutMs > 0)
+        {
+            ScheduledFuture<?> timeout = timeoutScheduler.schedule(() ->
+            {
+                if (process.isAlive())
+                {
+                    logger.debug("Process has taken too long ({} seconds). Killing process {}",
+                        timeoutMs / 1000, command);
+                    supervisedProcess.timedOut.set(true);
+                    supervisedProcess.stdErr.append(
+                        "Process was killed after exceeding the timeout of " + timeoutMs + "ms\n");
+                    destroyProcessTree(process.toHandle());
+                }
+            }, timeoutMs, MILLISECONDS);
+            process.onExit().thenRun(() -> timeout.cancel(false));
+        }
+        return supervisedProcess;
+    }
+
+    private CompletableFuture<Void> read(InputStream is, RingCapture capture)
+    {
+        return CompletableFuture.runAsync(() ->
+        {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            try (InputStream in = is)
+            {
+                int count;
+                while ((count = in.read(bytes)) != -1)
+                {
+                    capture.append(bytes, 0, count);
+                }
+            }
+            catch (IOException e)
+            {
+                // The stream is closed when the process is killed
+                logger.trace("Unable to read stream: {}", e.getMessage());
+            }
+        }, streamReaders);
+    }
+
+    private CompletableFuture<Void> copy(InputStream is, OutputStream target, SupervisedProcess supervisedProcess)
+    {
+        return CompletableFuture.runAsync(() ->
+        {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            boolean writing = true;
+            try (InputStream in = is)
+            {
+                int count;
+                while ((count = in.read(bytes)) != -1)
+                {
+                    if (writing)
+                    {
+                        try
+                        {
+                            target.write(bytes, 0, count);
+                        }
+                        catch (IOException e)
+                        {
+                            // Carry on reading, so that the process is not blocked writing its output
+                            writing = false;
+                            supervisedProcess.stdOutFailed = true;
+                            supervisedProcess.addToStdErr("Failed to write the standard output: " +
+                                e.getMessage() + "\n");
+                        }
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // The stream is closed when the process is killed
+                logger.trace("Unable to read stream: {}", e.getMessage());
+            }
+        }, streamReaders);
+    }
+
+    /**
+     * Forcibly destroys a process and all of its descendants. The descendants are found first, as they are
+     * reparented once the process has gone, but are killed after it so that it cannot carry on once they have
+     * gone.
+     */
+    static void destroyProcessTree(ProcessHandle processHandle)
+    {
+        List<ProcessHandle> descendants = processHandle.descendants().collect(toList());
+        processHandle.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /**
+     * A process being supervised, with its captured output.
+     */
+    public static class SupervisedProcess
+    {
+        private final Process process;
+        private final String command;
+        private final RingCapture stdOut;
+        private final RingCapture stdErr;
+        private final AtomicBoolean timedOut = new AtomicBoolean(false);
+        private volatile boolean stdOutFailed;
+        private CompletableFuture<Void> stdOutReader;
+        private CompletableFuture<Void> stdErrReader;
+
+        private SupervisedProcess(Process process, Charset charset, String command)
+        {
+            this.process = process;
+            this.command = command;
+            stdOut = new RingCapture(MAX_CAPTURE_SIZE, charset);
+            stdErr = new RingCapture(MAX_CAPTURE_SIZE, charset);
+        }
+
+        /**
+         * Waits for the process to exit and for all of its output to have been read.
+         *
+         * @return the process's exit value
+         */
+        public int waitFor() throws InterruptedException
+        {
+            int exitValue;
+            try
+            {
+                exitValue = process.onExit().get().exitValue();
+                CompletableFuture.allOf(stdOutReader, stdErrReader).get();
+            }
+            catch (ExecutionException e)
+            {
+                throw new IllegalStateException("Failed to wait for " + command, e.getCause());
+            }
+            return exitValue;
+        }
+
+        public Process getProcess()
+        {
+            return process;
+        }
+
+        public boolean isTimedOut()
+        {
+            return timedOut.get();
+        }
+
+        /**
+         * @return {@code true} if the standard output could not be written to the stream it was being copied to
+         */
+        public boolean isStdOutFailed()
+        {
+            return stdOutFailed;
+        }
+
+        public void addToStdErr(String msg)
+        {
+            stdErr.append(msg);
+        }
+
+        /**
+         * @return the last {@link #MAX_CAPTURE_SIZE} bytes of the standard output read so far, or an empty String
+         *         if it is being copied to a stream
+         */
+        public String getStdOut()
+        {
+            return stdOut.toString();
+        }
+
+        /**
+         * @return the last {@link #MAX_CAPTURE_SIZE} bytes of the standard error read so far
+         */
+        public String getStdErr()
+        {
+            return stdErr.toString();
+        }
+
+        public void destroyProcessTree()
+        {
+            ProcessSupervisor.destroyProcessTree(process.toHandle());
+        }
+    }
+
+    /**
+     * A fixed size buffer that keeps the most recent bytes written to it.
+     */
+    static class RingCapture
+    {
+        private static final String TRUNCATED = "...";
+
+        private final byte[] ring;
+        private final Charset charset;
+        private int next;
+        private long total;
+
+        RingCapture(int capacity, Charset charset)
+        {
+            ring = new byte[capacity];
+            this.charset = charset;
+        }
+
+        synchronized void append(byte[] bytes, int offset, int length)
+        {
+            if (length >= ring.length)
+            {
+                offset += length - ring.length;
+                total += length - ring.length;
+                length = ring.length;
+            }
+            int first = Math.min(length, ring.length - next);
+            System.arraycopy(bytes, offset, ring, next, first);
+            System.arraycopy(bytes, offset + first, ring, 0, length - first);
+            next = (next + length) % ring.length;
+            total += length;
+        }
+
+        void append(String msg)
+        {
+            byte[] bytes = msg.getBytes(charset);
+            append(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            if (total < ring.length)
+            {
+                return new String(ring, 0, next, charset);
+            }
+            byte[] ordered = new byte[ring.length];
+            System.arraycopy(ring, next, ordered, 0, ring.length - next);
+            System.arraycopy(ring, 0, ordered, ring.length - next, next);
+            if (total == ring.length)
+            {
+                return new String(ordered, charset);
+            }
+            // Older bytes have been overwritten, so the oldest one left may be part way through a character
+            int start = getCharacterStart(ordered);
+            return TRUNCATED + new String(ordered, start, ordered.length - start, charset);
+        }
+
+        private int getCharacterStart(byte[] bytes)
+        {
+            int start = 0;
+            if (UTF_8.equals(charset))
+            {
+                // Skip continuation bytes, of which a UTF-8 character has at most three
+                while (start < 3 && start < bytes.length && (bytes[start] & 0xC0) == 0x80)
+                {
+                    start++;
+                }
+            }
+            return start;
+        }
+    }
+}
@@ -27,25 +27,25 @@
 package org.alfresco.transformer.executors;
 
 import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.Timer;
-import java.util.TimerTask;
 
+import org.alfresco.transformer.executors.ProcessSupervisor.SupervisedProcess;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -109,20 +109,23 @@ public class RuntimeExec
      */
     private static final String KEY_OS_DEFAULT = "*";
 
+    /**
+     * How long to wait for a process to exit once it has been killed because the calling thread was interrupted.
+     */
+    private static final long KILLED_PROCESS_WAIT_MS = 10000;
+
     private static final String KEY_OS_NAME = "os.name";
-    private static final int BUFFER_SIZE = 1024;
     private static final String VAR_OPEN = "${";
     private static final String VAR_CLOSE = "}";
-    private static final String DIRECTIVE_SPLIT = "SPLIT:";
 
     private String[] command;
+    private CommandTemplate commandTemplate;
     private Charset charset = Charset.defaultCharset();
     private boolean waitForCompletion = true;
     private Map<String, String> defaultProperties = emptyMap();
     private String[] processProperties;
     private File processDirectory;
     private final Set<Integer> errCodes;
-    private final Timer timer = new Timer(true);
 
     /**
      * Default constructor.  Initialize this instance by setting individual properties.
@@ -167,6 +170,7 @@ public class RuntimeExec
     public void setCommand(String[] command)
     {
         this.command = command;
+        this.commandTemplate = CommandTemplate.compile(command);
     }
 
     /**
@@ -257,7 +261,7 @@ public class RuntimeExec
                 "No command found for OS " + serverOs + " or '" + KEY_OS_DEFAULT + "': \n" +
                 "   commands: " + commandsByOS);
         }
-        this.command = command;
+        setCommand(command);
     }
 
     /**
@@ -506,12 +510,54 @@ public class RuntimeExec
      * @param properties the properties that the command might be executed with.
      *                   <code>null</code> properties will be treated as an empty string for substitution
      *                   purposes.
-     * @param timeoutMs  a timeout after which {@link Process#destroy()} is called.
-     *                   ignored if less than or equal to zero. Note this method does not guarantee
-     *                   to terminate the process (it is not a kill -9).
+     * @param timeoutMs  a timeout after which the process and any processes it has started are
+     *                   forcibly destroyed (a kill -9). Ignored if less than or equal to zero.
      * @return Returns the full execution results
      */
     public ExecutionResult execute(Map<String, String> properties, final long timeoutMs)
+    {
+        return execute(properties, emptyMap(), timeoutMs);
+    }
+
+    /**
+     * Executes the statement that this instance was constructed with an optional
+     * timeout and additional environment properties for just this execution.
+     *
+     * @param properties                  the properties that the command might be executed with.
+     *                                    <code>null</code> properties will be treated as an empty string for
+     *                                    substitution purposes.
+     * @param additionalProcessProperties environment properties added to (or replacing) the
+     *                                    {@link #setProcessProperties(Map) processProperties} for this execution.
+     * @param timeoutMs                   a timeout after which the process and any processes it has started are
+     *                                    forcibly destroyed (a kill -9). Ignored if less than or equal to zero.
+     * @return Returns the full execution results
+     */
+    public ExecutionResult execute(Map<String, String> properties,
+        Map<String, String> additionalProcessProperties, final long timeoutMs)
+    {
+        return execute(properties, additionalProcessProperties, timeoutMs, null);
+    }
+
+    /**
+     * Executes the statement that this instance was constructed with, copying its standard output to a stream
+     * rather than returning it in the {@link ExecutionResult}. Used for commands that write their result to the
+     * standard output.
+     *
+     * @param properties                  the properties that the command might be executed with.
+     *                                    <code>null</code> properties will be treated as an empty string for
+     *                                    substitution purposes.
+     * @param additionalProcessProperties environment properties added to (or replacing) the
+     *                                    {@link #setProcessProperties(Map) processProperties} for this execution.
+     * @param timeoutMs                   a timeout after which the process and any processes it has started are
+     *                                    forcibly destroyed (a kill -9). Ignored if less than or equal to zero.
+     * @param stdOut                      the stream to which the standard output is copied, or <code>null</code>
+     *                                    to return it in the result. The stream is not closed. If it cannot be
+     *                                    written to, the failure is added to the standard error and the exit value
+     *                                    is set to a failure value.
+     * @return Returns the full execution results
+     */
+    public ExecutionResult execute(Map<String, String> properties,
+        Map<String, String> additionalProcessProperties, final long timeoutMs, OutputStream stdOut)
     {
         int defaultFailureExitValue = errCodes.size() > 0 ? ((Integer) errCodes.toArray()[0]) : 1;
 
@@ -529,31 +575,8 @@ public class RuntimeExec
         {
             // execute the command with full property replacement
             commandToExecute = getCommand(properties);
-            final Process thisProcess = runtime.exec(commandToExecute, processProperties,
+            process = runtime.exec(commandToExecute, getProcessProperties(additionalProcessProperties),
                 processDirectory);
-            process = thisProcess;
-            if (timeoutMs > 0)
-            {
-                final String[] command = commandToExecute;
-                timer.schedule(new TimerTask()
-                {
-                    @Override
-                    public void run()
-                    {
-                        // Only try to kill the process if it is still running
-                        try
-                        {
-                            thisProcess.exitValue();
-                        }
-                        catch (IllegalThreadStateException stillRunning)
-                        {
-                            logger.debug(
-                                "Process has taken too long ({} seconds). Killing process {}",
-                                timeoutMs / 1000, Arrays.deepToString(command));
-                        }
-                    }
-                }, timeoutMs);
-            }
         }
         catch (IOException e)
         {
@@ -566,42 +589,37 @@ public class RuntimeExec
             return result;
         }
 
-        // create the stream gobblers
-        InputStreamReaderThread stdOutGobbler = new InputStreamReaderThread(
-            process.getInputStream(), charset);
-        InputStreamReaderThread stdErrGobbler = new InputStreamReaderThread(
-            process.getErrorStream(), charset);
-
-        // start gobbling
-        stdOutGobbler.start();
-        stdErrGobbler.start();
+        // start reading the output and, if required, schedule the timeout
+        SupervisedProcess supervisedProcess = ProcessSupervisor.getInstance().supervise(
+            process, charset, timeoutMs, Arrays.toString(commandToExecute), stdOut);
 
-        // wait for the process to finish
+        // wait for the process to finish and its output to be read
         int exitValue = 0;
         try
         {
             if (waitForCompletion)
             {
-                exitValue = process.waitFor();
+                exitValue = supervisedProcess.waitFor();
+                if (supervisedProcess.isStdOutFailed())
+                {
+                    exitValue = defaultFailureExitValue;
+                }
             }
         }
         catch (InterruptedException e)
         {
-            // process was interrupted - generate an error message
-            stdErrGobbler.addToBuffer(e.toString());
+            // process was interrupted - kill it, so it does not carry on using the files it was given, and
+            // generate an error message
+            supervisedProcess.destroyProcessTree();
+            waitForKilledProcess(process);
+            Thread.currentThread().interrupt();
+            supervisedProcess.addToStdErr(e.toString());
             exitValue = defaultFailureExitValue;
         }
 
-        if (waitForCompletion)
-        {
-            // ensure that the stream gobblers get to finish
-            stdOutGobbler.waitForCompletion();
-            stdErrGobbler.waitForCompletion();
-        }
-
         // get the stream values
-        String execOut = stdOutGobbler.getBuffer();
-        String execErr = stdErrGobbler.getBuffer();
+        String execOut = supervisedProcess.getStdOut();
+        String execErr = supervisedProcess.getStdErr();
 
         // construct the return value
         ExecutionResult result = new ExecutionResult(process, commandToExecute, errCodes, exitValue,
@@ -612,6 +630,48 @@ public class RuntimeExec
         return result;
     }
 
+    private static void waitForKilledProcess(Process process)
+    {
+        try
+        {
+            if (!process.waitFor(KILLED_PROCESS_WAIT_MS, MILLISECONDS))
+            {
+                logger.warn("Process did not exit after being killed: {}", process);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // Interrupted again, so give up waiting
+        }
+    }
+
+    private String[] getProcessProperties(Map<String, String> additionalProcessProperties)
+    {
+        if (additionalProcessProperties == null || additionalProcessProperties.isEmpty())
+        {
+            return processProperties;
+        }
+        // A null processProperties means the process inherits the current environment
+        Map<String, String> environment = new LinkedHashMap<>();
+        if (processProperties == null)
+        {
+            environment.putAll(System.getenv());
+        }
+        else
+        {
+            for (String property : processProperties)
+            {
+                int index = property.indexOf('=');
+                environment.put(property.substring(0, index), property.substring(index + 1));
+            }
+        }
+        environment.putAll(additionalProcessProperties);
+
+        List<String> processPropList = new ArrayList<>(environment.size());
+        environment.forEach((key, value) -> processPropList.add(key + "=" + value));
+        return processPropList.toArray(new String[0]);
+    }
+
     /**
      * Dump the full environment in debug mode
      */
@@ -672,62 +732,9 @@ public class RuntimeExec
      */
     public String[] getCommand(Map<String, String> properties)
     {
-        Map<String, String> execProperties;
-        if (properties == defaultProperties)
-        {
-            // we are just using the default properties
-            execProperties = defaultProperties;
-        }
-        else
-        {
-            execProperties = new HashMap<>(defaultProperties);
-            // overlay the supplied properties
-            execProperties.putAll(properties);
-        }
-        // Perform the substitution for each element of the command
-        ArrayList<String> adjustedCommandElements = new ArrayList<>(20);
-        for (String s : command)
-        {
-            StringBuilder sb = new StringBuilder(s);
-            for (Map.Entry<String, String> entry : execProperties.entrySet())
-            {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                // ignore null
-                if (value == null)
-                {
-                    value = "";
-                }
-                // progressively replace the property in the command
-                key = (VAR_OPEN + key + VAR_CLOSE);
-                int index = sb.indexOf(key);
-                while (index > -1)
-                {
-                    // replace
-                    sb.replace(index, index + key.length(), value);
-                    // get the next one
-                    index = sb.indexOf(key, index + 1);
-                }
-            }
-            String adjustedValue = sb.toString();
-            // Now SPLIT: it
-            if (adjustedValue.startsWith(DIRECTIVE_SPLIT))
-            {
-                String unsplitAdjustedValue = sb.substring(DIRECTIVE_SPLIT.length());
-
-                // There may be quoted arguments here (see ALF-7482)
-                ExecParameterTokenizer quoteAwareTokenizer = new ExecParameterTokenizer(
-                    unsplitAdjustedValue);
-                List<String> tokens = quoteAwareTokenizer.getAllTokens();
-                adjustedCommandElements.addAll(tokens);
-            }
-            else
-            {
-                adjustedCommandElements.add(adjustedValue);
-            }
-        }
-        // done
-        return adjustedCommandElements.toArray(new String[0]);
+        // The command is compiled when it is set (see CommandTemplate), so this just fills in the values. There
+        // may be quoted arguments in SPLIT: values (see ALF-7482), which are handled by ExecParameterTokenizer.
+        return commandTemplate.fill(properties, defaultProperties);
     }
 
     /**
@@ -835,7 +842,7 @@ public class RuntimeExec
             }
             try
             {
-                process.destroy();
+                ProcessSupervisor.destroyProcessTree(process.toHandle());
                 return true;
             }
             catch (Throwable e)
@@ -885,9 +892,15 @@ public class RuntimeExec
      * <code>StringBuffer</code>
      * <p>
      * The reading of the input stream is buffered.
+     *
+     * @deprecated The output of the processes started by a RuntimeExec is now read by the shared
+     *             {@link ProcessSupervisor}, so this class is no longer used. It will be removed in a future release.
      */
+    @Deprecated
     public static class InputStreamReaderThread extends Thread
     {
+        private static final int BUFFER_SIZE = 1024;
+
         private final InputStream is;
         private final Charset charset;
         private final StringBuffer buffer;          // we require the synchronization
@@ -983,4 +996,3 @@ public class RuntimeExec
         }
     }
 }
-
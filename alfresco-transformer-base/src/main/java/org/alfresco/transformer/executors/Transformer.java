@@ -28,6 +28,8 @@ package org.alfresco.transformer.executors;
  */
 
 import org.alfresco.transform.exceptions.TransformException;
+import org.alfresco.transformer.fs.StreamedTarget;
+import org.alfresco.transformer.fs.TransformTarget;
 
 import java.io.File;
 import java.util.Map;
@@ -53,21 +55,34 @@ public interface Transformer
 
     default void transform(String sourceMimetype, String targetMimetype, Map<String, String> transformOptions,
                            File sourceFile, File targetFile) throws TransformException
+    {
+        transform(sourceMimetype, targetMimetype, transformOptions, sourceFile, TransformTarget.of(targetFile));
+    }
+
+    /**
+     * As {@link #transform(String, String, Map, File, File)}, but the content may be written to a stream rather than
+     * the target file if the caller is able to use it, and anything else about the target is reported back in the
+     * {@code target}.
+     */
+    default void transform(String sourceMimetype, String targetMimetype, Map<String, String> transformOptions,
+                           File sourceFile, TransformTarget target) throws TransformException
     {
         try
         {
             final String transformName = transformOptions.remove(TRANSFORM_NAME_PARAMETER);
             if (MIMETYPE_METADATA_EXTRACT.equals(targetMimetype))
             {
-                extractMetadata(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+                extractMetadata(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+                    target.getFile());
             }
             else if (MIMETYPE_METADATA_EMBED.equals(targetMimetype))
             {
-                embedMetadata(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+                embedMetadata(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile,
+                    target.getFile());
             }
             else
             {
-                transform(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, targetFile);
+                transform(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, target);
             }
         }
         catch (TransformException e)
@@ -82,6 +97,23 @@ public interface Transformer
         {
             throw new TransformException(INTERNAL_SERVER_ERROR.value(), getMessage(e), e);
         }
+        if (target.getCapturedTarget() != null)
+        {
+            // The executor has already checked the captured content is not empty
+            return;
+        }
+        StreamedTarget streamedTarget = target.getStreamedTarget();
+        if (streamedTarget != null)
+        {
+            // The content has been sent to the client or kept in memory, so the target file does not exist
+            if (sourceFile.length() > 0 && streamedTarget.size() == 0)
+            {
+                throw new TransformException(INTERNAL_SERVER_ERROR.value(),
+                        "Transformer failed to create an output file. Target is empty but source file was not empty.");
+            }
+            return;
+        }
+        File targetFile = target.getFile();
         if (!targetFile.exists())
         {
             throw new TransformException(INTERNAL_SERVER_ERROR.value(),
@@ -105,6 +137,17 @@ public interface Transformer
     {
     }
 
+    /**
+     * Overridden by transformers that are able to write the content to a stream rather than the target file, or
+     * report anything else about the target. By default, the content is written to the target file.
+     */
+    default void transform(String transformName, String sourceMimetype, String targetMimetype,
+                           Map<String, String> transformOptions,
+                           File sourceFile, TransformTarget target) throws Exception
+    {
+        transform(transformName, sourceMimetype, targetMimetype, transformOptions, sourceFile, target.getFile());
+    }
+
     default void extractMetadata(String transformName, String sourceMimetype, String targetMimetype,
                                  Map<String, String> transformOptions,
                                  File sourceFile, File targetFile) throws Exception
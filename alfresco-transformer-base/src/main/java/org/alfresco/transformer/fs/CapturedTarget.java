@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.fs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * The content of a transform's target that was written to a stream (such as the standard output of an external
+ * process) rather than directly to the target file. It is kept in memory, so that it does not need to be written to
+ * disk and read back again to be returned in the response or saved in the Shared File Store. If it grows beyond a
+ * limit, it is spilled to the target file.
+ * <p>
+ * It is created by {@link TransformTarget#capture(int)}, if the caller of the transform is able to use it.
+ */
+public class CapturedTarget extends OutputStream
+{
+    private final File targetFile;
+    private final int maxInMemoryBytes;
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private OutputStream spill;
+    private long size;
+
+    CapturedTarget(File targetFile, int maxInMemoryBytes)
+    {
+        this.targetFile = targetFile;
+        this.maxInMemoryBytes = maxInMemoryBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (spill == null && size + length > maxInMemoryBytes)
+        {
+            spill = new BufferedOutputStream(new FileOutputStream(targetFile));
+            memory.writeTo(spill);
+            memory = null;
+        }
+        if (spill == null)
+        {
+            memory.write(bytes, offset, length);
+        }
+        else
+        {
+            spill.write(bytes, offset, length);
+        }
+        size += length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (spill != null)
+        {
+            spill.close();
+        }
+    }
+
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if the content was too large to keep in memory and is in the target file
+     */
+    public synchronized boolean isSpilled()
+    {
+        return spill != null;
+    }
+
+    /**
+     * @return the captured content, which may be read more than once (for example if saving it is retried). It has
+     *         the same filename as the target file.
+     */
+    public synchronized Resource toResource()
+    {
+        if (spill != null)
+        {
+            return new FileSystemResource(targetFile);
+        }
+        final String filename = targetFile.getName();
+        return new ByteArrayResource(memory.toByteArray(), "Captured " + filename)
+        {
+            @Override
+            public String getFilename()
+            {
+                return filename;
+            }
+        };
+    }
+}
@@ -39,6 +39,7 @@ import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -76,6 +77,19 @@ public class FileManager
         return file;
     }
 
+    /**
+     * As {@link #createTargetFile(HttpServletRequest, String)}, but the file is not created, for a target that is not
+     * expected to be written to it. Its name is still unique, so a transformer may create it if need be.
+     */
+    public static File createTargetFilePath(HttpServletRequest request, String filename)
+    {
+        filename = checkFilename(false, filename);
+        LogEntry.setTarget(filename);
+        File file = TempFileProvider.newTempFile("target_", "_" + filename);
+        request.setAttribute(TARGET_FILE, file);
+        return file;
+    }
+
     public static File buildFile(String filename)
     {
         filename = checkFilename(false, filename);
@@ -235,7 +249,11 @@ public class FileManager
     public static ResponseEntity<Resource> createAttachment(String targetFilename, File
         targetFile)
     {
-        Resource targetResource = load(targetFile);
+        return createAttachment(targetFilename, load(targetFile));
+    }
+
+    public static ResponseEntity<Resource> createAttachment(String targetFilename, Resource targetResource)
+    {
         targetFilename = UriUtils.encodePath(getFilename(targetFilename), "UTF-8");
         return ResponseEntity.ok().header(CONTENT_DISPOSITION,
             "attachment; filename*= UTF-8''" + targetFilename).body(targetResource);
@@ -261,6 +279,15 @@ public class FileManager
             }
         }
 
+        /**
+         * @return a file with a unique name in the same directory as {@link #createTempFile(String, String)}, which
+         *         is not created
+         */
+        public static File newTempFile(final String prefix, final String suffix)
+        {
+            return new File(getTempDir(), prefix + UUID.randomUUID() + suffix);
+        }
+
         private static File getTempDir()
         {
             final String dirName = "Alfresco";
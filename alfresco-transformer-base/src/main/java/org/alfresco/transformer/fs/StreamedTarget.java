@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.fs;
+
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.TRAILER;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * The content of a transform's target that is sent to the HTTP client while the transform is still running, rather
+ * than being written to the target file and only returned once the transform has finished. This reduces the time to
+ * the first byte of large targets, and they are not written to disk.
+ * <p>
+ * The first bytes are kept in memory. If the transform finishes before there are more than will fit, the content is
+ * returned as normal with a Content-Length, just like a {@link CapturedTarget}. Otherwise a 200 response is committed
+ * and the content is sent using chunked transfer encoding as it is written. Anything that needs to be reported after
+ * that, such as the target being truncated, is sent in a trailer. If the transform then fails, the caller closes the
+ * connection without the final chunk, so the client sees an incomplete response.
+ * <p>
+ * It is created by {@link TransformTarget#streamable(File, String, HttpServletResponse)} and given to a transformer
+ * that is able to write to a stream by {@link TransformTarget#stream()}. As the target is not normally written to the
+ * file, the caller does not create it beforehand.
+ */
+public class StreamedTarget extends OutputStream
+{
+    private static final int MAX_IN_MEMORY_BYTES = 64 * 1024;
+
+    private final File targetFile;
+    private final String targetFilename;
+    private final HttpServletResponse response;
+    private final Map<String, String> trailers = new ConcurrentHashMap<>();
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private OutputStream responseStream;
+    private long size;
+
+    StreamedTarget(File targetFile, String targetFilename, HttpServletResponse response)
+    {
+        this.targetFile = targetFile;
+        this.targetFilename = targetFilename;
+        this.response = response;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (responseStream == null && size + length > MAX_IN_MEMORY_BYTES)
+        {
+            commit();
+        }
+        if (responseStream == null)
+        {
+            memory.write(bytes, offset, length);
+        }
+        else
+        {
+            responseStream.write(bytes, offset, length);
+        }
+        size += length;
+    }
+
+    private void commit() throws IOException
+    {
+        response.setStatus(OK.value());
+        response.setHeader(CONTENT_DISPOSITION, "attachment; filename*= UTF-8''" +
+            UriUtils.encodePath(StringUtils.getFilename(targetFilename), "UTF-8"));
+        response.setHeader(CONTENT_TYPE, MediaTypeFactory.getMediaType(targetFilename)
+            .orElse(APPLICATION_OCTET_STREAM).toString());
+        try
+        {
+            response.setTrailerFields(() -> trailers);
+            response.setHeader(TRAILER, TransformTarget.TRUNCATED_HEADER);
+        }
+        catch (IllegalStateException e)
+        {
+            // Trailers are not supported by the client's protocol, such as HTTP/1.0
+        }
+        responseStream = response.getOutputStream();
+        memory.writeTo(responseStream);
+        memory = null;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException
+    {
+        if (responseStream != null)
+        {
+            responseStream.flush();
+        }
+    }
+
+    /**
+     * Flushes any content sent to the client. The response itself is completed by the caller.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        flush();
+    }
+
+    /**
+     * @return {@code true} if the response has been started, so the content is no longer held in memory
+     */
+    public synchronized boolean isCommitted()
+    {
+        return responseStream != null;
+    }
+
+    /**
+     * Sends a field in the trailer of a committed response.
+     */
+    public void addTrailer(String name, String value)
+    {
+        trailers.put(name, value);
+    }
+
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the content of a response that has not been committed. It has the same filename as the target file.
+     */
+    public synchronized Resource toResource()
+    {
+        final String filename = targetFile.getName();
+        return new ByteArrayResource(memory.toByteArray(), "Streamed " + filename)
+        {
+            @Override
+            public String getFilename()
+            {
+                return filename;
+            }
+        };
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.fs;
+
+import java.io.File;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The target of a single transform, passed by the caller of the transform to the transformer. As well as the target
+ * file, it says whether the caller is able to use content that the transformer writes to a stream rather than to the
+ * file, and it collects anything the transformer reports back about the target, such as it being truncated.
+ * <p>
+ * A transformer that is able to write to a stream calls {@link #capture(int)} or {@link #stream()}, and writes to the
+ * target file if they return {@code null}. That is always the case for a target created with {@link #of(File)}, which
+ * is used by callers such as the probes that expect the content to be in the target file.
+ */
+public class TransformTarget
+{
+    /**
+     * The HTTP response header (or trailer) that tells the client its target was truncated, and why.
+     */
+    public static final String TRUNCATED_HEADER = "X-Alfresco-Transform-Truncated";
+
+    private final File file;
+    private final boolean capturable;
+    private final StreamedTarget streamedTarget;
+    private CapturedTarget capturedTarget;
+    private boolean streamed;
+    private String truncated;
+
+    private TransformTarget(File file, boolean capturable, StreamedTarget streamedTarget)
+    {
+        this.file = file;
+        this.capturable = capturable;
+        this.streamedTarget = streamedTarget;
+    }
+
+    /**
+     * @return a target whose content must be written to the target file
+     */
+    public static TransformTarget of(File file)
+    {
+        return new TransformTarget(file, false, null);
+    }
+
+    /**
+     * @return a target whose content may be captured in memory rather than written to the target file
+     */
+    public static TransformTarget capturable(File file)
+    {
+        return new TransformTarget(file, true, null);
+    }
+
+    /**
+     * @param file           the target file
+     * @param targetFilename the filename returned to the client
+     * @param response       the response to which the content may be sent as it is written
+     * @return a target whose content may be sent to the HTTP client while the transform is running, or captured
+     */
+    public static TransformTarget streamable(File file, String targetFilename, HttpServletResponse response)
+    {
+        return new TransformTarget(file, true, new StreamedTarget(file, targetFilename, response));
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @param maxInMemoryBytes the number of bytes kept in memory before the content is spilled to the target file
+     * @return a stream to which the content should be written, or {@code null} if the caller expects it to be in the
+     *         target file
+     */
+    public CapturedTarget capture(int maxInMemoryBytes)
+    {
+        if (!capturable)
+        {
+            return null;
+        }
+        capturedTarget = new CapturedTarget(file, maxInMemoryBytes);
+        return capturedTarget;
+    }
+
+    /**
+     * @return a stream to which the content should be written as it is produced, or {@code null} if the caller
+     *         expects it to be in the target file
+     */
+    public StreamedTarget stream()
+    {
+        streamed = streamedTarget != null;
+        return streamedTarget;
+    }
+
+    /**
+     * @return the content the transformer captured rather than writing it to the target file, or {@code null}
+     */
+    public CapturedTarget getCapturedTarget()
+    {
+        return capturedTarget;
+    }
+
+    /**
+     * @return the content the transformer streamed rather than writing it to the target file, or {@code null}
+     */
+    public StreamedTarget getStreamedTarget()
+    {
+        return streamed ? streamedTarget : null;
+    }
+
+    /**
+     * Records that the transformer stopped writing the target early, for example because a text extraction reached
+     * its {@code maxCharacters} limit. The target is still valid, just incomplete.
+     *
+     * @param reason why the target was truncated, such as "maxCharacters=100000"
+     */
+    public void setTruncated(String reason)
+    {
+        truncated = reason;
+    }
+
+    /**
+     * @return the reason the target was truncated, or {@code null} if it was not
+     */
+    public String getTruncated()
+    {
+        return truncated;
+    }
+}
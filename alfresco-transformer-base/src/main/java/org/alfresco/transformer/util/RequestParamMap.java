@@ -47,6 +47,7 @@ public interface RequestParamMap
     String TARGET_ENCODING          = "targetEncoding";
     String TEST_DELAY               = "testDelay";
     String PAGE_REQUEST_PARAM       = "page";    
+    String PAGES                    = "pages";
     String WIDTH_REQUEST_PARAM      = "width";
     String HEIGHT_REQUEST_PARAM     = "height";
     String ALLOW_PDF_ENLARGEMENT    = "allowPdfEnlargement";
@@ -68,8 +69,13 @@ public interface RequestParamMap
     String ALLOW_ENLARGEMENT       = "allowEnlargement";
     String MAINTAIN_ASPECT_RATIO   = "maintainAspectRatio";
     String COMMAND_OPTIONS         = "commandOptions";
+    String VARIANTS                = "variants";
     String TIMEOUT                 = "timeout";
     String INCLUDE_CONTENTS        = "includeContents";
     String NOT_EXTRACT_BOOKMARKS_TEXT = "notExtractBookmarksText";
+    String MAX_CHARACTERS          = "maxCharacters";
     String PAGE_LIMIT              = "pageLimit";
+    String PAGE_RANGE              = "pageRange";
+    String TARGET_EXTENSIONS       = "targetExtensions";
+    String INCLUDE_METADATA        = "includeMetadata";
 }
@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+
+import org.alfresco.transform.exceptions.TransformException;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyLimiterTest
+{
+    @Test
+    public void testThreadsSharedBetweenRunningProcesses()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 4, 0, 1000);
+        assertEquals(4, limiter.getMaxConcurrent());
+
+        assertEquals(4, limiter.acquire());
+        assertEquals(2, limiter.acquire());
+        assertEquals(1, limiter.acquire());
+        assertEquals(1, limiter.acquire());
+        limiter.release();
+        limiter.release();
+        limiter.release();
+        assertEquals(4, limiter.getThreadsPerProcess());
+        limiter.release();
+    }
+
+    @Test
+    public void testWaitTimeout()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 4, 1, 100);
+        limiter.acquire();
+
+        TransformException e = assertThrows(TransformException.class, limiter::acquire);
+        assertEquals(TOO_MANY_REQUESTS.value(), e.getStatusCode());
+
+        limiter.release();
+        assertEquals(4, limiter.acquire());
+        limiter.release();
+    }
+
+    @Test
+    public void testParseCgroupCpuQuota()
+    {
+        assertEquals(-1, ConcurrencyLimiter.parseCgroupV2CpuMax("max 100000\n"));
+        assertEquals(2, ConcurrencyLimiter.parseCgroupV2CpuMax("150000 100000\n"));
+        assertEquals(1, ConcurrencyLimiter.parseCgroupV2CpuMax("50000 100000"));
+        assertEquals(-1, ConcurrencyLimiter.parseCgroupV1CpuQuota("-1\n", "100000\n"));
+        assertEquals(3, ConcurrencyLimiter.parseCgroupV1CpuQuota("300000\n", "100000\n"));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.transformer.executors.ProcessSupervisor.RingCapture;
+import org.alfresco.transformer.executors.RuntimeExec.ExecutionResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+
+public class RuntimeExecTest
+{
+    private static RuntimeExec createRuntimeExec(String... command)
+    {
+        RuntimeExec runtimeExec = new RuntimeExec();
+        runtimeExec.setCommand(command);
+        runtimeExec.setProcessProperties(emptyMap());
+        return runtimeExec;
+    }
+
+    @Test
+    @DisabledOnOs(WINDOWS)
+    public void testOutputCaptured()
+    {
+        ExecutionResult result = createRuntimeExec("sh", "-c", "echo out; echo err 1>&2; exit 3")
+            .execute(emptyMap(), 10000);
+
+        assertEquals(3, result.getExitValue());
+        assertEquals("out", result.getStdOut().trim());
+        assertEquals("err", result.getStdErr().trim());
+    }
+
+    @Test
+    @DisabledOnOs(WINDOWS)
+    public void testTimeoutKillsProcessTree()
+    {
+        long start = System.currentTimeMillis();
+        // The sleep is a child of the shell, so would keep the output streams open if only the shell was killed.
+        ExecutionResult result = createRuntimeExec("sh", "-c", "sleep 30; echo done")
+            .execute(emptyMap(), 500);
+
+        assertTrue(System.currentTimeMillis() - start < 10000, "Process was not killed");
+        assertFalse(result.getStdOut().contains("done"));
+        assertTrue(result.getStdErr().contains("timeout"), result.getStdErr());
+    }
+
+    @Test
+    @DisabledOnOs(WINDOWS)
+    public void testInterruptKillsProcess() throws Exception
+    {
+        Thread caller = Thread.currentThread();
+        Thread interrupter = new Thread(() -> {
+            try
+            {
+                Thread.sleep(500);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            caller.interrupt();
+        });
+        interrupter.start();
+        long start = System.currentTimeMillis();
+        ExecutionResult result = createRuntimeExec("sh", "-c", "sleep 30; echo done")
+            .execute(emptyMap(), 0);
+
+        assertTrue(Thread.interrupted(), "The interrupt should be kept");
+        assertTrue(System.currentTimeMillis() - start < 10000, "Process was not killed");
+        assertFalse(result.getStdOut().contains("done"));
+        interrupter.join();
+    }
+
+    @Test
+    @DisabledOnOs(WINDOWS)
+    public void testStdOutCopiedToStream()
+    {
+        ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+        ExecutionResult result = createRuntimeExec("sh", "-c", "echo out; echo err 1>&2")
+            .execute(emptyMap(), emptyMap(), 10000, stdOut);
+
+        assertEquals(0, result.getExitValue());
+        assertEquals("out", stdOut.toString(UTF_8).trim());
+        assertEquals("", result.getStdOut());
+        assertEquals("err", result.getStdErr().trim());
+    }
+
+    @Test
+    public void testGetCommand()
+    {
+        RuntimeExec runtimeExec = createRuntimeExec("convert", "SPLIT:${decodeOptions}", "${source}",
+            "SPLIT:${options}", "-define", "jpeg:size=${size}", "${unknown}", "${target}");
+        Map<String, String> defaultProperties = new HashMap<>();
+        defaultProperties.put("decodeOptions", null);
+        defaultProperties.put("options", "-strip");
+        defaultProperties.put("size", "10x10");
+        runtimeExec.setDefaultProperties(defaultProperties);
+
+        assertArrayEquals(new String[]{"convert", "${source}", "-strip", "-define", "jpeg:size=10x10", "${unknown}",
+            "${target}"}, runtimeExec.getCommand());
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("source", "/tmp/a b.pdf[0]");
+        properties.put("target", "${options}");
+        properties.put("options", "-resize 100x100> -draw \"text 0,12 'a b'\"");
+        properties.put("size", "200x200");
+        assertArrayEquals(new String[]{"convert", "/tmp/a b.pdf[0]", "-resize", "100x100>", "-draw",
+                "text 0,12 'a b'", "-define", "jpeg:size=200x200", "${unknown}", "${options}"},
+            runtimeExec.getCommand(properties));
+    }
+
+    @Test
+    public void testTokenizeCachesTokens()
+    {
+        List<String> tokens = ExecParameterTokenizer.tokenize("-resize 100x100 -gravity \"North West\"");
+        assertEquals(List.of("-resize", "100x100", "-gravity", "North West"), tokens);
+        assertSame(tokens, ExecParameterTokenizer.tokenize("-resize 100x100 -gravity \"North West\""));
+        assertThrows(UnsupportedOperationException.class, () -> tokens.add("x"));
+        assertEquals(List.of(), ExecParameterTokenizer.tokenize(""));
+
+        for (int i = 0; i < ExecParameterTokenizer.MAX_CACHED_STRINGS * 2; i++)
+        {
+            ExecParameterTokenizer.tokenize("-resize " + i);
+        }
+        assertTrue(ExecParameterTokenizer.getCachedStringCount() <= ExecParameterTokenizer.MAX_CACHED_STRINGS);
+    }
+
+    @Test
+    public void testTokenizeKeepsCharactersAroundQuotedRegions()
+    {
+        // The last character of the final unquoted region, and the one before each quoted region, used to be dropped
+        assertEquals(List.of("-write", "/tmp/a b.png", "+delete", ")", "-thumbnail", "100x100>"),
+            new ExecParameterTokenizer("-write \"/tmp/a b.png\" +delete ) -thumbnail 100x100>").getAllTokens());
+        assertEquals(List.of("-draw", "text 0,12 'CopyRight'", "x"),
+            new ExecParameterTokenizer("-draw \"text 0,12 'CopyRight'\" x").getAllTokens());
+        assertEquals(List.of("a", "b c"), new ExecParameterTokenizer("a \"b c\"").getAllTokens());
+    }
+
+    @Test
+    public void testRingCaptureKeepsMostRecentBytes()
+    {
+        RingCapture capture = new RingCapture(8, UTF_8);
+        capture.append("0123");
+        assertEquals("0123", capture.toString());
+        capture.append("4567");
+        assertEquals("01234567", capture.toString());
+        capture.append("89");
+        assertEquals("...23456789", capture.toString());
+        capture.append("abcdefghijkl");
+        assertEquals("...efghijkl", capture.toString());
+    }
+
+    @Test
+    public void testRingCaptureStartsAtCharacterBoundary()
+    {
+        RingCapture capture = new RingCapture(4, UTF_8);
+        capture.append("\u20ac"); // three bytes in UTF-8
+        capture.append("abc");
+        assertEquals("...abc", capture.toString());
+
+        capture = new RingCapture(4, UTF_8);
+        capture.append("a\u00fc"); // the second character is two bytes in UTF-8
+        capture.append("bc");
+        assertEquals("...\u00fcbc", capture.toString());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.fs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+
+public class CapturedTargetTest
+{
+    private File targetFile;
+
+    @BeforeEach
+    public void before() throws IOException
+    {
+        targetFile = File.createTempFile("target_", "_quick.png");
+    }
+
+    @AfterEach
+    public void after()
+    {
+        targetFile.delete();
+    }
+
+    @Test
+    public void testNotAccepted()
+    {
+        TransformTarget target = TransformTarget.of(targetFile);
+        assertNull(target.capture(1024));
+        assertNull(target.getCapturedTarget());
+    }
+
+    @Test
+    public void testCapturedInMemory() throws IOException
+    {
+        TransformTarget target = TransformTarget.capturable(targetFile);
+        try (CapturedTarget capturedTarget = target.capture(1024))
+        {
+            assertSame(capturedTarget, target.getCapturedTarget());
+            capturedTarget.write("content".getBytes(UTF_8));
+        }
+
+        CapturedTarget capturedTarget = target.getCapturedTarget();
+        assertFalse(capturedTarget.isSpilled());
+        assertEquals(7, capturedTarget.size());
+        assertEquals(0, targetFile.length());
+
+        Resource resource = capturedTarget.toResource();
+        assertEquals(targetFile.getName(), resource.getFilename());
+        assertArrayEquals("content".getBytes(UTF_8), resource.getInputStream().readAllBytes());
+        // may be read again
+        assertArrayEquals("content".getBytes(UTF_8), resource.getInputStream().readAllBytes());
+    }
+
+    @Test
+    public void testSpilledToTargetFile() throws IOException
+    {
+        TransformTarget target = TransformTarget.capturable(targetFile);
+        try (CapturedTarget capturedTarget = target.capture(8))
+        {
+            capturedTarget.write("0123".getBytes(UTF_8));
+            capturedTarget.write("4567".getBytes(UTF_8));
+            capturedTarget.write("89".getBytes(UTF_8));
+        }
+
+        CapturedTarget capturedTarget = target.getCapturedTarget();
+        assertTrue(capturedTarget.isSpilled());
+        assertEquals(10, capturedTarget.size());
+        assertEquals("0123456789", Files.readString(targetFile.toPath()));
+        assertEquals(targetFile.getName(), capturedTarget.toResource().getFilename());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2022 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transformer.fs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class StreamedTargetTest
+{
+    private File targetFile;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    public void before() throws IOException
+    {
+        targetFile = File.createTempFile("target_", "_quick.txt");
+        response = new MockHttpServletResponse();
+    }
+
+    @AfterEach
+    public void after()
+    {
+        targetFile.delete();
+    }
+
+    @Test
+    public void testNotAccepted()
+    {
+        assertNull(TransformTarget.of(targetFile).stream());
+        assertNull(TransformTarget.capturable(targetFile).stream());
+    }
+
+    @Test
+    public void testNotUsed()
+    {
+        TransformTarget target = TransformTarget.streamable(targetFile, "quick.txt", response);
+        assertNull(target.getStreamedTarget());
+    }
+
+    @Test
+    public void testSmallTargetHeldInMemory() throws IOException
+    {
+        TransformTarget target = TransformTarget.streamable(targetFile, "quick.txt", response);
+        try (StreamedTarget stream = target.stream())
+        {
+            stream.write("content".getBytes(UTF_8));
+        }
+
+        StreamedTarget streamedTarget = target.getStreamedTarget();
+        assertFalse(streamedTarget.isCommitted());
+        assertEquals(7, streamedTarget.size());
+        assertEquals(0, targetFile.length());
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        Resource resource = streamedTarget.toResource();
+        assertEquals(targetFile.getName(), resource.getFilename());
+        assertArrayEquals("content".getBytes(UTF_8), resource.getInputStream().readAllBytes());
+    }
+
+    @Test
+    public void testLargeTargetSentToResponse() throws IOException
+    {
+        byte[] content = "0123456789".repeat(10 * 1024).getBytes(UTF_8);
+        TransformTarget target = TransformTarget.streamable(targetFile, "quick.txt", response);
+        StreamedTarget streamedTarget = target.stream();
+        try (streamedTarget)
+        {
+            streamedTarget.write(content, 0, 60 * 1024);
+            assertFalse(streamedTarget.isCommitted());
+            streamedTarget.write(content, 60 * 1024, content.length - 60 * 1024);
+            assertTrue(streamedTarget.isCommitted());
+        }
+        streamedTarget.addTrailer(TransformTarget.TRUNCATED_HEADER, "maxCharacters");
+
+        assertEquals(content.length, streamedTarget.size());
+        assertEquals(0, targetFile.length());
+        assertEquals(200, response.getStatus());
+        assertEquals("text/plain", response.getContentType());
+        assertEquals("attachment; filename*= UTF-8''quick.txt", response.getHeader("Content-Disposition"));
+        assertEquals(TransformTarget.TRUNCATED_HEADER, response.getHeader("Trailer"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+}